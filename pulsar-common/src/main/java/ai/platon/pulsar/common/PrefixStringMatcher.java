@@ -19,6 +19,7 @@ package ai.platon.pulsar.common;
 
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.function.IntConsumer;
 
 /**
  * A class for efficiently matching <code>String</code>s against a set of
@@ -97,6 +98,24 @@ public class PrefixStringMatcher extends TrieStringMatcher {
         return false;
     }
 
+    /**
+     * Calls <code>consumer</code> with the length of every prefix of <code>input</code>
+     * that is matched, from the shortest to the longest.
+     *
+     * @param input a {@link java.lang.String} object.
+     * @param consumer the consumer of the lengths of the matched prefixes.
+     */
+    public void forEachMatch(String input, IntConsumer consumer) {
+        TrieNode node = root;
+        for (int i = 0; i < input.length(); i++) {
+            node = node.getChild(input.charAt(i));
+            if (node == null)
+                return;
+            if (node.isTerminal())
+                consumer.accept(i + 1);
+        }
+    }
+
     /**
      * {@inheritDoc}
      *
@@ -207,6 +207,10 @@ public class PulsarParams extends Params {
     public static final String VAR_IS_SCRAPE = "IS_SCRAPE";
 
     public static final String VAR_LOAD_OPTIONS = "LOAD_OPTIONS";
+    /**
+     * The stage trace of the task loading the page
+     * */
+    public static final String VAR_STAGE_TRACE = "STAGE_TRACE";
 
     /**
      * <p>Constructor for PulsarParams.</p>
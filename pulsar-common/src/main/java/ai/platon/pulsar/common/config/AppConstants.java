@@ -120,6 +120,8 @@ public interface AppConstants {
     String MEM_STORE_CLASS = "org.apache.gora.memory.store.MemStore";
     /** A minimal file backend store */
     String FILE_BACKEND_STORE_CLASS = "ai.platon.pulsar.persist.gora.FileBackendPageStore";
+    /** A concurrent file backend store with sharded directories and write-behind */
+    String SHARDED_FILE_BACKEND_STORE_CLASS = "ai.platon.pulsar.persist.gora.ShardedFileBackendPageStore";
     String MONGO_STORE_CLASS = "org.apache.gora.mongodb.store.MongoStore";
     String HBASE_STORE_CLASS = "org.apache.gora.hbase.store.HBaseStore";
     // schema version 1.10.x
@@ -42,6 +42,10 @@ public interface CapabilityTypes {
      * Main loop
      * */
     String MAIN_LOOP_CONCURRENCY_OVERRIDE = "main.loop.concurrency.override";
+    /**
+     * The period to sample the health state of the system, such as disk, CPU, memory, proxy and web db
+     * */
+    String MAIN_LOOP_HEALTH_CHECK_INTERVAL = "main.loop.health.check.interval";
 
     String START = "start";
 
@@ -62,6 +66,18 @@ public interface CapabilityTypes {
      * */
     String METRICS_ENABLED = "metrics.enabled";
 
+    /**
+     * The port of the standalone OpenMetrics endpoint, it's started only if the REST server is not present,
+     * a non-positive value disables it
+     * */
+    String METRICS_OPENMETRICS_PORT = "metrics.openmetrics.port";
+
+    /**
+     * The address the standalone OpenMetrics endpoint listens on, it's the loopback address by default,
+     * set it to 0.0.0.0 to expose the metrics to other hosts
+     * */
+    String METRICS_OPENMETRICS_HOST = "metrics.openmetrics.host";
+
     /**
      * Distribution
      */
@@ -92,6 +108,17 @@ public interface CapabilityTypes {
 
     String STORAGE_DATUM_EXPIRES = "storage.datum.expires";
 
+    /**
+     * Use the sharded, write-behind file backend store when a file backend store is detected, the default is false.
+     * It has no effect if storage.data.store.class is specified.
+     * */
+    String STORAGE_FILE_BACKEND_SHARDED = "storage.file.backend.sharded";
+
+    /**
+     * Where the page content is kept in memory: heap, direct or compressed, the default is heap.
+     * */
+    String STORAGE_CONTENT_MODE = "storage.content.mode";
+
     ///////////////////////////////////////////////////////////////////////////
     // Spring
 
@@ -122,6 +149,10 @@ public interface CapabilityTypes {
      * If a page is not found in the local storage, return WebPage.NIL.
      * */
     String LOAD_DEACTIVATE_FETCH_COMPONENT = "load.deactivate.fetch.component";
+    /**
+     * Trace the stages of every load task, the finished traces are kept by the flight recorder
+     * */
+    String LOAD_TRACE_ENABLED = "load.trace.enabled";
     /**
      * @deprecated use {@link #LOAD_DEACTIVATE_FETCH_COMPONENT} instead
      * */
@@ -258,6 +289,11 @@ public interface CapabilityTypes {
     String BROWSER_DISPLAY_MODE = "browser.display.mode";
     String BROWSER_IMAGES_ENABLED = "browser.images.enabled";
     String BROWSER_JS_INVADING_ENABLED = "browser.js.invading.enabled";
+    /**
+     * Check the document readiness as soon as the browser signals the document might be settled, e.g. the load
+     * event, network idle and DOM mutation quiescence, rather than in a fixed rate of one second
+     * */
+    String BROWSER_ADAPTIVE_READINESS_ENABLED = "browser.adaptive.readiness.enabled";
 
     String BROWSER_DELETE_ALL_COOKIES = "browser.delete.all.cookies";
     String BROWSER_RESPONSE_HANDLER = "browser.response.handler";
@@ -279,6 +315,11 @@ public interface CapabilityTypes {
     String BROWSER_LAUNCH_NO_SANDBOX = "browser.launch.no.sandbox";
     String BROWSER_LAUNCH_SUPERVISOR_PROCESS = "browser.launch.supervisor.process";
     String BROWSER_LAUNCH_SUPERVISOR_PROCESS_ARGS = "browser.launch.supervisor.process.args";
+    /**
+     * The number of browsers launched in advance and kept idle, ready to serve the next temporary browser,
+     * 0 to disable pre-warming
+     * */
+    String BROWSER_PREWARM_SIZE = "browser.prewarm.size";
 
     ///////////////////////////////////////////////////////////////////////////
     // Proxy
@@ -301,6 +342,14 @@ public interface CapabilityTypes {
 
     String HTTP_TIMEOUT = "http.timeout";
     String HTTP_FETCH_MAX_RETRY = "http.fetch.max.retry";
+    /**
+     * The max number of concurrent connections to a single host, used by the pure HTTP protocol
+     * */
+    String HTTP_FETCH_MAX_CONNECTIONS_PER_HOST = "http.fetch.max.connections.per.host";
+    /**
+     * The minimal delay between two requests to the same host, used by the pure HTTP protocol
+     * */
+    String HTTP_FETCH_HOST_DELAY = "http.fetch.host.delay";
 
 
     ///////////////////////////////////////////////////////////////////////////
@@ -417,6 +466,10 @@ public interface CapabilityTypes {
      * The size of global document cache
      * */
     String GLOBAL_DOCUMENT_CACHE_SIZE = "global.document.cache.size";
+    /**
+     * The memory budget in bytes of the global page cache and document cache
+     * */
+    String GLOBAL_CACHE_MEMORY_BUDGET = "global.cache.memory.budget";
 
     /**
      * Sites may request that search engines don't provide access to cached
@@ -0,0 +1,456 @@
+package ai.platon.pulsar.common.collect
+
+import ai.platon.pulsar.common.AppPaths
+import ai.platon.pulsar.common.getLogger
+import ai.platon.pulsar.common.urls.Hyperlink
+import ai.platon.pulsar.common.urls.HyperlinkDatum
+import ai.platon.pulsar.common.urls.UrlAware
+import ai.platon.pulsar.common.warnInterruptible
+import com.google.gson.GsonBuilder
+import java.nio.ByteBuffer
+import java.nio.MappedByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.channels.FileLock
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardCopyOption
+import java.nio.file.StandardOpenOption
+import java.util.*
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicBoolean
+import kotlin.io.path.deleteIfExists
+import kotlin.io.path.isDirectory
+import kotlin.io.path.listDirectoryEntries
+
+/**
+ * A memory-mapped, append-only segment file.
+ *
+ * The segment starts with a header holding the number of records, so the records can be counted without mapping
+ * the segment. A record is a 4-byte length followed by the payload. The length is written after the payload,
+ * so a zero length marks the end of the written records, even if the process crashed in the middle of a write.
+ * */
+internal class UrlSegment(val id: Long, val path: Path, minSize: Int) : AutoCloseable {
+    companion object {
+        const val HEADER_SIZE = 4
+
+        private val invokeCleaner = kotlin.runCatching {
+            val unsafeClass = Class.forName("sun.misc.Unsafe")
+            val unsafe = unsafeClass.getDeclaredField("theUnsafe").also { it.isAccessible = true }.get(null)
+            val method = unsafeClass.getMethod("invokeCleaner", ByteBuffer::class.java)
+            val cleaner: (ByteBuffer) -> Unit = { method.invoke(unsafe, it) }
+            cleaner
+        }.getOrNull()
+
+        /**
+         * Read the number of records from the header, the segment is not mapped.
+         * */
+        fun countOf(path: Path): Int {
+            FileChannel.open(path, StandardOpenOption.READ).use {
+                val header = ByteBuffer.allocate(HEADER_SIZE)
+                return if (it.read(header, 0) < HEADER_SIZE) 0 else header.getInt(0)
+            }
+        }
+
+        /**
+         * Release the mapping right now rather than when the buffer is garbage collected,
+         * the buffer must never be accessed again.
+         * */
+        private fun unmap(buffer: MappedByteBuffer) {
+            invokeCleaner?.let { kotlin.runCatching { it(buffer) } }
+        }
+    }
+
+    private var buffer: MappedByteBuffer?
+    private val mapped get() = checkNotNull(buffer) { "Segment $id is closed" }
+
+    /**
+     * The mapped size of the segment.
+     * */
+    val size: Int
+
+    /**
+     * The number of records in the segment.
+     * */
+    var count = 0
+        private set
+
+    /**
+     * The position to append the next record.
+     * */
+    var writePosition = HEADER_SIZE
+        private set
+
+    init {
+        FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE).use {
+            size = maxOf(minSize, it.size().toInt())
+            buffer = it.map(FileChannel.MapMode.READ_WRITE, 0, size.toLong())
+        }
+
+        val (n, end) = scan(HEADER_SIZE)
+        count = n
+        writePosition = end
+        // the header might be behind if the process crashed after a record was written
+        if (size >= HEADER_SIZE && mapped.getInt(0) != n) {
+            mapped.putInt(0, n)
+        }
+    }
+
+    /**
+     * Scan the records from [position] to the end.
+     *
+     * @return the number of records and the end position
+     * */
+    fun scan(position: Int): Pair<Int, Int> {
+        var count = 0
+        var p = position
+        while (true) {
+            val length = lengthAt(p)
+            if (length <= 0) break
+            p += 4 + length
+            ++count
+        }
+        return count to p
+    }
+
+    fun hasRoom(length: Int) = writePosition + 4 + length <= size
+
+    fun append(bytes: ByteArray) {
+        val buffer = mapped
+        val p = writePosition
+        val duplicate = buffer.duplicate()
+        duplicate.position(p + 4)
+        duplicate.put(bytes)
+        buffer.putInt(p, bytes.size)
+        writePosition = p + 4 + bytes.size
+        buffer.putInt(0, ++count)
+    }
+
+    /**
+     * The length of the record at [position], or 0 if there is no record.
+     * */
+    fun lengthAt(position: Int): Int {
+        return if (position + 4 <= size) mapped.getInt(position) else 0
+    }
+
+    fun read(position: Int, length: Int): ByteArray {
+        val bytes = ByteArray(length)
+        val duplicate = mapped.duplicate()
+        duplicate.position(position + 4)
+        duplicate.get(bytes)
+        return bytes
+    }
+
+    fun force() {
+        mapped.force()
+    }
+
+    override fun close() {
+        val buffer = buffer ?: return
+        this.buffer = null
+        unmap(buffer)
+    }
+}
+
+/**
+ * An append-only log of the urls of a topic, the urls are stored in memory-mapped segment files under [dir].
+ *
+ * The read position is persisted in a cursor file after every read, so the log survives process restarts.
+ * A segment file is unmapped and deleted once all its records are read.
+ * */
+internal class UrlSegmentLog(
+    val dir: Path,
+    private val segmentSize: Int,
+) : AutoCloseable {
+    companion object {
+        const val SEGMENT_SUFFIX = ".seg"
+        const val CURSOR_FILE = "cursor"
+    }
+
+    private val logger = getLogger(UrlSegmentLog::class)
+    private val gson = GsonBuilder().create()
+    private val cursorPath = dir.resolve(CURSOR_FILE)
+    private val segmentIds = TreeSet<Long>()
+
+    private lateinit var writeSegment: UrlSegment
+    private var readSegment: UrlSegment? = null
+    private var readId = 0L
+    private var readPosition = UrlSegment.HEADER_SIZE
+    /**
+     * The number of records read in the read segment.
+     * */
+    private var readCount = 0
+
+    /**
+     * The number of records not read yet.
+     * */
+    @Volatile
+    var remaining = 0
+        private set
+
+    init {
+        Files.createDirectories(dir)
+        dir.listDirectoryEntries("*$SEGMENT_SUFFIX").mapNotNullTo(segmentIds) {
+            it.fileName.toString().removeSuffix(SEGMENT_SUFFIX).toLongOrNull()
+        }
+        if (segmentIds.isEmpty()) {
+            segmentIds.add(0L)
+        }
+
+        readCursor()
+        // the segments before the cursor are all read
+        segmentIds.headSet(readId).toList().forEach { deleteSegment(it) }
+        if (readId !in segmentIds) {
+            // the cursor segment is exhausted and deleted
+            readPosition = UrlSegment.HEADER_SIZE
+            readCount = 0
+            if (segmentIds.isEmpty()) {
+                segmentIds.add(readId)
+            }
+        }
+        readId = segmentIds.first()
+
+        writeSegment = UrlSegment(segmentIds.last(), segmentPath(segmentIds.last()), segmentSize)
+        // count from the headers, the segments are not mapped
+        val count = segmentIds.sumOf { id ->
+            if (id == writeSegment.id) writeSegment.count else UrlSegment.countOf(segmentPath(id))
+        }
+        remaining = (count - readCount).coerceAtLeast(0)
+    }
+
+    @Synchronized
+    fun append(url: UrlAware) {
+        val hyperlink = if (url is Hyperlink) url else Hyperlink(url)
+        val bytes = gson.toJson(hyperlink.data()).toByteArray(Charsets.UTF_8)
+
+        if (!writeSegment.hasRoom(bytes.size)) {
+            val full = writeSegment
+            full.force()
+            val id = full.id + 1
+            segmentIds.add(id)
+            writeSegment = UrlSegment(id, segmentPath(id), maxOf(segmentSize, UrlSegment.HEADER_SIZE + bytes.size + 4))
+            // keep the mapping if the segment is being read, otherwise release it
+            if (full.id == readId) readSegment = full else full.close()
+        }
+
+        writeSegment.append(bytes)
+        ++remaining
+    }
+
+    /**
+     * Read at most [size] urls sequentially, and persist the read position.
+     * */
+    @Synchronized
+    fun read(size: Int): List<Hyperlink> {
+        val urls = mutableListOf<Hyperlink>()
+        while (urls.size < size) {
+            val segment = readSegment()
+            val length = segment.lengthAt(readPosition)
+            if (length <= 0) {
+                if (readId >= writeSegment.id) {
+                    break
+                }
+
+                // the segment is exhausted and will never be written again
+                segment.close()
+                readSegment = null
+                deleteSegment(readId)
+                readId = segmentIds.first()
+                readPosition = UrlSegment.HEADER_SIZE
+                readCount = 0
+                continue
+            }
+
+            val json = String(segment.read(readPosition, length), Charsets.UTF_8)
+            readPosition += 4 + length
+            ++readCount
+            --remaining
+            kotlin.runCatching { Hyperlink(gson.fromJson(json, HyperlinkDatum::class.java)) }
+                .onSuccess { urls.add(it) }
+                .onFailure { warnInterruptible(this, it, "Skip broken record in $dir") }
+        }
+
+        if (urls.isNotEmpty()) {
+            writeCursor()
+        }
+
+        return urls
+    }
+
+    @Synchronized
+    fun flush() {
+        writeSegment.force()
+        writeCursor()
+    }
+
+    @Synchronized
+    fun delete(): Int {
+        val count = remaining
+        readSegment?.close()
+        readSegment = null
+        writeSegment.close()
+        segmentIds.toList().forEach { deleteSegment(it) }
+        cursorPath.deleteIfExists()
+
+        segmentIds.add(0L)
+        readId = 0L
+        readPosition = UrlSegment.HEADER_SIZE
+        readCount = 0
+        remaining = 0
+        writeSegment = UrlSegment(0L, segmentPath(0L), segmentSize)
+
+        return count
+    }
+
+    @Synchronized
+    override fun close() {
+        kotlin.runCatching { flush() }.onFailure { warnInterruptible(this, it) }
+        readSegment?.close()
+        readSegment = null
+        writeSegment.close()
+    }
+
+    private fun readSegment(): UrlSegment {
+        return when {
+            readId == writeSegment.id -> writeSegment
+            readSegment?.id == readId -> readSegment!!
+            // the segment is full, map it as is
+            else -> UrlSegment(readId, segmentPath(readId), 0).also { readSegment = it }
+        }
+    }
+
+    private fun deleteSegment(id: Long) {
+        segmentIds.remove(id)
+        kotlin.runCatching { segmentPath(id).deleteIfExists() }
+            .onFailure { logger.warn("Failed to delete segment {} | {}", id, it.message) }
+    }
+
+    private fun readCursor() {
+        if (!Files.exists(cursorPath)) {
+            readId = segmentIds.first()
+            readPosition = UrlSegment.HEADER_SIZE
+            readCount = 0
+            return
+        }
+
+        val parts = Files.readString(cursorPath).trim().split(" ")
+        readId = parts.getOrNull(0)?.toLongOrNull() ?: segmentIds.first()
+        readPosition = parts.getOrNull(1)?.toIntOrNull() ?: UrlSegment.HEADER_SIZE
+        readCount = parts.getOrNull(2)?.toIntOrNull() ?: 0
+    }
+
+    private fun writeCursor() {
+        val tmp = dir.resolve("$CURSOR_FILE.tmp")
+        Files.writeString(tmp, "$readId $readPosition $readCount")
+        Files.move(tmp, cursorPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+    }
+
+    private fun segmentPath(id: Long) = dir.resolve(String.format("%020d%s", id, SEGMENT_SUFFIX))
+}
+
+/**
+ * A url loader which persists urls to the local disk, it works offline with no external store.
+ *
+ * Urls of each topic are appended to memory-mapped, append-only segment files, and are loaded in large sequential
+ * batches. The urls not loaded yet survive process restarts.
+ *
+ * The base directory is locked while the loader is open, so two loaders never write the same segment files.
+ * */
+open class SegmentFileUrlLoader(
+    /**
+     * The base directory, urls of each topic are stored in a sub directory
+     * */
+    val baseDir: Path = AppPaths.LOCAL_DATA_DIR.resolve("frontier"),
+    /**
+     * The size of each segment file
+     * */
+    val segmentSize: Int = DEFAULT_SEGMENT_SIZE,
+) : AbstractExternalUrlLoader(), AutoCloseable {
+    companion object {
+        const val DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024
+        const val LOCK_FILE = "LOCK"
+    }
+
+    private val logs = ConcurrentHashMap<String, UrlSegmentLog>()
+    private val closed = AtomicBoolean()
+    private val lockChannel: FileChannel
+    private val lock: FileLock
+
+    init {
+        Files.createDirectories(baseDir)
+        lockChannel = FileChannel.open(baseDir.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE)
+        // the lock is held by another process if tryLock returns null, or by this process if it throws
+        val lock = kotlin.runCatching { lockChannel.tryLock() }.getOrNull()
+        if (lock == null) {
+            lockChannel.close()
+            throw IllegalStateException("The directory is used by another url loader | $baseDir")
+        }
+        this.lock = lock
+
+        // open the existing logs, so the remaining urls are counted after a restart
+        baseDir.listDirectoryEntries().filter { it.isDirectory() }.forEach {
+            val name = it.fileName.toString()
+            logs[name] = UrlSegmentLog(it, segmentSize)
+        }
+    }
+
+    override fun reset() {
+    }
+
+    override fun save(url: UrlAware, topic: UrlTopic) = log(topic).append(url)
+
+    override fun saveAll(urls: Iterable<UrlAware>, topic: UrlTopic) {
+        val log = log(topic)
+        urls.forEach { log.append(it) }
+    }
+
+    override fun hasMore() = countRemaining() > 0
+
+    override fun hasMore(topic: UrlTopic) = countRemaining(topic) > 0
+
+    override fun countRemaining() = logs.values.sumOf { it.remaining }
+
+    override fun countRemaining(topic: UrlTopic) = logs[dirName(topic)]?.remaining ?: 0
+
+    override fun estimateRemaining() = countRemaining()
+
+    override fun estimateRemaining(topic: UrlTopic) = countRemaining(topic)
+
+    override fun <T> loadToNow(
+        sink: MutableCollection<T>, size: Int, topic: UrlTopic, transformer: (UrlAware) -> T
+    ): Collection<T> {
+        val log = logs[dirName(topic)] ?: return listOf()
+        val urls = log.read(size).map(transformer)
+        sink.addAll(urls)
+        return urls
+    }
+
+    override fun <T> loadTo(sink: MutableCollection<T>, size: Int, topic: UrlTopic, transformer: (UrlAware) -> T) {
+        loadToNow(sink, size, topic, transformer)
+    }
+
+    override fun deleteAll(topic: UrlTopic): Long {
+        return logs[dirName(topic)]?.delete()?.toLong() ?: 0
+    }
+
+    /**
+     * Force the written urls and the read positions to the disk.
+     * */
+    fun flush() {
+        logs.values.forEach { it.flush() }
+    }
+
+    override fun close() {
+        if (closed.compareAndSet(false, true)) {
+            logs.values.forEach { it.close() }
+            kotlin.runCatching { lock.release() }.onFailure { warnInterruptible(this, it) }
+            lockChannel.close()
+        }
+    }
+
+    private fun log(topic: UrlTopic): UrlSegmentLog {
+        val name = dirName(topic)
+        return logs.computeIfAbsent(name) { UrlSegmentLog(baseDir.resolve(it), segmentSize) }
+    }
+
+    private fun dirName(topic: UrlTopic) = topic.toString().replace("[^a-zA-Z0-9._-]".toRegex(), "_")
+}
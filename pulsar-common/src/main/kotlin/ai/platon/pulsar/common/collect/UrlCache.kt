@@ -97,6 +97,38 @@ open class ConcurrentUrlCache(
     override val reentrantQueue = ConcurrentLinkedQueue<UrlAware>()
 }
 
+/**
+ * A url cache backed by bounded, lock-free ring buffers.
+ *
+ * Urls are deduplicated by the 64-bit fingerprints of their url strings in rotating bloom filters,
+ * so the memory of the cache is bounded no matter how many urls are offered.
+ * */
+open class RingBufferUrlCache(
+    name: String = "",
+    priority: Int = Priority13.NORMAL.value,
+    /**
+     * The capacity for each queue
+     * */
+    val capacity: Int = DEFAULT_CAPACITY,
+    /**
+     * The number of urls remembered by each generation of the dedup filters
+     * */
+    val filterCapacity: Int = RotatingBloomFilter.DEFAULT_CAPACITY,
+) : AbstractUrlCache(name, priority) {
+    companion object {
+        const val DEFAULT_CAPACITY = 1 shl 14
+
+        private val URL_FINGERPRINT: (UrlAware) -> Long = { RotatingBloomFilter.fingerprint(it.url) }
+    }
+
+    override val nonReentrantQueue =
+        ConcurrentNonReentrantRingBufferQueue(capacity, filterCapacity, fingerprint = URL_FINGERPRINT)
+    override val nReentrantQueue =
+        ConcurrentNEntrantRingBufferQueue(3, capacity, filterCapacity, fingerprint = URL_FINGERPRINT)
+    override val reentrantQueue = ConcurrentRingBufferQueue<UrlAware>(capacity)
+    override val queues: List<Queue<UrlAware>> = listOf(nonReentrantQueue, nReentrantQueue, reentrantQueue)
+}
+
 /**
  * Contains a sets of loading queues which can load urls from external source using [urlLoader].
  * */
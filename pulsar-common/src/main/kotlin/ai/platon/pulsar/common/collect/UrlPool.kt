@@ -2,6 +2,8 @@ package ai.platon.pulsar.common.collect
 
 import ai.platon.pulsar.common.Priority13
 import ai.platon.pulsar.common.collect.UrlPool.Companion.REAL_TIME_PRIORITY
+import ai.platon.pulsar.common.collect.queue.AbstractLoadingQueue
+import ai.platon.pulsar.common.collect.queue.RotatingBloomFilter
 import ai.platon.pulsar.common.config.ImmutableConfig
 import ai.platon.pulsar.common.urls.Hyperlink
 import ai.platon.pulsar.common.urls.PlainUrl
@@ -263,6 +265,36 @@ open class ConcurrentUrlPool(conf: ImmutableConfig) : AbstractUrlPool(conf) {
     }
 }
 
+/**
+ * A [RingBufferUrlPool] is a [UrlPool] whose caches are sharded by priority, each shard is a [RingBufferUrlCache]
+ * backed by bounded, lock-free ring buffers with fingerprint based dedup filters.
+ *
+ * Comparing to [ConcurrentUrlPool], the urls are kept in FIFO order inside each priority instead of being sorted,
+ * and the memory is bounded. A url is rejected if the queue it's added to is full.
+ * */
+open class RingBufferUrlPool(
+    conf: ImmutableConfig,
+    /**
+     * The capacity for each queue
+     * */
+    val capacity: Int = RingBufferUrlCache.DEFAULT_CAPACITY,
+    /**
+     * The number of urls remembered by each generation of the dedup filters
+     * */
+    val filterCapacity: Int = RotatingBloomFilter.DEFAULT_CAPACITY,
+) : ConcurrentUrlPool(conf) {
+
+    override val realTimeCache: UrlCache = RingBufferUrlCache("realtime", REAL_TIME_PRIORITY, capacity, filterCapacity)
+
+    override fun initialize() {
+        if (initialized.compareAndSet(false, true)) {
+            Priority13.entries.forEach {
+                orderedCaches[it.value] = RingBufferUrlCache(it.name, it.value, capacity, filterCapacity)
+            }
+        }
+    }
+}
+
 /**
  * A [LoadingUrlPool] is a [UrlPool], the items can be loaded from external source using [loader].
  * */
@@ -282,3 +314,34 @@ open class LoadingUrlPool(
         }
     }
 }
+
+/**
+ * A [SpillingUrlPool] is a [LoadingUrlPool] whose urls are spilled to the local disk once a queue holds
+ * [capacity] urls, so the pool is not bounded by the heap.
+ *
+ * The spilled urls are kept in memory-mapped segment files by a [SegmentFileUrlLoader], and are refilled
+ * in large sequential batches. The urls still in memory are spilled when the pool is closed, so all the urls
+ * survive process restarts.
+ * */
+open class SpillingUrlPool(
+    conf: ImmutableConfig,
+    loader: SegmentFileUrlLoader = SegmentFileUrlLoader(),
+    capacity: Int = 10_000,
+) : LoadingUrlPool(loader, capacity, conf), AutoCloseable {
+    private val closed = AtomicBoolean()
+
+    override fun close() {
+        if (closed.compareAndSet(false, true)) {
+            val caches = listOf(realTimeCache) + orderedCaches.values
+            caches.flatMap { it.queues }.filterIsInstance<AbstractLoadingQueue>().forEach { queue ->
+                val urls = queue.cache.filter { it.isPersistable }
+                if (urls.isNotEmpty()) {
+                    queue.overflow(urls)
+                }
+                queue.clear()
+            }
+
+            (loader as SegmentFileUrlLoader).close()
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package ai.platon.pulsar.common.collect.queue
+
+import java.util.*
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicLongArray
+import java.util.concurrent.atomic.AtomicReferenceArray
+import java.util.function.Predicate
+
+/**
+ * A bounded, lock-free, multi-producer multi-consumer FIFO queue backed by a ring buffer.
+ *
+ * Every slot carries a sequence number which tells producers and consumers whether the slot is ready for them,
+ * so both [offer] and [poll] need only one CAS in the uncontended case and allocate nothing.
+ *
+ * [offer] returns false if the queue is full. The iterator is weakly consistent and does not support removal,
+ * use [removeIf] instead.
+ *
+ * The items retained by [removeIf] which can not be put back, because producers took the free slots in the
+ * meantime, are kept in an overflow list and polled before the items in the ring buffer, so no item is lost.
+ * */
+open class ConcurrentRingBufferQueue<E>(
+    capacity: Int = DEFAULT_CAPACITY
+) : AbstractQueue<E>() {
+    companion object {
+        const val DEFAULT_CAPACITY = 1 shl 16
+        /**
+         * The default false positive probability of the dedup filters of the subclasses.
+         * */
+        const val DEFAULT_FILTER_FPP = 0.001
+    }
+
+    /**
+     * The capacity, rounded up to a power of 2.
+     * */
+    val capacity: Int
+    private val mask: Int
+    private val buffer: AtomicReferenceArray<E?>
+    private val sequences: AtomicLongArray
+    private val enqueuePosition = AtomicLong()
+    private val dequeuePosition = AtomicLong()
+    private val overflow = ConcurrentLinkedQueue<E>()
+
+    init {
+        require(capacity in 2..(1 shl 30)) { "Capacity must be in [2, 2^30]" }
+        this.capacity = Integer.highestOneBit(capacity - 1) shl 1
+        mask = this.capacity - 1
+        buffer = AtomicReferenceArray(this.capacity)
+        sequences = AtomicLongArray(this.capacity)
+        for (i in 0 until this.capacity) {
+            sequences.set(i, i.toLong())
+        }
+    }
+
+    /**
+     * The remaining capacity.
+     * */
+    val remainingCapacity get() = (capacity - size).coerceAtLeast(0)
+
+    override val size: Int
+        get() {
+            // read the dequeue position first so the difference is never less than the real size
+            val head = dequeuePosition.get()
+            val tail = enqueuePosition.get()
+            return (tail - head).coerceIn(0, capacity.toLong()).toInt() + overflow.size
+        }
+
+    override fun isEmpty() = size == 0
+
+    override fun add(element: E) = offer(element)
+
+    override fun offer(e: E) = enqueue(e)
+
+    override fun poll(): E? = overflow.poll() ?: dequeue()
+
+    override fun peek(): E? {
+        overflow.peek()?.let { return it }
+
+        val position = dequeuePosition.get()
+        val index = position.toInt() and mask
+        return if (sequences.get(index) == position + 1) buffer.get(index) else null
+    }
+
+    /**
+     * Drain the items and put back the ones that are not matched, the order of the retained items is kept.
+     *
+     * The retained items are put back by [enqueue], they have been accepted once, so they are not checked again
+     * by the subclasses.
+     * */
+    override fun removeIf(filter: Predicate<in E>): Boolean {
+        var removed = false
+        val retained = mutableListOf<E>()
+        var n = size
+        while (n-- > 0) {
+            val e = poll() ?: break
+            if (filter.test(e)) removed = true else retained.add(e)
+        }
+
+        var overflowed = false
+        retained.forEach {
+            // keep the order, once an item overflows, all the items after it overflow
+            if (overflowed || !enqueue(it)) {
+                overflowed = true
+                overflow.add(it)
+            }
+        }
+        return removed
+    }
+
+    override fun clear() {
+        while (poll() != null) {
+            // drain
+        }
+    }
+
+    /**
+     * A weakly consistent iterator over a snapshot of the published items.
+     * */
+    override fun iterator(): MutableIterator<E> {
+        val snapshot = overflow.toMutableList()
+        val head = dequeuePosition.get()
+        val tail = enqueuePosition.get()
+        var position = head
+        while (position < tail) {
+            val index = position.toInt() and mask
+            val e = buffer.get(index)
+            if (e != null && sequences.get(index) == position + 1) {
+                snapshot.add(e)
+            }
+            ++position
+        }
+
+        val it = snapshot.iterator()
+        return object : MutableIterator<E> {
+            override fun hasNext() = it.hasNext()
+            override fun next() = it.next()
+            override fun remove() = throw UnsupportedOperationException("remove")
+        }
+    }
+
+    /**
+     * Put the item into the ring buffer without any check of the subclasses.
+     *
+     * @return false if the ring buffer is full
+     * */
+    protected fun enqueue(e: E): Boolean {
+        var position = enqueuePosition.get()
+        while (true) {
+            val index = position.toInt() and mask
+            val diff = sequences.get(index) - position
+            when {
+                diff == 0L -> if (enqueuePosition.compareAndSet(position, position + 1)) {
+                    buffer.set(index, e)
+                    sequences.set(index, position + 1)
+                    return true
+                } else {
+                    position = enqueuePosition.get()
+                }
+                // the slot is still occupied by an item of the last round, the queue is full
+                diff < 0L -> return false
+                else -> position = enqueuePosition.get()
+            }
+        }
+    }
+
+    private fun dequeue(): E? {
+        var position = dequeuePosition.get()
+        while (true) {
+            val index = position.toInt() and mask
+            val diff = sequences.get(index) - (position + 1)
+            when {
+                diff == 0L -> if (dequeuePosition.compareAndSet(position, position + 1)) {
+                    val e = buffer.getAndSet(index, null)
+                    sequences.set(index, position + capacity)
+                    return e
+                } else {
+                    position = dequeuePosition.get()
+                }
+                // the slot is not published yet, the queue is empty
+                diff < 0L -> return null
+                else -> position = dequeuePosition.get()
+            }
+        }
+    }
+}
+
+/**
+ * A [ConcurrentRingBufferQueue] accepts the same item only once.
+ *
+ * Items are deduplicated by a 64-bit [fingerprint] in a [RotatingBloomFilter], so the memory is bounded
+ * whatever how many items are offered. The price is the false positive rate [fpp] of the filter: about that
+ * share of the new items are taken as duplicates and silently rejected once a filter generation is nearly full.
+ *
+ * The fingerprint of an item is recorded only after the item is accepted, and the check, the acceptance and
+ * the record of the same fingerprint are serialized by a striped lock, so an item rejected because the queue
+ * is full can be offered again.
+ * */
+open class ConcurrentNonReentrantRingBufferQueue<E>(
+    capacity: Int = DEFAULT_CAPACITY,
+    filterCapacity: Int = RotatingBloomFilter.DEFAULT_CAPACITY,
+    fpp: Double = DEFAULT_FILTER_FPP,
+    private val fingerprint: (E) -> Long = { RotatingBloomFilter.fingerprint(it.toString()) },
+) : ConcurrentRingBufferQueue<E>(capacity) {
+    private val filter = RotatingBloomFilter(filterCapacity, fpp)
+    private val stripes = Array(64) { Any() }
+
+    /**
+     * The memory used by the dedup filter, in bytes.
+     * */
+    val filterSize get() = filter.bitSize
+
+    open fun count(e: E) = if (filter.mightContain(fingerprint(e))) 1 else 0
+
+    override fun offer(e: E): Boolean {
+        val fp = fingerprint(e)
+        synchronized(stripes[(fp and 63).toInt()]) {
+            if (filter.mightContain(fp) || !enqueue(e)) {
+                return false
+            }
+
+            filter.put(fp)
+            return true
+        }
+    }
+}
+
+/**
+ * A [ConcurrentRingBufferQueue] accepts the same item [n] times at most.
+ *
+ * The k-th occurrence of an item is recorded in the k-th layer of the [RotatingBloomFilter]s, only after the item
+ * is accepted, see [ConcurrentNonReentrantRingBufferQueue] for the false positive rate [fpp].
+ * */
+open class ConcurrentNEntrantRingBufferQueue<E>(
+    val n: Int = 3,
+    capacity: Int = DEFAULT_CAPACITY,
+    filterCapacity: Int = RotatingBloomFilter.DEFAULT_CAPACITY,
+    fpp: Double = DEFAULT_FILTER_FPP,
+    private val fingerprint: (E) -> Long = { RotatingBloomFilter.fingerprint(it.toString()) },
+) : ConcurrentRingBufferQueue<E>(capacity) {
+    private val layers = Array(n) { RotatingBloomFilter(filterCapacity, fpp) }
+    private val stripes = Array(64) { Any() }
+
+    /**
+     * The memory used by the dedup filters, in bytes.
+     * */
+    val filterSize get() = layers.sumOf { it.bitSize }
+
+    open fun count(e: E): Int {
+        val fp = fingerprint(e)
+        return layers.count { it.mightContain(fp) }
+    }
+
+    override fun offer(e: E): Boolean {
+        val fp = fingerprint(e)
+        synchronized(stripes[(fp and 63).toInt()]) {
+            // the occurrence is recorded in the first layer which does not contain it yet
+            val layer = layers.firstOrNull { !it.mightContain(fp) }
+            if (layer == null || !enqueue(e)) {
+                return false
+            }
+
+            layer.put(fp)
+            return true
+        }
+    }
+}
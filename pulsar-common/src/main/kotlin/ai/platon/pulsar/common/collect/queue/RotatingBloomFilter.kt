@@ -0,0 +1,205 @@
+package ai.platon.pulsar.common.collect.queue
+
+import com.google.common.hash.Hashing
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicLongArray
+import kotlin.math.ceil
+import kotlin.math.ln
+import kotlin.math.roundToInt
+
+/**
+ * A lock-free bloom filter keyed by a 64-bit fingerprint.
+ * */
+class FingerprintBloomFilter(
+    /**
+     * The expected number of insertions.
+     * */
+    val expectedInsertions: Int,
+    /**
+     * The expected false positive probability.
+     * */
+    val fpp: Double = 0.01,
+) {
+    private val numBits: Long
+    private val numHashFunctions: Int
+    private val bits: AtomicLongArray
+    private val counter = AtomicLong()
+
+    init {
+        require(expectedInsertions > 0) { "Expected insertions must be positive" }
+        require(fpp > 0.0 && fpp < 1.0) { "False positive probability must be in (0, 1)" }
+
+        val n = expectedInsertions.toDouble()
+        val m = ceil(-n * ln(fpp) / (ln(2.0) * ln(2.0))).toLong().coerceAtLeast(64)
+        numBits = (m + 63) / 64 * 64
+        numHashFunctions = (numBits / n * ln(2.0)).roundToInt().coerceIn(1, 16)
+        bits = AtomicLongArray((numBits / 64).toInt())
+    }
+
+    /**
+     * The number of insertions which changed the filter.
+     * */
+    val count get() = counter.get()
+
+    /**
+     * The memory used by the bit array, in bytes.
+     * */
+    val bitSize get() = numBits / 8
+
+    fun mightContain(fingerprint: Long): Boolean {
+        val h1 = fingerprint.toInt()
+        val h2 = (fingerprint ushr 32).toInt()
+        for (i in 1..numHashFunctions) {
+            val index = bitIndex(h1, h2, i)
+            if ((bits.get((index ushr 6).toInt()) and (1L shl index.toInt())) == 0L) {
+                return false
+            }
+        }
+        return true
+    }
+
+    /**
+     * Put a fingerprint into the filter.
+     *
+     * @return true if the filter changed, which means the fingerprint definitely did not exist before
+     * */
+    fun put(fingerprint: Long): Boolean {
+        val h1 = fingerprint.toInt()
+        val h2 = (fingerprint ushr 32).toInt()
+        var changed = false
+        for (i in 1..numHashFunctions) {
+            val index = bitIndex(h1, h2, i)
+            val mask = 1L shl index.toInt()
+            val old = bits.getAndAccumulate((index ushr 6).toInt(), mask) { a, b -> a or b }
+            if ((old and mask) == 0L) {
+                changed = true
+            }
+        }
+
+        if (changed) {
+            counter.incrementAndGet()
+        }
+
+        return changed
+    }
+
+    fun clear() {
+        for (i in 0 until bits.length()) {
+            bits.set(i, 0L)
+        }
+        counter.set(0)
+    }
+
+    /**
+     * Kirsch-Mitzenmacher double hashing, the same as guava's BloomFilter does.
+     * */
+    private fun bitIndex(h1: Int, h2: Int, i: Int): Long {
+        var combined = h1 + i * h2
+        if (combined < 0) {
+            combined = combined.inv()
+        }
+        return combined.toLong() % numBits
+    }
+}
+
+/**
+ * A rotating bloom filter keeps the memory bounded for an unbounded stream of fingerprints.
+ *
+ * The filter keeps two generations. New fingerprints are put into the current generation, and when the current
+ * generation reaches [capacity], it becomes the previous generation and the old previous generation is dropped.
+ * A fingerprint is remembered for at least [capacity] insertions after it is put.
+ * */
+class RotatingBloomFilter(
+    /**
+     * The number of insertions of each generation.
+     * */
+    val capacity: Int = DEFAULT_CAPACITY,
+    /**
+     * The expected false positive probability of each generation.
+     * */
+    val fpp: Double = 0.01,
+) {
+    companion object {
+        const val DEFAULT_CAPACITY = 1_000_000
+
+        /**
+         * The 64-bit fingerprint of a text, it's much less likely to collide than [String.hashCode].
+         * */
+        fun fingerprint(text: String): Long {
+            return Hashing.murmur3_128().hashUnencodedChars(text).asLong()
+        }
+    }
+
+    /**
+     * Concurrent insertions of the same fingerprint are serialized by the stripe locks, so exactly one of them wins.
+     * */
+    private val stripes = Array(64) { Any() }
+
+    /**
+     * The current generation, allocated on the first insertion, so an unused filter costs nothing.
+     * */
+    @Volatile
+    private var current: FingerprintBloomFilter? = null
+    @Volatile
+    private var previous: FingerprintBloomFilter? = null
+
+    /**
+     * The number of rotations.
+     * */
+    @Volatile
+    var rotations = 0L
+        private set
+
+    /**
+     * The memory used by the bit arrays, in bytes.
+     * */
+    val bitSize get() = (current?.bitSize ?: 0) + (previous?.bitSize ?: 0)
+
+    fun mightContain(fingerprint: Long): Boolean {
+        return current?.mightContain(fingerprint) == true || previous?.mightContain(fingerprint) == true
+    }
+
+    /**
+     * Put a fingerprint into the filter if it's not contained.
+     *
+     * @return true if the fingerprint is not contained before
+     * */
+    fun put(fingerprint: Long): Boolean {
+        val filter: FingerprintBloomFilter
+        val changed: Boolean
+        synchronized(stripes[(fingerprint and 63).toInt()]) {
+            if (previous?.mightContain(fingerprint) == true) {
+                return false
+            }
+
+            filter = current ?: allocate()
+            changed = filter.put(fingerprint)
+        }
+
+        if (changed && filter.count >= capacity) {
+            rotate(filter)
+        }
+
+        return changed
+    }
+
+    @Synchronized
+    fun clear() {
+        current = null
+        previous = null
+    }
+
+    @Synchronized
+    private fun allocate(): FingerprintBloomFilter {
+        return current ?: FingerprintBloomFilter(capacity, fpp).also { current = it }
+    }
+
+    @Synchronized
+    private fun rotate(full: FingerprintBloomFilter) {
+        if (current === full) {
+            previous = full
+            current = FingerprintBloomFilter(capacity, fpp)
+            ++rotations
+        }
+    }
+}
@@ -1,23 +1,60 @@
 package ai.platon.pulsar.common.concurrent
 
 import java.time.Duration
-import java.util.*
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicReferenceArray
+import java.util.concurrent.locks.ReentrantLock
+import kotlin.concurrent.withLock
 
 /**
- * A very simple yet fast LRU cache with TTL support
+ * A fast concurrent LRU cache with TTL support.
+ *
+ * The items are kept in a [ConcurrentHashMap], so reads never block. The access order is kept in a linked list
+ * guarded by a lock, the reads and writes are recorded in buffers and replayed to the list in batches by the thread
+ * which acquires the lock, the read buffers are lossy, so the order is approximate under heavy concurrency.
+ *
+ * An item expires [ttl] seconds after it's put.
  */
 class ConcurrentLRUCache<K, V : Any> {
+    companion object {
+        private const val READ_BUFFER_SIZE = 32
+        private val NUM_READ_BUFFERS = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1) shl 1
+    }
+
+    private class Node<K, V>(val key: K, @Volatile var value: V, @Volatile var writeTime: Long) {
+        var prev: Node<K, V>? = null
+        var next: Node<K, V>? = null
+        var linked = false
+    }
+
+    private class ReadBuffer<K, V> {
+        val slots = AtomicReferenceArray<Node<K, V>?>(READ_BUFFER_SIZE)
+        val writeIndex = AtomicInteger()
+    }
+
+    private val data: ConcurrentHashMap<K, Node<K, V>>
+    private val capacity: Int
+    private val ttlMillis: Long
+
     /**
-     * A fast yet short life least recently used cache
-     */
-    private val cache: LinkedHashMap<String, V>
+     * Guards the access order list, and the list is modified only by the thread holding the lock
+     * */
+    private val evictionLock = ReentrantLock()
+    private var head: Node<K, V>? = null
+    private var tail: Node<K, V>? = null
+
+    private val readBuffers = Array(NUM_READ_BUFFERS) { ReadBuffer<K, V>() }
+    private val writeBuffer = ConcurrentLinkedQueue<Node<K, V>>()
+
     /**
      * Expires in seconds
      */
     var ttl: Long
         private set
 
-    val size get() = cache.size
+    val size get() = data.size
 
     constructor(capacity: Int) : this(0, capacity)
 
@@ -27,14 +64,7 @@ class ConcurrentLRUCache<K, V : Any> {
      * @param ttl      Time to live for items
      * @param capacity The max size of the cache
      */
-    constructor(ttl: Duration, capacity: Int) {
-        this.ttl = ttl.seconds
-        cache = object : LinkedHashMap<String, V>(capacity, 0.75f, true) {
-            override fun removeEldestEntry(eldest: Map.Entry<String, V>): Boolean {
-                return size > capacity
-            }
-        }
-    }
+    constructor(ttl: Duration, capacity: Int) : this(ttl.seconds, capacity)
 
     /**
      * Construct a least recently used cache
@@ -44,49 +74,202 @@ class ConcurrentLRUCache<K, V : Any> {
      */
     constructor(ttl: Long, capacity: Int) {
         this.ttl = ttl
-        cache = object : LinkedHashMap<String, V>(capacity, 0.75f, true) {
-            override fun removeEldestEntry(eldest: Map.Entry<String, V>): Boolean {
-                return size > capacity
-            }
-        }
+        this.ttlMillis = ttl * 1000
+        this.capacity = capacity
+        this.data = ConcurrentHashMap(capacity.coerceAtMost(1024))
     }
 
     operator fun get(key: K): V? {
-        val ttlKey = getTTLKey(key)
-        synchronized(cache) { return cache[ttlKey] }
+        val node = data[key] ?: return null
+        if (ttlMillis > 0 && isExpired(node, System.currentTimeMillis())) {
+            if (data.remove(key, node)) {
+                afterWrite(node)
+            }
+            return null
+        }
+
+        afterRead(node)
+        return node.value
     }
 
     fun put(key: K, value: V): V? {
-        val ttlKey = getTTLKey(key)
-        return synchronized(cache) { cache.put(ttlKey, value) }
+        val node = Node(key, value, System.currentTimeMillis())
+        val old = data.put(key, node)
+        if (old != null) {
+            writeBuffer.offer(old)
+        }
+        afterWrite(node)
+        return old?.takeUnless { isExpired(it, node.writeTime) }?.value
     }
-    
+
+    /**
+     * Remove the least recently used item.
+     * */
     fun remove(): V? {
-        synchronized(cache) {
-            val ttlKey = cache.keys.firstOrNull() ?: return null
-            return cache.remove(ttlKey)
+        evictionLock.withLock {
+            drainBuffers()
+            val eldest = head ?: return null
+            unlink(eldest)
+            data.remove(eldest.key, eldest)
+            return eldest.value
         }
     }
-    
+
     fun remove(key: K): V? {
-        val ttlKey = getTTLKey(key)
-        synchronized(cache) { return cache.remove(ttlKey) }
+        val node = data.remove(key) ?: return null
+        afterWrite(node)
+        return node.value
     }
 
+    /**
+     * Get the value of the key, or compute and put it if it's absent or expired.
+     *
+     * The value is computed outside of the map, so the mapping function may access this cache, even recursively.
+     * If several threads compute the same key at the same time, the first value put wins and is returned to all.
+     * */
     fun computeIfAbsent(key: K, mappingFunction: (K) -> V): V {
-        val ttlKey = getTTLKey(key)
-        synchronized(cache) {
-            return cache[ttlKey] ?: mappingFunction(key).also { cache[ttlKey] = it }
+        val node = data[key]
+        if (node != null && !isExpired(node, System.currentTimeMillis())) {
+            afterRead(node)
+            return node.value
+        }
+
+        val created = Node(key, mappingFunction(key), System.currentTimeMillis())
+        while (true) {
+            val old = data.putIfAbsent(key, created)
+            if (old == null) {
+                afterWrite(created)
+                return created.value
+            }
+
+            if (!isExpired(old, created.writeTime)) {
+                afterRead(old)
+                return old.value
+            }
+
+            if (data.replace(key, old, created)) {
+                writeBuffer.offer(old)
+                afterWrite(created)
+                return created.value
+            }
+        }
+    }
+
+    fun clear() {
+        evictionLock.withLock {
+            data.clear()
+            writeBuffer.clear()
+            readBuffers.forEach { buffer ->
+                for (i in 0 until READ_BUFFER_SIZE) {
+                    buffer.slots.set(i, null)
+                }
+                buffer.writeIndex.set(0)
+            }
+
+            var node = head
+            while (node != null) {
+                val next = node.next
+                node.prev = null
+                node.next = null
+                node.linked = false
+                node = next
+            }
+            head = null
+            tail = null
+        }
+    }
+
+    private fun isExpired(node: Node<K, V>, now: Long) = ttlMillis > 0 && now - node.writeTime >= ttlMillis
+
+    /**
+     * Record the read in a lossy buffer, the buffer is drained if it's full.
+     * */
+    private fun afterRead(node: Node<K, V>) {
+        val buffer = readBuffers[Thread.currentThread().id.toInt() and (NUM_READ_BUFFERS - 1)]
+        val index = buffer.writeIndex.getAndIncrement()
+        if (index < READ_BUFFER_SIZE) {
+            buffer.slots.lazySet(index, node)
+        }
+
+        if (index >= READ_BUFFER_SIZE - 1) {
+            tryDrain()
+        }
+    }
+
+    /**
+     * Record an added, replaced or removed node, the writes are never dropped.
+     * */
+    private fun afterWrite(node: Node<K, V>) {
+        writeBuffer.offer(node)
+        tryDrain()
+    }
+
+    private fun tryDrain() {
+        // re-check after unlock, the writes added while another thread was draining must be applied
+        do {
+            if (!evictionLock.tryLock()) {
+                return
+            }
+
+            try {
+                drainBuffers()
+            } finally {
+                evictionLock.unlock()
+            }
+        } while (writeBuffer.isNotEmpty())
+    }
+
+    private fun drainBuffers() {
+        for (buffer in readBuffers) {
+            val n = buffer.writeIndex.get().coerceAtMost(READ_BUFFER_SIZE)
+            for (i in 0 until n) {
+                val node = buffer.slots.getAndSet(i, null) ?: continue
+                if (node.linked) {
+                    moveToTail(node)
+                }
+            }
+            buffer.writeIndex.set(0)
         }
+
+        while (true) {
+            val node = writeBuffer.poll() ?: break
+            if (data[node.key] === node) {
+                if (node.linked) moveToTail(node) else linkLast(node)
+            } else if (node.linked) {
+                unlink(node)
+            }
+        }
+
+        while (data.size > capacity) {
+            val eldest = head ?: break
+            unlink(eldest)
+            data.remove(eldest.key, eldest)
+        }
+    }
+
+    private fun linkLast(node: Node<K, V>) {
+        val last = tail
+        node.prev = last
+        node.next = null
+        if (last == null) head = node else last.next = node
+        tail = node
+        node.linked = true
     }
 
-    fun clear() = synchronized(cache) { cache.clear() }
+    private fun unlink(node: Node<K, V>) {
+        val prev = node.prev
+        val next = node.next
+        if (prev == null) head = next else prev.next = next
+        if (next == null) tail = prev else next.prev = prev
+        node.prev = null
+        node.next = null
+        node.linked = false
+    }
 
-    private fun getTTLKey(key: K): String {
-        if (ttl <= 0) {
-            return key.toString()
+    private fun moveToTail(node: Node<K, V>) {
+        if (tail !== node) {
+            unlink(node)
+            linkLast(node)
         }
-        val secondsDivTTL = System.currentTimeMillis() / 1000 / ttl
-        return "$secondsDivTTL\t$key"
     }
 }
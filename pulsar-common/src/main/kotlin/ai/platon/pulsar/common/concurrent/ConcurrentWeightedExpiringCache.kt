@@ -0,0 +1,413 @@
+package ai.platon.pulsar.common.concurrent
+
+import java.time.Duration
+import java.time.Instant
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicReferenceArray
+import java.util.concurrent.locks.ReentrantLock
+import kotlin.concurrent.withLock
+
+/**
+ * An expiring LRU cache bounded by the total weight of the items rather than the number of items.
+ *
+ * The items are kept in a [ConcurrentHashMap], so reads never block. Just like [ConcurrentLRUCache], the access
+ * order is kept in a linked list guarded by a lock, the reads and writes are recorded in buffers and replayed to
+ * the list in batches by the thread which acquires the lock.
+ *
+ * A new item is admitted by the TinyLFU policy: it's compared with the least recently used item, the victim, and
+ * it's admitted if it's accessed at least as frequently as the victim. The access frequencies are estimated by a
+ * [FrequencySketch], so one-hit-wonders do not flush the frequently used items. Since there is no admission window,
+ * a tie admits the new item, so a new item replaces an equally cold item like a plain LRU cache does.
+ *
+ * The max weight adapts to the memory pressure: it's halved if [memoryPressure] reports a critical status, and
+ * grows back gradually to [maxWeightLimit] after the pressure is relieved.
+ * */
+class ConcurrentWeightedExpiringCache<K, T>(
+    /**
+     * The time to live of the items
+     * */
+    val ttl: Duration = ConcurrentExpiringLRUCache.CACHE_TTL,
+    /**
+     * The upper limit of the total weight
+     * */
+    val maxWeightLimit: Long,
+    /**
+     * The max number of the items
+     * */
+    val capacity: Int = Int.MAX_VALUE,
+    /**
+     * Compute the weight of an item, usually it's the estimated memory usage in bytes
+     * */
+    private val weigher: (T) -> Long,
+    /**
+     * Check if the memory usage reaches the critical status
+     * */
+    private val memoryPressure: (() -> Boolean)? = null,
+) {
+    companion object {
+        /**
+         * The max weight never shrinks below this fraction of [maxWeightLimit]
+         * */
+        const val MIN_WEIGHT_FRACTION = 1.0 / 16
+        val ADAPT_INTERVAL: Duration = Duration.ofSeconds(1)
+
+        private const val READ_BUFFER_SIZE = 32
+        private val NUM_READ_BUFFERS = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1) shl 1
+    }
+
+    private class Node<K, T>(
+        val key: K,
+        val item: ExpiringItem<T>,
+        val weight: Long,
+        val createTime: Long,
+        /**
+         * The node replaces an item, it's not subject to admission
+         * */
+        val isReplacement: Boolean,
+    ) {
+        var prev: Node<K, T>? = null
+        var next: Node<K, T>? = null
+        var linked = false
+    }
+
+    /**
+     * A lossy buffer of the accessed keys, the misses are recorded too, so they are counted by the sketch.
+     * */
+    private class ReadBuffer {
+        val slots = AtomicReferenceArray<Any?>(READ_BUFFER_SIZE)
+        val writeIndex = AtomicInteger()
+    }
+
+    private val data = ConcurrentHashMap<K, Node<K, T>>()
+    private val ttlMillis = ttl.toMillis()
+
+    /**
+     * Guards the access order list, the sketch and the weight, they are modified only by the thread holding the lock
+     * */
+    private val evictionLock = ReentrantLock()
+    private var head: Node<K, T>? = null
+    private var tail: Node<K, T>? = null
+    private var linkedCount = 0
+    private val sketch = FrequencySketch(capacity.coerceAtMost(1 shl 16))
+
+    private val readBuffers = Array(NUM_READ_BUFFERS) { ReadBuffer() }
+    private val writeBuffer = ConcurrentLinkedQueue<Node<K, T>>()
+
+    @Volatile
+    private var lastAdaptTime = 0L
+
+    val hits = AtomicLong()
+    val misses = AtomicLong()
+    val evictions = AtomicLong()
+    val expirations = AtomicLong()
+    /**
+     * The number of items which are not admitted
+     * */
+    val rejections = AtomicLong()
+
+    /**
+     * The current max weight
+     * */
+    @Volatile
+    var maxWeight = maxWeightLimit
+        private set
+
+    /**
+     * The total weight of the admitted items
+     * */
+    @Volatile
+    var weight = 0L
+        private set
+
+    val size get() = data.size
+
+    val hitRate: Double get() {
+        val total = hits.get() + misses.get()
+        return if (total == 0L) 0.0 else 1.0 * hits.get() / total
+    }
+
+    fun put(key: K, item: ExpiringItem<T>) {
+        val itemWeight = weigher(item.datum).coerceAtLeast(1)
+        val now = System.currentTimeMillis()
+        maybeAdapt(now)
+
+        if (itemWeight > maxWeight) {
+            rejections.incrementAndGet()
+            data.remove(key)?.let { afterWrite(it) }
+            return
+        }
+
+        val replaced = data[key]
+        val node = Node(key, item, itemWeight, now, replaced != null)
+        val old = data.put(key, node)
+        if (old != null) {
+            writeBuffer.offer(old)
+        }
+        afterWrite(node)
+    }
+
+    fun putDatum(key: K, datum: T, timestamp: Long = System.currentTimeMillis()) {
+        put(key, ExpiringItem(datum, timestamp))
+    }
+
+    fun get(key: K): ExpiringItem<T>? {
+        val node = data[key]
+        afterRead(key as Any)
+        if (node == null) {
+            misses.incrementAndGet()
+            return null
+        }
+
+        if (ttlMillis > 0 && node.createTime + ttlMillis < System.currentTimeMillis()) {
+            if (data.remove(key, node)) {
+                expirations.incrementAndGet()
+                afterWrite(node)
+            }
+            misses.incrementAndGet()
+            return null
+        }
+
+        hits.incrementAndGet()
+        return node.item
+    }
+
+    fun getDatum(key: K): T? {
+        return get(key)?.datum
+    }
+
+    fun getDatum(key: K, expires: Duration, now: Instant = Instant.now()): T? {
+        return get(key)?.takeUnless { it.isExpired(expires, now) }?.datum
+    }
+
+    fun contains(key: K): Boolean {
+        return get(key) != null
+    }
+
+    fun computeIfAbsent(key: K, mappingFunction: (K) -> T): T {
+        return getDatum(key) ?: mappingFunction(key).also { putDatum(key, it) }
+    }
+
+    /**
+     * Remove the least recently used item.
+     * */
+    fun remove(): T? {
+        evictionLock.withLock {
+            drainBuffers()
+            val eldest = head ?: return null
+            unlink(eldest)
+            data.remove(eldest.key, eldest)
+            return eldest.item.datum
+        }
+    }
+
+    fun remove(key: K): T? {
+        val node = data.remove(key) ?: return null
+        afterWrite(node)
+        return node.item.datum
+    }
+
+    fun removeAll(keys: Iterable<K>) = keys.forEach { remove(it) }
+
+    fun clear() {
+        evictionLock.withLock {
+            data.clear()
+            writeBuffer.clear()
+            readBuffers.forEach { buffer ->
+                for (i in 0 until READ_BUFFER_SIZE) {
+                    buffer.slots.set(i, null)
+                }
+                buffer.writeIndex.set(0)
+            }
+
+            var node = head
+            while (node != null) {
+                val next = node.next
+                node.prev = null
+                node.next = null
+                node.linked = false
+                node = next
+            }
+            head = null
+            tail = null
+            linkedCount = 0
+            weight = 0
+        }
+    }
+
+    /**
+     * Adapt the max weight to the memory status: halve it if the memory is critical, or grow it by 1/8 otherwise.
+     * */
+    fun adapt(isCriticalMemory: Boolean) {
+        evictionLock.withLock {
+            maxWeight = if (isCriticalMemory) {
+                (maxWeight / 2).coerceAtLeast((maxWeightLimit * MIN_WEIGHT_FRACTION).toLong())
+            } else {
+                (maxWeight + maxWeight / 8).coerceAtMost(maxWeightLimit)
+            }
+            drainBuffers()
+            evict()
+        }
+    }
+
+    override fun toString(): String {
+        return String.format("size: %d weight: %d/%d hits: %d misses: %d evictions: %d rejections: %d",
+            size, weight, maxWeight, hits.get(), misses.get(), evictions.get(), rejections.get())
+    }
+
+    private fun maybeAdapt(now: Long) {
+        val probe = memoryPressure ?: return
+        if (now - lastAdaptTime < ADAPT_INTERVAL.toMillis()) {
+            return
+        }
+        lastAdaptTime = now
+
+        val isCritical = probe()
+        if (isCritical || maxWeight < maxWeightLimit) {
+            adapt(isCritical)
+        }
+    }
+
+    /**
+     * Record the read in a lossy buffer, the buffer is drained if it's full.
+     * */
+    private fun afterRead(key: Any) {
+        val buffer = readBuffers[Thread.currentThread().id.toInt() and (NUM_READ_BUFFERS - 1)]
+        val index = buffer.writeIndex.getAndIncrement()
+        if (index < READ_BUFFER_SIZE) {
+            buffer.slots.lazySet(index, key)
+        }
+
+        if (index >= READ_BUFFER_SIZE - 1) {
+            tryDrain()
+        }
+    }
+
+    /**
+     * Record an added, replaced or removed node, the writes are never dropped.
+     * */
+    private fun afterWrite(node: Node<K, T>) {
+        writeBuffer.offer(node)
+        tryDrain()
+    }
+
+    private fun tryDrain() {
+        // re-check after unlock, the writes added while another thread was draining must be applied
+        do {
+            if (!evictionLock.tryLock()) {
+                return
+            }
+
+            try {
+                drainBuffers()
+            } finally {
+                evictionLock.unlock()
+            }
+        } while (writeBuffer.isNotEmpty())
+    }
+
+    private fun drainBuffers() {
+        for (buffer in readBuffers) {
+            val n = buffer.writeIndex.get().coerceAtMost(READ_BUFFER_SIZE)
+            for (i in 0 until n) {
+                val key = buffer.slots.getAndSet(i, null) ?: continue
+                sketch.increment(key)
+                @Suppress("UNCHECKED_CAST")
+                val node = data[key as K]
+                if (node != null && node.linked) {
+                    moveToTail(node)
+                }
+            }
+            buffer.writeIndex.set(0)
+        }
+
+        while (true) {
+            val node = writeBuffer.poll() ?: break
+            if (data[node.key] === node) {
+                if (!node.linked) {
+                    add(node)
+                }
+            } else if (node.linked) {
+                unlink(node)
+            }
+        }
+
+        evict()
+    }
+
+    /**
+     * Link the new node if it's admitted, or remove it otherwise.
+     * */
+    private fun add(node: Node<K, T>) {
+        sketch.increment(node.key as Any)
+        if (!node.isReplacement && !admit(node)) {
+            data.remove(node.key, node)
+            rejections.incrementAndGet()
+            return
+        }
+
+        linkLast(node)
+        evict()
+    }
+
+    /**
+     * TinyLFU admission: if there is no room for the candidate, it's admitted only if it's not less frequent than
+     * the least recently used item.
+     * */
+    private fun admit(candidate: Node<K, T>): Boolean {
+        if (weight + candidate.weight <= maxWeight && linkedCount < capacity) {
+            return true
+        }
+
+        val victim = head ?: return true
+        return sketch.frequency(candidate.key as Any) >= sketch.frequency(victim.key as Any)
+    }
+
+    private fun evict() {
+        while (weight > maxWeight || linkedCount > capacity) {
+            val eldest = head ?: break
+            unlink(eldest)
+            data.remove(eldest.key, eldest)
+            evictions.incrementAndGet()
+        }
+    }
+
+    private fun linkLast(node: Node<K, T>) {
+        val last = tail
+        node.prev = last
+        node.next = null
+        if (last == null) head = node else last.next = node
+        tail = node
+        node.linked = true
+        ++linkedCount
+        weight += node.weight
+    }
+
+    private fun unlink(node: Node<K, T>) {
+        val prev = node.prev
+        val next = node.next
+        if (prev == null) head = next else prev.next = next
+        if (next == null) tail = prev else next.prev = prev
+        node.prev = null
+        node.next = null
+        node.linked = false
+        --linkedCount
+        weight -= node.weight
+    }
+
+    private fun moveToTail(node: Node<K, T>) {
+        if (tail !== node) {
+            val prev = node.prev
+            val next = node.next
+            if (prev == null) head = next else prev.next = next
+            if (next == null) tail = prev else next.prev = prev
+            val last = tail
+            node.prev = last
+            node.next = null
+            if (last == null) head = node else last.next = node
+            tail = node
+        }
+    }
+}
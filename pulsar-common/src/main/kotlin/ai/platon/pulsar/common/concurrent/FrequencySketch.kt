@@ -0,0 +1,86 @@
+package ai.platon.pulsar.common.concurrent
+
+/**
+ * A count-min sketch to estimate the access frequency of keys, it's the admission filter of TinyLFU.
+ *
+ * The counters saturate at 15, and all counters are halved once the number of increments reaches ten times the
+ * expected size, so the history fades out and the sketch adapts to the recent accesses.
+ *
+ * The sketch is not thread safe.
+ * */
+class FrequencySketch(expectedSize: Int) {
+    companion object {
+        private const val DEPTH = 4
+        private const val MAX_COUNT = 15
+        private val SEEDS = longArrayOf(
+            -0x3c5a5f4e4d2a2b29L, -0x4b47d5b1c6b7cb5dL, 0x3c6ef372fe94f82bL, -0x5ab00ac5a8bcb5c3L
+        )
+    }
+
+    private val size = Integer.highestOneBit((expectedSize.coerceIn(16, 1 shl 22) - 1) shl 1)
+    /**
+     * The number of counters in a row, it's a power of two
+     * */
+    val width = 4 * size
+    private val counters = ByteArray(DEPTH * width)
+    private val sampleSize = 10 * size
+    private var additions = 0
+
+    /**
+     * Increase the frequency of the key.
+     * */
+    fun increment(key: Any) {
+        val hash = spread(key.hashCode())
+        var added = false
+        for (i in 0 until DEPTH) {
+            val index = indexOf(hash, i)
+            if (counters[index] < MAX_COUNT) {
+                ++counters[index]
+                added = true
+            }
+        }
+
+        if (added && ++additions >= sampleSize) {
+            reset()
+        }
+    }
+
+    /**
+     * The estimated frequency of the key, in the range of [0, 15].
+     * */
+    fun frequency(key: Any): Int {
+        val hash = spread(key.hashCode())
+        var frequency = MAX_COUNT
+        for (i in 0 until DEPTH) {
+            frequency = minOf(frequency, counters[indexOf(hash, i)].toInt())
+        }
+        return frequency
+    }
+
+    fun clear() {
+        counters.fill(0)
+        additions = 0
+    }
+
+    /**
+     * Halve all the counters.
+     * */
+    private fun reset() {
+        for (i in counters.indices) {
+            counters[i] = (counters[i].toInt() ushr 1).toByte()
+        }
+        additions /= 2
+    }
+
+    private fun indexOf(hash: Int, row: Int): Int {
+        val h = (hash + SEEDS[row]) * SEEDS[row]
+        val column = (h + (h ushr 32)).toInt() and (width - 1)
+        return row * width + column
+    }
+
+    private fun spread(x: Int): Int {
+        var h = ((x ushr 16) xor x) * 0x45d9f3b
+        h = ((h ushr 16) xor h) * 0x45d9f3b
+        return (h ushr 16) xor h
+    }
+}
@@ -10,6 +10,7 @@ import java.nio.file.Path
 import java.time.Duration
 import java.time.Instant
 import java.util.*
+import java.util.concurrent.atomic.AtomicLong
 
 /**
  * Created by vincent on 17-1-17.
@@ -31,10 +32,24 @@ abstract class AbstractConfiguration {
      */
     protected val conf: KConfiguration
 
+    /**
+     * The number of modifications besides the modifications of [conf].
+     */
+    private val modifications = AtomicLong()
+
     /**
      * Spring core is the first class dependency now.
      */
     var environment: Environment? = null
+        set(value) {
+            field = value
+            markModified()
+        }
+
+    /**
+     * The version of the configuration, it's increased whenever the configuration is modified.
+     */
+    open val version: Long get() = modifications.get() + conf.version
     
     constructor(
         profile: String = System.getProperty(CapabilityTypes.PROFILE_KEY, ""),
@@ -73,9 +88,15 @@ abstract class AbstractConfiguration {
      * @return the value of the `name`, or null if no such property exists.
      */
     open operator fun get(name: String): String? {
-        return System.getenv(name) ?: System.getProperty(name) ?: environment?.get(name) ?: conf[name]
+        return System.getenv(name) ?: System.getProperty(name) ?: getLocal(name)
     }
 
+    /**
+     * Get the value of the `name` property from the spring environment and the configuration files,
+     * the OS environment and the system properties are not checked.
+     */
+    internal fun getLocal(name: String): String? = environment?.get(name) ?: conf[name]
+
     /**
      * Get the value of the `name`. If the key is deprecated,
      * it returns the value of the first key which replaces the deprecated key and is not null.
@@ -397,6 +418,13 @@ abstract class AbstractConfiguration {
         return p(name).getClass(defaultValue, xface)
     }
 
+    /**
+     * Increase [version] for modifications not made to [conf].
+     */
+    protected fun markModified() {
+        modifications.incrementAndGet()
+    }
+
     private fun p(name: String) = SParser(get(name))
 
     override fun toString() = "profile: <$profile> | $conf"
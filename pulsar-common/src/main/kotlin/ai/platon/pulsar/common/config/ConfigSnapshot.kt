@@ -0,0 +1,189 @@
+package ai.platon.pulsar.common.config
+
+import ai.platon.pulsar.common.SParser
+import java.time.Duration
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicReferenceArray
+
+/**
+ * A snapshot of a configuration and all its fallback configurations, it's created by [ImmutableConfig.snapshot].
+ *
+ * A property is looked up through the configuration chain only the first time it's read, the result is kept in an
+ * open-addressed hash table, so later reads are a single probe, no matter how long the chain is. The parsed values
+ * of the typed accessors are kept too, so a frequently read `int`, `boolean` or `duration` property is parsed once.
+ *
+ * The snapshot is outdated once any configuration in the chain is modified, [ImmutableConfig.snapshot] creates a new
+ * one in such case, so do not keep a snapshot, call [ImmutableConfig.snapshot] every time.
+ *
+ * The results are the same as the results of [ImmutableConfig.get], with the following exceptions:
+ * * the OS environment and the spring environment are treated as constants
+ * * the properties with a time to live are always looked up through the configuration chain
+ * */
+class ConfigSnapshot internal constructor(
+    /**
+     * The configuration this snapshot is created from.
+     * */
+    val source: ImmutableConfig,
+    /**
+     * The max number of properties kept in the hash table, the properties beyond are looked up every time.
+     * */
+    capacity: Int = DEFAULT_CAPACITY
+) {
+    private class Entry(
+        val name: String,
+        /**
+         * The value from the OS environment or from the configuration chain.
+         * */
+        val value: String?,
+        /**
+         * Whether the value is from the OS environment, which can not be overridden by the system properties.
+         * */
+        val fromEnv: Boolean
+    ) {
+        /**
+         * The value parsed by the last typed accessor.
+         * */
+        @Volatile
+        var parsed: Any? = null
+    }
+
+    private val layers = source.layers.toTypedArray()
+    private val versions = LongArray(layers.size) { layers[it].version }
+    private val ttlNames = layers.flatMapTo(HashSet()) { (it as? VolatileConfig)?.ttlNames ?: setOf() }
+
+    private val maxSize = capacity
+    private val slots = AtomicReferenceArray<Entry?>(Integer.highestOneBit(capacity.coerceAtLeast(2) * 2 - 1) * 2)
+    private val size = AtomicInteger()
+
+    /**
+     * Check if no configuration in the chain is modified since the snapshot is created.
+     * */
+    val isValid: Boolean
+        get() {
+            for (i in layers.indices) {
+                if (layers[i].version != versions[i]) {
+                    return false
+                }
+            }
+            return true
+        }
+
+    /**
+     * Get the value of the `name` property, `null` if no such property exists.
+     * */
+    operator fun get(name: String): String? {
+        if (name in ttlNames) {
+            return source[name]
+        }
+
+        val entry = entry(name)
+        return if (entry.fromEnv) entry.value else System.getProperty(name) ?: entry.value
+    }
+
+    /**
+     * Get the value of the `name` property, or [defaultValue] if no such property exists.
+     * */
+    operator fun get(name: String, defaultValue: String) = get(name) ?: defaultValue
+
+    /**
+     * Get the value of the `name` property as an `int`, see [ImmutableConfig.getInt].
+     * */
+    fun getInt(name: String, defaultValue: Int): Int {
+        return getTyped(name, defaultValue) { SParser(it).getInt(defaultValue) }
+    }
+
+    /**
+     * Get the value of the `name` property as a `long`, see [ImmutableConfig.getLong].
+     * */
+    fun getLong(name: String, defaultValue: Long): Long {
+        return getTyped(name, defaultValue) { SParser(it).getLong(defaultValue) }
+    }
+
+    /**
+     * Get the value of the `name` property as a `boolean`, see [ImmutableConfig.getBoolean].
+     * */
+    fun getBoolean(name: String, defaultValue: Boolean): Boolean {
+        // only the valid values are parsed, the invalid values are treated as absent
+        return getTyped(name, defaultValue) { it.trim().lowercase().toBooleanStrictOrNull() }
+    }
+
+    /**
+     * Get the value of the `name` property as a [Duration], see [ImmutableConfig.getDuration].
+     * */
+    fun getDuration(name: String, defaultValue: Duration): Duration {
+        return getTyped(name, defaultValue) { SParser(it).getDuration(null) }
+    }
+
+    /**
+     * Get the parsed value of the `name` property, [parse] returns null if the value is treated as absent,
+     * and the parsed value is kept only if the value is from the configuration chain.
+     * */
+    private inline fun <reified T : Any> getTyped(name: String, defaultValue: T, parse: (String) -> T?): T {
+        if (name in ttlNames) {
+            return source[name]?.let(parse) ?: defaultValue
+        }
+
+        val entry = entry(name)
+        if (!entry.fromEnv) {
+            val value = System.getProperty(name)
+            if (value != null) {
+                return parse(value) ?: defaultValue
+            }
+        }
+
+        val parsed = entry.parsed
+        if (parsed is T) {
+            return parsed
+        }
+
+        val value = entry.value ?: return defaultValue
+        return parse(value)?.also { entry.parsed = it } ?: defaultValue
+    }
+
+    /**
+     * Find the entry of the property in the hash table, or look up the property and put it into the hash table.
+     * */
+    private fun entry(name: String): Entry {
+        val mask = slots.length() - 1
+        var h = name.hashCode()
+        h = h xor (h ushr 16)
+        var i = h and mask
+        while (true) {
+            val entry = slots.get(i)
+            if (entry == null) {
+                val created = lookup(name)
+                if (size.get() >= maxSize) {
+                    return created
+                }
+                if (slots.compareAndSet(i, null, created)) {
+                    size.incrementAndGet()
+                    return created
+                }
+                // another thread took the slot, check it again
+                continue
+            }
+
+            if (entry.name == name) {
+                return entry
+            }
+            i = (i + 1) and mask
+        }
+    }
+
+    /**
+     * Look up the property through the configuration chain just like [ImmutableConfig.get], except the system
+     * properties, which are checked on every read.
+     * */
+    private fun lookup(name: String): Entry {
+        val env = System.getenv(name)
+        if (env != null) {
+            return Entry(name, env, true)
+        }
+
+        return Entry(name, layers.firstNotNullOfOrNull { it.getLocal(name) }, false)
+    }
+
+    companion object {
+        const val DEFAULT_CAPACITY = 256
+    }
+}
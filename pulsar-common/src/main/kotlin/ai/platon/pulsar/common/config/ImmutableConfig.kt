@@ -28,6 +28,38 @@ open class ImmutableConfig : AbstractConfiguration {
         this.environment = conf.environment
     }
 
+    @Volatile
+    private var snapshot: ConfigSnapshot? = null
+
+    /**
+     * The configurations to look up a property in order, the first one holding the property wins.
+     */
+    internal open val layers: List<ImmutableConfig> get() = listOf(this)
+
+    /**
+     * Get the snapshot of the configuration, which is reused until the configuration or any of its fallback
+     * configurations is modified.
+     *
+     * Read properties frequently with the snapshot in hot code, for example:
+     *
+     * ```kotlin
+     * val timeout = conf.snapshot().getDuration(FETCH_TASK_TIMEOUT, FETCH_TASK_TIMEOUT_DEFAULT)
+     * ```
+     *
+     * A snapshot pays off only if the configuration lives long, do not use it with short-lived configurations,
+     * for example, the per-task configuration of a page, which would build a snapshot for just a few reads.
+     *
+     * @return the snapshot of the configuration.
+     */
+    fun snapshot(): ConfigSnapshot {
+        val s = snapshot
+        if (s != null && s.isValid) {
+            return s
+        }
+
+        return ConfigSnapshot(this).also { snapshot = it }
+    }
+
     /**
      *
      * toMutableConfig.
@@ -19,6 +19,7 @@ import java.nio.file.Files
 import java.nio.file.Path
 import java.util.*
 import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
 import javax.xml.stream.XMLStreamConstants
 import javax.xml.stream.XMLStreamException
 import javax.xml.stream.XMLStreamReader
@@ -62,6 +63,13 @@ class KConfiguration(
         }
     
     val id = ID_SUPPLIER.incrementAndGet()
+    
+    private val modifications = AtomicLong()
+    
+    /**
+     * The version of the configuration, it's increased whenever a property is set or unset.
+     */
+    val version get() = modifications.get()
     val loadedResources: List<String> get() = impl?.resources?.map { it.name } ?: listOf()
     
     constructor(conf: KConfiguration) : this(conf.profile, conf.mode, conf.extraResources, conf.loadDefaults)
@@ -80,11 +88,13 @@ class KConfiguration(
             unset(name)
         } else {
             assuredImplementation[name] = value
+            modifications.incrementAndGet()
         }
     }
     
     fun unset(name: String) {
         assuredImplementation.remove(name)
+        modifications.incrementAndGet()
     }
     
     operator fun get(name: String): String? {
@@ -117,6 +127,7 @@ class KConfiguration(
      */
     fun clear() {
         impl = null
+        modifications.incrementAndGet()
     }
     
     override fun iterator(): MutableIterator<Map.Entry<String, String>> {
@@ -136,6 +147,7 @@ class KConfiguration(
     @Synchronized
     fun reloadConfiguration() {
         impl = null // trigger reload
+        modifications.incrementAndGet()
     }
     
     override fun toString() = assuredImplementation.toString()
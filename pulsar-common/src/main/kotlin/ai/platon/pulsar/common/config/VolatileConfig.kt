@@ -11,6 +11,10 @@ import kotlin.reflect.KClass
  */
 open class VolatileConfig : MutableConfig {
     var fallbackConfig: ImmutableConfig? = null
+        set(value) {
+            field = value
+            markModified()
+        }
 
     private val ttls: MutableMap<String, Int> = ConcurrentHashMap()
     val variables: MutableMap<String, Any> = ConcurrentHashMap()
@@ -36,10 +40,19 @@ open class VolatileConfig : MutableConfig {
         }
     }
 
+    /**
+     * The names of the properties with a time to live.
+     */
+    internal val ttlNames: Set<String> get() = ttls.keys
+
+    override val layers: List<ImmutableConfig>
+        get() = fallbackConfig?.let { listOf(this) + it.layers } ?: listOf(this)
+
     fun reset() {
         ttls.clear()
         variables.clear()
         super.clear()
+        markModified()
     }
 
     override fun get(name: String, defaultValue: String): String {
@@ -99,6 +112,7 @@ open class VolatileConfig : MutableConfig {
             ttls.remove(name)
             super.unset(name)
         }
+        markModified()
     }
 
     fun <T : Any> putBean(bean: T): Any? {
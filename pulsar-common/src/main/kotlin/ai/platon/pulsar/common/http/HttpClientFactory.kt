@@ -0,0 +1,96 @@
+package ai.platon.pulsar.common.http
+
+import ai.platon.pulsar.common.proxy.ProxyAuthenticator
+import ai.platon.pulsar.common.proxy.ProxyEntry
+import com.google.common.util.concurrent.ThreadFactoryBuilder
+import java.io.InputStream
+import java.net.InetSocketAddress
+import java.net.ProxySelector
+import java.net.http.HttpClient
+import java.time.Duration
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.zip.GZIPInputStream
+import java.util.zip.InflaterInputStream
+
+/**
+ * Creates the non-blocking HTTP clients used to fetch resources without a browser, and decodes the bodies they
+ * receive, so all the pure HTTP fetchers behave the same: HTTP/2 if possible, redirects followed like a browser,
+ * and the proxy credentials sent to the proxy only.
+ * */
+object HttpClientFactory {
+    /**
+     * The content encodings we ask for and can decode
+     * */
+    const val ACCEPT_ENCODING = "gzip, deflate"
+
+    /**
+     * The executor shared by all the clients to complete the responses, it's small and bounded, so the clients
+     * do not create a cached thread pool each, and the selector threads are never stalled by the dependent actions.
+     * */
+    val executor: ExecutorService by lazy {
+        val factory = ThreadFactoryBuilder().setNameFormat("http-client-%d").setDaemon(true).build()
+        val n = Runtime.getRuntime().availableProcessors().coerceIn(2, 8)
+        Executors.newFixedThreadPool(n, factory)
+    }
+
+    /**
+     * Create a client builder, the callers can customize it further, e.g., set a cookie handler.
+     *
+     * @param connectTimeout The connect timeout
+     * @param proxyHostPort The proxy address in host:port format, the address of [proxy] is used if it's null
+     * @param proxy The proxy whose credentials are used to answer the proxy challenges
+     * */
+    fun newBuilder(
+        connectTimeout: Duration,
+        proxyHostPort: String? = null,
+        proxy: ProxyEntry? = null,
+    ): HttpClient.Builder {
+        val builder = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .connectTimeout(connectTimeout)
+            .executor(executor)
+
+        val hostPort = proxyHostPort ?: proxy?.hostPort
+        if (hostPort != null) {
+            val host = hostPort.substringBeforeLast(":")
+            val port = hostPort.substringAfterLast(":").toIntOrNull() ?: 80
+            builder.proxy(ProxySelector.of(InetSocketAddress.createUnresolved(host, port)))
+        }
+
+        // answer only the proxy challenges, the credentials must never be sent to the origin servers
+        ProxyAuthenticator.of(proxy)?.let { builder.authenticator(it) }
+
+        return builder
+    }
+
+    /**
+     * Create a client with the default settings, see [newBuilder].
+     * */
+    fun newClient(connectTimeout: Duration, proxy: ProxyEntry? = null): HttpClient {
+        return newBuilder(connectTimeout, proxy = proxy).build()
+    }
+
+    /**
+     * Check if the body in the content encoding has to be decompressed.
+     * */
+    fun isCompressed(contentEncoding: String): Boolean {
+        return when (contentEncoding.lowercase()) {
+            "gzip", "x-gzip", "deflate" -> true
+            else -> false
+        }
+    }
+
+    /**
+     * Wrap the body in a decompressing stream according to the content encoding,
+     * the body is returned as is if it's not compressed.
+     * */
+    fun decompress(body: InputStream, contentEncoding: String): InputStream {
+        return when (contentEncoding.lowercase()) {
+            "gzip", "x-gzip" -> GZIPInputStream(body)
+            "deflate" -> InflaterInputStream(body)
+            else -> body
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package ai.platon.pulsar.common.metrics
+
+import com.codahale.metrics.*
+import org.HdrHistogram.Recorder
+import java.io.OutputStream
+import java.io.PrintStream
+import java.time.Duration
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.LongAdder
+import org.HdrHistogram.Histogram as HdrHistogram
+
+/**
+ * A [Reservoir] backed by HdrHistogram.
+ *
+ * Values are recorded without locks or allocations, and every value is counted rather than sampled, so the tail
+ * percentiles such as p99 and p999 are accurate to the configured number of significant digits.
+ *
+ * A snapshot covers the values recorded in the last one to two [window]s.
+ * */
+class HdrHistogramReservoir(
+    val window: Duration = DEFAULT_WINDOW,
+    private val numberOfSignificantValueDigits: Int = 3
+) : Reservoir {
+    companion object {
+        val DEFAULT_WINDOW: Duration = Duration.ofMinutes(1)
+    }
+
+    private val recorder = Recorder(numberOfSignificantValueDigits)
+    private val windowMillis = window.toMillis()
+    private val total = LongAdder()
+
+    private var intervalHistogram: HdrHistogram? = null
+    private var current = HdrHistogram(numberOfSignificantValueDigits)
+    private var previous = HdrHistogram(numberOfSignificantValueDigits)
+    private var rotateTime = System.currentTimeMillis()
+
+    /**
+     * The sum of all the values ever recorded
+     * */
+    val sum: Long get() = total.sum()
+
+    override fun size() = snapshot.size()
+
+    override fun update(value: Long) {
+        val v = value.coerceAtLeast(0)
+        recorder.recordValue(v)
+        total.add(v)
+    }
+
+    @Synchronized
+    override fun getSnapshot(): Snapshot {
+        val interval = recorder.getIntervalHistogram(intervalHistogram)
+        current.add(interval)
+        intervalHistogram = interval
+
+        val now = System.currentTimeMillis()
+        if (now - rotateTime >= windowMillis) {
+            val recycled = previous
+            recycled.reset()
+            previous = current
+            current = recycled
+            rotateTime = now
+        }
+
+        val histogram = previous.copy()
+        histogram.add(current)
+        return HdrSnapshot(histogram)
+    }
+}
+
+/**
+ * A [Snapshot] of a HdrHistogram.
+ * */
+class HdrSnapshot(private val histogram: HdrHistogram) : Snapshot() {
+
+    override fun getValue(quantile: Double): Double {
+        require(quantile in 0.0..1.0) { "$quantile is not in [0..1]" }
+        return histogram.getValueAtPercentile(quantile * 100).toDouble()
+    }
+
+    /**
+     * The distinct recorded values, at the resolution of the histogram.
+     * */
+    override fun getValues(): LongArray {
+        return histogram.recordedValues().map { it.valueIteratedTo }.toLongArray()
+    }
+
+    override fun size() = histogram.totalCount.coerceAtMost(Int.MAX_VALUE.toLong()).toInt()
+
+    override fun getMax() = histogram.maxValue
+
+    override fun getMean() = histogram.mean
+
+    override fun getMin() = if (histogram.totalCount == 0L) 0 else histogram.minValue
+
+    override fun getStdDev() = histogram.stdDeviation
+
+    override fun dump(output: OutputStream) {
+        PrintStream(output, false, Charsets.UTF_8).use { histogram.outputPercentileDistribution(it, 1.0) }
+    }
+}
+
+/**
+ * A [Timer] backed by a [HdrHistogramReservoir], which also keeps the total time.
+ * */
+class HdrTimer(private val reservoir: HdrHistogramReservoir = HdrHistogramReservoir()) : Timer(reservoir) {
+    /**
+     * The total time of all the timed events, in nanoseconds
+     * */
+    val sum: Long get() = reservoir.sum
+}
+
+/**
+ * Get or create a [HdrTimer].
+ * */
+fun MetricRegistry.hdrTimer(name: String): Timer = timer(name) { HdrTimer() }
+
+/**
+ * Get or create a [Histogram] backed by a [HdrHistogramReservoir].
+ * */
+fun MetricRegistry.hdrHistogram(name: String): Histogram = histogram(name) { Histogram(HdrHistogramReservoir()) }
+
+/**
+ * Time the block, the block is timed even if it throws.
+ * */
+inline fun <T> Timer.record(block: () -> T): T {
+    val startTime = System.nanoTime()
+    try {
+        return block()
+    } finally {
+        update(System.nanoTime() - startTime, TimeUnit.NANOSECONDS)
+    }
+}
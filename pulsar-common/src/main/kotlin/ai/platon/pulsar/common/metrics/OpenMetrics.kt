@@ -0,0 +1,179 @@
+package ai.platon.pulsar.common.metrics
+
+import com.codahale.metrics.*
+import com.sun.net.httpserver.HttpServer
+import org.slf4j.LoggerFactory
+import java.net.InetSocketAddress
+import java.util.concurrent.TimeUnit
+
+/**
+ * Formats the metrics in the OpenMetrics text format, so they can be scraped by Prometheus and compatible collectors.
+ *
+ * Gauges with numeric or boolean values and counters are written as gauges, since a codahale counter can go down,
+ * meters are written as counters, histograms and timers are written as summaries, and timers are in seconds.
+ * */
+object OpenMetricsFormat {
+    const val CONTENT_TYPE = "application/openmetrics-text; version=1.0.0; charset=utf-8"
+
+    val QUANTILES = doubleArrayOf(0.5, 0.75, 0.95, 0.99, 0.999)
+
+    private val NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1).toDouble()
+
+    fun format(registries: Iterable<MetricRegistry>, filter: MetricFilter = MetricFilter.ALL): String {
+        val sb = StringBuilder()
+        write(registries, sb, filter)
+        return sb.toString()
+    }
+
+    /**
+     * Write the metrics of all the registries, if two metrics have the same sanitized name, the first one wins.
+     * */
+    fun write(registries: Iterable<MetricRegistry>, out: Appendable, filter: MetricFilter = MetricFilter.ALL) {
+        val names = mutableSetOf<String>()
+        registries.forEach { registry ->
+            registry.metrics.forEach { (name, metric) ->
+                if (filter.matches(name, metric)) {
+                    val family = sanitize(name)
+                    if (family !in names && write(family, metric, out)) {
+                        names.add(family)
+                    }
+                }
+            }
+        }
+        out.append("# EOF\n")
+    }
+
+    /**
+     * Convert a metric name to a valid OpenMetrics metric family name.
+     * */
+    fun sanitize(name: String): String {
+        val s = name.replace("[^a-zA-Z0-9_:]+".toRegex(), "_").trim('_')
+        return if (s.isEmpty() || s[0].isDigit()) "_$s" else s
+    }
+
+    private fun write(family: String, metric: Metric, out: Appendable): Boolean {
+        when (metric) {
+            is Gauge<*> -> {
+                val value = when (val v = metric.value) {
+                    is Number -> v.toDouble()
+                    is Boolean -> if (v) 1.0 else 0.0
+                    else -> return false
+                }
+                writeType(family, "gauge", out)
+                writeSample(family, "", value, out)
+            }
+            is Counter -> {
+                writeType(family, "gauge", out)
+                writeSample(family, "", metric.count.toDouble(), out)
+            }
+            is Meter -> {
+                writeType(family, "counter", out)
+                writeSample(family, "_total", metric.count.toDouble(), out)
+            }
+            is Timer -> {
+                val name = family + "_seconds"
+                writeType(name, "summary", out)
+                writeQuantiles(name, metric.snapshot, NANOS_PER_SECOND, out)
+                writeSample(name, "_count", metric.count.toDouble(), out)
+                if (metric is HdrTimer) {
+                    writeSample(name, "_sum", metric.sum / NANOS_PER_SECOND, out)
+                }
+            }
+            is Histogram -> {
+                writeType(family, "summary", out)
+                writeQuantiles(family, metric.snapshot, 1.0, out)
+                writeSample(family, "_count", metric.count.toDouble(), out)
+            }
+            else -> return false
+        }
+
+        return true
+    }
+
+    private fun writeType(family: String, type: String, out: Appendable) {
+        out.append("# TYPE ").append(family).append(' ').append(type).append('\n')
+    }
+
+    private fun writeQuantiles(family: String, snapshot: Snapshot, divisor: Double, out: Appendable) {
+        QUANTILES.forEach { q ->
+            out.append(family).append("{quantile=\"").append(q.toString()).append("\"} ")
+                .append(formatValue(snapshot.getValue(q) / divisor)).append('\n')
+        }
+    }
+
+    private fun writeSample(family: String, suffix: String, value: Double, out: Appendable) {
+        out.append(family).append(suffix).append(' ').append(formatValue(value)).append('\n')
+    }
+
+    private fun formatValue(value: Double): String {
+        return when {
+            value.isNaN() -> "NaN"
+            value == Double.POSITIVE_INFINITY -> "+Inf"
+            value == Double.NEGATIVE_INFINITY -> "-Inf"
+            value == Math.rint(value) && Math.abs(value) < 1e15 -> value.toLong().toString()
+            else -> value.toString()
+        }
+    }
+}
+
+/**
+ * A standalone HTTP endpoint serving the metrics in the OpenMetrics format, it's used when no REST server
+ * is present to expose the metrics.
+ *
+ * The endpoint listens on the loopback interface by default, bind it to another address, e.g. `0.0.0.0`,
+ * only if the metrics have to be scraped from other hosts.
+ * */
+class OpenMetricsServer(
+    /**
+     * The port to listen on, 0 means an ephemeral port
+     * */
+    val port: Int,
+    /**
+     * The address to listen on
+     * */
+    val host: String = DEFAULT_HOST,
+    val path: String = "/metrics",
+    private val filter: MetricFilter = MetricFilter.ALL,
+    private val registries: () -> Iterable<MetricRegistry>,
+) : AutoCloseable {
+    companion object {
+        const val DEFAULT_HOST = "127.0.0.1"
+    }
+
+    private val logger = LoggerFactory.getLogger(OpenMetricsServer::class.java)
+    private var server: HttpServer? = null
+
+    /**
+     * The bound address, or null if the server is not started
+     * */
+    val address: InetSocketAddress? get() = server?.address
+
+    @Synchronized
+    fun start() {
+        if (server != null) {
+            return
+        }
+
+        val s = HttpServer.create(InetSocketAddress(host, port), 0)
+        s.createContext(path) { exchange ->
+            try {
+                val body = OpenMetricsFormat.format(registries(), filter).toByteArray()
+                exchange.responseHeaders.add("Content-Type", OpenMetricsFormat.CONTENT_TYPE)
+                exchange.sendResponseHeaders(200, body.size.toLong())
+                exchange.responseBody.write(body)
+            } finally {
+                exchange.close()
+            }
+        }
+        s.start()
+        server = s
+
+        logger.info("OpenMetrics endpoint is started | http://{}:{}{}", host, s.address.port, path)
+    }
+
+    @Synchronized
+    override fun close() {
+        server?.stop(0)
+        server = null
+    }
+}
@@ -0,0 +1,57 @@
+package ai.platon.pulsar.common.proxy
+
+import ai.platon.pulsar.common.getLogger
+import java.net.Authenticator
+import java.net.PasswordAuthentication
+import java.util.concurrent.atomic.AtomicBoolean
+
+/**
+ * Answers the proxy challenges with the credentials of the proxy, the challenges of the origin servers are never
+ * answered, so the proxy credentials are not leaked to the sites we visit.
+ *
+ * Notice: the JDK disables Basic authentication for the CONNECT tunnels of HTTPS requests by default,
+ * see `jdk.http.auth.tunneling.disabledSchemes` in `net.properties`. To fetch HTTPS pages through a proxy
+ * which requires Basic authentication, launch the JVM with `-Djdk.http.auth.tunneling.disabledSchemes=`.
+ * The property is read once when the JDK HTTP stack is loaded, so setting it at runtime might not take effect.
+ * */
+class ProxyAuthenticator(
+    private val username: String,
+    private val password: String,
+) : Authenticator() {
+    companion object {
+        const val TUNNELING_DISABLED_SCHEMES = "jdk.http.auth.tunneling.disabledSchemes"
+
+        private val logger = getLogger(ProxyAuthenticator::class)
+        private val warned = AtomicBoolean()
+
+        /**
+         * Whether Basic authentication is disabled for the CONNECT tunnels, it's disabled by default.
+         * */
+        val isBasicTunnelingDisabled: Boolean
+            get() {
+                val schemes = System.getProperty(TUNNELING_DISABLED_SCHEMES) ?: "Basic"
+                return schemes.split(",").any { it.trim().equals("Basic", ignoreCase = true) }
+            }
+
+        /**
+         * Create an authenticator for the proxy, or return null if the proxy requires no authentication.
+         * */
+        fun of(proxy: ProxyEntry?): ProxyAuthenticator? {
+            val username = proxy?.username ?: return null
+            val password = proxy.password ?: return null
+
+            if (isBasicTunnelingDisabled && warned.compareAndSet(false, true)) {
+                logger.warn("Basic proxy authentication is disabled for HTTPS tunnels, " +
+                        "set -D$TUNNELING_DISABLED_SCHEMES= to enable it")
+            }
+
+            return ProxyAuthenticator(username, password)
+        }
+    }
+
+    override fun getPasswordAuthentication(): PasswordAuthentication? {
+        return if (requestorType == RequestorType.PROXY) {
+            PasswordAuthentication(username, password.toCharArray())
+        } else null
+    }
+}
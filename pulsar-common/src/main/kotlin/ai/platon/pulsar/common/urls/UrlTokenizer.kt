@@ -0,0 +1,328 @@
+package ai.platon.pulsar.common.urls
+
+/**
+ * A single pass, regex free URL tokenizer, it works on the offsets of a [CharSequence], and writes the normalized
+ * and the reversed forms of the url into reusable builders.
+ *
+ * The tokenizer accepts only the most common urls: the scheme is http or https, the host is an ASCII domain name,
+ * the port is optional, and the path, the query and the fragment consist of the characters legal in RFC&nbsp;2396.
+ * [tokenize] returns false for any other url, and the caller falls back to the full featured parsers, i.e.,
+ * [java.net.URI] and [java.net.URL], so the results are always the same as the results of the full featured parsers.
+ *
+ * A tokenizer is not thread safe, use [local] to get the tokenizer of the current thread.
+ * */
+class UrlTokenizer {
+    /**
+     * The url tokenized last time.
+     * */
+    var source: CharSequence = ""
+        private set
+    /**
+     * The start index of the url in [source], inclusive.
+     * */
+    var start = 0
+        private set
+    /**
+     * The end index of the url in [source], exclusive.
+     * */
+    var end = 0
+        private set
+    /**
+     * The index of the colon after the scheme.
+     * */
+    var schemeEnd = -1
+        private set
+    var hostStart = -1
+        private set
+    var hostEnd = -1
+        private set
+    /**
+     * The port, or -1 if the port is not specified.
+     * */
+    var port = -1
+        private set
+    /**
+     * The start index of the path, which is also the end index of the authority. The path can be empty.
+     * */
+    var pathStart = -1
+        private set
+    /**
+     * The index of the question mark, or -1 if there is no query.
+     * */
+    var queryStart = -1
+        private set
+    /**
+     * The index of the sharp sign, or -1 if there is no fragment.
+     * */
+    var fragmentStart = -1
+        private set
+
+    private val buffer = StringBuilder(256)
+
+    /**
+     * The end index of the path.
+     * */
+    val pathEnd get() = if (queryStart >= 0) queryStart else fileEnd
+
+    /**
+     * The end index of the file, which is the path and the query, just like [java.net.URL.getFile].
+     * */
+    val fileEnd get() = if (fragmentStart >= 0) fragmentStart else end
+
+    val isHttps get() = schemeEnd - start == 5
+
+    /**
+     * Tokenize the url in range [start, end) of [url].
+     *
+     * @return true if the url is accepted by the tokenizer, false if the url has to be handled by the full
+     *         featured parsers
+     * */
+    fun tokenize(url: CharSequence, start: Int = 0, end: Int = url.length): Boolean {
+        source = url
+        this.start = start
+        this.end = end
+        schemeEnd = -1
+        hostStart = -1
+        hostEnd = -1
+        port = -1
+        pathStart = -1
+        queryStart = -1
+        fragmentStart = -1
+
+        var i = scanScheme(url, start, end)
+        if (i < 0) {
+            return false
+        }
+        schemeEnd = i
+
+        // "://"
+        if (i + 2 >= end || url[i + 1] != '/' || url[i + 2] != '/') {
+            return false
+        }
+
+        hostStart = i + 3
+        i = scanHost(url, hostStart, end)
+        if (i < 0) {
+            return false
+        }
+        hostEnd = i
+
+        if (i < end && url[i] == ':') {
+            i = scanPort(url, i + 1, end)
+            if (i < 0) {
+                return false
+            }
+        }
+
+        pathStart = i
+        return scanRest(url, i, end)
+    }
+
+    /**
+     * Append the normalized url to [buf]: the scheme is in lower case, the fragment is removed, and the query is
+     * removed if [ignoreQuery] is true.
+     *
+     * The result is the same as [UrlUtils.normalize].
+     * */
+    fun appendNormalized(buf: StringBuilder, ignoreQuery: Boolean = false): StringBuilder {
+        appendScheme(buf)
+        return buf.append("://").append(source, hostStart, if (ignoreQuery) pathEnd else fileEnd)
+    }
+
+    /**
+     * Append the reversed url to [buf], e.g., "http://bar.foo.com:8983/to/index.html?a=b" becomes
+     * "com.foo.bar:http:8983/to/index.html?a=b".
+     *
+     * The result is the same as [UrlUtils.reverseUrl].
+     * */
+    fun appendReversed(buf: StringBuilder): StringBuilder {
+        appendReversedHost(source, hostStart, hostEnd, buf)
+        buf.append(':')
+        appendScheme(buf)
+        if (port != -1) {
+            buf.append(':').append(port)
+        }
+        val fileEnd = fileEnd
+        if (pathStart < fileEnd && source[pathStart] != '/') {
+            buf.append('/')
+        }
+        return buf.append(source, pathStart, fileEnd)
+    }
+
+    /**
+     * The normalized url, the tokenizer must accept the url before.
+     * */
+    fun normalize(ignoreQuery: Boolean = false): String {
+        buffer.setLength(0)
+        return appendNormalized(buffer, ignoreQuery).toString()
+    }
+
+    /**
+     * The reversed url, the tokenizer must accept the url before.
+     * */
+    fun reverse(): String {
+        buffer.setLength(0)
+        return appendReversed(buffer).toString()
+    }
+
+    private fun appendScheme(buf: StringBuilder) {
+        buf.append(if (isHttps) "https" else "http")
+    }
+
+    /**
+     * Scan "http" or "https" in any case, and return the index of the colon, or -1 if it's not the scheme.
+     * */
+    private fun scanScheme(url: CharSequence, start: Int, end: Int): Int {
+        var i = start
+        while (i < end && i - start < 5) {
+            val c = url[i]
+            if (c == ':') {
+                break
+            }
+            if (c.lowercaseChar() != "https"[i - start]) {
+                return -1
+            }
+            ++i
+        }
+
+        val length = i - start
+        return if (i < end && url[i] == ':' && (length == 4 || length == 5)) i else -1
+    }
+
+    /**
+     * Scan a domain name, and return the end index, or -1 if it's not a domain name the tokenizer can handle.
+     *
+     * Every label consists of letters, digits and hyphens, and does not start or end with a hyphen. The top label
+     * starts with a letter, so IPv4 addresses, which are not common, are handled by the full featured parsers.
+     * */
+    private fun scanHost(url: CharSequence, start: Int, end: Int): Int {
+        var i = start
+        var labelStart = start
+        while (i < end) {
+            val c = url[i]
+            if (c == '.') {
+                if (!isValidLabel(url, labelStart, i)) {
+                    return -1
+                }
+                labelStart = i + 1
+            } else if (c == '-' || isAsciiLetterOrDigit(c)) {
+                // part of a label
+            } else if (c == ':' || c == '/' || c == '?' || c == '#') {
+                break
+            } else {
+                return -1
+            }
+            ++i
+        }
+
+        if (!isValidLabel(url, labelStart, i) || !isAsciiLetter(url[labelStart])) {
+            return -1
+        }
+
+        return i
+    }
+
+    /**
+     * Scan the port, and return the end index, or -1 if the port is empty or too long.
+     * */
+    private fun scanPort(url: CharSequence, start: Int, end: Int): Int {
+        var i = start
+        var value = 0
+        while (i < end && url[i] in '0'..'9') {
+            value = value * 10 + (url[i] - '0')
+            ++i
+        }
+
+        val length = i - start
+        if (length == 0 || length > 5) {
+            return -1
+        }
+        if (i < end && url[i] != '/' && url[i] != '?' && url[i] != '#') {
+            return -1
+        }
+
+        port = value
+        return i
+    }
+
+    /**
+     * Scan the path, the query and the fragment, and return false if there is any illegal character.
+     * */
+    private fun scanRest(url: CharSequence, start: Int, end: Int): Boolean {
+        var i = start
+        while (i < end) {
+            when (val c = url[i]) {
+                '?' -> if (queryStart < 0 && fragmentStart < 0) queryStart = i
+                '#' -> if (fragmentStart < 0) fragmentStart = i else return false
+                '%' -> {
+                    if (i + 2 >= end || !isHexDigit(url[i + 1]) || !isHexDigit(url[i + 2])) {
+                        return false
+                    }
+                    i += 2
+                }
+                else -> if (c.code >= LEGAL_CHARS.size || !LEGAL_CHARS[c.code]) return false
+            }
+            ++i
+        }
+
+        return true
+    }
+
+    private fun isValidLabel(url: CharSequence, start: Int, end: Int): Boolean {
+        return start < end && url[start] != '-' && url[end - 1] != '-'
+    }
+
+    companion object {
+        /**
+         * The characters allowed in the path, the query and the fragment besides '?', '#' and '%'.
+         * */
+        private val LEGAL_CHARS = BooleanArray(128).also { chars ->
+            "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789-_.!~*'();/:@&=+$,"
+                .forEach { chars[it.code] = true }
+        }
+
+        private val LOCAL = ThreadLocal.withInitial { UrlTokenizer() }
+
+        /**
+         * The tokenizer of the current thread.
+         * */
+        @JvmStatic
+        fun local(): UrlTokenizer = LOCAL.get()
+
+        /**
+         * Append the host in range [start, end) of [host] to [buf] with the labels reversed,
+         * e.g., "www.example.com" becomes "com.example.www". Empty labels are skipped.
+         * */
+        @JvmStatic
+        fun appendReversedHost(host: CharSequence, start: Int, end: Int, buf: StringBuilder): StringBuilder {
+            val length = buf.length
+            var labelEnd = end
+            var i = end - 1
+            while (i >= start - 1) {
+                if (i < start || host[i] == '.') {
+                    if (i + 1 < labelEnd) {
+                        if (buf.length > length) {
+                            buf.append('.')
+                        }
+                        buf.append(host, i + 1, labelEnd)
+                    }
+                    labelEnd = i
+                }
+                --i
+            }
+
+            if (buf.length == length) {
+                // no label at all
+                buf.append(host, start, end)
+            }
+
+            return buf
+        }
+
+        private fun isAsciiLetter(c: Char) = c in 'a'..'z' || c in 'A'..'Z'
+
+        private fun isAsciiLetterOrDigit(c: Char) = isAsciiLetter(c) || c in '0'..'9'
+
+        private fun isHexDigit(c: Char) = c in '0'..'9' || c in 'a'..'f' || c in 'A'..'F'
+    }
+}
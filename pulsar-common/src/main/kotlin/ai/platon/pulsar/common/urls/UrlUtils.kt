@@ -1,7 +1,6 @@
 package ai.platon.pulsar.common.urls
 
 import ai.platon.pulsar.common.config.AppConstants.INTERNAL_URL_PREFIX
-import org.apache.commons.lang3.StringUtils
 import org.apache.http.client.utils.URIBuilder
 import java.net.MalformedURLException
 import java.net.URI
@@ -89,6 +88,11 @@ object UrlUtils {
     fun normalize(url: String, ignoreQuery: Boolean = false): URL {
         val (url0, _) = splitUrlArgs(url)
 
+        val tokenizer = UrlTokenizer.local()
+        if (tokenizer.tokenize(url0)) {
+            return URL(tokenizer.normalize(ignoreQuery))
+        }
+
         val uriBuilder = URIBuilder(url0)
         uriBuilder.fragment = null
         if (ignoreQuery) {
@@ -118,8 +122,14 @@ object UrlUtils {
      * */
     @JvmStatic
     fun normalizeOrEmpty(url: String, ignoreQuery: Boolean = false): String {
+        val (url0, _) = splitUrlArgs(url)
+        val tokenizer = UrlTokenizer.local()
+        if (tokenizer.tokenize(url0)) {
+            return tokenizer.normalize(ignoreQuery)
+        }
+
         return try {
-            normalize(url, ignoreQuery).toString()
+            normalize(url0, ignoreQuery).toString()
         } catch (e: Exception) {
             ""
         }
@@ -146,8 +156,14 @@ object UrlUtils {
      * */
     @JvmStatic
     fun normalizeOrNull(url: String, ignoreQuery: Boolean = false): String? {
+        val (url0, _) = splitUrlArgs(url)
+        val tokenizer = UrlTokenizer.local()
+        if (tokenizer.tokenize(url0)) {
+            return tokenizer.normalize(ignoreQuery)
+        }
+
         return try {
-            normalize(url, ignoreQuery).toString()
+            normalize(url0, ignoreQuery).toString()
         } catch (e: Exception) {
             null
         }
@@ -292,7 +308,7 @@ object UrlUtils {
      */
     @JvmStatic
     fun splitUrlArgs(configuredUrl: String): Pair<String, String> {
-        var url = configuredUrl.trim().replace("[\\r\\n\\t]".toRegex(), "");
+        var url = removeLineBreaksAndTabs(configuredUrl.trim())
         val pos = url.indexOfFirst { it.isWhitespace() }
 
         var args = ""
@@ -304,6 +320,26 @@ object UrlUtils {
         return url.trim() to args.trim()
     }
 
+    /**
+     * Remove all '\r', '\n' and '\t' characters, the string itself is returned if there is no such character.
+     * */
+    private fun removeLineBreaksAndTabs(str: String): String {
+        val first = str.indexOfFirst { it == '\r' || it == '\n' || it == '\t' }
+        if (first < 0) {
+            return str
+        }
+
+        val buf = StringBuilder(str.length)
+        buf.append(str, 0, first)
+        for (i in first + 1 until str.length) {
+            val c = str[i]
+            if (c != '\r' && c != '\n' && c != '\t') {
+                buf.append(c)
+            }
+        }
+        return buf.toString()
+    }
+
     /**
      * Merge url and args
      *
@@ -365,6 +401,11 @@ object UrlUtils {
      */
     @JvmStatic
     fun reverseUrl(url: String): String {
+        val tokenizer = UrlTokenizer.local()
+        if (tokenizer.tokenize(url)) {
+            return tokenizer.reverse()
+        }
+
         return reverseUrl(URL(url))
     }
     
@@ -381,7 +422,7 @@ object UrlUtils {
     @JvmStatic
     fun reverseUrlOrEmpty(url: String): String {
         return try {
-            reverseUrl(URL(url))
+            reverseUrl(url)
         } catch (e: MalformedURLException) {
             ""
         }
@@ -400,7 +441,7 @@ object UrlUtils {
     @JvmStatic
     fun reverseUrlOrNull(url: String): String? {
         return try {
-            reverseUrl(URL(url))
+            reverseUrl(url)
         } catch (e: MalformedURLException) {
             null
         }
@@ -469,26 +510,30 @@ object UrlUtils {
      */
     @JvmStatic
     fun unreverseUrl(reversedUrl: String): String {
-        val buf = StringBuilder(reversedUrl.length + 2)
+        val buf = StringBuilder(reversedUrl.length + 3)
 
         var pathBegin = reversedUrl.indexOf('/')
         if (pathBegin == -1) {
             pathBegin = reversedUrl.length
         }
-        val sub = reversedUrl.substring(0, pathBegin)
 
-        val splits = StringUtils.splitPreserveAllTokens(sub, ':') // {<reversed host>, <port>, <protocol>}
+        // <reversed host>:<protocol>[:<port>]
+        val hostEnd = reversedUrl.indexOf(':').takeIf { it in 0 until pathBegin }
+            ?: throw ArrayIndexOutOfBoundsException("No protocol in reversed url: $reversedUrl")
+        var protocolEnd = reversedUrl.indexOf(':', hostEnd + 1)
+        if (protocolEnd == -1 || protocolEnd > pathBegin) {
+            protocolEnd = pathBegin
+        }
 
-        buf.append(splits[1]) // put protocol
+        buf.append(reversedUrl, hostEnd + 1, protocolEnd) // put protocol
         buf.append("://")
-        reverseAppendSplits(splits[0], buf) // splits[0] is reversed
-        // host
-        if (splits.size == 3) { // has a port
-            buf.append(':')
-            buf.append(splits[2])
+        UrlTokenizer.appendReversedHost(reversedUrl, 0, hostEnd, buf)
+        val nextColon = reversedUrl.indexOf(':', protocolEnd + 1)
+        if (protocolEnd < pathBegin && (nextColon == -1 || nextColon > pathBegin)) { // has a port
+            buf.append(reversedUrl, protocolEnd, pathBegin)
         }
 
-        buf.append(reversedUrl.substring(pathBegin))
+        buf.append(reversedUrl, pathBegin, reversedUrl.length)
 
         return buf.toString()
     }
@@ -677,15 +722,6 @@ object UrlUtils {
     }
     
     private fun reverseAppendSplits(string: String, buf: StringBuilder) {
-        val splits = StringUtils.split(string, '.')
-        if (splits.isNotEmpty()) {
-            for (i in splits.size - 1 downTo 1) {
-                buf.append(splits[i])
-                buf.append('.')
-            }
-            buf.append(splits[0])
-        } else {
-            buf.append(string)
-        }
+        UrlTokenizer.appendReversedHost(string, 0, string.length, buf)
     }
 }
@@ -0,0 +1,114 @@
+package ai.platon.pulsar.common
+
+import ai.platon.pulsar.common.concurrent.ConcurrentLRUCache
+import org.junit.jupiter.api.Tag
+import java.util.*
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.ThreadLocalRandom
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+import kotlin.test.*
+
+/**
+ * The LRU cache before it's replaced by the buffered [ConcurrentLRUCache]: every access synchronizes on one
+ * map and builds a TTL string key.
+ * */
+private class SynchronizedLRUCache<K, V : Any>(private val ttl: Long, capacity: Int) {
+    private val cache = object : LinkedHashMap<String, V>(capacity, 0.75f, true) {
+        override fun removeEldestEntry(eldest: Map.Entry<String, V>) = size > capacity
+    }
+
+    operator fun get(key: K): V? {
+        val ttlKey = getTTLKey(key)
+        synchronized(cache) { return cache[ttlKey] }
+    }
+
+    fun put(key: K, value: V): V? {
+        val ttlKey = getTTLKey(key)
+        return synchronized(cache) { cache.put(ttlKey, value) }
+    }
+
+    private fun getTTLKey(key: K): String {
+        if (ttl <= 0) {
+            return key.toString()
+        }
+        val secondsDivTTL = System.currentTimeMillis() / 1000 / ttl
+        return "$secondsDivTTL\t$key"
+    }
+}
+
+/**
+ * Compares the throughput of [ConcurrentLRUCache] with the synchronized implementation it replaces,
+ * with 1, 8 and 64 threads, 90% reads and 10% writes, and keys in a skewed distribution.
+ * */
+class ConcurrentLRUCacheBenchmark {
+    private val capacity = 1000
+    private val numKeys = 5000
+    private val totalOps = 1_600_000
+    private val keys = Array(numKeys) { "https://www.example.com/item/$it" }
+
+    data class Result(val cache: String, val threads: Int, val opsPerSecond: Long, val hitRate: Double)
+
+    @Tag("SlowTest")
+    @Test
+    fun benchmarkLRUCaches() {
+        val results = listOf(1, 8, 64).flatMap { threads ->
+            val synchronizedCache = SynchronizedLRUCache<String, String>(60, capacity)
+            val bufferedCache = ConcurrentLRUCache<String, String>(60, capacity)
+            listOf(
+                run("synchronized", threads, { synchronizedCache[it] }, { k, v -> synchronizedCache.put(k, v) }),
+                run("buffered", threads, { bufferedCache[it] }, { k, v -> bufferedCache.put(k, v) }),
+            ).also { assertTrue { bufferedCache.size <= capacity } }
+        }
+
+        println(String.format("%-14s%10s%16s%10s", "cache", "threads", "ops/s", "hits"))
+        results.forEach {
+            println(String.format("%-14s%10d%16d%10.2f", it.cache, it.threads, it.opsPerSecond, it.hitRate))
+        }
+    }
+
+    private fun run(
+        name: String, threads: Int, get: (String) -> String?, put: (String, String) -> Unit
+    ): Result {
+        val hits = AtomicLong()
+        val latch = CountDownLatch(1)
+        val executor = Executors.newFixedThreadPool(threads)
+        val opsOfThread = totalOps / threads
+        repeat(threads) {
+            executor.submit {
+                latch.await()
+                val random = ThreadLocalRandom.current()
+                var localHits = 0L
+                repeat(opsOfThread) {
+                    val key = keys[skewed(random)]
+                    if (random.nextInt(10) == 0) {
+                        put(key, key)
+                    } else if (get(key) != null) {
+                        ++localHits
+                    } else {
+                        put(key, key)
+                    }
+                }
+                hits.addAndGet(localHits)
+            }
+        }
+
+        val startTime = System.nanoTime()
+        latch.countDown()
+        executor.shutdown()
+        assertTrue { executor.awaitTermination(5, TimeUnit.MINUTES) }
+        val elapsed = System.nanoTime() - startTime
+
+        val total = opsOfThread.toLong() * threads
+        return Result(name, threads, total * TimeUnit.SECONDS.toNanos(1) / elapsed, 1.0 * hits.get() / total)
+    }
+
+    /**
+     * A skewed distribution, the smaller keys are accessed much more frequently.
+     * */
+    private fun skewed(random: Random): Int {
+        val x = random.nextDouble()
+        return (numKeys * x * x * x).toInt().coerceAtMost(numKeys - 1)
+    }
+}
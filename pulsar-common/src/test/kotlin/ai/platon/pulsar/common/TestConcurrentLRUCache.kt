@@ -1,6 +1,7 @@
 package ai.platon.pulsar.common
 
 import ai.platon.pulsar.common.concurrent.ConcurrentLRUCache
+import java.util.concurrent.Executors
 import java.util.concurrent.TimeUnit
 import kotlin.test.*
 
@@ -53,4 +54,65 @@ class TestConcurrentLRUCache {
         assertNull(cache!![3])
         assertNull(cache!![4])
     }
+
+    @Test
+    fun testExpiresByTimestamp() {
+        val cache = ConcurrentLRUCache<Int, String>(1, 10)
+        cache.put(1, "a1")
+        assertEquals("a1", cache[1])
+        assertEquals("a2", cache.computeIfAbsent(2) { "a$it" })
+        assertEquals("a2", cache.computeIfAbsent(2) { "b$it" })
+
+        TimeUnit.MILLISECONDS.sleep(1100)
+        assertNull(cache[1])
+        assertEquals("b2", cache.computeIfAbsent(2) { "b$it" })
+        assertEquals(1, cache.size)
+    }
+
+    @Test
+    fun testNestedComputeIfAbsent() {
+        val cache = ConcurrentLRUCache<Int, String>(10)
+        val value = cache.computeIfAbsent(1) { k -> "a$k" + cache.computeIfAbsent(k + 1) { "b$it" } }
+        assertEquals("a1b2", value)
+        assertEquals("b2", cache[2])
+
+        // a recursive computation of the same key is allowed, the first value put wins
+        val recursive = cache.computeIfAbsent(3) { k -> "c" + cache.computeIfAbsent(k) { "d$it" } }
+        assertEquals("d3", recursive)
+        assertEquals("d3", cache[3])
+    }
+
+    @Test
+    fun testRemoveEldest() {
+        val cache = ConcurrentLRUCache<Int, String>(10)
+        IntRange(1, 5).forEach { cache.put(it, "a$it") }
+        cache[1]
+        assertEquals("a2", cache.remove())
+        assertEquals("a3", cache.remove(3))
+        assertEquals(3, cache.size)
+        cache.clear()
+        assertEquals(0, cache.size)
+        assertNull(cache.remove())
+    }
+
+    @Test
+    fun testConcurrentAccess() {
+        val cache = ConcurrentLRUCache<Int, String>(100)
+        val executor = Executors.newFixedThreadPool(8)
+        repeat(8) { t ->
+            executor.submit {
+                repeat(10_000) { i ->
+                    val key = (i * 31 + t) % 1000
+                    if (cache[key] == null) {
+                        cache.put(key, "a$key")
+                    }
+                }
+            }
+        }
+        executor.shutdown()
+        assertTrue { executor.awaitTermination(60, TimeUnit.SECONDS) }
+
+        assertTrue { cache.size <= 100 }
+        IntRange(0, 999).forEach { key -> cache[key]?.let { assertEquals("a$key", it) } }
+    }
 }
@@ -0,0 +1,158 @@
+package ai.platon.pulsar.common
+
+import ai.platon.pulsar.common.concurrent.ConcurrentWeightedExpiringCache
+import ai.platon.pulsar.common.concurrent.FrequencySketch
+import java.time.Duration
+import kotlin.test.*
+
+class TestConcurrentWeightedExpiringCache {
+    private fun newCache(
+        maxWeight: Long = 100, ttl: Duration = Duration.ofMinutes(5), memoryPressure: (() -> Boolean)? = null
+    ) = ConcurrentWeightedExpiringCache<String, String>(ttl, maxWeight, weigher = { it.length.toLong() },
+        memoryPressure = memoryPressure)
+
+    @Test
+    fun whenWeightExceeded_ThenLeastRecentlyUsedIsEvicted() {
+        val cache = newCache()
+        IntRange(0, 9).forEach { cache.putDatum("k$it", "x".repeat(10)) }
+        assertEquals(100, cache.weight)
+
+        // touch k0 so k1 is the least recently used
+        assertNotNull(cache.getDatum("k0"))
+        cache.putDatum("k10", "x".repeat(10))
+
+        assertEquals(100, cache.weight)
+        assertEquals(10, cache.size)
+        assertNotNull(cache.getDatum("k0"))
+        assertNull(cache.getDatum("k1"))
+        assertEquals(1, cache.evictions.get())
+    }
+
+    @Test
+    fun whenHeavyItemArrives_ThenSeveralItemsAreEvicted() {
+        val cache = newCache()
+        IntRange(0, 9).forEach { cache.putDatum("k$it", "x".repeat(10)) }
+
+        cache.putDatum("heavy", "x".repeat(45))
+        assertEquals(95, cache.weight)
+        assertEquals(6, cache.size)
+        assertEquals(5, cache.evictions.get())
+
+        // larger than the cache itself
+        cache.putDatum("huge", "x".repeat(101))
+        assertNull(cache.getDatum("huge"))
+        assertEquals(1, cache.rejections.get())
+    }
+
+    @Test
+    fun whenFrequentItemsAreCached_ThenOneHitWondersAreNotAdmitted() {
+        val cache = newCache()
+        IntRange(0, 9).forEach { cache.putDatum("hot$it", "x".repeat(10)) }
+        repeat(5) { IntRange(0, 9).forEach { i -> assertNotNull(cache.getDatum("hot$i")) } }
+
+        // a scan of urls accessed only once
+        IntRange(0, 99).forEach { cache.putDatum("cold$it", "x".repeat(10)) }
+
+        IntRange(0, 9).forEach { assertNotNull(cache.getDatum("hot$it"), "hot$it") }
+        assertTrue { cache.rejections.get() >= 90 }
+    }
+
+    @Test
+    fun whenCacheIsFullOfColdItems_ThenNewItemsAreAdmitted() {
+        val cache = newCache()
+        IntRange(0, 9).forEach { cache.putDatum("k$it", "x".repeat(10)) }
+
+        // every new item is as cold as the least recently used one, so it replaces the victim
+        IntRange(10, 29).forEach { cache.putDatum("k$it", "x".repeat(10)) }
+
+        assertEquals(0, cache.rejections.get())
+        assertEquals(20, cache.evictions.get())
+        IntRange(20, 29).forEach { assertNotNull(cache.getDatum("k$it"), "k$it") }
+    }
+
+    @Test
+    fun whenAccessedConcurrently_ThenWeightIsConsistent() {
+        val cache = ConcurrentWeightedExpiringCache<Int, String>(Duration.ofMinutes(5), 1000,
+            weigher = { it.length.toLong() })
+        val threads = IntRange(0, 7).map { t ->
+            Thread {
+                repeat(10_000) { i ->
+                    val key = (t * 31 + i) % 500
+                    if (cache.getDatum(key) == null) {
+                        cache.putDatum(key, "x".repeat(1 + key % 20))
+                    }
+                    if (i % 97 == 0) {
+                        cache.remove(key)
+                    }
+                }
+            }
+        }
+        threads.forEach { it.start() }
+        threads.forEach { it.join() }
+
+        // a write drains the buffers left by the other threads
+        cache.remove(-1)
+        cache.putDatum(-1, "x")
+        val total = IntRange(-1, 499).sumOf { key -> cache.getDatum(key)?.length?.toLong() ?: 0L }
+        assertTrue { cache.weight <= cache.maxWeight }
+        assertEquals(total, cache.weight)
+    }
+
+    @Test
+    fun whenExpired_ThenItemIsRemoved() {
+        val cache = newCache(ttl = Duration.ofMillis(50))
+        cache.putDatum("a", "aaa")
+        assertEquals("aaa", cache.getDatum("a"))
+
+        Thread.sleep(100)
+        assertNull(cache.getDatum("a"))
+        assertEquals(0, cache.weight)
+        assertEquals(1, cache.expirations.get())
+        assertEquals(1, cache.hits.get())
+        assertEquals(1, cache.misses.get())
+    }
+
+    @Test
+    fun whenMemoryIsCritical_ThenMaxWeightShrinksAndRecovers() {
+        val cache = newCache(maxWeight = 1600)
+        IntRange(0, 15).forEach { cache.putDatum("k$it", "x".repeat(100)) }
+        assertEquals(1600, cache.weight)
+
+        cache.adapt(isCriticalMemory = true)
+        assertEquals(800, cache.maxWeight)
+        assertEquals(800, cache.weight)
+        repeat(10) { cache.adapt(isCriticalMemory = true) }
+        assertEquals(100, cache.maxWeight)
+
+        repeat(100) { cache.adapt(isCriticalMemory = false) }
+        assertEquals(1600, cache.maxWeight)
+    }
+
+    @Test
+    fun whenMemoryPressureIsReported_ThenCacheAdaptsOnPut() {
+        var critical = true
+        val cache = newCache(maxWeight = 1600, memoryPressure = { critical })
+        cache.putDatum("a", "x".repeat(100))
+        assertEquals(800, cache.maxWeight)
+
+        critical = false
+        Thread.sleep(ConcurrentWeightedExpiringCache.ADAPT_INTERVAL.toMillis() + 100)
+        cache.putDatum("b", "x".repeat(100))
+        assertEquals(900, cache.maxWeight)
+    }
+
+    @Test
+    fun testFrequencySketch() {
+        val sketch = FrequencySketch(64)
+        repeat(5) { sketch.increment("a") }
+        sketch.increment("b")
+
+        assertTrue { sketch.frequency("a") >= 5 }
+        assertTrue { sketch.frequency("b") >= 1 }
+        assertTrue { sketch.frequency("a") > sketch.frequency("b") }
+
+        // the counters are halved periodically
+        repeat(20 * sketch.width) { sketch.increment("k$it") }
+        assertTrue { sketch.frequency("a") < 5 }
+    }
+}
@@ -0,0 +1,75 @@
+package ai.platon.pulsar.common
+
+import ai.platon.pulsar.common.metrics.*
+import com.codahale.metrics.Gauge
+import com.codahale.metrics.MetricRegistry
+import java.net.URI
+import java.net.http.HttpClient
+import java.net.http.HttpRequest
+import java.net.http.HttpResponse
+import java.util.concurrent.TimeUnit
+import kotlin.test.*
+
+class TestOpenMetrics {
+    private val registry = MetricRegistry()
+
+    @Test
+    fun testHdrReservoirKeepsTailPercentiles() {
+        val reservoir = HdrHistogramReservoir()
+        IntRange(1, 10_000).forEach { reservoir.update(it.toLong()) }
+
+        val snapshot = reservoir.snapshot
+        assertEquals(10_000, snapshot.size())
+        assertEquals(1, snapshot.min)
+        assertEquals(5000.0, snapshot.median, 5.0)
+        assertEquals(9900.0, snapshot.get99thPercentile(), 10.0)
+        assertEquals(9990.0, snapshot.get999thPercentile(), 10.0)
+        assertEquals(50_005_000, reservoir.sum)
+    }
+
+    @Test
+    fun testFormat() {
+        registry.counter("c.i.LoadComponent.c.loads").inc(3)
+        registry.meter("c.i.LoadComponent.m.fetches").mark(5)
+        registry.register("c.i.WebDb.g.open", Gauge { true })
+        registry.register("c.i.WebDb.g.name", Gauge { "not a number" })
+        val timer = registry.hdrTimer("c.i.LoadComponent.t.fetch")
+        timer.update(20, TimeUnit.MILLISECONDS)
+        timer.record { sleepMillis(1) }
+
+        val text = OpenMetricsFormat.format(listOf(registry))
+
+        assertContains(text, "# TYPE c_i_LoadComponent_c_loads gauge\nc_i_LoadComponent_c_loads 3\n")
+        assertContains(text, "# TYPE c_i_LoadComponent_m_fetches counter\nc_i_LoadComponent_m_fetches_total 5\n")
+        assertContains(text, "c_i_WebDb_g_open 1\n")
+        assertFalse { "c_i_WebDb_g_name" in text }
+        assertContains(text, "# TYPE c_i_LoadComponent_t_fetch_seconds summary\n")
+        assertContains(text, "c_i_LoadComponent_t_fetch_seconds{quantile=\"0.999\"} 0.02")
+        assertContains(text, "c_i_LoadComponent_t_fetch_seconds_count 2\n")
+        assertContains(text, "c_i_LoadComponent_t_fetch_seconds_sum 0.02")
+        assertTrue { text.endsWith("# EOF\n") }
+    }
+
+    @Test
+    fun testSanitize() {
+        assertEquals("c_i_FetchComponent_m_fetch_s", OpenMetricsFormat.sanitize("c.i.FetchComponent.m.fetch/s"))
+        assertEquals("_1st", OpenMetricsFormat.sanitize("1st"))
+    }
+
+    @Test
+    fun testServer() {
+        registry.counter("test.counter").inc(7)
+        OpenMetricsServer(0) { listOf(registry) }.use { server ->
+            server.start()
+            val address = server.address!!
+            // listen on the loopback interface by default
+            assertTrue { address.address.isLoopbackAddress }
+            val request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:${address.port}/metrics")).build()
+            val response = HttpClient.newHttpClient().send(request, HttpResponse.BodyHandlers.ofString())
+
+            assertEquals(200, response.statusCode())
+            assertEquals(OpenMetricsFormat.CONTENT_TYPE, response.headers().firstValue("Content-Type").orElse(""))
+            assertContains(response.body(), "test_counter 7\n")
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package ai.platon.pulsar.common.conf
+
+import ai.platon.pulsar.common.config.ImmutableConfig
+import ai.platon.pulsar.common.config.MutableConfig
+import ai.platon.pulsar.common.config.VolatileConfig
+import org.junit.jupiter.api.Tag
+import java.time.Duration
+import kotlin.concurrent.thread
+import kotlin.test.*
+
+class TestConfigSnapshot {
+    private val base = MutableConfig().apply {
+        set("crawl.concurrency", "16")
+        set("crawl.timeout", "30s")
+        set("crawl.spa", "true")
+        set("crawl.loader", "jsoup")
+        set("crawl.invalid.boolean", "yes")
+        set("crawl.invalid.duration", "3x")
+        set("crawl.hex", "0x10")
+    }
+    private val session = VolatileConfig(base).apply {
+        set("crawl.loader", "web.driver")
+    }
+    private val task = VolatileConfig(session).apply {
+        set("crawl.concurrency", "8")
+    }
+    private val names = listOf(
+        "crawl.concurrency", "crawl.timeout", "crawl.spa", "crawl.loader",
+        "crawl.invalid.boolean", "crawl.invalid.duration", "crawl.hex", "crawl.absent"
+    )
+
+    @Test
+    fun whenReadSnapshot_ThenResultsAreTheSameAsTheConfigChain() {
+        repeat(2) {
+            assertSameAsChain(task)
+            assertSameAsChain(session)
+        }
+        assertEquals("web.driver", task.snapshot()["crawl.loader"])
+        assertEquals(8, task.snapshot().getInt("crawl.concurrency", 0))
+        assertEquals(16, task.snapshot().getInt("crawl.hex", 0))
+        assertTrue { task.snapshot().getBoolean("crawl.spa", false) }
+        assertFalse { task.snapshot().getBoolean("crawl.invalid.boolean", false) }
+        assertEquals(Duration.ofSeconds(30), task.snapshot().getDuration("crawl.timeout", Duration.ZERO))
+        assertEquals(Duration.ZERO, task.snapshot().getDuration("crawl.invalid.duration", Duration.ZERO))
+    }
+
+    @Test
+    fun whenAnyLayerIsModified_ThenTheSnapshotIsOutdated() {
+        val snapshot = task.snapshot()
+        assertSame(snapshot, task.snapshot())
+        assertEquals(8, snapshot.getInt("crawl.concurrency", 0))
+
+        task["crawl.concurrency"] = "4"
+        assertFalse { snapshot.isValid }
+        assertEquals(4, task.snapshot().getInt("crawl.concurrency", 0))
+
+        base["crawl.timeout"] = "1m"
+        assertEquals(Duration.ofMinutes(1), task.snapshot().getDuration("crawl.timeout", Duration.ZERO))
+
+        session.unset("crawl.loader")
+        assertEquals("jsoup", task.snapshot()["crawl.loader"])
+
+        task.fallbackConfig = MutableConfig().apply { set("crawl.loader", "http2") }
+        assertEquals("http2", task.snapshot()["crawl.loader"])
+        assertNull(task.snapshot()["crawl.timeout"])
+        assertSameAsChain(task)
+    }
+
+    @Test
+    fun whenSystemPropertyIsSet_ThenItOverridesTheSnapshot() {
+        val name = "crawl.concurrency"
+        assertEquals(8, task.snapshot().getInt(name, 0))
+        try {
+            System.setProperty(name, "2")
+            assertEquals(2, task.snapshot().getInt(name, 0))
+            assertEquals("2", task.snapshot()[name])
+        } finally {
+            System.clearProperty(name)
+        }
+        assertEquals(8, task.snapshot().getInt(name, 0))
+    }
+
+    @Test
+    fun whenPropertyHasTTL_ThenItExpiresInSnapshot() {
+        var sequence = 0
+        val conf = object : VolatileConfig(session) {
+            override fun isExpired(key: String) = sequence > getTTL(key)
+        }
+        conf["crawl.loader", "http2"] = 1
+
+        assertEquals("http2", conf.snapshot()["crawl.loader"])
+        sequence = 2
+        assertEquals("web.driver", conf.snapshot()["crawl.loader"])
+    }
+
+    @Tag("SlowTest")
+    @Test
+    fun benchmark() {
+        val reads = 200_000
+        println(String.format("%-12s%-12s%16s", "threads", "reader", "reads/s"))
+        listOf(1, 4, 16, 64).forEach { numThreads ->
+            val chain = measure(numThreads, reads / numThreads) {
+                task.getInt("crawl.concurrency", 0) + task["crawl.loader", ""].length +
+                    task.getDuration("crawl.timeout", Duration.ZERO).nano
+            }
+            val snapshot = measure(numThreads, reads / numThreads) {
+                val s = task.snapshot()
+                s.getInt("crawl.concurrency", 0) + s["crawl.loader", ""].length +
+                    s.getDuration("crawl.timeout", Duration.ZERO).nano
+            }
+            println(String.format("%-12d%-12s%16d", numThreads, "chain", chain))
+            println(String.format("%-12d%-12s%16d", numThreads, "snapshot", snapshot))
+        }
+    }
+
+    private fun assertSameAsChain(conf: ImmutableConfig) {
+        val snapshot = conf.snapshot()
+        names.forEach { name ->
+            assertEquals(conf[name], snapshot[name], name)
+            assertEquals(conf[name, "default"], snapshot[name, "default"], name)
+            assertEquals(conf.getBoolean(name, true), snapshot.getBoolean(name, true), name)
+            assertEquals(conf.getBoolean(name, false), snapshot.getBoolean(name, false), name)
+            assertEquals(conf.getDuration(name, Duration.ZERO), snapshot.getDuration(name, Duration.ZERO), name)
+            val expected = runCatching { conf.getInt(name, -1) }
+            val actual = runCatching { snapshot.getInt(name, -1) }
+            assertEquals(expected.getOrNull(), actual.getOrNull(), name)
+            assertEquals(expected.isFailure, actual.isFailure, name)
+        }
+    }
+
+    /**
+     * Measure the reads per second of [numThreads] threads, every thread reads [rounds] times, each read reads three
+     * properties.
+     * */
+    private fun measure(numThreads: Int, rounds: Int, read: () -> Int): Long {
+        repeat(rounds) { read() } // warm up
+
+        var sink = 0
+        val startTime = System.nanoTime()
+        val threads = (1..numThreads).map {
+            thread {
+                var local = 0
+                repeat(rounds) { local += read() }
+                synchronized(this) { sink += local }
+            }
+        }
+        threads.forEach { it.join() }
+        val nanos = (System.nanoTime() - startTime).coerceAtLeast(1)
+        assertTrue { sink != Int.MIN_VALUE }
+
+        return 3L * numThreads * rounds * 1_000_000_000L / nanos
+    }
+}
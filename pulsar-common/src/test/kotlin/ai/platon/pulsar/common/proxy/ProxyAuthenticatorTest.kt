@@ -0,0 +1,37 @@
+package ai.platon.pulsar.common.proxy
+
+import java.net.Authenticator
+import java.net.URL
+import kotlin.test.*
+
+class ProxyAuthenticatorTest {
+
+    private fun request(authenticator: Authenticator, type: Authenticator.RequestorType) =
+        authenticator.requestPasswordAuthenticationInstance(
+            "example.com", null, 443, "https", "realm", "Basic", URL("https://example.com/"), type
+        )
+
+    @Test
+    fun whenChallengedByProxy_ThenCredentialsAreReturned() {
+        val proxy = ProxyEntry("127.0.0.1", 8080, "user", "pass")
+        val authenticator = assertNotNull(ProxyAuthenticator.of(proxy))
+
+        val auth = assertNotNull(request(authenticator, Authenticator.RequestorType.PROXY))
+        assertEquals("user", auth.userName)
+        assertEquals("pass", String(auth.password))
+    }
+
+    @Test
+    fun whenChallengedByOriginServer_ThenCredentialsAreNotLeaked() {
+        val proxy = ProxyEntry("127.0.0.1", 8080, "user", "pass")
+        val authenticator = assertNotNull(ProxyAuthenticator.of(proxy))
+
+        assertNull(request(authenticator, Authenticator.RequestorType.SERVER))
+    }
+
+    @Test
+    fun whenProxyHasNoCredentials_ThenNoAuthenticatorIsCreated() {
+        assertNull(ProxyAuthenticator.of(null))
+        assertNull(ProxyAuthenticator.of(ProxyEntry("127.0.0.1", 8080)))
+    }
+}
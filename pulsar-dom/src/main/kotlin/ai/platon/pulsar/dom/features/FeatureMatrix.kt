@@ -0,0 +1,142 @@
+package ai.platon.pulsar.dom.features
+
+import org.apache.commons.math3.exception.OutOfRangeException
+import org.apache.commons.math3.linear.ArrayRealVector
+import org.apache.commons.math3.linear.RealVector
+
+/**
+ * A document level feature matrix, the features of all the nodes of a document are kept in one primitive array.
+ *
+ * The matrix is column-major: the values of a feature are stored continuously, and the row index of a node
+ * is the sequence of the node in the depth-first traversal. Nodes refer to their rows by [FeatureRowVector]s,
+ * so the callers using [RealVector] keep working.
+ * */
+class FeatureMatrix(
+    /**
+     * The number of rows, which is the number of nodes
+     * */
+    val numRows: Int,
+    /**
+     * The number of columns, which is the number of features
+     * */
+    val numFeatures: Int,
+) {
+    init {
+        require(numRows >= 0 && numFeatures >= 0) { "Illegal matrix size $numRows x $numFeatures" }
+        require(numRows.toLong() * numFeatures <= Int.MAX_VALUE) { "Matrix too large $numRows x $numFeatures" }
+    }
+
+    /**
+     * The underlying array, the value of feature `j` of row `i` is at `j * numRows + i`.
+     * */
+    val data = DoubleArray(numRows * numFeatures)
+
+    operator fun get(row: Int, feature: Int): Double = data[index(row, feature)]
+
+    operator fun set(row: Int, feature: Int, value: Double) {
+        data[index(row, feature)] = value
+    }
+
+    /**
+     * Add [increment] to the feature of the row.
+     * */
+    fun addTo(row: Int, feature: Int, increment: Double) {
+        data[index(row, feature)] += increment
+    }
+
+    /**
+     * A view of the row, changes to the view are written through to the matrix.
+     * */
+    fun row(row: Int): FeatureRowVector {
+        if (row !in 0 until numRows) {
+            throw OutOfRangeException(row, 0, numRows - 1)
+        }
+        return FeatureRowVector(this, row)
+    }
+
+    /**
+     * A copy of the values of a feature of all the rows.
+     * */
+    fun column(feature: Int): DoubleArray {
+        checkFeature(feature)
+        return data.copyOfRange(feature * numRows, (feature + 1) * numRows)
+    }
+
+    private fun index(row: Int, feature: Int): Int {
+        if (row !in 0 until numRows) {
+            throw OutOfRangeException(row, 0, numRows - 1)
+        }
+        checkFeature(feature)
+        return feature * numRows + row
+    }
+
+    private fun checkFeature(feature: Int) {
+        if (feature !in 0 until numFeatures) {
+            throw OutOfRangeException(feature, 0, numFeatures - 1)
+        }
+    }
+}
+
+/**
+ * A [RealVector] view of a row of a [FeatureMatrix].
+ *
+ * The view holds no values, reads and writes go to the matrix. Operations creating new vectors return
+ * [ArrayRealVector]s detached from the matrix.
+ * */
+class FeatureRowVector(
+    val matrix: FeatureMatrix,
+    val row: Int,
+) : RealVector() {
+    override fun getDimension(): Int = matrix.numFeatures
+
+    override fun getEntry(index: Int): Double = matrix[row, index]
+
+    override fun setEntry(index: Int, value: Double) {
+        matrix[row, index] = value
+    }
+
+    override fun addToEntry(index: Int, increment: Double) {
+        matrix.addTo(row, index, increment)
+    }
+
+    override fun toArray(): DoubleArray = DoubleArray(dimension) { matrix[row, it] }
+
+    override fun copy(): RealVector = ArrayRealVector(toArray(), false)
+
+    override fun append(v: RealVector): RealVector = copy().append(v)
+
+    override fun append(d: Double): RealVector = copy().append(d)
+
+    override fun getSubVector(index: Int, n: Int): RealVector = copy().getSubVector(index, n)
+
+    override fun setSubVector(index: Int, v: RealVector) {
+        if (index < 0 || index + v.dimension > dimension) {
+            throw OutOfRangeException(index + v.dimension, 0, dimension)
+        }
+        for (i in 0 until v.dimension) {
+            matrix[row, index + i] = v.getEntry(i)
+        }
+    }
+
+    override fun isNaN(): Boolean = (0 until dimension).any { matrix[row, it].isNaN() }
+
+    override fun isInfinite(): Boolean = !isNaN && (0 until dimension).any { matrix[row, it].isInfinite() }
+
+    override fun ebeDivide(v: RealVector): RealVector = copy().ebeDivide(v)
+
+    override fun ebeMultiply(v: RealVector): RealVector = copy().ebeMultiply(v)
+
+    override fun equals(other: Any?): Boolean {
+        if (this === other) return true
+        if (other !is RealVector) return false
+        if (other.dimension != dimension) return false
+        if (other.isNaN || isNaN) return other.isNaN && isNaN
+        return (0 until dimension).all { matrix[row, it] == other.getEntry(it) }
+    }
+
+    override fun hashCode(): Int {
+        return if (isNaN) 9 else toArray().contentHashCode()
+    }
+
+    override fun toString() = toArray().joinToString(prefix = "{", postfix = "}", separator = "; ")
+}
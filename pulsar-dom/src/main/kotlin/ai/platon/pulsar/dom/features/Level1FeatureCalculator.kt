@@ -15,12 +15,35 @@ import org.jsoup.nodes.Node
 import org.jsoup.nodes.TextNode
 import org.jsoup.select.NodeTraversor
 import org.jsoup.select.NodeVisitor
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.RecursiveAction
 
 /**
  * The level 1 feature calculator calculate for the minimal features
  * */
-class Level1FeatureCalculator: AbstractFeatureCalculator() {
+class Level1FeatureCalculator internal constructor(
+    /**
+     * Keep the features of all nodes in a document level [FeatureMatrix], or in a vector for each node
+     * */
+    private val featureMatrixEnabled: Boolean,
+    /**
+     * Calculate the features of large documents in a fork-join pool
+     * */
+    val forkJoinEnabled: Boolean,
+    /**
+     * Subtrees with at least so many nodes are calculated in separate fork-join tasks
+     * */
+    val forkJoinThreshold: Int,
+): AbstractFeatureCalculator() {
+    @JvmOverloads
+    constructor(
+        forkJoinEnabled: Boolean = false,
+        forkJoinThreshold: Int = DEFAULT_FORK_JOIN_THRESHOLD
+    ): this(true, forkJoinEnabled, forkJoinThreshold)
+
     companion object {
+        const val DEFAULT_FORK_JOIN_THRESHOLD = 2000
+
         init {
             ResourceLoader.addClassFactory(ClassFactory())
             if (FeatureRegistry.registeredFeatures.isEmpty()) {
@@ -31,14 +54,165 @@ class Level1FeatureCalculator: AbstractFeatureCalculator() {
     }
 
     override fun calculate(document: Document) {
-        NodeTraversor.traverse(Level1NodeFeatureCalculatorVisitor(), document)
+        if (forkJoinEnabled) {
+            val tree = IndexedTree(document)
+            if (tree.size >= forkJoinThreshold) {
+                calculateInForkJoinPool(document, tree)
+                return
+            }
+        }
+
+        val matrix = if (featureMatrixEnabled) createFeatureMatrix(document) else null
+        NodeTraversor.traverse(Level1NodeFeatureCalculatorVisitor(matrix), document)
+    }
+
+    /**
+     * Create the feature matrix of the document, a row for each node.
+     * */
+    private fun createFeatureMatrix(document: Document): FeatureMatrix {
+        var numNodes = 0
+        NodeTraversor.traverse({ _, _ -> ++numNodes }, document)
+        return FeatureMatrix(numNodes, FeatureRegistry.registeredFeatures.size).also { document.featureMatrix = it }
     }
-    
+
+    /**
+     * Calculate the self indicators of all nodes in parallel, and then accumulate the features of the children
+     * to the parents by a parallel reduction over the subtrees.
+     *
+     * Every parent accumulates the features of its children in the document order, so the result is bit-identical
+     * to the sequential traversal.
+     * */
+    private fun calculateInForkJoinPool(document: Document, tree: IndexedTree) {
+        val matrix = FeatureMatrix(tree.size, FeatureRegistry.registeredFeatures.size)
+        document.featureMatrix = matrix
+        val visitor = Level1NodeFeatureCalculatorVisitor(matrix)
+
+        val pool = ForkJoinPool.commonPool()
+        pool.invoke(SelfIndicatorTask(visitor, tree, 0, tree.size, forkJoinThreshold.coerceAtLeast(1)))
+        pool.invoke(AccumulationTask(visitor, tree, 0, forkJoinThreshold.coerceAtLeast(1)))
+    }
+
     override fun dispose() {
         FeatureRegistry.unregister()
     }
 }
 
+/**
+ * The nodes of a document in the depth-first order, the nodes of a subtree are in a continuous range.
+ * */
+private class IndexedTree(document: Document) {
+    val nodes = ArrayList<Node>()
+    var depths = IntArray(1024)
+    /**
+     * The exclusive end index of the subtree of each node
+     * */
+    var ends = IntArray(1024)
+
+    val size get() = nodes.size
+
+    init {
+        val stack = ArrayDeque<Int>()
+        NodeTraversor.traverse(object : NodeVisitor {
+            override fun head(node: Node, depth: Int) {
+                val i = nodes.size
+                if (i == depths.size) {
+                    depths = depths.copyOf(2 * i)
+                    ends = ends.copyOf(2 * i)
+                }
+                nodes.add(node)
+                depths[i] = depth
+                stack.addLast(i)
+            }
+
+            override fun tail(node: Node, depth: Int) {
+                ends[stack.removeLast()] = nodes.size
+            }
+        }, document)
+    }
+
+    fun subtreeSize(i: Int) = ends[i] - i
+
+    /**
+     * Visit the children of node [i] in the document order.
+     * */
+    inline fun forEachChild(i: Int, action: (Int) -> Unit) {
+        var child = i + 1
+        while (child < ends[i]) {
+            action(child)
+            child = ends[child]
+        }
+    }
+}
+
+/**
+ * Calculate the self indicators of the nodes in range [[from], [to]), a node's self indicators depend on itself only.
+ * */
+private class SelfIndicatorTask(
+    val visitor: Level1NodeFeatureCalculatorVisitor,
+    val tree: IndexedTree,
+    val from: Int,
+    val to: Int,
+    val threshold: Int,
+): RecursiveAction() {
+    override fun compute() {
+        if (to - from <= threshold) {
+            for (i in from until to) {
+                visitor.calcHead(tree.nodes[i], tree.depths[i], i)
+            }
+            return
+        }
+
+        val mid = (from + to) ushr 1
+        invokeAll(
+            SelfIndicatorTask(visitor, tree, from, mid, threshold),
+            SelfIndicatorTask(visitor, tree, mid, to, threshold)
+        )
+    }
+}
+
+/**
+ * Accumulate the features of the subtree rooted at node [root] bottom-up.
+ *
+ * A task writes the nodes in its subtree only, the features of the root are accumulated to its parent
+ * by the parent's task.
+ * */
+private class AccumulationTask(
+    val visitor: Level1NodeFeatureCalculatorVisitor,
+    val tree: IndexedTree,
+    val root: Int,
+    val threshold: Int,
+): RecursiveAction() {
+    override fun compute() {
+        val node = tree.nodes[root]
+        if (tree.subtreeSize(root) < threshold) {
+            NodeTraversor.traverse(object : NodeVisitor {
+                override fun head(node: Node, depth: Int) {}
+
+                override fun tail(n: Node, depth: Int) {
+                    if (n !== node) visitor.accumulateToParent(n)
+                    visitor.completeNode(n)
+                }
+            }, node)
+            return
+        }
+
+        val subtasks = mutableListOf<AccumulationTask>()
+        tree.forEachChild(root) { child ->
+            val task = AccumulationTask(visitor, tree, child, threshold)
+            if (tree.subtreeSize(child) >= threshold) {
+                subtasks.add(task)
+            } else {
+                task.compute()
+            }
+        }
+        invokeAll(subtasks)
+
+        // accumulate in the document order, exactly the same as the sequential traversal
+        tree.forEachChild(root) { child -> visitor.accumulateToParent(tree.nodes[child]) }
+        visitor.completeNode(node)
+    }
+}
+
 /**
  * The class factory for ResourceLoader
  * */
@@ -53,20 +227,24 @@ class ClassFactory : ResourceLoader.ClassFactory {
     }
 }
 
-private class Level1NodeFeatureCalculatorVisitor: NodeVisitor {
+private class Level1NodeFeatureCalculatorVisitor(val matrix: FeatureMatrix?): NodeVisitor {
     var sequence: Int = 0
         private set
 
     // hit when the node is first seen
     override fun head(node: Node, depth: Int) {
+        calcHead(node, depth, sequence)
+        ++sequence
+    }
+
+    fun calcHead(node: Node, depth: Int, sequence: Int) {
         val extension = node.extension
-        extension.features = ArrayRealVector(FeatureRegistry.registeredFeatures.size)
+        extension.features = matrix?.row(sequence) ?: ArrayRealVector(FeatureRegistry.registeredFeatures.size)
 
         extension.features[DEP] = depth.toDouble()
         extension.features[SEQ] = sequence.toDouble()
 
         calcSelfIndicator(node)
-        ++sequence
     }
 
     // 单个节点统计项
@@ -137,6 +315,14 @@ private class Level1NodeFeatureCalculatorVisitor: NodeVisitor {
 
     // hit when all the node's children (if any) have been visited
     override fun tail(node: Node, depth: Int) {
+        accumulateToParent(node)
+        completeNode(node)
+    }
+
+    /**
+     * Accumulate the features of the node to its parent, all the node's children (if any) are accumulated.
+     * */
+    fun accumulateToParent(node: Node) {
         if (node !is Element && node !is TextNode) {
             return
         }
@@ -168,14 +354,23 @@ private class Level1NodeFeatureCalculatorVisitor: NodeVisitor {
                     node.getFeatureEntry(IMG),
                     FeatureEntry(C, 1.0)
             )
+        }
+    }
 
-            // count of element siblings
-            node.childNodes().forEach {
-                if (it is Element) {
-                    it.extension.features[SIB] = node.extension.features[C]
-                }
+    /**
+     * Calculate the features depending on the complete subtree of the node.
+     * */
+    fun completeNode(node: Node) {
+        if (node !is Element || node.parent() == null) {
+            return
+        }
+
+        // count of element siblings
+        node.childNodes().forEach {
+            if (it is Element) {
+                it.extension.features[SIB] = node.extension.features[C]
             }
-        } // if
+        }
 
         if (node.nodeName().equals("body", ignoreCase = true)) {
             val rect = calculateBodyRect(node)
@@ -11,6 +11,8 @@ import ai.platon.pulsar.common.math.vectors.get
 import ai.platon.pulsar.common.math.vectors.set
 import ai.platon.pulsar.dom.features.FeatureEntry
 import ai.platon.pulsar.dom.features.FeatureFormatter
+import ai.platon.pulsar.dom.features.FeatureMatrix
+import ai.platon.pulsar.dom.features.FeatureRowVector
 import ai.platon.pulsar.dom.features.NodeFeature
 import ai.platon.pulsar.dom.features.defined.*
 import ai.platon.pulsar.dom.model.createLink
@@ -174,6 +176,11 @@ var Document.exportPaths by field { ExportPaths(it.baseUri()) }
  * Whether the document is annotated.
  * */
 var Document.annotated by field { false }
+
+/**
+ * The feature matrix of the document, the features of each node are stored in a row of the matrix
+ * */
+var Document.featureMatrix by nullableField<FeatureMatrix>()
 /**
  * Whether the document is nil.
  * TODO: check if this override Node.isNil or not?
@@ -345,6 +352,10 @@ var Node.depth by IntFeature(DEP)
  * The traversal sequence of the node.
  * */
 val Node.sequence by IntFeature(SEQ)
+/**
+ * The row of the node in the feature matrix of the owner document, or -1 if the features are not in a matrix.
+ * */
+val Node.featureRow: Int get() = (extension.features as? FeatureRowVector)?.row ?: -1
 /**
  * A globally unique id of the node.
  * */
@@ -164,6 +164,25 @@ object PowerSelector {
         return PowerCollector.findFirst(evaluator, root)
     }
 
+    /**
+     * Select the first element matches the compiled evaluator.
+     * */
+    fun selectFirst(evaluator: Evaluator, root: Element): Element? {
+        return PowerCollector.findFirst(evaluator, root)
+    }
+
+    /**
+     * Compile a css query to an evaluator, so the query can be applied to many documents without parsing again.
+     *
+     * @param cssQuery The css query
+     * @param baseUri The base uri to report parse failures
+     * @return The evaluator, or null if the query is blank or illegal
+     * */
+    fun compileOrNull(cssQuery: String, baseUri: String = ""): Evaluator? {
+        val query = normalizeQueryOrNull(cssQuery.trim()) ?: return null
+        return parseOrNull(query, baseUri)
+    }
+
     /**
      * Find elements matching selector.
      *
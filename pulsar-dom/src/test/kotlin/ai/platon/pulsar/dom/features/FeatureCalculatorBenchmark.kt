@@ -0,0 +1,72 @@
+package ai.platon.pulsar.dom.features
+
+import ai.platon.pulsar.dom.nodes.node.ext.featureMatrix
+import org.jsoup.Jsoup
+import org.jsoup.nodes.Document
+import org.jsoup.select.NodeTraversor
+import org.junit.jupiter.api.Tag
+import java.lang.management.ManagementFactory
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.Paths
+import kotlin.test.*
+
+/**
+ * Measures the time and the allocation to calculate the features of the sample pages.
+ *
+ * The baseline keeps the features in a vector for each node, which is compared to the document level [FeatureMatrix].
+ * */
+class FeatureCalculatorBenchmark {
+    private val samplePages = listOf(
+        Paths.get("src/test/resources/webpages/mia.com/00f3a63c4898d201df95d6015244dd63.html"),
+        Paths.get("../pulsar-resources/src/test/resources/pages/amazon/B0C1H26C46.original.htm"),
+    ).filter { Files.exists(it) }
+
+    private val rounds = 20
+    private val threadMXBean = ManagementFactory.getThreadMXBean() as com.sun.management.ThreadMXBean
+
+    data class Result(val page: String, val numNodes: Int, val millisPerRound: Double, val bytesPerRound: Long)
+
+    @Tag("SlowTest")
+    @Test
+    fun benchmarkFeatureCalculation() {
+        assertTrue { samplePages.isNotEmpty() }
+        val baselineCalculator = Level1FeatureCalculator(featureMatrixEnabled = false, forkJoinEnabled = false, forkJoinThreshold = 0)
+        val calculator = Level1FeatureCalculator()
+        val forkJoinCalculator = Level1FeatureCalculator(forkJoinEnabled = true, forkJoinThreshold = 500)
+
+        println(String.format("%-50s%10s%16s%16s", "page", "nodes", "ms/round", "bytes/round"))
+        samplePages.forEach { path ->
+            val html = Files.readString(path)
+            val baseline = measure(path, html) { baselineCalculator.calculate(it) }
+            val matrix = measure(path, html) { calculator.calculate(it) }
+            // the allocation in the fork-join workers is not counted
+            val forkJoin = measure(path, html) { forkJoinCalculator.calculate(it) }
+            listOf(baseline.copy(page = "${baseline.page} (per node)"), matrix, forkJoin.copy(page = "${forkJoin.page} (fork-join)")).forEach {
+                println(String.format("%-50s%10d%16.3f%16d", it.page, it.numNodes, it.millisPerRound, it.bytesPerRound))
+            }
+        }
+    }
+
+    private fun measure(path: Path, html: String, action: (Document) -> Unit): Result {
+        // warm up
+        repeat(3) { action(Jsoup.parse(html)) }
+
+        val documents = IntRange(1, rounds).map { Jsoup.parse(html) }
+        val threadId = Thread.currentThread().id
+        val startBytes = threadMXBean.getThreadAllocatedBytes(threadId)
+        val startTime = System.nanoTime()
+        documents.forEach { action(it) }
+        val elapsed = System.nanoTime() - startTime
+        val bytes = threadMXBean.getThreadAllocatedBytes(threadId) - startBytes
+
+        val numNodes = documents[0].featureMatrix?.numRows ?: countNodes(documents[0])
+        return Result(path.fileName.toString(), numNodes, elapsed / 1e6 / rounds, bytes / rounds)
+    }
+
+    private fun countNodes(document: Document): Int {
+        var n = 0
+        NodeTraversor.traverse({ _, _ -> ++n }, document)
+        return n
+    }
+}
@@ -0,0 +1,61 @@
+package ai.platon.pulsar.dom.features
+
+import ai.platon.pulsar.common.math.vectors.get
+import ai.platon.pulsar.common.math.vectors.set
+import ai.platon.pulsar.dom.features.defined.*
+import ai.platon.pulsar.dom.nodes.node.ext.*
+import org.apache.commons.math3.linear.ArrayRealVector
+import org.jsoup.Jsoup
+import org.jsoup.nodes.Element
+import org.jsoup.nodes.Node
+import org.jsoup.nodes.TextNode
+import org.jsoup.select.NodeTraversor
+import kotlin.test.*
+
+class TestFeatureMatrix {
+    private val html = """
+<div><p>Hello <a href='/a'>pulsar</a></p><img src='a.png' /></div>
+<div><p>There</p><a href='/b'>link</a></div>
+    """.trimIndent()
+
+    @Test
+    fun testRowViewsWriteThrough() {
+        val matrix = FeatureMatrix(3, N)
+        val row = matrix.row(1)
+        row[CH] = 10.0
+        row.addToEntry(CH, 2.0)
+
+        assertEquals(12.0, matrix[1, CH])
+        assertEquals(0.0, matrix[0, CH])
+        assertEquals(12.0, matrix.column(CH)[1])
+        assertEquals(ArrayRealVector(row.toArray()), row.copy())
+        assertEquals<Any>(row, ArrayRealVector(row.toArray()))
+        assertFailsWith<org.apache.commons.math3.exception.OutOfRangeException> { matrix.row(3) }
+    }
+
+    @Test
+    fun testNodesKeepRowIndex() {
+        val doc = Jsoup.parse(html)
+        Level1FeatureCalculator().calculate(doc)
+
+        val matrix = doc.featureMatrix
+        assertNotNull(matrix)
+        assertEquals(N, matrix.numFeatures)
+
+        val nodes = mutableListOf<Node>()
+        NodeTraversor.traverse({ node, _ -> nodes.add(node) }, doc)
+        assertEquals(nodes.size, matrix.numRows)
+        nodes.forEachIndexed { i, node ->
+            assertEquals(i, node.featureRow)
+            assertEquals(i, node.sequence)
+            assertEquals(matrix[i, DEP], node.extension.features[DEP])
+        }
+
+        // features are accumulated to the ancestors through the matrix
+        val body = doc.body()
+        assertEquals(2.0, body.getFeature(A))
+        assertEquals(1.0, body.getFeature(IMG))
+        val ch = nodes.filterIsInstance<TextNode>().filter { it.parent() === body || body in (it.parent() as Element).parents() }.sumOf { it.text().length }
+        assertEquals(ch.toDouble(), body.getFeature(CH))
+    }
+}
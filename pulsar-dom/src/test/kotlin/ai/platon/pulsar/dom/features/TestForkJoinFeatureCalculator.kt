@@ -0,0 +1,74 @@
+package ai.platon.pulsar.dom.features
+
+import ai.platon.pulsar.dom.nodes.node.ext.featureMatrix
+import org.jsoup.Jsoup
+import org.jsoup.nodes.Document
+import org.jsoup.nodes.Node
+import org.jsoup.select.NodeTraversor
+import java.nio.file.Files
+import java.nio.file.Paths
+import kotlin.test.*
+
+/**
+ * The fork-join mode must produce bit-identical features to the sequential mode.
+ * */
+class TestForkJoinFeatureCalculator {
+    private val fixtures = listOf(
+        Paths.get("src/test/resources/webpages/mia.com/00f3a63c4898d201df95d6015244dd63.html"),
+        Paths.get("../pulsar-resources/src/test/resources/pages/amazon/B0C1H26C46.original.htm"),
+    ).filter { Files.exists(it) }.map { Files.readString(it) } + listOf(
+        "<div><p>Hello <a href='/a'>pulsar</a></p><img src='a.png' /></div><div><p>There</p><a href='/b'>link</a></div>",
+        """<div vi="0 0 1200 900"><p vi="10 20 300 40">One<span vi="10 20 30 40">Two</span></p>
+<!-- comment --><a vi="100 200 50 60" href="/c">Three</a><img vi="0 0 100 100" src="b.png"/></div>""",
+    )
+
+    @Test
+    fun testBitIdenticalToSequential() {
+        assertTrue { fixtures.size >= 3 }
+
+        val sequential = Level1FeatureCalculator()
+        fixtures.forEach { html ->
+            val expected = Jsoup.parse(html).also { sequential.calculate(it) }
+
+            // small thresholds split the document into many subtrees
+            listOf(1, 2, 16, 256).forEach { threshold ->
+                val calculator = Level1FeatureCalculator(forkJoinEnabled = true, forkJoinThreshold = threshold)
+                val actual = Jsoup.parse(html).also { calculator.calculate(it) }
+                assertFeaturesIdentical(expected, actual, threshold)
+            }
+        }
+    }
+
+    @Test
+    fun testSmallDocumentFallsBackToSequential() {
+        val calculator = Level1FeatureCalculator(forkJoinEnabled = true)
+        val doc = Jsoup.parse(fixtures.last())
+        calculator.calculate(doc)
+        assertNotNull(doc.featureMatrix)
+        assertEquals(collectNodes(doc).size, doc.featureMatrix?.numRows)
+    }
+
+    private fun assertFeaturesIdentical(expected: Document, actual: Document, threshold: Int) {
+        val expectedMatrix = assertNotNull(expected.featureMatrix)
+        val actualMatrix = assertNotNull(actual.featureMatrix)
+        assertEquals(expectedMatrix.numRows, actualMatrix.numRows)
+
+        // compare the raw bits, so NaN and signed zeros are compared exactly
+        val expectedBits = expectedMatrix.data.map { it.toRawBits() }
+        val actualBits = actualMatrix.data.map { it.toRawBits() }
+        assertEquals(expectedBits, actualBits, "threshold $threshold")
+
+        val expectedNodes = collectNodes(expected)
+        val actualNodes = collectNodes(actual)
+        expectedNodes.zip(actualNodes).forEach { (e, a) ->
+            assertContentEquals(e.extension.features.toArray(), a.extension.features.toArray(), e.nodeName())
+            assertEquals(e.extension.immutableText, a.extension.immutableText)
+        }
+    }
+
+    private fun collectNodes(document: Document): List<Node> {
+        val nodes = mutableListOf<Node>()
+        NodeTraversor.traverse({ node, _ -> nodes.add(node) }, document)
+        return nodes
+    }
+}
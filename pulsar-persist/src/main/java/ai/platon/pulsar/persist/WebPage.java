@@ -31,6 +31,7 @@ import java.util.stream.Collectors;
 
 import static ai.platon.pulsar.common.PulsarParams.VAR_LOAD_OPTIONS;
 import static ai.platon.pulsar.common.config.AppConstants.*;
+import static ai.platon.pulsar.common.config.CapabilityTypes.STORAGE_CONTENT_MODE;
 
 /**
  * The core web page structure
@@ -113,6 +114,16 @@ final public class WebPage implements Comparable<WebPage>, WebAsset {
      */
     private volatile ByteBuffer tmpContent = null;
 
+    /**
+     * The persisted content kept compressed off-heap, only used in {@link ContentStorageMode#COMPRESSED} mode.
+     */
+    private volatile CompressedContent compressedContent = null;
+
+    /**
+     * The cached content kept compressed off-heap, only used in {@link ContentStorageMode#COMPRESSED} mode.
+     */
+    private volatile CompressedContent compressedTmpContent = null;
+
     /**
      * The delay time to retry if a retry is needed
      */
@@ -355,6 +366,32 @@ final public class WebPage implements Comparable<WebPage>, WebAsset {
         return page;
     }
 
+    /**
+     * Get the underlying persistent object to write to the storage.
+     *
+     * If the content is kept off-heap, either compressed or in a direct buffer, a copy of the underlying object
+     * with the content in a heap buffer is returned, since some stores, for example, the mongodb store, require
+     * the buffers to be backed by arrays. The page itself keeps the content off-heap.
+     */
+    @NotNull
+    public GWebPage unboxForPersistence() {
+        CompressedContent content = compressedContent;
+        if (content != null) {
+            GWebPage copy = GWebPage.newBuilder(page).build();
+            copy.setContent(content.decompress());
+            return copy;
+        }
+
+        ByteBuffer direct = page.getContent();
+        if (direct != null && direct.isDirect()) {
+            GWebPage copy = GWebPage.newBuilder(page).build();
+            copy.setContent(ByteBuffer.wrap(PageContents.toBytes(direct)));
+            return copy;
+        }
+
+        return page;
+    }
+
     public void unsafeSetGPage(@NotNull GWebPage page) {
         this.page = page;
     }
@@ -578,6 +615,10 @@ final public class WebPage implements Comparable<WebPage>, WebAsset {
         this.lazyFieldLoader = lazyFieldLoader;
     }
 
+    public boolean hasLazyFieldLoader() {
+        return lazyFieldLoader != null;
+    }
+
     public int getMaxRetries() {
         return getMetadata().getInt(Name.FETCH_MAX_RETRY, 3);
     }
@@ -1049,6 +1090,9 @@ final public class WebPage implements Comparable<WebPage>, WebAsset {
     /**
      * The entire raw document content e.g. raw XHTML
      *
+     * If the content is kept compressed, it's decompressed on the first call, and the decompressed buffer is kept
+     * softly for the later calls, use {@link #hasContent()} to check the existence without decompressing.
+     *
      * @return The raw document content in {@link ByteBuffer}.
      */
     @Nullable
@@ -1057,9 +1101,41 @@ final public class WebPage implements Comparable<WebPage>, WebAsset {
             return tmpContent;
         }
 
+        CompressedContent content = compressedTmpContent;
+        if (content != null) {
+            return content.decompress();
+        }
+
         return getPersistContent();
     }
 
+    /**
+     * Check if the page has content, the content is never decompressed, but it's loaded if there is a lazy field
+     * loader, just like {@link #getContent()}.
+     */
+    public boolean hasContent() {
+        if (tmpContent != null || compressedTmpContent != null || compressedContent != null) {
+            return true;
+        }
+
+        return getPersistContent() != null;
+    }
+
+    /**
+     * Get the storage mode of the content, it's specified by {@link ai.platon.pulsar.common.config.CapabilityTypes#STORAGE_CONTENT_MODE}.
+     */
+    @NotNull
+    public ContentStorageMode getContentStorageMode() {
+        return ContentStorageMode.fromString(conf.get(STORAGE_CONTENT_MODE));
+    }
+
+    /**
+     * Check if the content is kept compressed off-heap.
+     */
+    public boolean isContentCompressed() {
+        return compressedContent != null || compressedTmpContent != null;
+    }
+
     /**
      * Get the cached content
      */
@@ -1080,13 +1156,20 @@ final public class WebPage implements Comparable<WebPage>, WebAsset {
      */
     @Nullable
     public ByteBuffer getPersistContent() {
+        CompressedContent content = compressedContent;
+        if (content != null) {
+            return content.decompress();
+        }
+
         synchronized (CONTENT_MONITOR) {
             String fieldName = GWebPage.Field.CONTENT.getName();
             // load content lazily
             if (page.getContent() == null && lazyFieldLoader != null && !lazyLoadedFields.contains(fieldName)) {
                 lazyLoadedFields.add(fieldName);
                 GWebPage lazyPage = lazyFieldLoader.apply(fieldName);
-                page.setContent(lazyPage.getContent());
+                if (lazyPage != null) {
+                    page.setContent(lazyPage.getContent());
+                }
             }
 
             return page.getContent();
@@ -1104,7 +1187,7 @@ final public class WebPage implements Comparable<WebPage>, WebAsset {
         if (content == null) {
             return ByteUtils.toBytes('\0');
         }
-        return ByteUtils.toBytes(content);
+        return PageContents.toBytes(content);
     }
 
     /**
@@ -1112,16 +1195,24 @@ final public class WebPage implements Comparable<WebPage>, WebAsset {
      */
     @NotNull
     public String getContentAsString() {
+        CompressedContent content = tmpContent == null ? compressedTmpContent : null;
+        if (content == null && tmpContent == null) {
+            content = compressedContent;
+        }
+        if (content != null) {
+            return content.decodeToString();
+        }
+
         ByteBuffer buffer = getContent();
         if (buffer == null || buffer.remaining() == 0) {
             return "";
         }
 
-        return new String(buffer.array(), buffer.arrayOffset(), buffer.limit());
+        return PageContents.decodeToString(buffer);
     }
 
     /**
-     * Get the page content as input stream
+     * Get the page content as input stream, the content is copied if it's not kept in the heap
      */
     @NotNull
     public ByteArrayInputStream getContentAsInputStream() {
@@ -1130,7 +1221,11 @@ final public class WebPage implements Comparable<WebPage>, WebAsset {
             return new ByteArrayInputStream(ByteUtils.toBytes('\0'));
         }
 
-        return new ByteArrayInputStream(getContent().array(),
+        if (!contentInOctets.hasArray()) {
+            return new ByteArrayInputStream(PageContents.toBytes(contentInOctets));
+        }
+
+        return new ByteArrayInputStream(contentInOctets.array(),
                 contentInOctets.arrayOffset() + contentInOctets.position(),
                 contentInOctets.remaining());
     }
@@ -1180,10 +1275,17 @@ final public class WebPage implements Comparable<WebPage>, WebAsset {
     public void setContent(@Nullable ByteBuffer value) {
         synchronized (CONTENT_MONITOR) {
             if (value != null) {
-                page.setContent(value);
+                ContentStorageMode mode = getContentStorageMode();
+                if (mode == ContentStorageMode.COMPRESSED) {
+                    compressedContent = CompressedContent.compress(value);
+                    page.setContent(null);
+                } else {
+                    compressedContent = null;
+                    page.setContent(mode == ContentStorageMode.DIRECT ? PageContents.toDirect(value) : value);
+                }
                 isContentUpdated = true;
 
-                long length = value.array().length;
+                long length = value.remaining();
                 // save the length of the persisted content,
                 // so we can query the length without loading the big or even huge content field
                 setPersistedContentLength(length);
@@ -1191,7 +1293,7 @@ final public class WebPage implements Comparable<WebPage>, WebAsset {
                 length = getOriginalContentLength();
                 if (length <= 0) {
                     // TODO: it's for old version compatible
-                    length = value.array().length;
+                    length = value.remaining();
                 }
                 computeContentLength(length);
             } else {
@@ -1205,7 +1307,12 @@ final public class WebPage implements Comparable<WebPage>, WebAsset {
      * */
     public void clearPersistContent() {
         synchronized (CONTENT_MONITOR) {
-            tmpContent = page.getContent();
+            if (compressedContent != null) {
+                compressedTmpContent = compressedContent;
+                compressedContent = null;
+            } else {
+                tmpContent = page.getContent();
+            }
             page.setContent(null);
             setPersistedContentLength(0);
             // TODO: check consistency
@@ -1619,7 +1726,9 @@ final public class WebPage implements Comparable<WebPage>, WebAsset {
             if (page.getPageModel() == null && lazyFieldLoader != null && !lazyLoadedFields.contains(fieldName)) {
                 lazyLoadedFields.add(fieldName);
                 GWebPage lazyPage = lazyFieldLoader.apply(fieldName);
-                page.setPageModel(lazyPage.getPageModel());
+                if (lazyPage != null) {
+                    page.setPageModel(lazyPage.getPageModel());
+                }
             }
 
             return page.getPageModel() == null ? null : PageModel.box(page.getPageModel());
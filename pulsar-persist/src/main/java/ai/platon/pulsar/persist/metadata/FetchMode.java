@@ -14,7 +14,12 @@ public enum FetchMode {
     /**
      * Fetch every page using a real browser
      * */
-    BROWSER;
+    BROWSER,
+    /**
+     * Fetch the page using the native fetcher first, and fall back to a real browser if the page
+     * requires script rendering
+     * */
+    AUTO;
 
     /**
      * <p>fromString.</p>
@@ -52,22 +52,23 @@ class AutoDetectStorageProvider(val conf: ImmutableConfig) {
             }
 
             val dryRun = conf.getBoolean(CapabilityTypes.DRY_RUN, false)
+            val fileBackendStoreClass = detectFileBackendStoreClassName(conf)
             val isDistributedFs = conf["fs.defaultFS", ""].startsWith("hdfs://")
             var dataStoreClass = when {
                 SystemUtils.IS_OS_WINDOWS -> when {
-                    dryRun -> FILE_BACKEND_STORE_CLASS
+                    dryRun -> fileBackendStoreClass
                     Runtimes.checkIfProcessRunning(".*mongod.exe .+") -> MONGO_STORE_CLASS
-                    else -> FILE_BACKEND_STORE_CLASS
+                    else -> fileBackendStoreClass
                 }
                 SystemUtils.IS_OS_LINUX -> when {
-                    dryRun -> FILE_BACKEND_STORE_CLASS
+                    dryRun -> fileBackendStoreClass
                     isDistributedFs -> HBASE_STORE_CLASS
                     Runtimes.checkIfProcessRunning(".+HMaster.+") -> HBASE_STORE_CLASS
                     Runtimes.checkIfProcessRunning(".+/usr/bin/mongod .+") -> MONGO_STORE_CLASS
                     Runtimes.checkIfProcessRunning(".+/tmp/.+extractmongod .+") -> MONGO_STORE_CLASS
-                    else -> FILE_BACKEND_STORE_CLASS
+                    else -> fileBackendStoreClass
                 }
-                else -> FILE_BACKEND_STORE_CLASS
+                else -> fileBackendStoreClass
             }
 
             /**
@@ -75,12 +76,22 @@ class AutoDetectStorageProvider(val conf: ImmutableConfig) {
              * */
             if (MONGO_STORE_CLASS == dataStoreClass && !checkIfMongoClientAvailable()) {
                 logger.info("MongoDB is running but mongo client is not available, fallback to FileBackendPageStore")
-                dataStoreClass = FILE_BACKEND_STORE_CLASS
+                dataStoreClass = fileBackendStoreClass
             }
 
             return dataStoreClass
         }
 
+        /**
+         * Return the file backend store class, the sharded store is used
+         * if [CapabilityTypes.STORAGE_FILE_BACKEND_SHARDED] is true.
+         * To use the sharded store unconditionally, set [STORAGE_DATA_STORE_CLASS] to [SHARDED_FILE_BACKEND_STORE_CLASS].
+         * */
+        fun detectFileBackendStoreClassName(conf: ImmutableConfig): String {
+            val sharded = conf.getBoolean(CapabilityTypes.STORAGE_FILE_BACKEND_SHARDED, false)
+            return if (sharded) SHARDED_FILE_BACKEND_STORE_CLASS else FILE_BACKEND_STORE_CLASS
+        }
+
         /**
          * Return the DataStore persistent class used to persist webpages.
          *
@@ -0,0 +1,421 @@
+package ai.platon.pulsar.persist
+
+import java.io.ByteArrayInputStream
+import java.io.InputStream
+import java.lang.ref.Cleaner
+import java.lang.ref.SoftReference
+import java.nio.ByteBuffer
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.atomic.AtomicLong
+import java.util.zip.Deflater
+import java.util.zip.Inflater
+
+/**
+ * Where the page content is kept in memory.
+ * */
+enum class ContentStorageMode {
+    /**
+     * The content is kept in heap byte buffers, which is the default
+     * */
+    HEAP,
+    /**
+     * The content is kept in direct byte buffers carved from shared slabs, it's not counted by the heap,
+     * and a slab is freed once no content carved from it is reachable
+     * */
+    DIRECT,
+    /**
+     * The content is compressed into a pooled direct memory arena, it's decompressed into a heap buffer on the first
+     * read, and the decompressed buffer is kept softly, so the garbage collector can drop it under memory pressure
+     * */
+    COMPRESSED;
+
+    companion object {
+        @JvmStatic
+        fun fromString(name: String?): ContentStorageMode {
+            return values().firstOrNull { it.name.equals(name?.trim(), ignoreCase = true) } ?: HEAP
+        }
+    }
+}
+
+/**
+ * A pooled direct memory arena. Blocks are allocated in size classes, four classes between two powers of two, and
+ * released blocks are kept for reuse until the pool reaches its capacity.
+ * */
+class DirectMemoryArena(
+    /**
+     * The maximum number of bytes kept in the pool for reuse
+     * */
+    val poolCapacity: Long = DEFAULT_POOL_CAPACITY,
+) {
+    companion object {
+        const val MIN_BLOCK_SIZE = 512
+        /**
+         * Blocks larger than this are never pooled
+         * */
+        const val MAX_BLOCK_SIZE = 8 * 1024 * 1024
+        const val DEFAULT_POOL_CAPACITY = 256L * 1024 * 1024
+
+        private const val SUB_CLASSES = 4
+        private val MIN_SHIFT = Integer.numberOfTrailingZeros(MIN_BLOCK_SIZE)
+        private val NUM_SIZE_CLASSES = sizeClass(MAX_BLOCK_SIZE) + 1
+
+        /**
+         * The size of the block to hold [size] bytes.
+         * */
+        fun blockSize(size: Int): Int {
+            val n = size.coerceAtLeast(MIN_BLOCK_SIZE)
+            if (Integer.bitCount(n) == 1) {
+                return n
+            }
+
+            val step = Integer.highestOneBit(n - 1) / SUB_CLASSES
+            return (n + step - 1) / step * step
+        }
+
+        private fun sizeClass(blockSize: Int): Int {
+            val base = Integer.highestOneBit(blockSize)
+            val sub = (blockSize - base) / (base / SUB_CLASSES)
+            return (Integer.numberOfTrailingZeros(base) - MIN_SHIFT) * SUB_CLASSES + sub
+        }
+    }
+
+    private val freeBlocks = Array(NUM_SIZE_CLASSES) { ConcurrentLinkedQueue<ByteBuffer>() }
+
+    /**
+     * The bytes allocated from the system and not garbage collected yet
+     * */
+    val allocatedBytes = AtomicLong()
+    /**
+     * The bytes in use
+     * */
+    val usedBytes = AtomicLong()
+    /**
+     * The bytes kept in the pool for reuse
+     * */
+    val pooledBytes = AtomicLong()
+
+    /**
+     * Allocate a block with at least [size] bytes, the block's limit is set to [size].
+     * */
+    fun allocate(size: Int): ByteBuffer {
+        require(size >= 0) { "Negative size $size" }
+
+        val block = if (size > MAX_BLOCK_SIZE) {
+            allocatedBytes.addAndGet(size.toLong())
+            ByteBuffer.allocateDirect(size)
+        } else {
+            val blockSize = blockSize(size)
+            val pooled = freeBlocks[sizeClass(blockSize)].poll()
+            if (pooled != null) {
+                pooledBytes.addAndGet(-pooled.capacity().toLong())
+                pooled
+            } else {
+                allocatedBytes.addAndGet(blockSize.toLong())
+                ByteBuffer.allocateDirect(blockSize)
+            }
+        }
+
+        usedBytes.addAndGet(block.capacity().toLong())
+        return block.clear().limit(size)
+    }
+
+    /**
+     * Return a block to the arena, the block must not be accessed after it's released.
+     * */
+    fun release(block: ByteBuffer) {
+        val capacity = block.capacity().toLong()
+        usedBytes.addAndGet(-capacity)
+
+        val poolable = block.capacity() <= MAX_BLOCK_SIZE && blockSize(block.capacity()) == block.capacity()
+        if (poolable && pooledBytes.addAndGet(capacity) <= poolCapacity) {
+            freeBlocks[sizeClass(block.capacity())].offer(block)
+        } else {
+            if (poolable) {
+                pooledBytes.addAndGet(-capacity)
+            }
+            // the memory is freed when the buffer is garbage collected
+            allocatedBytes.addAndGet(-capacity)
+        }
+    }
+
+    override fun toString(): String {
+        return "allocated: ${allocatedBytes.get()} used: ${usedBytes.get()} pooled: ${pooledBytes.get()}"
+    }
+}
+
+/**
+ * The page content compressed into a block of a [DirectMemoryArena], the block never escapes, so it's returned to
+ * the arena as soon as the object becomes unreachable.
+ * */
+class CompressedContent private constructor(
+    private val block: ByteBuffer,
+    /**
+     * The length of the uncompressed content in bytes
+     * */
+    val length: Int,
+) {
+    /**
+     * The decompressed content, it's kept softly, so the garbage collector can drop it under memory pressure
+     * */
+    @Volatile
+    private var decompressed: SoftReference<ByteBuffer>? = null
+
+    /**
+     * The length of the compressed content in bytes
+     * */
+    val compressedLength get() = block.limit()
+
+    /**
+     * Decompress the content into a heap buffer. The buffer is kept softly, so the content is decompressed only
+     * once if it's read many times, every call returns a new view of the buffer.
+     * */
+    fun decompress(): ByteBuffer {
+        val cached = decompressed?.get()
+        if (cached != null) {
+            return cached.duplicate()
+        }
+
+        val buffer = ByteBuffer.wrap(toBytes())
+        decompressed = SoftReference(buffer)
+        PageContents.decompressions.incrementAndGet()
+        return buffer.duplicate()
+    }
+
+    /**
+     * Decompress the content into a new byte array.
+     * */
+    fun toBytes(): ByteArray {
+        val bytes = ByteArray(length)
+        val inflater = Inflater()
+        try {
+            inflater.setInput(block.duplicate())
+            var n = 0
+            while (n < length && !inflater.finished()) {
+                n += inflater.inflate(bytes, n, length - n)
+            }
+        } finally {
+            inflater.end()
+        }
+        return bytes
+    }
+
+    /**
+     * Decode the content to a string, the decompressed buffer is reused if it's still kept.
+     * */
+    fun decodeToString() = PageContents.decodeToString(decompress())
+
+    private class Releaser(private val block: ByteBuffer) : Runnable {
+        override fun run() = PageContents.arena.release(block)
+    }
+
+    companion object {
+        private const val SCRATCH_SIZE = 64 * 1024
+        /**
+         * The scratch buffer of a thread grows up to this size, larger outputs use transient arrays
+         * */
+        private const val MAX_SCRATCH_SIZE = 1024 * 1024
+
+        private val cleaner = Cleaner.create()
+        private val scratch = ThreadLocal.withInitial { ByteArray(SCRATCH_SIZE) }
+
+        /**
+         * Compress the remaining bytes of [content] into the shared arena, [content] is not modified.
+         * */
+        @JvmStatic
+        fun compress(content: ByteBuffer): CompressedContent {
+            val length = content.remaining()
+            var out = scratch.get()
+            val deflater = Deflater(Deflater.BEST_SPEED)
+            var n = 0
+            try {
+                deflater.setInput(content.duplicate())
+                deflater.finish()
+                while (!deflater.finished()) {
+                    if (n == out.size) {
+                        out = out.copyOf(out.size * 2)
+                        if (out.size <= MAX_SCRATCH_SIZE) {
+                            scratch.set(out)
+                        }
+                    }
+                    n += deflater.deflate(out, n, out.size - n)
+                }
+            } finally {
+                deflater.end()
+            }
+
+            val block = PageContents.arena.allocate(n)
+            block.put(out, 0, n).flip()
+
+            val compressed = CompressedContent(block, length)
+            cleaner.register(compressed, Releaser(block))
+            PageContents.compressedContents.incrementAndGet()
+            PageContents.compressedBytes.addAndGet(n.toLong())
+            PageContents.uncompressedBytes.addAndGet(length.toLong())
+            return compressed
+        }
+    }
+}
+
+/**
+ * Utilities for page contents in any [ContentStorageMode].
+ * */
+object PageContents {
+    /**
+     * The arena of the compressed contents
+     * */
+    val arena = DirectMemoryArena()
+    /**
+     * The number of contents ever compressed
+     * */
+    val compressedContents = AtomicLong()
+    val compressedBytes = AtomicLong()
+    val uncompressedBytes = AtomicLong()
+    /**
+     * The number of times a compressed content is decompressed
+     * */
+    val decompressions = AtomicLong()
+    /**
+     * The direct bytes allocated in DIRECT mode and not garbage collected yet
+     * */
+    val directBytes = AtomicLong()
+    /**
+     * The number of direct buffers allocated from the system in DIRECT mode
+     * */
+    val directAllocations = AtomicLong()
+
+    /**
+     * The size of a slab to carve the direct contents from
+     * */
+    const val SLAB_SIZE = 4 * 1024 * 1024
+    /**
+     * Contents larger than this are allocated in their own direct buffers
+     * */
+    const val MAX_SLAB_ALLOCATION = SLAB_SIZE / 4
+
+    private val cleaner = Cleaner.create()
+    private val slabLock = Any()
+    private var slab: ByteBuffer? = null
+
+    private class DirectBytesCounter(private val bytes: Long) : Runnable {
+        override fun run() {
+            directBytes.addAndGet(-bytes)
+        }
+    }
+
+    /**
+     * Copy the remaining bytes of [content] to a direct buffer.
+     *
+     * Small contents are carved from shared slabs, so a page costs no system allocation. The buffers are exposed
+     * to the stores and the parsers, so they are never reused, a slab is freed when all the contents carved from it,
+     * and all the views of them, are garbage collected.
+     * */
+    @JvmStatic
+    fun toDirect(content: ByteBuffer): ByteBuffer {
+        if (content.isDirect) {
+            return content
+        }
+
+        val length = content.remaining()
+        val buffer = if (length > MAX_SLAB_ALLOCATION) allocateDirect(length) else carve(length)
+        buffer.put(content.duplicate()).flip()
+        return buffer
+    }
+
+    private fun carve(length: Int): ByteBuffer {
+        synchronized(slabLock) {
+            var s = slab
+            if (s == null || s.remaining() < length) {
+                s = allocateDirect(SLAB_SIZE)
+                slab = s
+            }
+
+            val start = s.position()
+            s.position(start + length)
+            return s.duplicate().position(start).limit(start + length).slice()
+        }
+    }
+
+    private fun allocateDirect(size: Int): ByteBuffer {
+        val buffer = ByteBuffer.allocateDirect(size)
+        // views of the buffer refer to it, so it's unreachable only if no view is reachable
+        cleaner.register(buffer, DirectBytesCounter(size.toLong()))
+        directBytes.addAndGet(size.toLong())
+        directAllocations.incrementAndGet()
+        return buffer
+    }
+
+    /**
+     * Copy the remaining bytes of [content] to a new array, it works for both heap and direct buffers.
+     * */
+    @JvmStatic
+    fun toBytes(content: ByteBuffer): ByteArray {
+        val bytes = ByteArray(content.remaining())
+        content.duplicate().get(bytes)
+        return bytes
+    }
+
+    /**
+     * Decode the remaining bytes of [content] to a string using the platform charset, no copy of the bytes is made
+     * if [content] is backed by an array.
+     * */
+    @JvmStatic
+    fun decodeToString(content: ByteBuffer): String {
+        return if (content.hasArray()) {
+            String(content.array(), content.arrayOffset() + content.position(), content.remaining())
+        } else {
+            String(toBytes(content))
+        }
+    }
+
+    /**
+     * An input stream over the remaining bytes of [content], no copy of the bytes is made. The stream supports
+     * mark and reset.
+     * */
+    @JvmStatic
+    fun newInputStream(content: ByteBuffer): InputStream {
+        return if (content.hasArray()) {
+            ByteArrayInputStream(content.array(), content.arrayOffset() + content.position(), content.remaining())
+        } else {
+            ByteBufferInputStream(content.duplicate())
+        }
+    }
+
+    private class ByteBufferInputStream(private val buffer: ByteBuffer) : InputStream() {
+        private var mark = buffer.position()
+
+        override fun read(): Int = if (buffer.hasRemaining()) buffer.get().toInt() and 0xff else -1
+
+        override fun read(b: ByteArray, off: Int, len: Int): Int {
+            if (len == 0) {
+                return 0
+            }
+            if (!buffer.hasRemaining()) {
+                return -1
+            }
+
+            val n = minOf(len, buffer.remaining())
+            buffer.get(b, off, n)
+            return n
+        }
+
+        override fun skip(n: Long): Long {
+            val skipped = n.coerceIn(0, buffer.remaining().toLong()).toInt()
+            buffer.position(buffer.position() + skipped)
+            return skipped.toLong()
+        }
+
+        override fun available() = buffer.remaining()
+
+        override fun markSupported() = true
+
+        @Synchronized
+        override fun mark(readlimit: Int) {
+            mark = buffer.position()
+        }
+
+        @Synchronized
+        override fun reset() {
+            buffer.position(mark)
+        }
+    }
+}
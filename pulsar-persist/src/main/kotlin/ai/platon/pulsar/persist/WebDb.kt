@@ -2,7 +2,10 @@ package ai.platon.pulsar.persist
 
 import ai.platon.pulsar.common.brief
 import ai.platon.pulsar.common.config.AppConstants.UNICODE_LAST_CODE_POINT
+import ai.platon.pulsar.common.concurrent.ConcurrentExpiringLRUCache
+import ai.platon.pulsar.common.config.AppConstants
 import ai.platon.pulsar.common.config.ImmutableConfig
+import ai.platon.pulsar.common.metrics.hdrTimer
 import ai.platon.pulsar.common.stringify
 import ai.platon.pulsar.common.urls.UrlUtils
 import ai.platon.pulsar.common.urls.UrlUtils.reverseUrlOrNull
@@ -12,9 +15,12 @@ import ai.platon.pulsar.persist.gora.generated.GWebPage
 import org.apache.gora.filter.Filter
 import org.apache.gora.filter.FilterOp
 import org.apache.gora.filter.SingleFieldValueFilter
+import com.codahale.metrics.SharedMetricRegistries
 import org.apache.gora.store.DataStore
 import org.slf4j.LoggerFactory
 import java.nio.ByteBuffer
+import java.time.Duration
+import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.TimeUnit
 import java.util.concurrent.atomic.AtomicBoolean
 import java.util.concurrent.atomic.AtomicLong
@@ -36,12 +42,58 @@ class WebDb(
         val accumulatePutNanos = AtomicLong()
         val dbPutAveMillis get() = TimeUnit.MILLISECONDS.convert(
             accumulatePutNanos.get(),  TimeUnit.NANOSECONDS) / dbPutCount.get().coerceAtLeast(1)
+
+        private val metrics = SharedMetricRegistries.getOrCreate(AppConstants.DEFAULT_METRICS_NAME)
+        /**
+         * The latency distributions of the storage round trips
+         * */
+        val dbGetTimer = metrics.hdrTimer("c.i.WebDb.t.get")
+        val dbPutTimer = metrics.hdrTimer("c.i.WebDb.t.put")
+
+        /**
+         * The number of batched queries issued by [getAll] and [prefetch]
+         * */
+        val dbBatchGetCount = AtomicLong()
+        /**
+         * The number of gets served by prefetched pages
+         * */
+        val dbPrefetchHits = AtomicLong()
+        /**
+         * The number of round trips to the storage by field,
+         * a round trip retrieving all fields is counted as [ALL_FIELDS]
+         * */
+        val dbFieldRoundTrips = ConcurrentHashMap<String, AtomicLong>()
+
+        const val ALL_FIELDS = "*"
+
+        /**
+         * The prefetched pages are kept for a short while, and are dropped once they are consumed
+         * */
+        val PREFETCH_TTL: Duration = Duration.ofMinutes(2)
+        const val PREFETCH_CAPACITY = 10_000
+
+        /**
+         * A range query for n keys reads at most n * [MAX_SCAN_SPAN_FACTOR] rows, so a few keys scattered over
+         * a large host do not scan the whole host, the keys not reached are retrieved by point gets
+         * */
+        const val MAX_SCAN_SPAN_FACTOR = 4
+    }
+
+    /**
+     * A page fetched ahead of time, with the fields retrieved, null fields means all fields are retrieved.
+     * */
+    private class PrefetchedPage(val page: GWebPage, val fields: Set<String>?) {
+        fun covers(requiredFields: Array<String>?): Boolean {
+            return fields == null || (requiredFields != null && fields.containsAll(requiredFields.asList()))
+        }
     }
 
     private val logger = LoggerFactory.getLogger(WebDb::class.java)
     private val tracer = logger.takeIf { it.isTraceEnabled }
     private val closed = AtomicBoolean()
 
+    private val prefetchedPages = ConcurrentExpiringLRUCache<String, PrefetchedPage>(PREFETCH_TTL, PREFETCH_CAPACITY)
+
     var specifiedDataStore: DataStore<String, GWebPage>? = null
 
     private val dataStoreDelegate = lazy { specifiedDataStore ?: AutoDetectStorageProvider(conf).createPageStore() }
@@ -163,6 +215,71 @@ class WebDb(
         }
     }
 
+    /**
+     * Returns the WebPages corresponding to the given urls.
+     *
+     * Keys sharing the same reversed host are retrieved by one range query, so a batch of pages costs one round trip
+     * per host rather than one round trip per page.
+     *
+     * @param originalUrls the original urls of the pages
+     * @param fields the fields required in the WebPages
+     * @return the found WebPages, keyed by the original urls
+     */
+    @Throws(WebDBException::class)
+    fun getAll(originalUrls: Iterable<String>, fields: Iterable<GWebPage.Field>): Map<String, WebPage> {
+        return getAll(originalUrls, false, fields.map { it.toString() }.toTypedArray())
+    }
+
+    /**
+     * Returns the WebPages corresponding to the given urls.
+     *
+     * Keys sharing the same reversed host are retrieved by one range query, so a batch of pages costs one round trip
+     * per host rather than one round trip per page.
+     *
+     * @param originalUrls the original urls of the pages
+     * @param fields the fields required in the WebPages. Pass null to retrieve all fields
+     * @return the found WebPages, keyed by the original urls
+     */
+    @Throws(WebDBException::class)
+    fun getAll(
+        originalUrls: Iterable<String>, norm: Boolean = false, fields: Array<String>? = null
+    ): Map<String, WebPage> {
+        val urlsAndKeys = originalUrls.associateWith { UrlUtils.normalizedUrlAndKey(it, norm) }
+            .filterValues { it.second.isNotBlank() }
+        val pages = getAll0(urlsAndKeys.values.map { it.second }, fields)
+
+        val result = LinkedHashMap<String, WebPage>()
+        urlsAndKeys.forEach { (originalUrl, urlAndKey) ->
+            val (url, key) = urlAndKey
+            val page = pages[key] ?: return@forEach
+            result[originalUrl] = WebPage.box(url, key, page, conf.toVolatileConfig()).also { it.isLoaded = true }
+        }
+
+        return result
+    }
+
+    /**
+     * Retrieve the pages in a batch ahead of time. The next [getOrNull] call for each url is served from
+     * the prefetched page without a round trip to the storage, if the prefetched fields cover the required fields.
+     *
+     * @param originalUrls the original urls of the pages
+     * @param fields the fields to prefetch. Pass null to prefetch all fields
+     * @return the number of prefetched pages
+     */
+    @Throws(WebDBException::class)
+    fun prefetch(originalUrls: Iterable<String>, norm: Boolean = false, fields: Array<String>? = null): Int {
+        val keys = originalUrls.map { UrlUtils.normalizedUrlAndKey(it, norm).second }.filter { it.isNotBlank() }
+        val pages = getAll0(keys, fields)
+        val fieldSet = fields?.toSet()
+        pages.forEach { (key, page) -> prefetchedPages.putDatum(key, PrefetchedPage(page, fieldSet)) }
+        return pages.size
+    }
+
+    @Throws(WebDBException::class)
+    fun prefetch(originalUrls: Iterable<String>, fields: Iterable<GWebPage.Field>): Int {
+        return prefetch(originalUrls, false, fields.map { it.toString() }.toTypedArray())
+    }
+
     @Throws(WebDBException::class)
     @JvmOverloads
     fun put(page: WebPage, replaceIfExists: Boolean = false) = putInternal(page, replaceIfExists)
@@ -184,6 +301,9 @@ class WebDb(
             return false
         }
 
+        // the prefetched page is stale once the page is written
+        prefetchedPages.remove(key)
+
         if (replaceIfExists) {
             performDSAction("put") { dataStore.delete(key) }
         }
@@ -191,9 +311,11 @@ class WebDb(
         tracer?.trace("Putting {} {} {} {}", page.fetchCount, page.prevFetchTime, page.fetchTime, key)
 
         val startTime = System.nanoTime()
-        performDSAction("put") { dataStore.put(key, page.unbox()) }
+        performDSAction("put") { dataStore.put(key, page.unboxForPersistence()) }
+        val elapsed = System.nanoTime() - startTime
         dbPutCount.incrementAndGet()
-        accumulatePutNanos.addAndGet(System.nanoTime() - startTime)
+        accumulatePutNanos.addAndGet(elapsed)
+        dbPutTimer.update(elapsed, TimeUnit.NANOSECONDS)
 
         return true
     }
@@ -209,6 +331,7 @@ class WebDb(
             return false
         }
 
+        prefetchedPages.remove(key)
         return performDSAction("delete", originalUrl) { dataStore.delete(key) }
     }
 
@@ -216,6 +339,7 @@ class WebDb(
     @Throws(WebDBException::class)
     fun truncate(force: Boolean = false): Boolean {
         val schemaName = dataStore.schemaName
+        prefetchedPages.clear()
         if (force) {
             performDSAction("truncate") { dataStore.truncateSchema() }
             logger.info("Schema $schemaName is truncated")
@@ -372,21 +496,125 @@ class WebDb(
     @Throws(WebDBException::class)
     private fun getOrNull0(originalUrl: String, norm: Boolean = false, fields: Array<String>? = null): GWebPage? {
         val (_, key) = UrlUtils.normalizedUrlAndKey(originalUrl, norm)
+        return getByKey0(key, fields, originalUrl)
+    }
 
+    @Throws(WebDBException::class)
+    private fun getByKey0(key: String, fields: Array<String>?, originalUrl: String? = null): GWebPage? {
         tracer?.trace("Getting $key")
 
+        val prefetched = getPrefetched(key, fields)
+        if (prefetched != null) {
+            dbPrefetchHits.incrementAndGet()
+            return prefetched
+        }
+
         val startTime = System.nanoTime()
 
         val page = performDSAction("get", originalUrl) {
             fields?.let { dataStore.get(key, it) } ?: dataStore.get(key)
         }
 
+        val elapsed = System.nanoTime() - startTime
         dbGetCount.incrementAndGet()
-        accumulateGetNanos.addAndGet(System.nanoTime() - startTime)
+        accumulateGetNanos.addAndGet(elapsed)
+        dbGetTimer.update(elapsed, TimeUnit.NANOSECONDS)
+        countRoundTrip(fields)
 
         return page
     }
 
+    /**
+     * Consume the prefetched page if the prefetched fields cover the required fields.
+     * */
+    private fun getPrefetched(key: String, fields: Array<String>?): GWebPage? {
+        if (prefetchedPages.size == 0) {
+            return null
+        }
+
+        val item = prefetchedPages.remove(key) ?: return null
+        if (item.datum.covers(fields)) {
+            return item.datum.page
+        }
+
+        // put it back, the prefetched fields might be required later
+        prefetchedPages.put(key, item)
+        return null
+    }
+
+    /**
+     * Retrieve the pages by keys. Keys sharing the same reversed host are retrieved by one range query,
+     * the keys not found in the range query are retrieved one by one.
+     * */
+    @Throws(WebDBException::class)
+    private fun getAll0(keys: Collection<String>, fields: Array<String>?): Map<String, GWebPage> {
+        val pages = HashMap<String, GWebPage>()
+
+        // the reversed url starts with the reversed host, for example, com.example.www:https/item/1
+        keys.distinct().groupBy { it.substringBefore(':') }.values
+            .filter { it.size > 1 }
+            .forEach { pages.putAll(query0(it, fields)) }
+
+        keys.filterNot { it in pages }.distinct().forEach { key ->
+            getByKey0(key, fields)?.let { pages[key] = it }
+        }
+
+        return pages
+    }
+
+    /**
+     * Retrieve the pages with one range query, the range is from the minimal key to the maximal key,
+     * and at most keys.size * [MAX_SCAN_SPAN_FACTOR] rows are read.
+     * */
+    @Throws(WebDBException::class)
+    private fun query0(keys: List<String>, fields: Array<String>?): Map<String, GWebPage> {
+        val requiredKeys = keys.toHashSet()
+        val pages = HashMap<String, GWebPage>()
+
+        val maxRows = keys.size.toLong() * MAX_SCAN_SPAN_FACTOR
+        val query = dataStore.newQuery()
+        query.startKey = keys.minOrNull()
+        query.endKey = keys.maxOrNull()
+        query.limit = maxRows
+        fields?.let { query.setFields(*it) }
+
+        tracer?.trace("Getting {} pages in range {} - {}", keys.size, query.startKey, query.endKey)
+
+        val startTime = System.nanoTime()
+        val result = performDSAction("getAll") { dataStore.execute(query) }
+        try {
+            var rows = 0L
+            // not every store respects the limit, so count the rows too
+            while (pages.size < requiredKeys.size && rows++ < maxRows && result.next()) {
+                val key = result.key
+                if (key in requiredKeys) {
+                    // the stores reuse the result object and clear it before the next row is read, so keep a copy
+                    pages[key] = GWebPage.newBuilder(result.get()).build()
+                }
+            }
+        } catch (e: Exception) {
+            // the keys not found are retrieved one by one later
+            logger.warn(e.brief("Failed to get pages in batch - "))
+        } finally {
+            result.runCatching { close() }
+        }
+
+        dbBatchGetCount.incrementAndGet()
+        dbGetCount.incrementAndGet()
+        accumulateGetNanos.addAndGet(System.nanoTime() - startTime)
+        countRoundTrip(fields)
+
+        return pages
+    }
+
+    private fun countRoundTrip(fields: Array<String>?) {
+        if (fields == null) {
+            dbFieldRoundTrips.computeIfAbsent(ALL_FIELDS) { AtomicLong() }.incrementAndGet()
+        } else {
+            fields.forEach { dbFieldRoundTrips.computeIfAbsent(it) { AtomicLong() }.incrementAndGet() }
+        }
+    }
+
     private fun createBatchIdFilter(
         batchId: CharSequence?, filterIfMissing: Boolean = false
     ): SingleFieldValueFilter<String, GWebPage> {
@@ -5,6 +5,7 @@ import ai.platon.pulsar.common.brief
 import ai.platon.pulsar.common.config.VolatileConfig
 import ai.platon.pulsar.common.urls.UrlUtils
 import ai.platon.pulsar.persist.CrawlStatus
+import ai.platon.pulsar.persist.PageContents
 import ai.platon.pulsar.persist.ProtocolStatus
 import ai.platon.pulsar.persist.WebPage
 import ai.platon.pulsar.persist.gora.generated.GWebPage
@@ -122,15 +123,15 @@ class FileBackendPageStore(
         val content = page.content ?: return
         val path = getPersistPath(page.url, ".htm")
 
-        logger.takeIf { it.isTraceEnabled }?.trace("Putting ${page.content?.array()?.size} | $path")
-        Files.write(path, content.array())
+        logger.takeIf { it.isTraceEnabled }?.trace("Putting ${content.remaining()} | $path")
+        Files.write(path, PageContents.toBytes(content))
     }
 
     @Synchronized
     fun writeAvro(page: WebPage) {
         val path = getPersistPath(page.url, ".avro")
 
-        logger.takeIf { it.isTraceEnabled }?.trace("Putting ${page.content?.array()?.size} | $path")
+        logger.takeIf { it.isTraceEnabled }?.trace("Putting ${page.unbox().content?.remaining()} | $path")
 
         Files.deleteIfExists(path)
         try {
@@ -0,0 +1,386 @@
+package ai.platon.pulsar.persist.gora
+
+import ai.platon.pulsar.common.AppPaths
+import ai.platon.pulsar.common.brief
+import ai.platon.pulsar.common.urls.UrlUtils
+import ai.platon.pulsar.persist.gora.generated.GWebPage
+import com.google.common.util.concurrent.ThreadFactoryBuilder
+import org.apache.avro.io.DecoderFactory
+import org.apache.avro.io.EncoderFactory
+import org.apache.avro.specific.SpecificDatumReader
+import org.apache.avro.specific.SpecificDatumWriter
+import org.apache.gora.memory.store.MemStore
+import org.slf4j.LoggerFactory
+import java.io.*
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption
+import java.util.concurrent.ArrayBlockingQueue
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.locks.ReentrantLock
+import kotlin.concurrent.withLock
+
+/**
+ * The location of a page record in a shard.
+ * */
+data class PageRecordLocation(val segment: Int, val offset: Long, val length: Int)
+
+/**
+ * A page record waiting to be written.
+ * */
+private class PendingPageRecord(val reversedUrl: String, val url: String, val avro: ByteArray, val html: ByteArray?)
+
+/**
+ * A directory shard of the [ShardedFileBackendPageStore].
+ *
+ * Pages are appended to segment files in Avro binary encoding, and the location of every page is appended
+ * to an index log. The index is loaded into memory when the shard is opened.
+ * */
+private class PageStoreShard(
+    val directory: Path,
+    private val segmentSize: Long,
+    queueCapacity: Int,
+) : Closeable {
+    companion object {
+        const val INDEX_FILE = "index.log"
+        const val SEGMENT_SUFFIX = ".seg"
+        const val TOMBSTONE = -1
+        const val MAX_KEY_LENGTH = 64 * 1024
+    }
+
+    private val logger = LoggerFactory.getLogger(PageStoreShard::class.java)
+
+    val queue = ArrayBlockingQueue<PendingPageRecord>(queueCapacity)
+    val index = ConcurrentHashMap<String, PageRecordLocation>()
+    private val channels = ConcurrentHashMap<Int, FileChannel>()
+    private val writeLock = ReentrantLock()
+    private val indexWriter: DataOutputStream
+
+    @Volatile
+    private var segment = 0
+    private var segmentLength = 0L
+
+    init {
+        Files.createDirectories(directory)
+        loadIndex()
+
+        segment = Files.list(directory).use { paths ->
+            paths.map { it.fileName.toString() }.filter { it.endsWith(SEGMENT_SUFFIX) }
+                .mapToInt { it.removeSuffix(SEGMENT_SUFFIX).toIntOrNull() ?: 0 }.max().orElse(0)
+        }
+        segmentLength = channel(segment).size()
+
+        val indexPath = directory.resolve(INDEX_FILE)
+        indexWriter = DataOutputStream(BufferedOutputStream(
+            Files.newOutputStream(indexPath, StandardOpenOption.CREATE, StandardOpenOption.APPEND)))
+    }
+
+    /**
+     * Read the page record with one positioned read.
+     * */
+    fun read(location: PageRecordLocation): ByteArray {
+        val buffer = ByteBuffer.allocate(location.length)
+        val channel = channel(location.segment)
+        var position = location.offset
+        while (buffer.hasRemaining()) {
+            val n = channel.read(buffer, position)
+            if (n < 0) throw EOFException("Unexpected end of segment ${location.segment} in $directory")
+            position += n
+        }
+        return buffer.array()
+    }
+
+    /**
+     * Write all the pending records in one batch.
+     *
+     * @param beforeIndex called for every record after it's written but before it's indexed
+     * @return the number of records written
+     * */
+    fun drain(maxBatch: Int, beforeIndex: (PendingPageRecord) -> Unit): Int {
+        writeLock.withLock {
+            val batch = ArrayList<PendingPageRecord>()
+            queue.drainTo(batch, maxBatch)
+            if (batch.isEmpty()) {
+                return 0
+            }
+
+            if (segmentLength >= segmentSize) {
+                channel(segment).force(false)
+                ++segment
+                segmentLength = 0
+            }
+
+            val channel = channel(segment)
+            val buffer = ByteBuffer.allocate(batch.sumOf { it.avro.size })
+            val locations = batch.map { record ->
+                PageRecordLocation(segment, segmentLength + buffer.position(), record.avro.size)
+                    .also { buffer.put(record.avro) }
+            }
+            buffer.flip()
+            var position = segmentLength
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position)
+            }
+            segmentLength = position
+
+            batch.forEachIndexed { i, record ->
+                beforeIndex(record)
+                writeIndex(record.reversedUrl, locations[i])
+                index[record.reversedUrl] = locations[i]
+            }
+            indexWriter.flush()
+
+            return batch.size
+        }
+    }
+
+    /**
+     * Delete the page. The pending records of the page are dropped, or they would be written after the delete
+     * and bring the page back. The caller holds the stripe lock of the url, so no record of it is queued meanwhile.
+     * */
+    fun delete(reversedUrl: String) {
+        writeLock.withLock {
+            queue.removeIf { it.reversedUrl == reversedUrl }
+            if (index.remove(reversedUrl) != null) {
+                writeIndex(reversedUrl, PageRecordLocation(TOMBSTONE, 0, 0))
+                indexWriter.flush()
+            }
+        }
+    }
+
+    override fun close() {
+        writeLock.withLock {
+            kotlin.runCatching { indexWriter.close() }.onFailure { logger.warn(it.brief()) }
+            channels.values.forEach { kotlin.runCatching { it.force(false); it.close() } }
+            channels.clear()
+        }
+    }
+
+    private fun channel(segment: Int): FileChannel {
+        return channels.computeIfAbsent(segment) {
+            val path = directory.resolve(String.format("%06d%s", it, SEGMENT_SUFFIX))
+            FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)
+        }
+    }
+
+    private fun writeIndex(reversedUrl: String, location: PageRecordLocation) {
+        val key = reversedUrl.toByteArray(Charsets.UTF_8)
+        indexWriter.writeInt(key.size)
+        indexWriter.write(key)
+        indexWriter.writeInt(location.segment)
+        indexWriter.writeLong(location.offset)
+        indexWriter.writeInt(location.length)
+    }
+
+    private fun loadIndex() {
+        val path = directory.resolve(INDEX_FILE)
+        if (!Files.exists(path)) {
+            return
+        }
+
+        var validLength = 0L
+        DataInputStream(BufferedInputStream(Files.newInputStream(path))).use {
+            try {
+                while (true) {
+                    val keyLength = it.readInt()
+                    if (keyLength !in 1..MAX_KEY_LENGTH) break
+                    val key = ByteArray(keyLength)
+                    it.readFully(key)
+                    val location = PageRecordLocation(it.readInt(), it.readLong(), it.readInt())
+                    val reversedUrl = String(key, Charsets.UTF_8)
+                    if (location.segment == TOMBSTONE) index.remove(reversedUrl) else index[reversedUrl] = location
+                    validLength += 4 + key.size + 16
+                }
+            } catch (e: EOFException) {
+                // the end of the index
+            }
+        }
+
+        // drop the torn record written by a crashed process
+        if (Files.size(path) > validLength) {
+            FileChannel.open(path, StandardOpenOption.WRITE).use { it.truncate(validLength) }
+        }
+    }
+}
+
+/**
+ * A concurrent file backend storage for webpages.
+ *
+ * Unlike [FileBackendPageStore] which serializes all the operations on one monitor, this store:
+ * 1. shards the pages into directories by the hash of the reversed url
+ * 2. uses url-hash striped locks, so only operations on the same stripe are serialized
+ * 3. writes pages behind: a put serializes the page and offers it to a bounded queue of the shard,
+ *    a background thread appends the queued pages of a shard to a segment file in one batch
+ * 4. keeps an on-disk index from reversed url to (segment, offset), so a get does one positioned read
+ *
+ * Pages written by [FileBackendPageStore] are still readable.
+ * */
+class ShardedFileBackendPageStore(
+    private val persistDirectory: Path = AppPaths.LOCAL_STORAGE_DIR,
+    /**
+     * The number of directory shards, rounded up to a power of 2
+     * */
+    numShards: Int = 16,
+    /**
+     * The capacity of the write-behind queue of each shard, a put blocks if the queue is full
+     * */
+    queueCapacity: Int = 1000,
+    /**
+     * The max number of pages written in one batch
+     * */
+    private val maxBatch: Int = 200,
+    /**
+     * The size to roll a segment file
+     * */
+    segmentSize: Long = 256L * 1024 * 1024,
+) : MemStore<String, GWebPage>() {
+
+    private val logger = LoggerFactory.getLogger(ShardedFileBackendPageStore::class.java)
+
+    private val shardMask = Integer.highestOneBit((numShards - 1).coerceAtLeast(1)) * 2 - 1
+    private val shards = Array(shardMask + 1) {
+        PageStoreShard(persistDirectory.resolve("shards").resolve(String.format("%03d", it)), segmentSize, queueCapacity)
+    }
+    private val locks = Array(64) { ReentrantLock() }
+    private val legacyStore = FileBackendPageStore(persistDirectory)
+    private val writer = ThreadLocal.withInitial { SpecificDatumWriter(GWebPage::class.java) }
+    private val reader = ThreadLocal.withInitial { SpecificDatumReader(GWebPage::class.java) }
+
+    private val closed = AtomicBoolean()
+    private val flusher = Executors.newSingleThreadExecutor(
+        ThreadFactoryBuilder().setNameFormat("fbs-%d").setDaemon(true).build()
+    )
+
+    init {
+        flusher.submit { runFlushLoop() }
+    }
+
+    /**
+     * The number of pages waiting to be written.
+     * */
+    val pendingCount get() = shards.sumOf { it.queue.size }
+
+    /**
+     * The number of indexed pages.
+     * */
+    val indexedCount get() = shards.sumOf { it.index.size }
+
+    override fun get(reversedUrl: String, vararg fields: String): GWebPage? {
+        val page = map[reversedUrl] as? GWebPage
+        if (page != null) {
+            return page
+        }
+
+        val location = shard(reversedUrl).index[reversedUrl]
+        if (location != null) {
+            try {
+                return decode(shard(reversedUrl).read(location))
+            } catch (e: IOException) {
+                logger.warn("Failed to read page {} | {}", reversedUrl, e.brief())
+            }
+        }
+
+        return legacyStore.readAvro(reversedUrl) ?: legacyStore.readHtml(reversedUrl)
+    }
+
+    override fun exists(reversedUrl: String): Boolean {
+        return map.containsKey(reversedUrl) || shard(reversedUrl).index.containsKey(reversedUrl)
+    }
+
+    override fun put(reversedUrl: String, page: GWebPage) {
+        val url = UrlUtils.unreverseUrlOrNull(reversedUrl) ?: return super.put(reversedUrl, page)
+
+        lock(reversedUrl).withLock {
+            super.put(reversedUrl, page)
+            val html = page.content?.let { content -> ByteArray(content.remaining()).also { content.duplicate().get(it) } }
+            // the same url is always queued to the same shard in the order of the puts
+            shard(reversedUrl).queue.put(PendingPageRecord(reversedUrl, url, encode(page), html))
+        }
+    }
+
+    override fun delete(reversedUrl: String): Boolean {
+        lock(reversedUrl).withLock {
+            shard(reversedUrl).delete(reversedUrl)
+            return super.delete(reversedUrl)
+        }
+    }
+
+    override fun getSchemaName() = "ShardedFileBackendPageStore"
+
+    override fun getFields(): Array<String> = GWebPage._ALL_FIELDS
+
+    /**
+     * Write all the pending pages.
+     * */
+    override fun flush() {
+        shards.forEach { shard ->
+            while (shard.drain(maxBatch, ::writeHtml) > 0) {
+                // drain
+            }
+        }
+    }
+
+    override fun close() {
+        if (closed.compareAndSet(false, true)) {
+            flusher.shutdown()
+            flusher.awaitTermination(30, TimeUnit.SECONDS)
+            flush()
+            shards.forEach { it.close() }
+        }
+    }
+
+    private fun runFlushLoop() {
+        while (!closed.get()) {
+            try {
+                val n = shards.sumOf { it.drain(maxBatch, ::writeHtml) }
+                if (n == 0) {
+                    TimeUnit.MILLISECONDS.sleep(10)
+                }
+            } catch (e: InterruptedException) {
+                Thread.currentThread().interrupt()
+                return
+            } catch (e: Exception) {
+                logger.warn("Failed to write pages | {}", e.brief())
+            }
+        }
+    }
+
+    /**
+     * Records of the same url are always drained by the same shard one by one, so no lock is required.
+     * */
+    private fun writeHtml(record: PendingPageRecord) {
+        val html = record.html ?: return
+        try {
+            Files.write(legacyStore.getPersistPath(record.url, ".htm"), html)
+        } catch (e: IOException) {
+            logger.warn(e.brief())
+        }
+    }
+
+    private fun encode(page: GWebPage): ByteArray {
+        val out = ByteArrayOutputStream()
+        val encoder = EncoderFactory.get().binaryEncoder(out, null)
+        writer.get().write(page, encoder)
+        encoder.flush()
+        return out.toByteArray()
+    }
+
+    private fun decode(bytes: ByteArray): GWebPage {
+        val decoder = DecoderFactory.get().binaryDecoder(bytes, null)
+        return reader.get().read(null, decoder)
+    }
+
+    private fun shard(reversedUrl: String) = shards[spread(reversedUrl) and shardMask]
+
+    private fun lock(reversedUrl: String) = locks[(spread(reversedUrl) ushr 8) and 63]
+
+    private fun spread(key: String): Int {
+        val h = key.hashCode()
+        return h xor (h ushr 16)
+    }
+}
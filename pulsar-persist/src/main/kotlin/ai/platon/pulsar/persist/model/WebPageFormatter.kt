@@ -23,7 +23,6 @@ import ai.platon.pulsar.persist.gora.generated.GFieldGroup
 import ai.platon.pulsar.persist.gora.generated.GHypeLink
 import com.google.gson.GsonBuilder
 import org.apache.commons.lang3.StringUtils
-import org.apache.gora.util.ByteUtils
 import org.jsoup.nodes.Document
 import org.jsoup.nodes.Element
 import java.time.Instant
@@ -104,7 +103,7 @@ class WebPageFormatter(val page: WebPage) {
         fields["protocolStatus"] = page.protocolStatus.name
         fields["protocolStatusMessage"] = page.protocolStatus.toString()
         if (page.content != null) {
-            fields["contentLength"] = page.content!!.array().size
+            fields["contentLength"] = page.content!!.remaining()
         }
         fields["fetchCount"] = page.fetchCount
         fields["fetchPriority"] = page.fetchPriority
@@ -272,7 +271,7 @@ class WebPageFormatter(val page: WebPage) {
                 sb.append("\n")
                 sb.append("contentType:\t" + page.contentType + "\n")
                         .append("content:START>>>\n")
-                        .append(ByteUtils.toString(content.array()))
+                        .append(page.contentAsString)
                         .append("\n<<<END:content\n")
             }
         }
@@ -0,0 +1,85 @@
+package ai.platon.pulsar.persist
+
+import ai.platon.pulsar.common.AppPaths
+import ai.platon.pulsar.common.urls.UrlUtils
+import ai.platon.pulsar.persist.gora.FileBackendPageStore
+import ai.platon.pulsar.persist.gora.ShardedFileBackendPageStore
+import ai.platon.pulsar.persist.gora.generated.GWebPage
+import org.apache.commons.io.FileUtils
+import org.apache.gora.memory.store.MemStore
+import org.junit.jupiter.api.Tag
+import java.nio.ByteBuffer
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import kotlin.test.*
+
+/**
+ * Compares the throughput of [ShardedFileBackendPageStore] with [FileBackendPageStore]:
+ * several threads put pages concurrently, and then read them back from the disk.
+ *
+ * The throughput depends on the machine, so the benchmark is tagged as a slow test and asserts nothing about it.
+ * */
+class FileBackendPageStoreBenchmark {
+    private val baseDirectory = AppPaths.TEST_DIR.resolve("unittests/FileBackendPageStoreBenchmark")
+    private val threads = 8
+    private val numPages = 2000
+    private val content = ByteBuffer.wrap("<html><body>${"<div>pulsar</div>".repeat(2000)}</body></html>".toByteArray())
+
+    data class Result(val store: String, val putsPerSecond: Long, val getsPerSecond: Long)
+
+    @AfterTest
+    fun tearDown() {
+        runCatching { FileUtils.deleteDirectory(baseDirectory.toFile()) }.onFailure { it.printStackTrace() }
+    }
+
+    @Tag("SlowTest")
+    @Test
+    fun benchmarkPageStores() {
+        val results = listOf(
+            measure("FileBackend", FileBackendPageStore(baseDirectory.resolve("legacy"))),
+            measure("Sharded", ShardedFileBackendPageStore(baseDirectory.resolve("sharded"))),
+        )
+
+        println(String.format("%-14s%14s%14s", "store", "puts/s", "gets/s"))
+        results.forEach { println(String.format("%-14s%14d%14d", it.store, it.putsPerSecond, it.getsPerSecond)) }
+    }
+
+    private fun measure(name: String, store: MemStore<String, GWebPage>): Result {
+        val urls = IntRange(1, numPages).map { "https://www.example.com/$name/item/$it" }
+        val pages = urls.map { url ->
+            WebPageExt.newTestWebPage(url).also { it.content = content.duplicate() }.unbox()
+        }
+
+        // the pending pages are flushed, so the write-behind store does not benefit from the deferred writes
+        val putTime = run(urls.indices.toList()) { i -> store.put(UrlUtils.reverseUrl(urls[i]), pages[i]) } +
+            timed { store.flush() }
+        // the written pages are read back from the disk
+        urls.forEach { MemStore.map.remove(UrlUtils.reverseUrl(it)) }
+
+        val found = AtomicInteger()
+        val getTime = run(urls.indices.toList()) { i ->
+            if (store.get(UrlUtils.reverseUrl(urls[i])) != null) found.incrementAndGet()
+        }
+        store.close()
+        assertEquals(numPages, found.get(), name)
+
+        val second = TimeUnit.SECONDS.toNanos(1)
+        return Result(name, numPages * second / putTime, numPages * second / getTime)
+    }
+
+    private fun timed(action: () -> Unit): Long {
+        val startTime = System.nanoTime()
+        action()
+        return System.nanoTime() - startTime
+    }
+
+    private fun run(tasks: List<Int>, action: (Int) -> Unit): Long {
+        val executor = Executors.newFixedThreadPool(threads)
+        val startTime = System.nanoTime()
+        tasks.forEach { i -> executor.submit { action(i) } }
+        executor.shutdown()
+        assertTrue { executor.awaitTermination(5, TimeUnit.MINUTES) }
+        return System.nanoTime() - startTime
+    }
+}
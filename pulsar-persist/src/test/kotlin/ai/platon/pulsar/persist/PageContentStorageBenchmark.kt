@@ -0,0 +1,68 @@
+package ai.platon.pulsar.persist
+
+import ai.platon.pulsar.common.config.CapabilityTypes
+import ai.platon.pulsar.common.config.VolatileConfig
+import org.junit.jupiter.api.Tag
+import java.lang.management.ManagementFactory
+import java.nio.file.Files
+import java.nio.file.Paths
+import kotlin.test.*
+
+/**
+ * Compares the heap used by the pages in each [ContentStorageMode].
+ *
+ * The pages are kept alive like the pages held by the page cache during a crawl, and every page has its own copy
+ * of a real product page as the fetched content.
+ * */
+class PageContentStorageBenchmark {
+    private val resource = Paths.get("../pulsar-resources/src/test/resources/pages/amazon/B0C1H26C46.original.htm")
+    private val numPages = 30
+
+    data class Result(val mode: ContentStorageMode, val heapBytes: Long, val offHeapBytes: Long, val readMillis: Long)
+
+    @Tag("SlowTest")
+    @Test
+    fun benchmarkContentStorageModes() {
+        val html = Files.readString(resource)
+
+        val results = ContentStorageMode.values().map { measure(it, html) }
+
+        println(String.format("%-12s%16s%16s%12s", "mode", "heap(KiB)", "off-heap(KiB)", "read(ms)"))
+        results.forEach {
+            println(String.format("%-12s%16d%16d%12d", it.mode, it.heapBytes / 1024, it.offHeapBytes / 1024, it.readMillis))
+        }
+    }
+
+    private fun measure(mode: ContentStorageMode, html: String): Result {
+        val conf = VolatileConfig().apply { set(CapabilityTypes.STORAGE_CONTENT_MODE, mode.name) }
+        val offHeapBefore = offHeapBytes(mode)
+        val heapBefore = usedHeap()
+
+        val pages = IntRange(1, numPages).map { i ->
+            WebPage.newWebPage("https://www.amazon.com/dp/B0C1H26C46?i=$i", conf, null).also {
+                it.setContent(html.toByteArray())
+            }
+        }
+
+        val heapBytes = usedHeap() - heapBefore
+        val offHeapBytes = offHeapBytes(mode) - offHeapBefore
+
+        val startTime = System.currentTimeMillis()
+        pages.forEach { assertEquals(html.length, it.contentAsString.length) }
+        val readMillis = System.currentTimeMillis() - startTime
+
+        assertEquals(numPages, pages.size)
+        return Result(mode, heapBytes, offHeapBytes, readMillis)
+    }
+
+    private fun offHeapBytes(mode: ContentStorageMode) = when (mode) {
+        ContentStorageMode.HEAP -> 0L
+        ContentStorageMode.DIRECT -> PageContents.directBytes.get()
+        ContentStorageMode.COMPRESSED -> PageContents.arena.usedBytes.get()
+    }
+
+    private fun usedHeap(): Long {
+        repeat(3) { System.gc() }
+        return ManagementFactory.getMemoryMXBean().heapMemoryUsage.used
+    }
+}
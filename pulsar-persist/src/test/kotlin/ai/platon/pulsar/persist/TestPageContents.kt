@@ -0,0 +1,158 @@
+package ai.platon.pulsar.persist
+
+import ai.platon.pulsar.common.config.AppConstants.MEM_STORE_CLASS
+import ai.platon.pulsar.common.config.CapabilityTypes
+import ai.platon.pulsar.common.config.VolatileConfig
+import java.nio.ByteBuffer
+import kotlin.test.*
+
+class TestPageContents {
+    private val url = "https://www.example.com/dp/page-contents"
+    private val html = "<html><body>${"<div class='item'>pulsar</div>".repeat(500)}</body></html>"
+
+    private fun newPage(mode: ContentStorageMode, conf: VolatileConfig = VolatileConfig()): WebPage {
+        conf.set(CapabilityTypes.STORAGE_CONTENT_MODE, mode.name.lowercase())
+        return WebPage.newWebPage(url, conf, null)
+    }
+
+    @Test
+    fun whenSetContent_ThenReadBackInAllModes() {
+        ContentStorageMode.values().forEach { mode ->
+            val page = newPage(mode)
+            page.setContent(html)
+
+            assertEquals(mode, page.contentStorageMode)
+            assertEquals(html, page.contentAsString, "$mode")
+            assertContentEquals(html.toByteArray(), page.contentAsBytes, "$mode")
+            assertContentEquals(html.toByteArray(), page.contentAsInputStream.readBytes(), "$mode")
+            assertEquals(html.toByteArray().size.toLong(), page.contentLength, "$mode")
+            assertEquals(html.toByteArray().size.toLong(), page.persistedContentLength, "$mode")
+            assertEquals(mode == ContentStorageMode.COMPRESSED, page.isContentCompressed, "$mode")
+            assertEquals(mode == ContentStorageMode.DIRECT, page.content!!.isDirect, "$mode")
+        }
+    }
+
+    @Test
+    fun whenContentIsCleared_ThenItIsNotPersisted() {
+        ContentStorageMode.values().forEach { mode ->
+            val page = newPage(mode)
+            page.setContent(html)
+            page.clearPersistContent()
+
+            assertEquals(html, page.contentAsString, "$mode")
+            assertNull(page.persistContent, "$mode")
+            assertNull(page.unboxForPersistence().content, "$mode")
+        }
+    }
+
+    @Test
+    fun whenCompressedPageIsPersisted_ThenContentIsDecompressed() {
+        val conf = VolatileConfig().apply { set(CapabilityTypes.STORAGE_DATA_STORE_CLASS, MEM_STORE_CLASS) }
+        val webDb = WebDb(conf)
+        try {
+            val page = newPage(ContentStorageMode.COMPRESSED, conf)
+            page.setContent(html)
+            // the page keeps the content compressed
+            assertNull(page.unbox().content)
+            webDb.put(page)
+
+            val loaded = webDb.getOrNull(url)
+            assertNotNull(loaded)
+            assertEquals(html, loaded.contentAsString)
+            assertTrue { page.isContentCompressed }
+        } finally {
+            webDb.delete(url)
+            webDb.close()
+        }
+    }
+
+    @Test
+    fun whenPageIsUnboxedForPersistence_ThenContentIsOnHeap() {
+        ContentStorageMode.values().forEach { mode ->
+            val page = newPage(mode)
+            page.setContent(html)
+            assertTrue { page.hasContent() }
+
+            val content = page.unboxForPersistence().content
+            assertNotNull(content)
+            // some stores, for example, the mongodb store, call ByteBuffer.array()
+            assertTrue { content.hasArray() }
+            assertEquals(html, String(content.array(), content.arrayOffset() + content.position(), content.remaining()))
+            // the page itself keeps the content off-heap
+            assertEquals(mode == ContentStorageMode.DIRECT, page.content!!.isDirect, "$mode")
+        }
+    }
+
+    @Test
+    fun whenContentIsCompressed_ThenItIsSmaller() {
+        val compressed = CompressedContent.compress(ByteBuffer.wrap(html.toByteArray()))
+        assertEquals(html.toByteArray().size, compressed.length)
+        assertTrue { compressed.compressedLength < compressed.length / 10 }
+        assertEquals(html, compressed.decodeToString())
+    }
+
+    @Test
+    fun whenCompressedContentIsReadManyTimes_ThenItIsDecompressedOnce() {
+        val page = newPage(ContentStorageMode.COMPRESSED)
+        page.setContent(html)
+
+        val decompressions = PageContents.decompressions.get()
+        val first = page.content!!
+        repeat(10) {
+            assertSame(first.array(), page.content!!.array())
+            assertEquals(html, page.contentAsString)
+            assertSame(first.array(), page.persistContent!!.array())
+        }
+        assertEquals(1, PageContents.decompressions.get() - decompressions)
+
+        // every call returns a new view, so reading one view does not move the others
+        first.position(first.limit())
+        assertEquals(html.toByteArray().size, page.content!!.remaining())
+    }
+
+    @Test
+    fun whenDirectContentsAreSmall_ThenTheyAreCarvedFromASlab() {
+        val allocations = PageContents.directAllocations.get()
+        val pages = IntRange(1, 10).map { newPage(ContentStorageMode.DIRECT).also { p -> p.setContent(html) } }
+
+        // at most a new slab is allocated for all the pages
+        assertTrue { PageContents.directAllocations.get() - allocations <= 1 }
+        pages.forEach {
+            assertTrue { it.content!!.isDirect }
+            assertEquals(html, it.contentAsString)
+        }
+    }
+
+    @Test
+    fun whenAllocate_ThenBlockSizeIsRounded() {
+        assertEquals(512, DirectMemoryArena.blockSize(1))
+        assertEquals(640, DirectMemoryArena.blockSize(600))
+        assertEquals(1024, DirectMemoryArena.blockSize(1000))
+        assertEquals(1280, DirectMemoryArena.blockSize(1025))
+        assertEquals(320 * 1024, DirectMemoryArena.blockSize(300 * 1024))
+    }
+
+    @Test
+    fun whenBlockIsReleased_ThenItIsReused() {
+        val arena = DirectMemoryArena(poolCapacity = 4096)
+
+        val block = arena.allocate(1000)
+        assertEquals(1000, block.limit())
+        assertEquals(1024, block.capacity())
+        assertTrue { block.isDirect }
+        arena.release(block)
+        assertEquals(1024, arena.pooledBytes.get())
+
+        val reused = arena.allocate(900)
+        assertSame(block, reused)
+        assertEquals(900, reused.limit())
+        assertEquals(0, arena.pooledBytes.get())
+        assertEquals(1024, arena.usedBytes.get())
+
+        // the pool is full, the block is dropped
+        val large = arena.allocate(8000)
+        arena.release(large)
+        assertEquals(0, arena.pooledBytes.get())
+        assertEquals(1024, arena.allocatedBytes.get())
+    }
+}
@@ -0,0 +1,121 @@
+package ai.platon.pulsar.persist
+
+import ai.platon.pulsar.common.AppPaths
+import ai.platon.pulsar.common.config.AppConstants.FILE_BACKEND_STORE_CLASS
+import ai.platon.pulsar.common.config.AppConstants.SHARDED_FILE_BACKEND_STORE_CLASS
+import ai.platon.pulsar.common.config.CapabilityTypes
+import ai.platon.pulsar.common.config.VolatileConfig
+import ai.platon.pulsar.common.urls.UrlUtils
+import ai.platon.pulsar.persist.gora.ShardedFileBackendPageStore
+import org.apache.commons.io.FileUtils
+import org.apache.gora.memory.store.MemStore
+import java.nio.ByteBuffer
+import java.nio.file.Files
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import kotlin.test.*
+
+class TestShardedFileBackendStore {
+    private val url = "https://www.amazon.com/dp/B0C1H26C46"
+    private val persistDirectory = AppPaths.TEST_DIR.resolve("unittests/TestShardedFileBackendStore")
+
+    @AfterTest
+    fun tearDown() {
+        runCatching { FileUtils.deleteDirectory(persistDirectory.toFile()) }.onFailure { it.printStackTrace() }
+    }
+
+    @Test
+    fun whenPutAndFlush_ThenReadFromIndex() {
+        val store = ShardedFileBackendPageStore(persistDirectory)
+        val page = WebPageExt.newTestWebPage(url)
+        page.content = ByteBuffer.wrap("<html><body>hello</body></html>".toByteArray())
+        val key = UrlUtils.reverseUrl(url)
+
+        store.put(key, page.unbox())
+        store.flush()
+        assertEquals(0, store.pendingCount)
+        assertTrue { Files.exists(persistDirectory.resolve("shards")) }
+
+        // read from the disk rather than the memory
+        MemStore.map.remove(key)
+        val loaded = store.get(key)
+        assertNotNull(loaded)
+        val loadedPage = WebPage.box(url, loaded, VolatileConfig.UNSAFE)
+        assertEquals("<html><body>hello</body></html>", loadedPage.contentAsString)
+        assertEquals("b", loadedPage.ensurePageModel().findValue(1, "a"))
+        store.close()
+    }
+
+    @Test
+    fun whenReopen_ThenPagesArePersisted() {
+        val urls = IntRange(1, 100).map { "$url/$it" }
+        ShardedFileBackendPageStore(persistDirectory, numShards = 4).use { store ->
+            urls.forEach { store.put(UrlUtils.reverseUrl(it), WebPageExt.newTestWebPage(it).unbox()) }
+            // update a page, the latest version wins
+            val page = WebPageExt.newTestWebPage(urls[0])
+            page.ensurePageModel().emplace(1, "g", mapOf("a" to "updated"))
+            store.put(UrlUtils.reverseUrl(urls[0]), page.unbox())
+            store.delete(UrlUtils.reverseUrl(urls[1]))
+        }
+
+        urls.forEach { MemStore.map.remove(UrlUtils.reverseUrl(it)) }
+
+        ShardedFileBackendPageStore(persistDirectory, numShards = 4).use { store ->
+            assertEquals(urls.size - 1, store.indexedCount)
+            urls.drop(2).forEach { assertNotNull(store.get(UrlUtils.reverseUrl(it)), it) }
+            assertNull(store.get(UrlUtils.reverseUrl(urls[1])))
+
+            val updated = WebPage.box(urls[0], store.get(UrlUtils.reverseUrl(urls[0]))!!, VolatileConfig.UNSAFE)
+            assertEquals("updated", updated.ensurePageModel().findValue(1, "a"))
+        }
+    }
+
+    @Test
+    fun whenDeleteBeforeFlush_ThenThePendingPageIsNotWritten() {
+        val urls = IntRange(1, 50).map { "$url/$it" }
+        ShardedFileBackendPageStore(persistDirectory, numShards = 4).use { store ->
+            urls.forEach {
+                val key = UrlUtils.reverseUrl(it)
+                store.put(key, WebPageExt.newTestWebPage(it).unbox())
+                store.delete(key)
+            }
+            store.flush()
+            assertEquals(0, store.indexedCount)
+        }
+
+        urls.forEach { MemStore.map.remove(UrlUtils.reverseUrl(it)) }
+
+        ShardedFileBackendPageStore(persistDirectory, numShards = 4).use { store ->
+            assertEquals(0, store.indexedCount)
+            urls.forEach { assertNull(store.get(UrlUtils.reverseUrl(it)), it) }
+        }
+    }
+
+    @Test
+    fun whenConcurrentPut_ThenAllPagesAreWritten() {
+        val store = ShardedFileBackendPageStore(persistDirectory, queueCapacity = 10)
+        val executor = Executors.newFixedThreadPool(8)
+        IntRange(1, 400).forEach { i ->
+            executor.submit {
+                val u = "$url/$i"
+                store.put(UrlUtils.reverseUrl(u), WebPageExt.newTestWebPage(u).unbox())
+            }
+        }
+        executor.shutdown()
+        assertTrue { executor.awaitTermination(60, TimeUnit.SECONDS) }
+
+        store.close()
+        assertEquals(400, store.indexedCount)
+    }
+
+    @Test
+    fun whenShardedIsEnabled_ThenTheShardedStoreIsSelected() {
+        val conf = VolatileConfig()
+        assertEquals(FILE_BACKEND_STORE_CLASS, AutoDetectStorageProvider.detectFileBackendStoreClassName(conf))
+
+        conf.setBoolean(CapabilityTypes.STORAGE_FILE_BACKEND_SHARDED, true)
+        val className = AutoDetectStorageProvider.detectFileBackendStoreClassName(conf)
+        assertEquals(SHARDED_FILE_BACKEND_STORE_CLASS, className)
+        assertEquals(ShardedFileBackendPageStore::class.java, Class.forName(className))
+    }
+}
@@ -0,0 +1,165 @@
+package ai.platon.pulsar.persist
+
+import ai.platon.pulsar.common.config.AppConstants.MEM_STORE_CLASS
+import ai.platon.pulsar.common.config.CapabilityTypes
+import ai.platon.pulsar.common.config.VolatileConfig
+import ai.platon.pulsar.persist.gora.generated.GWebPage
+import org.apache.gora.memory.store.MemStore
+import org.apache.gora.query.Query
+import org.apache.gora.query.Result
+import org.apache.gora.query.impl.ResultBase
+import java.nio.ByteBuffer
+import kotlin.test.*
+
+class TestWebDbBatchGet {
+    /**
+     * A memory store whose results reuse one page object like MongoStore and HBaseStore do,
+     * the object is cleared before the next row is read.
+     * */
+    class ReusingResultMemStore : MemStore<String, GWebPage>() {
+        override fun execute(query: Query<String, GWebPage>): Result<String, GWebPage> {
+            val rows = mutableListOf<Pair<String, GWebPage>>()
+            val result = super.execute(query)
+            while (result.next()) {
+                rows.add(result.key to result.get())
+            }
+            result.close()
+
+            return object : ResultBase<String, GWebPage>(this, query) {
+                private val iterator = rows.iterator()
+
+                override fun nextInner(): Boolean {
+                    if (!iterator.hasNext()) {
+                        return false
+                    }
+
+                    val (key, page) = iterator.next()
+                    this.key = key
+                    val reused = persistent ?: GWebPage.newBuilder().build().also { persistent = it }
+                    page.schema.fields.forEach { reused.put(it.pos(), page.get(it.pos())) }
+                    return true
+                }
+
+                override fun getProgress() = 0f
+
+                override fun size() = rows.size
+            }
+        }
+    }
+
+    private val conf = VolatileConfig().apply {
+        set(CapabilityTypes.STORAGE_DATA_STORE_CLASS, MEM_STORE_CLASS)
+    }
+    private val urls = IntRange(1, 20).map { "https://www.example.com/item/$it" } +
+        IntRange(1, 10).map { "https://shop.example.org/item/$it" }
+    private val webDb = WebDb(conf)
+
+    @BeforeTest
+    fun setup() {
+        urls.forEach { url ->
+            val page = WebPageExt.newTestWebPage(url)
+            page.content = ByteBuffer.wrap("<html><body>$url</body></html>".toByteArray())
+            webDb.put(page)
+        }
+    }
+
+    @AfterTest
+    fun tearDown() {
+        urls.forEach { webDb.delete(it) }
+        webDb.close()
+    }
+
+    @Test
+    fun whenGetAll_ThenOneRoundTripPerHost() {
+        val batchGets = WebDb.dbBatchGetCount.get()
+        val gets = WebDb.dbGetCount.get()
+        val missingUrl = "https://www.example.com/item/not-exist"
+
+        val pages = webDb.getAll(urls + missingUrl, listOf(GWebPage.Field.CONTENT))
+
+        assertEquals(urls.size, pages.size)
+        assertEquals(2, WebDb.dbBatchGetCount.get() - batchGets)
+        // two range queries, and one single get for the missing page
+        assertEquals(3, WebDb.dbGetCount.get() - gets)
+        urls.forEach { url ->
+            assertEquals("<html><body>$url</body></html>", pages[url]?.contentAsString)
+        }
+        assertNull(pages[missingUrl])
+    }
+
+    @Test
+    fun whenPrefetch_ThenGetIsServedWithoutRoundTrip() {
+        val fields = arrayOf(GWebPage.Field.CONTENT.toString(), GWebPage.Field.PAGE_MODEL.toString())
+        assertEquals(urls.size, webDb.prefetch(urls, fields = fields))
+
+        val gets = WebDb.dbGetCount.get()
+        val hits = WebDb.dbPrefetchHits.get()
+        urls.forEach { assertNotNull(webDb.getOrNull(it, GWebPage.Field.CONTENT), it) }
+        assertEquals(0, WebDb.dbGetCount.get() - gets)
+        assertEquals(urls.size.toLong(), WebDb.dbPrefetchHits.get() - hits)
+
+        // the prefetched pages are consumed
+        assertNotNull(webDb.getOrNull(urls[0], GWebPage.Field.CONTENT))
+        assertEquals(1, WebDb.dbGetCount.get() - gets)
+    }
+
+    @Test
+    fun whenPrefetchedFieldsNotCover_ThenGetFromStorage() {
+        webDb.prefetch(urls.take(1), listOf(GWebPage.Field.CONTENT))
+
+        val gets = WebDb.dbGetCount.get()
+        val page = webDb.getOrNull(urls[0], false, arrayOf(GWebPage.Field.PAGE_MODEL.toString()))
+        assertNotNull(page?.pageModel)
+        assertEquals(1, WebDb.dbGetCount.get() - gets)
+
+        // the prefetched page is kept
+        val roundTrips = WebDb.dbFieldRoundTrips[GWebPage.Field.CONTENT.toString()]?.get()
+        assertNotNull(webDb.getOrNull(urls[0], GWebPage.Field.CONTENT))
+        assertEquals(roundTrips, WebDb.dbFieldRoundTrips[GWebPage.Field.CONTENT.toString()]?.get())
+    }
+
+    @Test
+    fun whenPageIsWrittenAfterPrefetch_ThenTheNewPageIsRead() {
+        webDb.prefetch(urls.take(2), listOf(GWebPage.Field.CONTENT))
+
+        val page = WebPageExt.newTestWebPage(urls[0])
+        page.content = ByteBuffer.wrap("<html><body>updated</body></html>".toByteArray())
+        webDb.put(page)
+        webDb.delete(urls[1])
+
+        val content = webDb.getOrNull(urls[0], GWebPage.Field.CONTENT)?.contentAsString
+        assertEquals("<html><body>updated</body></html>", content)
+        assertNull(webDb.getOrNull(urls[1], GWebPage.Field.CONTENT))
+    }
+
+    @Test
+    fun whenTheStoreReusesTheResultObject_ThenEveryPageIsKept() {
+        val reusingConf = VolatileConfig().apply {
+            set(CapabilityTypes.STORAGE_DATA_STORE_CLASS, ReusingResultMemStore::class.java.name)
+            set(CapabilityTypes.STORAGE_SCHEMA_WEBPAGE, "reusing_webpage")
+        }
+
+        WebDb(reusingConf).use { db ->
+            val pages = db.getAll(urls, listOf(GWebPage.Field.CONTENT))
+            assertEquals(urls.size, pages.size)
+            urls.forEach { url ->
+                assertEquals("<html><body>$url</body></html>", pages[url]?.contentAsString)
+            }
+        }
+    }
+
+    @Test
+    fun whenKeysAreFarApart_ThenTheRangeScanIsCapped() {
+        // the keys are sorted as item/1, item/10, ..., item/19, item/2, item/20, item/3, ..., item/9
+        val sparseUrls = listOf(urls[0], urls[8])
+        val batchGets = WebDb.dbBatchGetCount.get()
+        val gets = WebDb.dbGetCount.get()
+
+        val pages = webDb.getAll(sparseUrls, listOf(GWebPage.Field.CONTENT))
+
+        assertEquals(2, pages.size)
+        assertEquals(1, WebDb.dbBatchGetCount.get() - batchGets)
+        // the scan stops before item/9 is reached, which is retrieved by a point get
+        assertEquals(2, WebDb.dbGetCount.get() - gets)
+    }
+}
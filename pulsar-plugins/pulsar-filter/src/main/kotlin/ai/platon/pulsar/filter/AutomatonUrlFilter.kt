@@ -5,6 +5,8 @@ import ai.platon.pulsar.common.config.CapabilityTypes
 import ai.platon.pulsar.common.config.ImmutableConfig
 import ai.platon.pulsar.filter.common.RegexRule
 import ai.platon.pulsar.filter.common.AbstractRegexUrlFilter
+import ai.platon.pulsar.filter.common.LiteralPrefixes
+import dk.brics.automaton.Automaton
 import dk.brics.automaton.RegExp
 import dk.brics.automaton.RunAutomaton
 import java.io.IOException
@@ -41,11 +43,16 @@ class AutomatonUrlFilter(reader: Reader?, conf: ImmutableConfig) : AbstractRegex
     }
 
     private inner class Rule internal constructor(sign: Boolean, regex: String) : RegexRule(sign, regex) {
-        private val automaton = RunAutomaton(RegExp(regex, RegExp.ALL).toAutomaton())
+        private val automaton = RegExp(regex, RegExp.ALL).toAutomaton()
+        private val runAutomaton = RunAutomaton(automaton)
+
         override fun match(url: String): Boolean {
-            return automaton.run(url)
+            return runAutomaton.run(url)
         }
 
+        override fun literalPrefixes() = LiteralPrefixes.ofAutomatonRegex(regex)
+
+        override fun toAutomaton(): Automaton = automaton
     }
 
     companion object {
@@ -7,6 +7,7 @@ import ai.platon.pulsar.common.config.CapabilityTypes
 import ai.platon.pulsar.common.config.ImmutableConfig
 import ai.platon.pulsar.filter.common.RegexRule
 import ai.platon.pulsar.filter.common.AbstractRegexUrlFilter
+import ai.platon.pulsar.filter.common.LiteralPrefixes
 import java.io.FileNotFoundException
 import java.io.Reader
 import java.util.regex.Pattern
@@ -44,6 +45,8 @@ class RegexUrlFilter(
         override fun match(url: String): Boolean {
             return pattern.matcher(url).find()
         }
+
+        override fun literalPrefixes() = LiteralPrefixes.ofJavaRegex(regex)
     }
 
     companion object {
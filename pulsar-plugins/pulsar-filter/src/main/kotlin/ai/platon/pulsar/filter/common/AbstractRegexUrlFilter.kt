@@ -2,6 +2,7 @@
 package ai.platon.pulsar.filter.common
 
 import ai.platon.pulsar.common.config.ImmutableConfig
+import ai.platon.pulsar.skeleton.common.metrics.MetricsSystem
 import ai.platon.pulsar.skeleton.crawl.filter.CrawlUrlFilter
 import org.slf4j.LoggerFactory
 import java.io.BufferedReader
@@ -33,6 +34,18 @@ abstract class AbstractRegexUrlFilter(
      * Applicable rules
      */
     protected var rules: List<RegexRule> = listOf()
+        set(value) {
+            field = value
+            compiledRules = CompiledRuleSet(value)
+        }
+
+    /**
+     * The compiled rules to evaluate, see [CompiledRuleSet]
+     */
+    var compiledRules = CompiledRuleSet(listOf())
+        private set
+
+    private val filtered = MetricsSystem.reg.meter(this, "filtered")
 
     /**
      * Constructs a new RegexUrlFilter and init it with a Reader of rules.
@@ -78,12 +91,8 @@ abstract class AbstractRegexUrlFilter(
     protected abstract fun getRulesReader(conf: ImmutableConfig): Reader
 
     override fun filter(url: String): String? {
-        for (rule in rules) {
-            if (rule.match(url)) {
-                return if (rule.accept()) url else null
-            }
-        }
-        return null
+        filtered.mark()
+        return compiledRules.filter(url)
     }
 
     /**
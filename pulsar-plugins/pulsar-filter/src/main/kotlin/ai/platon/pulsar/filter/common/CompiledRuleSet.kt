@@ -0,0 +1,152 @@
+package ai.platon.pulsar.filter.common
+
+import ai.platon.pulsar.common.PrefixStringMatcher
+import dk.brics.automaton.BasicAutomata
+import dk.brics.automaton.RunAutomaton
+import org.slf4j.LoggerFactory
+
+/**
+ * A compiled set of [RegexRule]s with the first-match semantics: the first rule matching a url decides whether
+ * the url is accepted or rejected, and the url is rejected if no rule matches.
+ *
+ * If every rule can be expressed as an automaton, the rules are merged into a single deterministic automaton
+ * accepting exactly the urls accepted by the rules, so a url is checked by one pass over its characters.
+ *
+ * Otherwise, the rules are indexed by their [literal prefixes][RegexRule.literalPrefixes], and only the rules
+ * whose prefixes match the url, together with the rules without any prefix, are evaluated.
+ */
+class CompiledRuleSet(
+    val rules: List<RegexRule>,
+    /**
+     * The max number of states of the merged automaton, the rules are not merged if there are more states
+     */
+    maxStates: Int = DEFAULT_MAX_STATES
+) {
+    private val logger = LoggerFactory.getLogger(CompiledRuleSet::class.java)
+
+    /**
+     * The merged automaton, or null if the rules can not be merged.
+     */
+    private val automaton: RunAutomaton? = mergeRules(maxStates)
+
+    /**
+     * The indexes of the rules without any prefix.
+     */
+    private val unprefixedRules: IntArray
+    /**
+     * The indexes of the rules grouped by prefix, every group is in ascending order.
+     */
+    private val prefixedRules = HashMap<String, IntArray>()
+    private val prefixMatcher: PrefixStringMatcher
+
+    /**
+     * Whether the rules are merged into a single automaton.
+     */
+    val isMerged get() = automaton != null
+
+    /**
+     * The number of rules indexed by prefix.
+     */
+    val numPrefixedRules get() = rules.size - unprefixedRules.size
+
+    init {
+        val unprefixed = mutableListOf<Int>()
+        val groups = LinkedHashMap<String, MutableList<Int>>()
+        if (automaton == null) {
+            rules.forEachIndexed { i, rule ->
+                val prefixes = rule.literalPrefixes()
+                if (prefixes.isEmpty()) {
+                    unprefixed.add(i)
+                } else {
+                    prefixes.forEach { groups.computeIfAbsent(it) { mutableListOf() }.add(i) }
+                }
+            }
+        }
+
+        unprefixedRules = unprefixed.toIntArray()
+        groups.forEach { (prefix, indexes) -> prefixedRules[prefix] = indexes.toIntArray() }
+        prefixMatcher = PrefixStringMatcher(groups.keys)
+        // The trie nodes are finished on the first visit, visit them all before the matcher is shared by threads
+        groups.keys.forEach { prefixMatcher.forEachMatch(it) { } }
+    }
+
+    /**
+     * Returns the url if it's accepted by the first rule matching it, or null if it's rejected by the rule
+     * or no rule matches it.
+     */
+    fun filter(url: String): String? {
+        if (automaton != null) {
+            return if (automaton.run(url)) url else null
+        }
+
+        val rule = firstMatch(url) ?: return null
+        return if (rule.accept()) url else null
+    }
+
+    /**
+     * Returns the first rule matching the url, or null if no rule matches.
+     */
+    fun firstMatch(url: String): RegexRule? {
+        // the index of the first matching rule found so far
+        var first = rules.size
+
+        if (prefixedRules.isNotEmpty()) {
+            prefixMatcher.forEachMatch(url) { length ->
+                val indexes = prefixedRules[url.substring(0, length)]
+                if (indexes != null) {
+                    first = firstMatch(url, indexes, first)
+                }
+            }
+        }
+        first = firstMatch(url, unprefixedRules, first)
+
+        return rules.getOrNull(first)
+    }
+
+    /**
+     * Returns the index of the first rule in [indexes] before [bound] which matches the url, or [bound] if no
+     * such rule.
+     */
+    private fun firstMatch(url: String, indexes: IntArray, bound: Int): Int {
+        for (i in indexes) {
+            if (i >= bound) {
+                break
+            }
+            if (rules[i].match(url)) {
+                return i
+            }
+        }
+        return bound
+    }
+
+    /**
+     * Merge the rules into a single automaton which accepts a url if the first rule matching it is an accepting
+     * rule, that is, the union of the accepting rules, each minus all the rules before it.
+     */
+    private fun mergeRules(maxStates: Int): RunAutomaton? {
+        val automata = rules.map { it.toAutomaton() ?: return null }
+
+        var covered = BasicAutomata.makeEmpty()
+        var accepted = BasicAutomata.makeEmpty()
+        for ((i, rule) in rules.withIndex()) {
+            val automaton = automata[i]
+            if (rule.accept()) {
+                accepted = accepted.union(automaton.minus(covered))
+                accepted.minimize()
+            }
+            covered = covered.union(automaton)
+            covered.minimize()
+
+            if (accepted.numberOfStates > maxStates || covered.numberOfStates > maxStates) {
+                logger.info("Too many states to merge {} url filter rules, fall back to the prefix index", rules.size)
+                return null
+            }
+        }
+
+        return RunAutomaton(accepted)
+    }
+
+    companion object {
+        const val DEFAULT_MAX_STATES = 100_000
+    }
+}
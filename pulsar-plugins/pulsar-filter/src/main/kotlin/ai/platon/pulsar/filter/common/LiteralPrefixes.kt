@@ -0,0 +1,172 @@
+package ai.platon.pulsar.filter.common
+
+/**
+ * Extracts the literal prefixes of a regular expression, every string matching the regular expression starts
+ * with one of the prefixes.
+ *
+ * Only the simple constructs at the beginning of the regular expression are expanded: literal characters,
+ * escaped characters, an optional character like `https?`, and a group of literal alternatives like `(http|ftp)`.
+ * The extraction stops at the first other construct, for example, `^https?://www\.example\.com/.*` has two
+ * prefixes: `http://www` and `https://www`, because the unescaped dot after `www` matches any character.
+ */
+object LiteralPrefixes {
+    /**
+     * The max number of prefixes of a regular expression, the expansion stops if there are more
+     */
+    const val MAX_PREFIXES = 8
+
+    private const val JAVA_META_CHARS = "\\^$.|?*+()[]{}"
+    private const val AUTOMATON_META_CHARS = "\\^$.|&?*+()[]{}~#@\"<>"
+
+    /**
+     * Returns the literal prefixes of a regular expression in [java.util.regex] syntax used with
+     * [java.util.regex.Matcher.find], so the regular expression must be anchored by a leading `^`.
+     */
+    @JvmStatic
+    fun ofJavaRegex(regex: String): List<String> {
+        if (!regex.startsWith("^")) {
+            return listOf()
+        }
+
+        return extract(regex, 1, JAVA_META_CHARS) { !it.isLetterOrDigit() }
+    }
+
+    /**
+     * Returns the literal prefixes of a regular expression in [dk.brics.automaton.RegExp] syntax,
+     * which always matches the whole string.
+     */
+    @JvmStatic
+    fun ofAutomatonRegex(regex: String): List<String> {
+        return extract(regex, 0, AUTOMATON_META_CHARS) { true }
+    }
+
+    private fun extract(regex: String, start: Int, metaChars: String, isEscapable: (Char) -> Boolean): List<String> {
+        if (hasTopLevelAlternation(regex, start)) {
+            return listOf()
+        }
+
+        var prefixes = listOf("")
+        var i = start
+        while (i < regex.length) {
+            val alternatives = mutableListOf<String>()
+            val next = scanAtom(regex, i, metaChars, isEscapable, alternatives)
+            if (next < 0) {
+                break
+            }
+
+            val quantifier = regex.getOrNull(next)
+            if (quantifier == '*' || quantifier == '{') {
+                break
+            }
+            if (quantifier == '?') {
+                alternatives.add("")
+            }
+            if (prefixes.size * alternatives.size > MAX_PREFIXES) {
+                break
+            }
+
+            prefixes = prefixes.flatMap { prefix -> alternatives.map { prefix + it } }
+            if (quantifier == '+') {
+                break
+            }
+
+            i = if (quantifier == '?') next + 1 else next
+            if (quantifier == '?' && i < regex.length && regex[i] in "?+") {
+                // a lazy or possessive quantifier
+                ++i
+            }
+        }
+
+        return if (prefixes.any { it.isEmpty() }) listOf() else prefixes.distinct()
+    }
+
+    /**
+     * Scan a literal character, an escaped character or a group of literal alternatives starting at [start],
+     * put the literal strings into [alternatives], and return the index after the atom, or -1 if the atom is
+     * not literal.
+     */
+    private fun scanAtom(
+        regex: String, start: Int, metaChars: String, isEscapable: (Char) -> Boolean, alternatives: MutableList<String>
+    ): Int {
+        val c = regex[start]
+        if (c == '\\') {
+            val escaped = regex.getOrNull(start + 1)
+            if (escaped == null || !isEscapable(escaped)) {
+                return -1
+            }
+            alternatives.add(escaped.toString())
+            return start + 2
+        }
+
+        if (c == '(') {
+            return scanGroup(regex, start, metaChars, isEscapable, alternatives)
+        }
+
+        if (c in metaChars) {
+            return -1
+        }
+
+        alternatives.add(c.toString())
+        return start + 1
+    }
+
+    private fun scanGroup(
+        regex: String, start: Int, metaChars: String, isEscapable: (Char) -> Boolean, alternatives: MutableList<String>
+    ): Int {
+        var i = start + 1
+        if (metaChars == JAVA_META_CHARS && regex.startsWith("?:", i)) {
+            i += 2
+        }
+
+        val alternative = StringBuilder()
+        while (i < regex.length) {
+            val c = regex[i]
+            when {
+                c == ')' -> {
+                    alternatives.add(alternative.toString())
+                    return i + 1
+                }
+                c == '|' -> {
+                    alternatives.add(alternative.toString())
+                    alternative.setLength(0)
+                }
+                c == '\\' -> {
+                    val escaped = regex.getOrNull(i + 1)
+                    if (escaped == null || !isEscapable(escaped)) {
+                        return -1
+                    }
+                    alternative.append(escaped)
+                    ++i
+                }
+                c in metaChars -> return -1
+                else -> alternative.append(c)
+            }
+            ++i
+        }
+
+        return -1
+    }
+
+    /**
+     * Check if there is an alternation outside any group or character class, the prefixes of the first
+     * alternative are not the prefixes of the whole regular expression in such case.
+     */
+    private fun hasTopLevelAlternation(regex: String, start: Int): Boolean {
+        var depth = 0
+        var inClass = false
+        var i = start
+        while (i < regex.length) {
+            when (regex[i]) {
+                '\\' -> ++i
+                '[' -> inClass = true
+                ']' -> inClass = false
+                '(' -> if (!inClass) ++depth
+                ')' -> if (!inClass) --depth
+                '|' -> if (!inClass && depth == 0) return true
+            }
+            ++i
+        }
+
+        return false
+    }
+}
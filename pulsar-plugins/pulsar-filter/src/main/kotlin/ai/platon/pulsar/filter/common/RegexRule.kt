@@ -1,6 +1,8 @@
 
 package ai.platon.pulsar.filter.common
 
+import dk.brics.automaton.Automaton
+
 /**
  * A generic regular expression rule.
  *
@@ -19,7 +21,7 @@ package ai.platon.pulsar.filter.common
  * is the regular expression used for matching (see
  * [.match] method).
  */
-abstract class RegexRule(private val sign: Boolean, regex: String) {
+abstract class RegexRule(private val sign: Boolean, val regex: String) {
     /**
      * Return if this rule is used for filtering-in or out.
      *
@@ -39,4 +41,20 @@ abstract class RegexRule(private val sign: Boolean, regex: String) {
      * `false`.
      */
     abstract fun match(url: String): Boolean
+
+    /**
+     * Returns the literal strings one of which every url matching this rule starts with,
+     * or an empty list if the rule may match urls starting with anything.
+     *
+     * The prefixes are used by [CompiledRuleSet] to skip the rules which can not match a url.
+     */
+    open fun literalPrefixes(): List<String> = listOf()
+
+    /**
+     * Returns the automaton accepting exactly the urls matching this rule, or null if the rule
+     * can not be expressed as an automaton.
+     *
+     * If all the rules can be expressed as automata, [CompiledRuleSet] merges them into one automaton.
+     */
+    open fun toAutomaton(): Automaton? = null
 }
\ No newline at end of file
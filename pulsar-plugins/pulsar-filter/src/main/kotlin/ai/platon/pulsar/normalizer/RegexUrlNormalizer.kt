@@ -85,6 +85,12 @@ class RegexUrlNormalizer(private val conf: ImmutableConfig) : AbstractScopedUrlN
             curRules = defaultRules
         }
 
+        val anyRule = (curRules as? RuleList)?.anyRule
+        if (anyRule != null && !anyRule.matcher(urlString).find()) {
+            // no rule matches the url, so none of them changes it
+            return urlString
+        }
+
         for (r in curRules!!) {
             val matcher = r.pattern!!.matcher(urlString)
             urlString = matcher.replaceAll(r.substitution)
@@ -146,7 +152,7 @@ class RegexUrlNormalizer(private val conf: ImmutableConfig) : AbstractScopedUrlN
         }
         return if (rules.size == 0) {
             EMPTY_RULES
-        } else rules
+        } else RuleList(rules)
     }
 
     /**
@@ -158,6 +164,37 @@ class RegexUrlNormalizer(private val conf: ImmutableConfig) : AbstractScopedUrlN
         var substitution: String? = null
     }
 
+    /**
+     * A list of rules with a pattern matching the urls matched by any of the rules.
+     *
+     * The rules are applied one after another, and a rule changes the url only if it matches, so if the combined
+     * pattern does not match the original url, no rule changes it, and the url is returned without running every
+     * rule. Patterns with back references can not be combined since the group numbers are shifted.
+     */
+    class RuleList(rules: List<Rule>) : List<Rule> by rules {
+        /**
+         * The pattern matching the urls matched by any of the rules, or null if the rules can not be combined.
+         */
+        val anyRule: Pattern? = combine(rules)
+
+        private fun combine(rules: List<Rule>): Pattern? {
+            val patterns = rules.map { it.pattern?.pattern() ?: return null }
+            if (patterns.any { BACK_REFERENCE.containsMatchIn(it) }) {
+                return null
+            }
+
+            return try {
+                Pattern.compile(patterns.joinToString("|") { "(?:$it)" })
+            } catch (e: PatternSyntaxException) {
+                null
+            }
+        }
+
+        companion object {
+            private val BACK_REFERENCE = "\\\\([1-9]|k<)".toRegex()
+        }
+    }
+
     companion object {
         const val URLNORMALIZER_REGEX_FILE = "urlnormalizer.regex.file"
         const val URLNORMALIZER_REGEX_RULES = "urlnormalizer.regex.rules"
@@ -0,0 +1,160 @@
+package ai.platon.pulsar.filter
+
+import ai.platon.pulsar.common.ResourceLoader
+import ai.platon.pulsar.common.config.ImmutableConfig
+import ai.platon.pulsar.filter.common.AbstractRegexUrlFilter
+import ai.platon.pulsar.filter.common.CompiledRuleSet
+import ai.platon.pulsar.filter.common.LiteralPrefixes
+import ai.platon.pulsar.filter.common.RegexRule
+import org.junit.jupiter.api.Tag
+import java.io.StringReader
+import kotlin.test.*
+
+class TestCompiledRuleSet {
+    private val conf = ImmutableConfig()
+    private val sampleFiles = listOf("Benchmarks", "Bigbit", "Ccc", "IntranetCrawling", "Tmail", "WholeWebCrawling")
+    private val automatonSampleFiles = listOf("Benchmarks", "IntranetCrawling", "WholeWebCrawling")
+
+    @Test
+    fun testJavaRegexPrefixes() {
+        assertEquals(listOf("http://www", "https://www"), javaPrefixes("^https?://www.example.com/"))
+        assertEquals(listOf("http://www.example.com/", "https://www.example.com/"),
+            javaPrefixes("^https?://www\\.example\\.com/(.+)"))
+        assertEquals(listOf("http://item.jd", "http://list.jd"), javaPrefixes("^http://(item|list)\\.jd"))
+        assertEquals(listOf("http://"), javaPrefixes("^http://([a-z0-9]*\\.)*tmall.com/"))
+        assertEquals(listOf("file:", "ftp:", "mailto:"), javaPrefixes("^(file|ftp|mailto):"))
+        assertEquals(listOf("ab"), javaPrefixes("^abc*"))
+        assertEquals(listOf("abc"), javaPrefixes("^abc+d"))
+
+        // not anchored, the rule may match anywhere
+        assertEquals(listOf(), javaPrefixes("http://www\\.example\\.com/"))
+        // top level alternation
+        assertEquals(listOf(), javaPrefixes("^http://a|^http://b"))
+        // flags and character classes
+        assertEquals(listOf(), javaPrefixes("^(?i)http://"))
+        assertEquals(listOf(), javaPrefixes("^\\w+://"))
+        assertEquals(listOf("ab", "b"), javaPrefixes("^a?b"))
+    }
+
+    @Test
+    fun testAutomatonRegexPrefixes() {
+        assertEquals(listOf("http://www.example.com/", "https://www.example.com/"),
+            automatonPrefixes("http(s)?://www\\.example\\.com/.*"))
+        assertEquals(listOf("file:", "ftp:", "mailto:"), automatonPrefixes("(file|ftp|mailto):.*"))
+        assertEquals(listOf(), automatonPrefixes(".*\\.(gif|jpg)"))
+        assertEquals(listOf(), automatonPrefixes("\"http\".*"))
+    }
+
+    @Test
+    fun whenFilterSampleUrls_ThenResultsAreTheSameAsSequentialEvaluation() {
+        sampleFiles.forEach { file ->
+            val filter = RegexUrlFilter(reader("sample/$file.rules"), conf)
+            assertFalse(filter.compiledRules.isMerged)
+            assertSameAsSequential(filter, urls("sample/$file.urls"))
+        }
+
+        automatonSampleFiles.forEach { file ->
+            val filter = AutomatonUrlFilter(reader("automaton/sample/$file.rules"), conf)
+            assertTrue(filter.compiledRules.isMerged)
+            val urls = urls("automaton/sample/$file.urls")
+            assertSameAsSequential(filter, urls)
+
+            // the prefix index is used if the rules can not be merged
+            val indexed = CompiledRuleSet(filter.compiledRules.rules, maxStates = 0)
+            assertFalse(indexed.isMerged)
+            urls.forEach { assertEquals(sequentialFilter(filter.compiledRules.rules, it), indexed.filter(it), it) }
+        }
+    }
+
+    @Test
+    fun whenRulesHaveHostPrefixes_ThenOnlyCandidateRulesAreEvaluated() {
+        val rules = siteRules(100, automaton = false)
+        val filter = RegexUrlFilter(StringReader(rules), conf)
+        assertEquals(201, filter.compiledRules.numPrefixedRules)
+        assertSameAsSequential(filter, siteUrls(100))
+    }
+
+    @Tag("SlowTest")
+    @Test
+    fun benchmark() {
+        val numSites = 300
+        val urls = siteUrls(numSites)
+        val rounds = 20
+        val filters = listOf(
+            "regex" to RegexUrlFilter(StringReader(siteRules(numSites, automaton = false)), conf),
+            "automaton" to AutomatonUrlFilter(StringReader(siteRules(numSites, automaton = true)), conf),
+        )
+
+        println(String.format("%-12s%-12s%12s", "rules", "engine", "urls/s"))
+        filters.forEach { (name, filter) ->
+            val rules = filter.compiledRules.rules
+            assertSameAsSequential(filter, urls)
+            val sequential = measure(rounds, urls) { sequentialFilter(rules, it) }
+            val compiled = measure(rounds, urls) { filter.filter(it) }
+            println(String.format("%-12s%-12s%12d", name, "sequential", sequential))
+            println(String.format("%-12s%-12s%12d", name, "compiled", compiled))
+        }
+    }
+
+    private fun assertSameAsSequential(filter: AbstractRegexUrlFilter, urls: List<String>) {
+        val rules = filter.compiledRules.rules
+        urls.forEach { assertEquals(sequentialFilter(rules, it), filter.filter(it), it) }
+    }
+
+    /**
+     * The evaluation before the rules are compiled.
+     * */
+    private fun sequentialFilter(rules: List<RegexRule>, url: String): String? {
+        for (rule in rules) {
+            if (rule.match(url)) {
+                return if (rule.accept()) url else null
+            }
+        }
+        return null
+    }
+
+    private fun measure(rounds: Int, urls: List<String>, filter: (String) -> String?): Long {
+        urls.forEach { filter(it) }
+        val startTime = System.nanoTime()
+        repeat(rounds) { urls.forEach { filter(it) } }
+        return rounds * urls.size * 1_000_000_000L / (System.nanoTime() - startTime).coerceAtLeast(1)
+    }
+
+    private fun siteRules(numSites: Int, automaton: Boolean): String {
+        val common = if (automaton) {
+            "-(file|ftp|mailto):.*\n-.*\\.(gif|jpg|png|css|js)\n"
+        } else {
+            "-^(file|ftp|mailto):\n-\\.(gif|jpg|png|css|js)$\n"
+        }
+        val sites = (1..numSites).joinToString("\n") {
+            if (automaton) {
+                "+http(s)?://www\\.site$it\\.com/(item|list)/.*\n-http(s)?://www\\.site$it\\.com/.*"
+            } else {
+                "+^https?://www\\.site$it\\.com/(item|list)/\n-^https?://www\\.site$it\\.com/"
+            }
+        }
+        return common + sites + (if (automaton) "\n-.*\n" else "\n-.\n")
+    }
+
+    private fun siteUrls(numSites: Int): List<String> {
+        return (1..numSites).flatMap {
+            listOf(
+                "https://www.site$it.com/item/$it?ref=home",
+                "http://www.site$it.com/list/$it",
+                "https://www.site$it.com/about",
+                "https://www.site$it.com/static/logo.png",
+                "https://www.other$it.com/item/$it",
+            )
+        }
+    }
+
+    private fun javaPrefixes(regex: String) = LiteralPrefixes.ofJavaRegex(regex).sorted()
+
+    private fun automatonPrefixes(regex: String) = LiteralPrefixes.ofAutomatonRegex(regex).sorted()
+
+    private fun reader(resource: String) = ResourceLoader.getResourceAsReader(resource)!!
+
+    private fun urls(resource: String): List<String> {
+        return ResourceLoader.readAllLines(resource).filter { it.length > 1 }.map { it.substring(1) }
+    }
+}
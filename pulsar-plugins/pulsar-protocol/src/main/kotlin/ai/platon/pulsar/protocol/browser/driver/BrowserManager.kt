@@ -3,6 +3,7 @@ package ai.platon.pulsar.protocol.browser.driver
 import ai.platon.pulsar.browser.driver.chrome.common.ChromeOptions
 import ai.platon.pulsar.browser.driver.chrome.common.LauncherOptions
 import ai.platon.pulsar.common.*
+import ai.platon.pulsar.common.config.CapabilityTypes.BROWSER_PREWARM_SIZE
 import ai.platon.pulsar.common.config.ImmutableConfig
 import ai.platon.pulsar.skeleton.context.PulsarContexts
 import ai.platon.pulsar.skeleton.crawl.fetch.driver.*
@@ -18,6 +19,10 @@ open class BrowserManager(
     private var registered = AtomicBoolean()
     private val closed = AtomicBoolean()
     private val browserFactory = BrowserFactory()
+    /**
+     * Keeps browsers launched in advance, disabled by default
+     * */
+    private val prewarmer = BrowserPrewarmer(conf.getInt(BROWSER_PREWARM_SIZE, 0))
     private val _browsers = ConcurrentHashMap<BrowserId, Browser>()
     private val historicalBrowsers = ConcurrentLinkedDeque<Browser>()
     private val closedBrowsers = ConcurrentLinkedDeque<Browser>()
@@ -33,15 +38,22 @@ open class BrowserManager(
     fun launch(browserId: BrowserId, driverSettings: WebDriverSettings, capabilities: Map<String, Any>): Browser {
         registerAsClosableIfNecessary()
 
-        val launcherOptions = LauncherOptions(driverSettings)
-        if (driverSettings.isSupervised) {
-            launcherOptions.supervisorProcess = driverSettings.supervisorProcess
-            launcherOptions.supervisorProcessArgs.addAll(driverSettings.supervisorProcessArgs)
-        }
-
+        val launcherOptions = createLauncherOptions(driverSettings)
         val launchOptions = driverSettings.createChromeOptions(capabilities)
         return launchIfAbsent(browserId, launcherOptions, launchOptions)
     }
+
+    /**
+     * Start launching browsers in advance if pre-warming is enabled, the browsers are launched with the options of
+     * the temporary browsers without proxy.
+     * */
+    fun prewarm(driverSettings: WebDriverSettings) {
+        if (prewarmer.size > 0) {
+            registerAsClosableIfNecessary()
+            val launchOptions = driverSettings.createChromeOptions(driverSettings.createGeneralOptions())
+            prewarmer.prewarm(createLauncherOptions(driverSettings), launchOptions)
+        }
+    }
     /**
      * Find an existing browser.
      * */
@@ -54,10 +66,13 @@ open class BrowserManager(
     @Synchronized
     fun closeBrowser(browserId: BrowserId) {
         val browser = _browsers.remove(browserId)
+        // drop the connection pool of the privacy context
+        HttpResourceLoader.DEFAULT.evict(browserId.contextDir.toString())
         if (browser is AbstractBrowser) {
             kotlin.runCatching { browser.close() }.onFailure { warnForClose(this, it) }
             closedBrowsers.add(browser)
         }
+        prewarmer.release(browserId)
     }
 
     @Synchronized
@@ -66,6 +81,7 @@ open class BrowserManager(
             kotlin.runCatching { browser.destroyForcibly() }.onFailure { warnInterruptible(this, it) }
             closedBrowsers.add(browser)
         }
+        prewarmer.release(browserId)
     }
 
     @Synchronized
@@ -131,6 +147,7 @@ open class BrowserManager(
                 kotlin.runCatching { browser.close() }.onFailure { warnForClose(this, it) }
             }
             _browsers.clear()
+            kotlin.runCatching { prewarmer.close() }.onFailure { warnForClose(this, it) }
         }
     }
 
@@ -144,7 +161,8 @@ open class BrowserManager(
         }
 
         synchronized(browserFactory) {
-            val browser1 = browserFactory.launch(browserId, launcherOptions, launchOptions)
+            val browser1 = prewarmer.claim(browserId, launcherOptions, launchOptions)
+                ?: browserFactory.launch(browserId, launcherOptions, launchOptions)
             _browsers[browserId] = browser1
             historicalBrowsers.add(browser1)
 
@@ -152,6 +170,15 @@ open class BrowserManager(
         }
     }
 
+    private fun createLauncherOptions(driverSettings: WebDriverSettings): LauncherOptions {
+        val launcherOptions = LauncherOptions(driverSettings)
+        if (driverSettings.isSupervised) {
+            launcherOptions.supervisorProcess = driverSettings.supervisorProcess
+            launcherOptions.supervisorProcessArgs.addAll(driverSettings.supervisorProcessArgs)
+        }
+        return launcherOptions
+    }
+
     private fun registerAsClosableIfNecessary() {
         if (registered.compareAndSet(false, true)) {
             // Actually, it's safe to register multiple times, the manager will be closed only once, and the browsers
@@ -0,0 +1,207 @@
+package ai.platon.pulsar.protocol.browser.driver
+
+import ai.platon.pulsar.browser.driver.chrome.ChromeLauncher
+import ai.platon.pulsar.browser.driver.chrome.RemoteChrome
+import ai.platon.pulsar.browser.driver.chrome.common.ChromeOptions
+import ai.platon.pulsar.browser.driver.chrome.common.LauncherOptions
+import ai.platon.pulsar.common.AppContext
+import ai.platon.pulsar.common.AppPaths
+import ai.platon.pulsar.common.browser.BrowserFiles
+import ai.platon.pulsar.common.browser.BrowserType
+import ai.platon.pulsar.common.getLogger
+import ai.platon.pulsar.common.warnForClose
+import ai.platon.pulsar.common.warnInterruptible
+import ai.platon.pulsar.protocol.browser.driver.cdt.ChromeDevtoolsBrowser
+import ai.platon.pulsar.skeleton.common.metrics.MetricsSystem
+import ai.platon.pulsar.skeleton.crawl.fetch.privacy.BrowserId
+import com.codahale.metrics.Gauge
+import org.apache.commons.io.FileUtils
+import java.nio.file.Path
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentLinkedDeque
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Keeps [size] browsers launched, connected and idle in the background, so the next browser is ready the moment
+ * a browser is retired and a new [BrowserId] is requested.
+ *
+ * The limits:
+ *
+ * 1. A pre-launched browser runs on a random staging user data dir in the `prewarm` group of the temporary context
+ *    dirs, cloned from the prototype by [ai.platon.pulsar.browser.driver.chrome.util.ProfileCloner], not on the
+ *    context dir of the [BrowserId] it serves. The staging dir is deleted when the browser is [release]d.
+ * 2. Only temporary browsers without proxy are served, since the user data dir of a permanent browser carries state
+ *    and the proxy is a launch argument.
+ * 3. A browser is served only if it's launched with exactly the same options as the requested one, the options are
+ *    known after [prewarm] is called, which is done when the browser manager starts, or after the first [claim].
+ * */
+class BrowserPrewarmer(
+    /**
+     * The number of browsers to keep warm, 0 to disable pre-warming
+     * */
+    val size: Int
+) : AutoCloseable {
+    private class WarmChrome(val key: String, val launcher: ChromeLauncher, val chrome: RemoteChrome)
+
+    private val logger = getLogger(this)
+    private val closed = AtomicBoolean()
+    private val warmChromes = ConcurrentLinkedDeque<WarmChrome>()
+    private val numLaunching = AtomicInteger()
+    /**
+     * The staging context dirs of the browsers served, they are deleted when the browsers are released
+     * */
+    private val servedContextDirs = ConcurrentHashMap<BrowserId, Path>()
+    private val executor = Executors.newSingleThreadExecutor { r ->
+        Thread(r, "browser-prewarmer").also { it.isDaemon = true }
+    }
+
+    private val registry = MetricsSystem.reg
+    val hits = registry.meter(this, "hits")
+    val misses = registry.meter(this, "misses")
+
+    val numWarm get() = warmChromes.size
+
+    val isActive get() = size > 0 && !closed.get() && AppContext.isActive
+
+    init {
+        registry.register(this, "warm", Gauge { numWarm })
+    }
+
+    /**
+     * Check if a pre-launched browser can serve the browser.
+     * */
+    fun isEligible(browserId: BrowserId, launchOptions: ChromeOptions): Boolean {
+        return isActive && browserId.browserType == BrowserType.PULSAR_CHROME
+                && browserId.privacyAgent.isTemporary
+                && !browserId.hasProxy() && launchOptions.proxyServer == null
+    }
+
+    /**
+     * Start launching browsers in the background with the options of the browsers to serve.
+     * */
+    fun prewarm(launcherOptions: LauncherOptions, launchOptions: ChromeOptions) {
+        if (isActive && launchOptions.proxyServer == null) {
+            refill(keyOf(launcherOptions, launchOptions), launcherOptions, launchOptions)
+        }
+    }
+
+    /**
+     * Take a pre-launched browser for [browserId] if there is one launched with the same options,
+     * and launch new ones in the background to keep [size] browsers warm.
+     * */
+    fun claim(
+        browserId: BrowserId, launcherOptions: LauncherOptions, launchOptions: ChromeOptions
+    ): ChromeDevtoolsBrowser? {
+        if (!isEligible(browserId, launchOptions)) {
+            return null
+        }
+
+        val key = keyOf(launcherOptions, launchOptions)
+        var warmChrome: WarmChrome? = null
+        val iterator = warmChromes.iterator()
+        while (iterator.hasNext()) {
+            val chrome = iterator.next()
+            if (!chrome.launcher.isAlive) {
+                // died while waiting
+                iterator.remove()
+                close(chrome)
+            } else if (chrome.key == key) {
+                iterator.remove()
+                warmChrome = chrome
+                break
+            }
+        }
+
+        // the options changed, the browsers launched with the old options are useless
+        warmChromes.removeIf { it.key != key && close(it) }
+        refill(key, launcherOptions, launchOptions)
+
+        if (warmChrome == null) {
+            misses.mark()
+            return null
+        }
+
+        hits.mark()
+        servedContextDirs[browserId] = warmChrome.launcher.userDataDir.parent
+        logger.info("Serve browser with a pre-launched one | {} <- {}",
+            browserId.display, warmChrome.launcher.userDataDir)
+        return ChromeDevtoolsBrowser(browserId, warmChrome.chrome, warmChrome.launcher)
+    }
+
+    /**
+     * Delete the staging context dir of the browser if it's served by a pre-launched one, the browser must be closed.
+     * */
+    fun release(browserId: BrowserId) {
+        servedContextDirs.remove(browserId)?.let { deleteContextDir(it) }
+    }
+
+    /**
+     * Close the browsers not served yet, and delete the staging context dirs of the browsers served,
+     * which must be closed before.
+     * */
+    override fun close() {
+        if (closed.compareAndSet(false, true)) {
+            executor.shutdownNow()
+            kotlin.runCatching { executor.awaitTermination(10, TimeUnit.SECONDS) }
+            while (true) {
+                close(warmChromes.poll() ?: break)
+            }
+            servedContextDirs.keys.toList().forEach { release(it) }
+        }
+    }
+
+    private fun refill(key: String, launcherOptions: LauncherOptions, launchOptions: ChromeOptions) {
+        while (isActive && warmChromes.size + numLaunching.get() < size) {
+            numLaunching.incrementAndGet()
+            executor.execute {
+                try {
+                    launchWarm(key, launcherOptions, launchOptions)?.let { warmChromes.add(it) }
+                    // the prewarmer is closed while launching
+                    if (!isActive) {
+                        warmChromes.removeIf { close(it) }
+                    }
+                } finally {
+                    numLaunching.decrementAndGet()
+                }
+            }
+        }
+    }
+
+    private fun launchWarm(key: String, launcherOptions: LauncherOptions, launchOptions: ChromeOptions): WarmChrome? {
+        if (!isActive) {
+            return null
+        }
+
+        val userDataDir = BrowserFiles.computeRandomTmpContextDir("prewarm").resolve("pulsar_chrome")
+        val launcher = ChromeLauncher(userDataDir = userDataDir, options = launcherOptions)
+        return try {
+            val chrome = launcher.launch(launchOptions)
+            WarmChrome(key, launcher, chrome)
+        } catch (t: Throwable) {
+            warnInterruptible(this, t, "Failed to pre-launch browser | {}", userDataDir)
+            launcher.close()
+            null
+        }
+    }
+
+    private fun close(warmChrome: WarmChrome): Boolean {
+        kotlin.runCatching { warmChrome.chrome.close() }.onFailure { warnForClose(this, it) }
+        kotlin.runCatching { warmChrome.launcher.close() }.onFailure { warnForClose(this, it) }
+        deleteContextDir(warmChrome.launcher.userDataDir.parent)
+        return true
+    }
+
+    private fun deleteContextDir(contextDir: Path) {
+        // be careful, delete only the staging dirs created by this class
+        if (contextDir.startsWith(AppPaths.CONTEXT_TMP_DIR)) {
+            FileUtils.deleteQuietly(contextDir.toFile())
+        }
+    }
+
+    private fun keyOf(launcherOptions: LauncherOptions, launchOptions: ChromeOptions): String {
+        return launcherOptions.supervisorProcess + " " + launchOptions.toList().joinToString(" ")
+    }
+}
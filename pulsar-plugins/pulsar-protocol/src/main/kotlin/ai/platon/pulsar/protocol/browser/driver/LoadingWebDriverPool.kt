@@ -11,9 +11,12 @@ import ai.platon.pulsar.protocol.browser.emulator.WebDriverPoolExhaustedExceptio
 import ai.platon.pulsar.skeleton.common.AppSystemInfo
 import ai.platon.pulsar.skeleton.common.IllegalApplicationStateException
 import ai.platon.pulsar.skeleton.common.metrics.MetricsSystem
+import ai.platon.pulsar.skeleton.common.persist.ext.stageTrace
 import ai.platon.pulsar.skeleton.crawl.BrowseEventHandlers
 import ai.platon.pulsar.skeleton.crawl.fetch.driver.*
 import ai.platon.pulsar.skeleton.crawl.fetch.privacy.BrowserId
+import ai.platon.pulsar.skeleton.crawl.fetch.trace.TaskStage
+import ai.platon.pulsar.skeleton.crawl.fetch.trace.trace
 import org.slf4j.LoggerFactory
 import java.time.Duration
 import java.time.Instant
@@ -41,6 +44,10 @@ class LoadingWebDriverPool constructor(
     private val logger = LoggerFactory.getLogger(LoadingWebDriverPool::class.java)
     
     val id = instanceSequencer.incrementAndGet()
+    /**
+     * The time the pool is created, in [System.nanoTime]
+     * */
+    val createNanos = System.nanoTime()
     
     private val registry = MetricsSystem.defaultMetricRegistry
     
@@ -238,10 +245,12 @@ class LoadingWebDriverPool constructor(
         // NOTE: concurrency note - if multiple threads come to the code snippet,
         // only one goes to pollWithEvents, others wait in poll
         val notEmitted = launchEventsEmitted.compareAndSet(false, true)
-        return if (notEmitted) {
-            pollWithEvents(priority, conf, event, page, timeout)
-        } else {
-            poll(priority, conf, timeout)
+        return page.stageTrace.trace(TaskStage.DRIVER_POLL) {
+            if (notEmitted) {
+                pollWithEvents(priority, conf, event, page, timeout)
+            } else {
+                poll(priority, conf, timeout)
+            }
         }
     }
     
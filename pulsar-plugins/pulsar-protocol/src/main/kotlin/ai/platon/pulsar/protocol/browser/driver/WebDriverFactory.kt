@@ -30,6 +30,11 @@ open class WebDriverFactory(
      */
     private val numDrivers = AtomicInteger()
     
+    init {
+        // the browsers are launched in advance only if pre-warming is enabled
+        browserManager.prewarm(driverSettings)
+    }
+    
     /**
      * Create a WebDriver.
      */
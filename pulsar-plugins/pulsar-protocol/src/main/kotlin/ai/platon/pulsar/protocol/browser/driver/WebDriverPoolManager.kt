@@ -24,6 +24,8 @@ import java.time.Instant
 import java.util.concurrent.ConcurrentSkipListMap
 import java.util.concurrent.atomic.AtomicBoolean
 import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.TimeUnit
 
 /**
  * The web driver pool manager.
@@ -83,6 +85,14 @@ open class WebDriverPoolManager(
     
     val numReset by lazy { MetricsSystem.reg.meter(this, "numReset") }
     val numTimeout by lazy { MetricsSystem.reg.meter(this, "numTimeout") }
+    /**
+     * The time from closing a browser to the first ready driver of the next browser
+     * */
+    val browserSwitchTimer by lazy { MetricsSystem.reg.timer(this, "browserSwitch") }
+    /**
+     * The time the last browser accompanied driver pool is closed, 0 if a ready driver has been served since then
+     * */
+    private val lastBrowserCloseNanos = AtomicLong()
     val gauges = mapOf(
         "waitingTasks" to Gauge { numWaitingTasks },
         "standbyDrivers" to Gauge { numStandbyDrivers },
@@ -498,6 +508,7 @@ open class WebDriverPoolManager(
         try {
             driver =
                 driverPool.poll(task.priority, task.volatileConfig, task.page.event?.browseEventHandlers, task.page)
+            recordBrowserSwitch(driverPool)
             
             return runWithDriver(task, driver)
         } finally {
@@ -505,6 +516,20 @@ open class WebDriverPoolManager(
         }
     }
     
+    /**
+     * Record the time from closing the last browser to the first driver ready in a driver pool created after it.
+     * */
+    private fun recordBrowserSwitch(driverPool: LoadingWebDriverPool) {
+        val closeNanos = lastBrowserCloseNanos.get()
+        if (closeNanos != 0L && driverPool.createNanos > closeNanos && lastBrowserCloseNanos.compareAndSet(closeNanos, 0)) {
+            browserSwitchTimer.update(System.nanoTime() - closeNanos, TimeUnit.NANOSECONDS)
+        }
+    }
+    
+    internal fun onBrowserAccompaniedDriverPoolClosed() {
+        lastBrowserCloseNanos.set(System.nanoTime())
+    }
+    
     private suspend fun runCancelableWithTimeout(task: WebDriverTask, driver: WebDriver): FetchResult? {
         // do not take up too much time on this driver
         val fetchTaskTimeout = driverSettings.fetchTaskTimeout
@@ -697,6 +722,7 @@ private class BrowserAccompaniedDriverPoolCloser(
         
         kotlin.runCatching { driverPoolPool.close(driverPool) }.onFailure { warnInterruptible(this, it) }
         kotlin.runCatching { browserManager.closeBrowser(browser) }.onFailure { warnInterruptible(this, it) }
+        driverPoolManager.onBrowserAccompaniedDriverPoolClosed()
     }
     
     private fun findOldestRetiredDriverPoolOrNull(): LoadingWebDriverPool? {
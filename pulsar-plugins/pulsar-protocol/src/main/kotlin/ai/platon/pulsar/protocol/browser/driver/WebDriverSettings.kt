@@ -66,8 +66,8 @@ open class WebDriverSettings(conf: ImmutableConfig): BrowserSettings(conf) {
         val POLLING_DRIVER_TIMEOUT_DEFAULT = Duration.ofSeconds(60)
     }
 
-    val fetchTaskTimeout get() = conf.getDuration(FETCH_TASK_TIMEOUT, FETCH_TASK_TIMEOUT_DEFAULT)
-    val pollingDriverTimeout get() = conf.getDuration(POLLING_DRIVER_TIMEOUT, POLLING_DRIVER_TIMEOUT_DEFAULT)
+    val fetchTaskTimeout get() = conf.snapshot().getDuration(FETCH_TASK_TIMEOUT, FETCH_TASK_TIMEOUT_DEFAULT)
+    val pollingDriverTimeout get() = conf.snapshot().getDuration(POLLING_DRIVER_TIMEOUT, POLLING_DRIVER_TIMEOUT_DEFAULT)
 
     // Special
     // var mobileEmulationEnabled = true
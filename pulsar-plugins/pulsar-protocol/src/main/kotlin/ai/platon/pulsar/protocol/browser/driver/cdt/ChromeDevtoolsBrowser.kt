@@ -29,7 +29,7 @@ class ChromeDevtoolsBrowser(
 
     private val conf get() = browserSettings.conf
 
-    private val reuseRecoveredDriver get() = conf.getBoolean(BROWSER_REUSE_RECOVERED_DRIVERS, false)
+    private val reuseRecoveredDriver get() = conf.snapshot().getBoolean(BROWSER_REUSE_RECOVERED_DRIVERS, false)
 
     override val isActive get() = super.isActive && chrome.isActive
 
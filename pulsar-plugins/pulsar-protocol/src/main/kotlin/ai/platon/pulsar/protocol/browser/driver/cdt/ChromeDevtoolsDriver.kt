@@ -22,6 +22,7 @@ import com.github.kklisura.cdt.protocol.v2023.events.network.ResponseReceived
 import com.github.kklisura.cdt.protocol.v2023.events.page.WindowOpen
 import com.github.kklisura.cdt.protocol.v2023.types.fetch.RequestPattern
 import com.github.kklisura.cdt.protocol.v2023.types.network.Cookie
+import com.github.kklisura.cdt.protocol.v2023.types.page.FrameTree
 import com.github.kklisura.cdt.protocol.v2023.types.network.ErrorReason
 import com.github.kklisura.cdt.protocol.v2023.types.network.LoadNetworkResourceOptions
 import com.github.kklisura.cdt.protocol.v2023.types.network.ResourceType
@@ -88,6 +89,9 @@ class ChromeDevtoolsDriver(
     private var credentials: Credentials? = null
 
     private val networkManager by lazy { NetworkManager(this, rpc) }
+    private val readinessMonitor by lazy {
+        ReadinessMonitor(devTools, networkManager, browserSettings.confuser.confuse(ReadinessMonitor.BINDING_NAME))
+    }
     private val messageWriter = MiscMessageWriter()
 
     private val enableStartupScript get() = browserSettings.isStartupScriptEnabled
@@ -182,7 +186,10 @@ class ChromeDevtoolsDriver(
 
     @Throws(WebDriverException::class)
     override suspend fun currentUrl(): String {
-        navigateUrl = invokeOnPage("currentUrl") { mainFrameAPI?.url } ?: navigateUrl
+        // suspend until the response arrives, do not block the current thread
+        navigateUrl = invokeOnPage("currentUrl") {
+            devTools.invokeDeferred<FrameTree>("Page.getFrameTree", returnProperty = "frameTree")?.frame?.url
+        } ?: navigateUrl
         return navigateUrl
     }
 
@@ -235,6 +242,10 @@ class ChromeDevtoolsDriver(
         return waitFor("waitForPage", timeout) { browser.findDriver(url) }
     }
 
+    override suspend fun waitForSettleSignal(timeout: Duration): Boolean {
+        return if (isActive) readinessMonitor.await(timeout) else super.waitForSettleSignal(timeout)
+    }
+
     override suspend fun waitUntil(timeout: Duration, predicate: suspend () -> Boolean) =
         waitUntil("waitUtil", timeout, predicate)
 
@@ -469,7 +480,10 @@ class ChromeDevtoolsDriver(
 
     @Throws(WebDriverException::class)
     override suspend fun outerHTML(): String? {
-        return invokeOnPage("outerHTML") { domAPI?.outerHTML }
+        // the document can be very large, suspend until the response arrives, do not block the current thread
+        return invokeOnPage("outerHTML") {
+            devTools.invokeDeferred<String>("DOM.getOuterHTML", returnProperty = "outerHTML")
+        }
     }
 
     @Throws(WebDriverException::class)
@@ -710,6 +724,9 @@ class ChromeDevtoolsDriver(
             credentials?.let { networkManager.authenticate(it) }
         }
 
+        readinessMonitor.install()
+        readinessMonitor.reset()
+
         navigateUrl = url
         // TODO: This is a temporary solution to serve local file, for example, file:///tmp/example.html
         if (AppConstants.LOCAL_FILE_SERVE_PREFIX in url) {
@@ -14,6 +14,7 @@ import com.github.kklisura.cdt.protocol.v2023.types.fetch.RequestPattern
 import com.github.kklisura.cdt.protocol.v2023.types.network.Response
 import java.lang.ref.WeakReference
 import java.util.*
+import java.util.concurrent.ConcurrentHashMap
 
 internal class NetworkManager(
         private val driver: ChromeDevtoolsDriver,
@@ -39,6 +40,12 @@ internal class NetworkManager(
     var userRequestInterceptionEnabled = false
     var protocolRequestInterceptionEnabled = false
     var userCacheDisabled = false
+
+    private val inflightRequestIds = ConcurrentHashMap.newKeySet<String>()
+    /**
+     * The number of requests which are sent but not finished or failed yet
+     * */
+    val numInflightRequests get() = inflightRequestIds.size
     
     init {
         fetchAPI?.onRequestPaused(::onRequestPaused)
@@ -63,6 +70,13 @@ internal class NetworkManager(
         }
     }
     
+    /**
+     * Forget all in-flight requests, the requests of the previous document might never finish.
+     * */
+    fun clearInflightRequests() {
+        inflightRequestIds.clear()
+    }
+    
     fun authenticate(credentials: Credentials) {
         this.credentials = credentials
         updateProtocolRequestInterception()
@@ -157,6 +171,7 @@ internal class NetworkManager(
     
     private fun onRequestWillBeSent(event: RequestWillBeSent) {
         tracer?.trace("onRequestWillBeSent | {}", event.requestId)
+        inflightRequestIds.add(event.requestId)
         // Request interception doesn't happen for data URLs with Network Service.
         
         // TODO: remove RequestWillBeSent, use emit(NetworkManagerEvents.Request, request)
@@ -402,6 +417,7 @@ internal class NetworkManager(
     private fun onLoadingFinished(event: LoadingFinished) {
         val requestId = event.requestId
         tracer?.trace("onLoadingFinished | {}", event.requestId)
+        settleRequest(requestId)
         
         val queuedEventGroup =networkEventManager.getQueuedEventGroup(requestId)
         if (queuedEventGroup != null) {
@@ -411,6 +427,15 @@ internal class NetworkManager(
         }
     }
     
+    /**
+     * Forget the in-flight request, and emit [NetworkEvents.NetworkIdle] if it's the last one.
+     * */
+    private fun settleRequest(requestId: String) {
+        if (inflightRequestIds.remove(requestId) && inflightRequestIds.isEmpty()) {
+            emit(NetworkEvents.NetworkIdle)
+        }
+    }
+    
     private fun emitLoadingFinished(event: LoadingFinished) {
         // For certain requestIds we never receive requestWillBeSent event.
         // @see https://crbug.com/750469
@@ -427,6 +452,7 @@ internal class NetworkManager(
     private fun onLoadingFailed(event: LoadingFailed) {
         val requestId = event.requestId
         tracer?.trace("onLoadingFailed | {}", event.requestId)
+        settleRequest(requestId)
         
         // If the response event for this request is still waiting on a
         // corresponding ExtraInfo event, then wait to emit this event too.
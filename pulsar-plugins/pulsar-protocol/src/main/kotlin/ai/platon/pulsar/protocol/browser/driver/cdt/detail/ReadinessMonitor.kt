@@ -0,0 +1,118 @@
+package ai.platon.pulsar.protocol.browser.driver.cdt.detail
+
+import ai.platon.pulsar.browser.driver.chrome.RemoteDevTools
+import ai.platon.pulsar.common.getLogger
+import com.github.kklisura.cdt.protocol.v2023.events.page.LifecycleEvent
+import com.github.kklisura.cdt.protocol.v2023.events.runtime.BindingCalled
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.withTimeoutOrNull
+import java.time.Duration
+import java.util.concurrent.atomic.AtomicBoolean
+
+/**
+ * Collects the signals showing that a document is settling down, and wakes up the waiters:
+ *
+ * * the lifecycle events of the page, e.g., DOMContentLoaded, load, networkAlmostIdle and networkIdle
+ * * the number of in-flight requests tracked by [NetworkManager] drops to zero
+ * * the injected script reports through a binding that the DOM stops mutating
+ *
+ * A signal does not mean the document is ready, it means it's the time to check the document again,
+ * so the readiness is checked as soon as something happens rather than at the next fixed polling round.
+ * */
+internal class ReadinessMonitor(
+    private val devTools: RemoteDevTools,
+    private val networkManager: NetworkManager,
+    /**
+     * The name of the binding called by the injected script when the DOM stops mutating
+     * */
+    val bindingName: String,
+) {
+    private val logger = getLogger(this)
+    private val tracer get() = logger.takeIf { it.isTraceEnabled }
+
+    private val installed = AtomicBoolean()
+    private val signals = Channel<String>(Channel.CONFLATED)
+
+    private val pageAPI get() = devTools.page.takeIf { devTools.isOpen }
+    private val runtimeAPI get() = devTools.runtime.takeIf { devTools.isOpen }
+
+    /**
+     * The last lifecycle event of the page, e.g., load, networkIdle
+     * */
+    @Volatile
+    var lastLifecycleEvent: String? = null
+        private set
+
+    /**
+     * The last time the injected script reported the DOM is quiet
+     * */
+    @Volatile
+    var lastQuietTime = 0L
+        private set
+
+    val numInflightRequests get() = networkManager.numInflightRequests
+
+    /**
+     * Subscribe the events, it should be called before the navigation.
+     * */
+    fun install() {
+        if (!installed.compareAndSet(false, true)) {
+            return
+        }
+
+        pageAPI?.setLifecycleEventsEnabled(true)
+        pageAPI?.onLifecycleEvent { onLifecycleEvent(it) }
+        runtimeAPI?.addBinding(bindingName)
+        runtimeAPI?.onBindingCalled { onBindingCalled(it) }
+        networkManager.on(NetworkEvents.NetworkIdle) { signal("networkIdle") }
+    }
+
+    /**
+     * Forget the state of the previous document.
+     * */
+    fun reset() {
+        lastLifecycleEvent = null
+        lastQuietTime = 0L
+        networkManager.clearInflightRequests()
+        signals.tryReceive()
+    }
+
+    /**
+     * Suspend until the next signal arrives or the timeout elapses.
+     *
+     * @return true if a signal arrived before the timeout
+     * */
+    suspend fun await(timeout: Duration): Boolean {
+        val signal = withTimeoutOrNull(timeout.toMillis()) { signals.receive() }
+        tracer?.trace("Readiness signal: {}", signal)
+        return signal != null
+    }
+
+    private fun onLifecycleEvent(event: LifecycleEvent) {
+        val name = event.name
+        if (name in SIGNIFICANT_LIFECYCLE_EVENTS) {
+            lastLifecycleEvent = name
+            signal(name)
+        }
+    }
+
+    private fun onBindingCalled(event: BindingCalled) {
+        if (event.name == bindingName) {
+            lastQuietTime = System.currentTimeMillis()
+            signal("domQuiet")
+        }
+    }
+
+    private fun signal(name: String) {
+        signals.trySend(name)
+    }
+
+    companion object {
+        /**
+         * The binding name before mangled by [ai.platon.pulsar.browser.common.ScriptConfuser]
+         * */
+        const val BINDING_NAME = "__pulsar_notifySettled"
+
+        private val SIGNIFICANT_LIFECYCLE_EVENTS = setOf("DOMContentLoaded", "load", "networkAlmostIdle", "networkIdle")
+    }
+}
@@ -18,7 +18,11 @@ enum class NetworkEvents {
     // may be removed, use Response instead
     ResponseReceived,
     RequestFailed,
-    RequestFinished
+    RequestFinished,
+    /**
+     * All in-flight requests are finished or failed
+     * */
+    NetworkIdle
 }
 
 enum class InterceptResolutionAction(val action: String) {
@@ -38,7 +38,7 @@ class BasicPrivacyContextManager(
     conf: ImmutableConfig
 ): AbstractBrowserPrivacyManager(driverPoolManager, proxyPoolManager, conf) {
     private val logger = LoggerFactory.getLogger(BasicPrivacyContextManager::class.java)
-    private val numPrivacyContexts: Int get() = conf.getInt(CapabilityTypes.PRIVACY_CONTEXT_NUMBER, 2)
+    private val numPrivacyContexts: Int get() = conf.snapshot().getInt(CapabilityTypes.PRIVACY_CONTEXT_NUMBER, 2)
 
     private val iterator = Iterables.cycle(temporaryContexts.values).iterator()
 
@@ -36,6 +36,8 @@ import ai.platon.pulsar.skeleton.crawl.fetch.driver.WebDriver
 import ai.platon.pulsar.skeleton.crawl.fetch.privacy.AbstractPrivacyContext
 import ai.platon.pulsar.skeleton.crawl.fetch.privacy.PrivacyAgent
 import ai.platon.pulsar.skeleton.crawl.fetch.privacy.PrivacyContext
+import ai.platon.pulsar.skeleton.crawl.fetch.trace.TaskStage
+import ai.platon.pulsar.skeleton.crawl.fetch.trace.trace
 import com.google.common.collect.Iterables
 import java.io.IOException
 import java.time.Duration
@@ -69,7 +71,8 @@ open class MultiPrivacyContextManager(
     private val logger = getLogger(MultiPrivacyContextManager::class)
     private val tracer = logger.takeIf { it.isTraceEnabled }
     private var numTasksAtLastReportTime = 0L
-    private val allowedPrivacyContextCount: Int get() = conf.getInt(CapabilityTypes.PRIVACY_CONTEXT_NUMBER, 2)
+    private val allowedPrivacyContextCount: Int
+        get() = conf.snapshot().getInt(CapabilityTypes.PRIVACY_CONTEXT_NUMBER, 2)
 
     val maxAllowedBadContexts = 10
 
@@ -127,7 +130,9 @@ open class MultiPrivacyContextManager(
         // Try to get a ready privacy context, the privacy context is supposed to be:
         // not closed, not retired, [not idle]?, has promised driver.
         // If the privacy context is inactive, close it and cancel the task.
-        val privacyContext = computeNextContext(task.page, task.fingerprint, task)
+        val privacyContext = task.trace.trace(TaskStage.PRIVACY_CONTEXT) {
+            computeNextContext(task.page, task.fingerprint, task)
+        }
         // @Throws(ProxyException::class, Exception::class)
         val result = runIfPrivacyContextActive(privacyContext, task, fetchFun).also { metrics.finishes.mark() }
 
@@ -18,6 +18,7 @@ package ai.platon.pulsar.protocol.browser.emulator.impl
 import ai.platon.pulsar.browser.common.BrowserSettings
 import ai.platon.pulsar.common.*
 import ai.platon.pulsar.common.config.AppConstants
+import ai.platon.pulsar.common.config.CapabilityTypes
 import ai.platon.pulsar.common.config.ImmutableConfig
 import ai.platon.pulsar.common.event.AbstractEventEmitter
 import ai.platon.pulsar.persist.ProtocolStatus
@@ -27,6 +28,7 @@ import ai.platon.pulsar.persist.model.ActiveDOMMessage
 import ai.platon.pulsar.protocol.browser.driver.SessionLostException
 import ai.platon.pulsar.protocol.browser.driver.WebDriverPoolManager
 import ai.platon.pulsar.protocol.browser.emulator.*
+import ai.platon.pulsar.protocol.browser.emulator.util.SettleTimeLearner
 import ai.platon.pulsar.skeleton.common.metrics.MetricsSystem
 import ai.platon.pulsar.skeleton.common.persist.ext.browseEventHandlers
 import ai.platon.pulsar.skeleton.common.persist.ext.options
@@ -34,6 +36,8 @@ import ai.platon.pulsar.skeleton.crawl.GlobalEventHandlers
 import ai.platon.pulsar.skeleton.crawl.fetch.FetchResult
 import ai.platon.pulsar.skeleton.crawl.fetch.FetchTask
 import ai.platon.pulsar.skeleton.crawl.fetch.driver.*
+import ai.platon.pulsar.skeleton.crawl.fetch.trace.TaskStage
+import ai.platon.pulsar.skeleton.crawl.fetch.trace.trace
 import ai.platon.pulsar.skeleton.crawl.protocol.ForwardingResponse
 import ai.platon.pulsar.skeleton.crawl.protocol.Response
 import ai.platon.pulsar.skeleton.crawl.protocol.http.ProtocolStatusTranslator
@@ -68,6 +72,13 @@ open class InteractiveBrowserEmulator(
     private val taskLogger = getLogger(this, ".Task")
     
     private val numDeferredNavigates by lazy { MetricsSystem.reg.meter(this, "deferredNavigates") }
+    
+    /**
+     * Check the readiness as soon as the driver signals the document might be settled, or in a fixed rate if disabled
+     * */
+    private val adaptiveReadiness = immutableConfig.getBoolean(CapabilityTypes.BROWSER_ADAPTIVE_READINESS_ENABLED, true)
+    private val settleTimes = SettleTimeLearner()
+    private val readinessSignals by lazy { MetricsSystem.reg.meter(this, "readinessSignals") }
 
     override var eventExceptionHandler: (Throwable) -> Unit = {
         warnInterruptible(AbstractEventEmitter::class, it)
@@ -337,10 +348,13 @@ open class InteractiveBrowserEmulator(
             driver.waitForSelector("body", Duration.ofSeconds(15))
         }
         
+        // page.conf is created for every task, a snapshot of it would be built for one read and thrown away
         val resourceLoader = page.conf["resource.loader", "jsoup"]
         val response = when (resourceLoader) {
             "web.driver" -> driver.loadResource(navigateTask.url)
             "jsoup" -> NetworkResourceHelper.fromJsoup(driver.loadJsoupResource(navigateTask.url))
+            "http2" -> (driver as? AbstractWebDriver)?.loadHttpResource(navigateTask.url)
+                ?: NetworkResourceHelper.fromJsoup(driver.loadJsoupResource(navigateTask.url))
             else -> NetworkResourceHelper.fromJsoup(driver.loadJsoupResource(navigateTask.url))
         }
         
@@ -473,7 +487,7 @@ open class InteractiveBrowserEmulator(
         
         checkState(fetchTask, driver)
         try {
-            driver.navigateTo(navigateEntry)
+            fetchTask.trace.trace(TaskStage.NAVIGATE) { driver.navigateTo(navigateEntry) }
         } finally {
             emit1(EmulateEvents.navigated, page, driver)
         }
@@ -637,6 +651,12 @@ open class InteractiveBrowserEmulator(
         val delayMillis = 500L * 2
 //        val maxRound = scriptTimeout.toMillis() / delayMillis
         val maxRound = 60
+        // the rounds are not in a fixed rate in adaptive mode, so the total time is bounded rather than the rounds
+        val deadline = Instant.now().plusMillis(maxRound * delayMillis)
+        // the first wait is scheduled by the settle time learned from the documents of the same domain
+        var waitMillis = settleTimes.estimate(interactTask.url)?.toMillis()?.div(2)
+            ?.coerceIn(MIN_READY_CHECK_INTERVAL, delayMillis) ?: MIN_READY_CHECK_INTERVAL
+        val startTime = Instant.now()
 
         // TODO: wait for expected data, ni, na, nn, nst, etc; required element
         val expression = String.format("__pulsar_utils__.waitForReady(%d)", initialScroll)
@@ -645,18 +665,28 @@ open class InteractiveBrowserEmulator(
         try {
             var msg: Any? = null
             // TODO: while driver.isWorking
-            while ((msg == null || msg == false) && i++ < maxRound && isActive && !fetchTask.isCanceled) {
-                msg = evaluate(interactTask, expression)
+            while ((msg == null || msg == false) && isActive && !fetchTask.isCanceled
+                && (if (adaptiveReadiness) Instant.now() < deadline else i < maxRound)) {
+                ++i
+                fetchTask.trace.trace(TaskStage.READY_CHECK) {
+                    msg = evaluate(interactTask, expression)
 
-                if (msg == null || msg == false) {
-                    delay(delayMillis)
+                    if (msg == null || msg == false) {
+                        waitMillis = if (adaptiveReadiness) waitForSettleSignal(driver, waitMillis) else {
+                            delay(delayMillis)
+                            delayMillis
+                        }
+                    }
                 }
             }
+            if (msg != null && msg != false) {
+                settleTimes.record(interactTask.url, Duration.between(startTime, Instant.now()))
+            }
             message = msg
         } finally {
             if (message == null) {
                 if (!fetchTask.isCanceled && !driver.isQuit && isActive) {
-                    logger.warn("Timeout to wait for document ready after ${i.dec()} round, retry is supposed | {}",
+                    logger.warn("Timeout to wait for document ready after $i round, retry is supposed | {}",
                         interactTask.url)
                     status = ProtocolStatus.retry(RetryScope.PRIVACY, "Timeout to wait for document ready")
                     result.state = FlowState.BREAK
@@ -681,6 +711,27 @@ open class InteractiveBrowserEmulator(
         result.protocolStatus = status
     }
     
+    /**
+     * Wait until the driver signals the document might be settled, or the wait time elapses.
+     *
+     * @return The time to wait in the next round, a signal resets it and a timeout doubles it
+     * */
+    private suspend fun waitForSettleSignal(driver: AbstractWebDriver, waitMillis: Long): Long {
+        val startTime = System.currentTimeMillis()
+        val signaled = driver.waitForSettleSignal(Duration.ofMillis(waitMillis))
+        if (!signaled) {
+            return (waitMillis * 2).coerceAtMost(MAX_READY_CHECK_INTERVAL)
+        }
+
+        readinessSignals.mark()
+        // signals might come in bursts, do not check too frequently
+        val elapsed = System.currentTimeMillis() - startTime
+        if (elapsed < MIN_READY_CHECK_INTERVAL) {
+            delay(MIN_READY_CHECK_INTERVAL - elapsed)
+        }
+        return MIN_READY_CHECK_INTERVAL
+    }
+    
     /**
      * Scroll on page to ensure all the content is loaded, including lazy content.
      * */
@@ -769,4 +820,15 @@ open class InteractiveBrowserEmulator(
             }
         }
     }
+
+    companion object {
+        /**
+         * The minimal interval between two readiness checks in adaptive mode, in milliseconds
+         * */
+        private const val MIN_READY_CHECK_INTERVAL = 100L
+        /**
+         * The maximal interval between two readiness checks in adaptive mode, in milliseconds
+         * */
+        private const val MAX_READY_CHECK_INTERVAL = 1000L
+    }
 }
@@ -0,0 +1,59 @@
+package ai.platon.pulsar.protocol.browser.emulator.util
+
+import ai.platon.pulsar.common.concurrent.ConcurrentLRUCache
+import ai.platon.pulsar.common.urls.UrlUtils
+import ai.platon.pulsar.skeleton.common.metrics.MetricsSystem
+import java.time.Duration
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Learns how long the documents of each domain take to settle after navigation, i.e., until the injected script
+ * reports the document is ready.
+ *
+ * The learned time is an exponentially weighted moving average, it's used to schedule the first readiness check
+ * of the next document of the same domain. The averages are kept for the most recently used domains only, and only
+ * the aggregate settle time of all the domains is exported as a metric, so the metrics do not grow with the domains.
+ * */
+class SettleTimeLearner(
+    /**
+     * The max number of domains to learn, the least recently used domain is forgotten if there are more
+     * */
+    val maxDomains: Int = 1000,
+    /**
+     * The smoothing factor of the moving average, in (0, 1], a larger value forgets the history faster
+     * */
+    val alpha: Double = 0.2,
+) {
+    private val settleMillis = ConcurrentLRUCache<String, AtomicLong>(maxDomains)
+
+    private val registry = MetricsSystem.reg
+    private val settleTimer = registry.timer(this, "settle")
+
+    val numDomains get() = settleMillis.size
+
+    /**
+     * The learned settle time of the domain of the url, or null if nothing is learned.
+     * */
+    fun estimate(url: String): Duration? {
+        return settleMillis[domainOf(url)]?.get()?.let { Duration.ofMillis(it) }
+    }
+
+    /**
+     * Learn from a settled document.
+     * */
+    fun record(url: String, settleTime: Duration) {
+        val millis = settleTime.toMillis().coerceAtLeast(0)
+        settleTimer.update(millis, TimeUnit.MILLISECONDS)
+
+        val domain = domainOf(url)
+        val average = settleMillis[domain]
+        if (average != null) {
+            average.updateAndGet { (alpha * millis + (1 - alpha) * it).toLong() }
+        } else {
+            settleMillis.computeIfAbsent(domain) { AtomicLong(millis) }
+        }
+    }
+
+    private fun domainOf(url: String) = UrlUtils.getURLOrNull(url)?.host ?: ""
+}
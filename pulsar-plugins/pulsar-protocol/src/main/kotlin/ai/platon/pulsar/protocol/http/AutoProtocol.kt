@@ -0,0 +1,124 @@
+package ai.platon.pulsar.protocol.http
+
+import ai.platon.pulsar.common.config.CapabilityTypes
+import ai.platon.pulsar.common.config.ImmutableConfig
+import ai.platon.pulsar.common.HttpHeaders
+import ai.platon.pulsar.persist.WebPage
+import ai.platon.pulsar.persist.metadata.FetchMode
+import ai.platon.pulsar.protocol.browser.BrowserEmulatorProtocol
+import ai.platon.pulsar.protocol.browser.emulator.util.ChainedHtmlIntegrityChecker
+import ai.platon.pulsar.protocol.browser.emulator.util.DefaultHtmlIntegrityChecker
+import ai.platon.pulsar.protocol.browser.emulator.util.HtmlIntegrityChecker
+import ai.platon.pulsar.skeleton.common.metrics.MetricsSystem
+import ai.platon.pulsar.skeleton.crawl.protocol.Response
+
+/**
+ * Fetch the page using the pure HTTP protocol first, and fall back to a real browser if the page can not be
+ * served by the pure HTTP protocol, e.g., the page requires script rendering, or the server rejects the client.
+ *
+ * The page is served by the browser if the HTTP status code indicates a rejection, or if the [htmlIntegrityChecker]
+ * flags the html, for example, a page rendered by scripts usually has a blank body or no anchor at all.
+ * */
+class AutoProtocol : Http() {
+    private val browserProtocol = BrowserEmulatorProtocol()
+
+    /**
+     * The checker to decide whether a page fetched by the pure HTTP protocol is complete.
+     * */
+    lateinit var htmlIntegrityChecker: HtmlIntegrityChecker
+
+    private val registry = MetricsSystem.reg
+    private val httpServed = registry.meter(this, "httpServed")
+    private val browserFallbacks = registry.meter(this, "browserFallbacks")
+
+    override fun configure(conf1: ImmutableConfig) {
+        super.configure(conf1)
+        browserProtocol.configure(conf1)
+
+        // no script is executed, so there is no flag set by the injected script
+        val conf2 = conf1.toVolatileConfig().apply { setBoolean(CapabilityTypes.BROWSER_JS_INVADING_ENABLED, false) }
+        htmlIntegrityChecker = ChainedHtmlIntegrityChecker(conf2).apply { addLast(DefaultHtmlIntegrityChecker(conf2)) }
+    }
+
+    @Throws(Exception::class)
+    override fun getResponse(page: WebPage, followRedirects: Boolean): Response? {
+        val response = super.getResponse(page, followRedirects)
+        if (response != null && !requiresBrowser(response)) {
+            return served(page, response)
+        }
+
+        return fallback(page).getResponse(page, followRedirects)
+    }
+
+    @Throws(Exception::class)
+    override suspend fun getResponseDeferred(page: WebPage, followRedirects: Boolean): Response? {
+        val response = super.getResponseDeferred(page, followRedirects)
+        if (response != null && !requiresBrowser(response)) {
+            return served(page, response)
+        }
+
+        return fallback(page).getResponseDeferred(page, followRedirects)
+    }
+
+    override fun reset() {
+        browserProtocol.reset()
+    }
+
+    override fun cancel(page: WebPage) {
+        browserProtocol.cancel(page)
+    }
+
+    override fun cancelAll() {
+        browserProtocol.cancelAll()
+    }
+
+    override fun close() {
+        super.close()
+        browserProtocol.close()
+    }
+
+    /**
+     * Check if the page has to be fetched by a real browser.
+     * */
+    internal fun requiresBrowser(response: Response): Boolean {
+        val httpCode = response.httpCode
+        if (httpCode in REJECTION_CODES || httpCode in 500..599) {
+            return true
+        }
+        if (httpCode != 200) {
+            // the result is definitive, for example, 404, or the failure is not caused by the client
+            return false
+        }
+
+        val pageDatum = response.pageDatum
+        val content = pageDatum.content ?: return true
+        val contentType = response.getHeader(HttpHeaders.CONTENT_TYPE)?.lowercase()
+        if (contentType != null && !contentType.contains("html")) {
+            // json, images, etc. do not need rendering
+            return false
+        }
+
+        val integrity = htmlIntegrityChecker(String(content), pageDatum)
+        pageDatum.htmlIntegrity = integrity
+        return integrity.isNotOK
+    }
+
+    private fun served(page: WebPage, response: Response): Response {
+        httpServed.mark()
+        page.fetchMode = FetchMode.NATIVE
+        return response
+    }
+
+    private fun fallback(page: WebPage): BrowserEmulatorProtocol {
+        browserFallbacks.mark()
+        page.fetchMode = FetchMode.BROWSER
+        return browserProtocol
+    }
+
+    companion object {
+        /**
+         * The status codes which are usually returned when the server rejects a non-browser client
+         * */
+        private val REJECTION_CODES = setOf(401, 403, 407, 429)
+    }
+}
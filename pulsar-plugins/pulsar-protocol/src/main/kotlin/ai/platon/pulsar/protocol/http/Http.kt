@@ -0,0 +1,263 @@
+package ai.platon.pulsar.protocol.http
+
+import ai.platon.pulsar.browser.common.UserAgent
+import ai.platon.pulsar.common.HttpHeaders
+import ai.platon.pulsar.common.browser.Fingerprint
+import ai.platon.pulsar.common.config.CapabilityTypes
+import ai.platon.pulsar.common.config.ImmutableConfig
+import ai.platon.pulsar.common.getLogger
+import ai.platon.pulsar.common.http.HttpClientFactory
+import ai.platon.pulsar.common.proxy.ProxyEntry
+import ai.platon.pulsar.common.proxy.ProxyPoolManager
+import ai.platon.pulsar.persist.PageDatum
+import ai.platon.pulsar.persist.ProtocolStatus
+import ai.platon.pulsar.persist.WebPage
+import ai.platon.pulsar.persist.metadata.MultiMetadata
+import ai.platon.pulsar.skeleton.common.metrics.MetricsSystem
+import ai.platon.pulsar.skeleton.context.PulsarContexts
+import ai.platon.pulsar.skeleton.crawl.protocol.ForwardingResponse
+import ai.platon.pulsar.skeleton.crawl.protocol.Response
+import ai.platon.pulsar.skeleton.crawl.protocol.http.AbstractHttpProtocol
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.future.await
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.sync.Semaphore
+import kotlinx.coroutines.sync.withPermit
+import java.io.IOException
+import java.net.URI
+import java.net.UnknownHostException
+import java.net.http.HttpClient
+import java.net.http.HttpConnectTimeoutException
+import java.net.http.HttpRequest
+import java.net.http.HttpResponse
+import java.net.http.HttpTimeoutException
+import java.time.Duration
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * A response fetched by a pure HTTP client.
+ * */
+class NativeResponse(page: WebPage, pageDatum: PageDatum) : Response(page, pageDatum)
+
+/**
+ * A pure HTTP protocol which fetches pages with a non-blocking HTTP client, no script is executed,
+ * so it's much faster than a real browser and it's suitable for static pages.
+ *
+ * * The requests to the same host are limited by [CapabilityTypes.HTTP_FETCH_MAX_CONNECTIONS_PER_HOST]
+ *   concurrent connections, and are delayed by at least [CapabilityTypes.HTTP_FETCH_HOST_DELAY] from each other
+ * * The proxies are taken from [ProxyPoolManager] if proxy is enabled, the connections are pooled per proxy
+ * * The redirects are followed just like a browser, and [PageDatum.location] is the final address
+ * */
+open class Http : AbstractHttpProtocol() {
+    private val logger = getLogger(this)
+
+    /**
+     * The politeness state of a host.
+     * */
+    private class Host(maxConnections: Int) {
+        val semaphore = Semaphore(maxConnections)
+        val numRunning = AtomicInteger()
+        var nextFetchTime = 0L
+
+        /**
+         * Reserve the next fetch slot, and return the time to wait in milliseconds.
+         * */
+        @Synchronized
+        fun reserve(delayMillis: Long): Long {
+            val now = System.currentTimeMillis()
+            val fetchTime = maxOf(now, nextFetchTime)
+            nextFetchTime = fetchTime + delayMillis
+            return fetchTime - now
+        }
+    }
+
+    private val hosts = ConcurrentHashMap<String, Host>()
+    private val clients = ConcurrentHashMap<String, HttpClient>()
+
+    private var httpTimeout = Duration.ofSeconds(30)
+    private var maxConnectionsPerHost = 8
+    private var hostDelay = Duration.ZERO
+    private val userAgent by lazy { UserAgent().getRandomUserAgent().ifEmpty { Fingerprint.EXAMPLE_USER_AGENT } }
+
+    private val proxyPoolManager by lazy {
+        if (ProxyPoolManager.isProxyEnabled(conf)) {
+            PulsarContexts.create().getBeanOrNull(ProxyPoolManager::class)
+        } else null
+    }
+    @Volatile
+    private var proxyEntry: ProxyEntry? = null
+
+    private val registry = MetricsSystem.reg
+    private val requests = registry.meter(this, "requests")
+    private val failures = registry.meter(this, "failures")
+
+    val numHosts get() = hosts.size
+
+    override fun configure(conf1: ImmutableConfig) {
+        super.configure(conf1)
+        httpTimeout = conf1.getDuration(CapabilityTypes.HTTP_TIMEOUT, httpTimeout)
+        maxConnectionsPerHost = conf1.getInt(CapabilityTypes.HTTP_FETCH_MAX_CONNECTIONS_PER_HOST, 8).coerceAtLeast(1)
+        hostDelay = conf1.getDuration(CapabilityTypes.HTTP_FETCH_HOST_DELAY, Duration.ZERO)
+    }
+
+    @Throws(Exception::class)
+    override fun getResponse(page: WebPage, followRedirects: Boolean): Response? {
+        return runBlocking { getResponseDeferred(page, followRedirects) }
+    }
+
+    @Throws(Exception::class)
+    override suspend fun getResponseDeferred(page: WebPage, followRedirects: Boolean): Response? {
+        if (!isActive) {
+            return ForwardingResponse.canceled(page)
+        }
+
+        val uri = try {
+            URI.create(page.url)
+        } catch (e: IllegalArgumentException) {
+            return ForwardingResponse.failed(page, e)
+        }
+
+        val host = computeHost(uri.host ?: "")
+        return host.semaphore.withPermit {
+            host.numRunning.incrementAndGet()
+            try {
+                val waitMillis = host.reserve(hostDelay.toMillis())
+                if (waitMillis > 0) {
+                    delay(waitMillis)
+                }
+                fetch(page, uri)
+            } finally {
+                host.numRunning.decrementAndGet()
+            }
+        }
+    }
+
+    override fun close() {
+        super.close()
+        clients.clear()
+        hosts.clear()
+    }
+
+    private suspend fun fetch(page: WebPage, uri: URI): Response {
+        requests.mark()
+
+        val proxy = computeProxy(page)
+        val client = clients.computeIfAbsent(proxy?.hostPort ?: "") { HttpClientFactory.newClient(httpTimeout, proxy) }
+        val builder = HttpRequest.newBuilder(uri).timeout(httpTimeout).GET()
+            .setHeader("User-Agent", userAgent)
+            .setHeader("Accept", "text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8")
+            .setHeader("Accept-Encoding", HttpClientFactory.ACCEPT_ENCODING)
+        if (uri.scheme == "http") {
+            // browsers never upgrade cleartext connections to HTTP/2
+            builder.version(HttpClient.Version.HTTP_1_1)
+        }
+        val request = builder.build()
+
+        val send: suspend () -> HttpResponse<ByteArray> = {
+            client.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray()).await()
+        }
+        return try {
+            val response = proxyPoolManager?.runWith(proxy, send) ?: send()
+            createResponse(page, response, proxy)
+        } catch (e: HttpConnectTimeoutException) {
+            onFailure(page, proxy, e)
+            ForwardingResponse(ProtocolStatus.failed(ProtocolStatus.REQUEST_TIMEOUT), page)
+        } catch (e: HttpTimeoutException) {
+            onFailure(page, proxy, e)
+            ForwardingResponse(ProtocolStatus.failed(ProtocolStatus.REQUEST_TIMEOUT), page)
+        } catch (e: UnknownHostException) {
+            onFailure(page, proxy, e)
+            ForwardingResponse(ProtocolStatus.failed(ProtocolStatus.UNKNOWN_HOST), page)
+        } catch (e: IOException) {
+            onFailure(page, proxy, e)
+            if (proxy != null) ForwardingResponse.privacyRetry(page, e) else ForwardingResponse.failed(page, e)
+        }
+    }
+
+    private fun createResponse(
+        page: WebPage, response: HttpResponse<ByteArray>, proxy: ProxyEntry?
+    ): Response {
+        val encoding = response.headers().firstValue(HttpHeaders.CONTENT_ENCODING).orElse("").lowercase()
+        val content = decode(response.body(), encoding)
+
+        val headers = MultiMetadata()
+        response.headers().map().forEach { (name, values) ->
+            if (!name.startsWith(":")) {
+                values.forEach { headers.put(normalizeHeaderName(name), it) }
+            }
+        }
+        if (content !== response.body()) {
+            // the content is decompressed, the length in the header is not the length of the content any more
+            headers.removeAll(HttpHeaders.CONTENT_ENCODING)
+            headers.removeAll(HttpHeaders.CONTENT_LENGTH)
+            headers.put(HttpHeaders.CONTENT_LENGTH, content.size.toString())
+        }
+        headers.put(HttpHeaders.Q_RESPONSE_TIME, System.currentTimeMillis().toString())
+
+        val statusCode = response.statusCode()
+        val location = response.uri().toString()
+        val pageDatum = PageDatum(page.url, location, ProtocolStatus.fromMinor(statusCode), content, headers = headers)
+        pageDatum.originalContentLength = content.size
+        pageDatum.proxyEntry = proxy
+
+        return NativeResponse(page, pageDatum)
+    }
+
+    private fun onFailure(page: WebPage, proxy: ProxyEntry?, e: Exception) {
+        failures.mark()
+        logger.info("Failed to fetch | {} | {}", e.javaClass.simpleName, page.url)
+        if (proxy != null && e is IOException) {
+            // the proxy might be dead, the next request will take another one
+            proxyEntry = null
+            clients.remove(proxy.hostPort)
+            proxyPoolManager?.takeOff(proxy, ban = false)
+        }
+    }
+
+    private fun computeHost(hostName: String): Host {
+        if (hosts.size > MAX_HOSTS) {
+            hosts.entries.removeIf { it.value.numRunning.get() == 0 }
+        }
+        return hosts.computeIfAbsent(hostName) { Host(maxConnectionsPerHost) }
+    }
+
+    private fun computeProxy(page: WebPage): ProxyEntry? {
+        val ppm = proxyPoolManager ?: return null
+        val proxy = proxyEntry
+        if (proxy != null && proxy.isReady) {
+            return proxy
+        }
+
+        return synchronized(this) {
+            proxyEntry?.takeIf { it.isReady } ?: kotlin.runCatching { ppm.proxyPool.take() }
+                .onFailure { logger.warn("Failed to take proxy | {} | {}", it.message, page.url) }
+                .getOrNull()
+                ?.also { proxyEntry = it }
+        }
+    }
+
+    private fun decode(body: ByteArray, encoding: String): ByteArray {
+        if (!HttpClientFactory.isCompressed(encoding)) {
+            return body
+        }
+
+        return try {
+            HttpClientFactory.decompress(body.inputStream(), encoding).use { it.readAllBytes() }
+        } catch (e: IOException) {
+            logger.warn("Failed to decode content | {} | {}", encoding, e.message)
+            body
+        }
+    }
+
+    /**
+     * HTTP/2 header names are in lowercase, normalize them to the canonical form, e.g., content-type -> Content-Type
+     * */
+    private fun normalizeHeaderName(name: String): String {
+        return name.split('-').joinToString("-") { part -> part.replaceFirstChar { it.uppercaseChar() } }
+    }
+
+    companion object {
+        private const val MAX_HOSTS = 10_000
+    }
+}
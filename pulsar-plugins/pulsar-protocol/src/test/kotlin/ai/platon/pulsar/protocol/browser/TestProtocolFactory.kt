@@ -4,6 +4,9 @@ package ai.platon.pulsar.protocol.browser
 import ai.platon.pulsar.common.config.ImmutableConfig
 import ai.platon.pulsar.skeleton.crawl.protocol.ProtocolFactory
 import ai.platon.pulsar.protocol.crowd.ForwardingProtocol
+import ai.platon.pulsar.protocol.http.AutoProtocol
+import ai.platon.pulsar.protocol.http.Http
+import ai.platon.pulsar.persist.metadata.FetchMode
 import kotlin.test.*
 import kotlin.test.assertEquals
 
@@ -24,13 +27,22 @@ class TestProtocolFactory {
     @Test
     @Throws(Exception::class)
     fun testGetProtocol() {
-        //        assertEquals(Http.class.getName(),
-//                protocolFactory.getProtocol("http://example.com").getClass().getName());
-//        assertEquals(Http.class.getName(),
-//                protocolFactory.getProtocol("https://example.com").getClass().getName());
+        assertEquals(Http::class.java.name,
+                protocolFactory.getProtocol("http://example.com")?.javaClass?.name)
+        assertEquals(Http::class.java.name,
+                protocolFactory.getProtocol("https://example.com")?.javaClass?.name)
+        assertEquals(AutoProtocol::class.java.name,
+                protocolFactory.getProtocol("auto:http://example.com")?.javaClass?.name)
         assertEquals(ForwardingProtocol::class.java.name,
                 protocolFactory.getProtocol("crowd:http://example.com")?.javaClass?.name)
         assertEquals(BrowserEmulatorProtocol::class.java.name,
                 protocolFactory.getProtocol("browser:http://example.com")?.javaClass?.name)
     }
+
+    @Test
+    fun testProtocolsOfTheSameClassShareTheInstance() {
+        val http = protocolFactory.getProtocol("http://example.com")
+        assertSame(http, protocolFactory.getProtocol("https://example.com"))
+        assertSame(http, protocolFactory.getProtocol(FetchMode.NATIVE))
+    }
 }
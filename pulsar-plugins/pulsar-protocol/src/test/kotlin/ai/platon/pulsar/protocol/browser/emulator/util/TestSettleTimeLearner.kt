@@ -0,0 +1,36 @@
+package ai.platon.pulsar.protocol.browser.emulator.util
+
+import java.time.Duration
+import kotlin.test.*
+
+class TestSettleTimeLearner {
+
+    @Test
+    fun whenDocumentsSettle_ThenTheSettleTimeIsLearnedPerDomain() {
+        val learner = SettleTimeLearner(alpha = 0.5)
+        assertNull(learner.estimate("https://a.example.com/1"))
+
+        learner.record("https://a.example.com/1", Duration.ofMillis(1000))
+        assertEquals(Duration.ofMillis(1000), learner.estimate("https://a.example.com/2"))
+
+        learner.record("https://a.example.com/3", Duration.ofMillis(200))
+        assertEquals(Duration.ofMillis(600), learner.estimate("https://a.example.com/4"))
+
+        // other domains are not affected
+        assertNull(learner.estimate("https://b.example.com/1"))
+    }
+
+    @Test
+    fun whenTooManyDomains_ThenTheLeastRecentlyUsedDomainIsForgotten() {
+        val learner = SettleTimeLearner(maxDomains = 2)
+        learner.record("https://a.example.com/", Duration.ofMillis(100))
+        learner.record("https://b.example.com/", Duration.ofMillis(100))
+        assertNotNull(learner.estimate("https://a.example.com/"))
+        learner.record("https://c.example.com/", Duration.ofMillis(100))
+
+        assertEquals(2, learner.numDomains)
+        assertNull(learner.estimate("https://b.example.com/"))
+        assertNotNull(learner.estimate("https://a.example.com/"))
+        assertNotNull(learner.estimate("https://c.example.com/"))
+    }
+}
@@ -0,0 +1,162 @@
+package ai.platon.pulsar.protocol.http
+
+import ai.platon.pulsar.common.HttpHeaders
+import ai.platon.pulsar.common.config.CapabilityTypes
+import ai.platon.pulsar.common.config.ImmutableConfig
+import ai.platon.pulsar.persist.ProtocolStatus
+import ai.platon.pulsar.persist.WebPage
+import com.sun.net.httpserver.HttpExchange
+import com.sun.net.httpserver.HttpServer
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.withContext
+import org.junit.jupiter.api.Tag
+import java.io.ByteArrayOutputStream
+import java.net.InetSocketAddress
+import java.time.Duration
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.zip.GZIPOutputStream
+import kotlin.test.*
+
+/**
+ * Tests and benchmarks the pure HTTP protocol against a local HTTP server.
+ * */
+class TestHttp {
+    private val staticHtml = (1..100).joinToString("", "<html><head><title>static</title></head><body>", "</body></html>") {
+        """<div class="item"><a href="/item/$it">item $it</a></div>"""
+    }
+    private val spaHtml = """<html><head><script src="/app.js"></script></head><body><div id="app"></div></body></html>"""
+
+    private val conf = ImmutableConfig().toVolatileConfig()
+    private val running = AtomicInteger()
+    private val maxRunning = AtomicInteger()
+    private lateinit var server: HttpServer
+    private lateinit var baseUrl: String
+
+    @BeforeTest
+    fun setup() {
+        server = HttpServer.create(InetSocketAddress("127.0.0.1", 0), 512)
+        server.executor = Executors.newFixedThreadPool(16)
+        server.createContext("/static") { respond(it, 200, staticHtml) }
+        server.createContext("/spa") { respond(it, 200, spaHtml) }
+        server.createContext("/forbidden") { respond(it, 403, staticHtml) }
+        server.createContext("/missing") { respond(it, 404, "not found") }
+        server.createContext("/slow") { exchange ->
+            maxRunning.accumulateAndGet(running.incrementAndGet()) { a, b -> maxOf(a, b) }
+            Thread.sleep(50)
+            running.decrementAndGet()
+            respond(exchange, 200, staticHtml)
+        }
+        server.start()
+        baseUrl = "http://127.0.0.1:${server.address.port}"
+    }
+
+    @AfterTest
+    fun tearDown() {
+        server.stop(0)
+        (server.executor as ExecutorService).shutdownNow()
+    }
+
+    @Test
+    fun whenFetchStaticPage_ThenContentIsDecompressedAndHeadersAreNormalized() = runBlocking {
+        val http = createHttp()
+        val page = WebPage.newWebPage("$baseUrl/static", conf)
+        val output = http.getProtocolOutputDeferred(page)
+
+        assertTrue(output.protocolStatus.isSuccess)
+        val pageDatum = assertNotNull(output.pageDatum)
+        assertEquals(staticHtml, String(pageDatum.content!!))
+        assertEquals("text/html", pageDatum.contentType)
+        assertEquals(staticHtml.length.toString(), pageDatum.headers[HttpHeaders.CONTENT_LENGTH])
+        assertNull(pageDatum.headers[HttpHeaders.CONTENT_ENCODING])
+    }
+
+    @Test
+    fun whenPageIsMissing_ThenHttpCodeIsTranslated() = runBlocking {
+        val http = createHttp()
+        val output = http.getProtocolOutputDeferred(WebPage.newWebPage("$baseUrl/missing", conf))
+        assertEquals(ProtocolStatus.NOT_FOUND, output.protocolStatus.minorCode)
+    }
+
+    @Test
+    fun whenManyRequestsToTheSameHost_ThenConnectionsAreLimited() = runBlocking {
+        val http = createHttp(maxConnectionsPerHost = 2)
+        withContext(Dispatchers.Default) {
+            (1..10).map { async { http.getProtocolOutputDeferred(WebPage.newWebPage("$baseUrl/slow?$it", conf)) } }
+                .awaitAll()
+        }
+        assertTrue(maxRunning.get() in 1..2, "Max concurrent requests: ${maxRunning.get()}")
+    }
+
+    @Test
+    fun whenHostDelayIsSet_ThenRequestsAreSpaced() = runBlocking {
+        val http = createHttp(hostDelay = Duration.ofMillis(100))
+        val startTime = System.currentTimeMillis()
+        withContext(Dispatchers.Default) {
+            (1..3).map { async { http.getProtocolOutputDeferred(WebPage.newWebPage("$baseUrl/static?$it", conf)) } }
+                .awaitAll()
+        }
+        assertTrue(System.currentTimeMillis() - startTime >= 200)
+    }
+
+    @Test
+    fun whenPageRequiresScriptsOrIsRejected_ThenAutoProtocolFallsBackToBrowser() = runBlocking {
+        val http = createHttp()
+        val auto = AutoProtocol().also { it.configure(conf) }
+        suspend fun requiresBrowser(path: String): Boolean {
+            val response = http.getResponseDeferred(WebPage.newWebPage("$baseUrl$path", conf), false)
+            return auto.requiresBrowser(assertNotNull(response))
+        }
+
+        try {
+            assertFalse(requiresBrowser("/static"))
+            assertFalse(requiresBrowser("/missing"))
+            assertTrue(requiresBrowser("/spa"))
+            assertTrue(requiresBrowser("/forbidden"))
+        } finally {
+            auto.close()
+        }
+    }
+
+    @Tag("SlowTest")
+    @Test
+    fun benchmark() = runBlocking {
+        val requests = 2000
+        val http = createHttp(maxConnectionsPerHost = 32)
+        val startTime = System.currentTimeMillis()
+        withContext(Dispatchers.Default) {
+            (1..requests).map { async { http.getProtocolOutputDeferred(WebPage.newWebPage("$baseUrl/static?$it", conf)) } }
+                .awaitAll()
+                .forEach { assertTrue(it.protocolStatus.isSuccess) }
+        }
+        val millis = (System.currentTimeMillis() - startTime).coerceAtLeast(1)
+        println(String.format("%-12s%12s%12s", "protocol", "pages", "pages/s"))
+        println(String.format("%-12s%12d%12d", "http", requests, requests * 1000L / millis))
+    }
+
+    private fun createHttp(maxConnectionsPerHost: Int = 8, hostDelay: Duration = Duration.ZERO): Http {
+        val conf1 = ImmutableConfig().toVolatileConfig().apply {
+            setInt(CapabilityTypes.HTTP_FETCH_MAX_CONNECTIONS_PER_HOST, maxConnectionsPerHost)
+            setDuration(CapabilityTypes.HTTP_FETCH_HOST_DELAY, hostDelay)
+        }
+        return Http().also { it.configure(conf1) }
+    }
+
+    private fun respond(exchange: HttpExchange, code: Int, body: String) {
+        var bytes = body.toByteArray()
+        val acceptEncoding = exchange.requestHeaders.getFirst("Accept-Encoding") ?: ""
+        if (acceptEncoding.contains("gzip")) {
+            val out = ByteArrayOutputStream()
+            GZIPOutputStream(out).use { it.write(bytes) }
+            bytes = out.toByteArray()
+            exchange.responseHeaders.add("Content-Encoding", "gzip")
+        }
+        exchange.responseHeaders.add("Content-Type", "text/html; charset=utf-8")
+        exchange.sendResponseHeaders(code, bytes.size.toLong())
+        exchange.responseBody.use { it.write(bytes) }
+    }
+}
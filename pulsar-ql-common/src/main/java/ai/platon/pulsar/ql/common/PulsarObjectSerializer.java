@@ -8,6 +8,10 @@ import org.h2.api.ErrorCode;
 import org.h2.api.JavaObjectSerializer;
 import org.h2.message.DbException;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 public class PulsarObjectSerializer implements JavaObjectSerializer {
 
     @Override
@@ -27,7 +31,8 @@ public class PulsarObjectSerializer implements JavaObjectSerializer {
             // Make a trace who is calling this method
 //            if (buffer.size() > 0) throw new RuntimeException("Throw from here");
 
-            return buffer.getData();
+            // the backing array is longer than the data
+            return Arrays.copyOf(buffer.getData(), buffer.getLength());
         } else {
             throw DbException.get(ErrorCode.SERIALIZATION_FAILED_1);
         }
@@ -48,4 +53,30 @@ public class PulsarObjectSerializer implements JavaObjectSerializer {
             throw DbException.get(ErrorCode.DESERIALIZATION_FAILED_1, "Unknown custom type #" + type);
         }
     }
+
+    /**
+     * Serialize the values of a result set, the values are read by one reader in the same order by
+     * {@link #deserializeAll(List)}. The values are written in one {@link ValueDomWritable.Stream}, so a document
+     * shared by several DOM values is sent only with the first of them.
+     * */
+    public List<byte[]> serializeAll(Iterable<?> objects) throws Exception {
+        List<byte[]> result = new ArrayList<>();
+        try (ValueDomWritable.Stream ignored = ValueDomWritable.openStream()) {
+            for (Object obj : objects) {
+                result.add(serialize(obj));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Deserialize the values written by {@link #serializeAll(Iterable)}, in the order they are written.
+     * */
+    public List<Object> deserializeAll(List<byte[]> values) throws Exception {
+        List<Object> result = new ArrayList<>(values.size());
+        for (byte[] bytes : values) {
+            result.add(deserialize(bytes));
+        }
+        return result;
+    }
 }
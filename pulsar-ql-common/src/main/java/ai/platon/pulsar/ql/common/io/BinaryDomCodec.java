@@ -0,0 +1,487 @@
+package ai.platon.pulsar.ql.common.io;
+
+import org.jsoup.nodes.*;
+import org.jsoup.parser.ParseSettings;
+import org.jsoup.parser.Parser;
+import org.jsoup.parser.Tag;
+import org.jsoup.select.NodeTraversor;
+import org.jsoup.select.NodeVisitor;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A compact binary encoding of a DOM tree.
+ *
+ * The tag names, the attribute names and the attribute values are deduplicated by a string table, the nodes are
+ * written in pre-order, each node is followed by its children, so the tree is rebuilt without any HTML parsing.
+ * The elements are addressed by their pre-order index, the root is addressed by 0.
+ *
+ * The encoded bytes are:
+ * <pre>
+ * byte    flags, FLAG_DEFLATED if the rest is deflated
+ * varint  the length of the rest before it's deflated
+ * varint  the number of strings, followed by the strings
+ * node    the root node, followed by all the other nodes in pre-order
+ * </pre>
+ * */
+public class BinaryDomCodec {
+
+    /**
+     * The encoded tree is deflated if it's not shorter than this length, {@link Integer#MAX_VALUE} to disable.
+     * */
+    public static int COMPRESSION_THRESHOLD = 1024;
+
+    private static final int FLAG_DEFLATED = 1;
+
+    private static final int DOCUMENT = 0;
+    private static final int ELEMENT = 1;
+    private static final int TEXT = 2;
+    private static final int DATA = 3;
+    private static final int CDATA = 4;
+    private static final int COMMENT = 5;
+    private static final int DOCUMENT_TYPE = 6;
+    private static final int XML_DECLARATION = 7;
+
+    private static final Map<String, Tag> selfClosingTags = new ConcurrentHashMap<>();
+
+    /**
+     * An encoded tree.
+     * */
+    public static class Encoded {
+        private final byte[] bytes;
+        private final IdentityHashMap<Element, Integer> indexes;
+
+        private Encoded(byte[] bytes, IdentityHashMap<Element, Integer> indexes) {
+            this.bytes = bytes;
+            this.indexes = indexes;
+        }
+
+        public byte[] getBytes() {
+            return bytes;
+        }
+
+        /**
+         * The pre-order index of the element, or -1 if the element is not in the tree when it's encoded.
+         * */
+        public int indexOf(Element element) {
+            Integer index = indexes.get(element);
+            return index == null ? -1 : index;
+        }
+    }
+
+    /**
+     * A decoded tree.
+     * */
+    public static class Decoded {
+        private final Element root;
+        private final Element[] elements;
+
+        private Decoded(Element root, Element[] elements) {
+            this.root = root;
+            this.elements = elements;
+        }
+
+        /**
+         * The root, which is a {@link Document} unless a detached element is encoded.
+         * */
+        public Element getRoot() {
+            return root;
+        }
+
+        /**
+         * The element at the pre-order index, or null if the index is out of range.
+         * */
+        public Element get(int index) {
+            return index >= 0 && index < elements.length ? elements[index] : null;
+        }
+    }
+
+    /**
+     * Encode the tree of the root.
+     * */
+    public static Encoded encode(Element root) throws IOException {
+        TreeWriter writer = new TreeWriter();
+        NodeTraversor.traverse(writer, root);
+        if (writer.exception != null) {
+            throw writer.exception;
+        }
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream(writer.nodes.size() + 1024);
+        DataOutputStream out = new DataOutputStream(body);
+        writeVarInt(out, writer.strings.size());
+        for (String s : writer.strings.keySet()) {
+            writeString(out, s);
+        }
+        writer.nodes.writeTo(out);
+        out.flush();
+
+        byte[] raw = body.toByteArray();
+        ByteArrayOutputStream result = new ByteArrayOutputStream(raw.length / 4 + 16);
+        out = new DataOutputStream(result);
+        if (raw.length >= COMPRESSION_THRESHOLD) {
+            out.writeByte(FLAG_DEFLATED);
+            writeVarInt(out, raw.length);
+            out.write(deflate(raw));
+        } else {
+            out.writeByte(0);
+            writeVarInt(out, raw.length);
+            out.write(raw);
+        }
+        out.flush();
+
+        return new Encoded(result.toByteArray(), writer.indexes);
+    }
+
+    /**
+     * Decode the tree encoded by {@link #encode(Element)}.
+     * */
+    public static Decoded decode(byte[] bytes) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        int flags = in.readUnsignedByte();
+        int length = readVarInt(in);
+        byte[] raw;
+        if ((flags & FLAG_DEFLATED) != 0) {
+            raw = inflate(bytes, bytes.length - in.available(), length);
+        } else {
+            raw = new byte[length];
+            in.readFully(raw);
+        }
+
+        in = new DataInputStream(new ByteArrayInputStream(raw));
+        String[] strings = new String[readVarInt(in)];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = readString(in);
+        }
+
+        return new TreeReader(in, strings).read();
+    }
+
+    /**
+     * Get a self closing unknown tag, {@link Tag} can be marked as self closing only by the parser.
+     * */
+    private static Tag selfClosingTag(String name) {
+        return selfClosingTags.computeIfAbsent(name, n -> {
+            Element element = Parser.parseBodyFragment("<" + n + "/>", "").body().children().first();
+            if (element != null && element.tagName().equals(n) && element.tag().isSelfClosing()) {
+                return element.tag();
+            }
+            return Tag.valueOf(n, ParseSettings.preserveCase);
+        });
+    }
+
+    public static void writeVarInt(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    public static int readVarInt(DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private static void writeString(DataOutput out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        byte[] bytes = new byte[readVarInt(in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] deflate(byte[] raw) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 4 + 16);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] bytes, int offset, int length) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(bytes, offset, bytes.length - offset);
+            byte[] raw = new byte[length];
+            int n = 0;
+            while (n < length) {
+                int m = inflater.inflate(raw, n, length - n);
+                if (m == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new EOFException("Truncated DOM encoding");
+                }
+                n += m;
+            }
+            return raw;
+        } catch (DataFormatException e) {
+            throw new IOException("Malformed DOM encoding", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Write the nodes in pre-order and collect the strings to deduplicate.
+     * */
+    private static class TreeWriter implements NodeVisitor {
+        private final LinkedHashMap<String, Integer> strings = new LinkedHashMap<>();
+        private final IdentityHashMap<Element, Integer> indexes = new IdentityHashMap<>();
+        private final ByteArrayOutputStream nodes = new ByteArrayOutputStream(8192);
+        private final DataOutputStream out = new DataOutputStream(nodes);
+        private IOException exception;
+
+        @Override
+        public void head(Node node, int depth) {
+            if (exception != null) {
+                return;
+            }
+
+            try {
+                write(node, depth);
+            } catch (IOException e) {
+                exception = e;
+            }
+        }
+
+        @Override
+        public void tail(Node node, int depth) {
+        }
+
+        private void write(Node node, int depth) throws IOException {
+            if (node instanceof Element) {
+                Element element = (Element) node;
+                indexes.put(element, indexes.size());
+
+                if (depth == 0) {
+                    if (element instanceof Document) {
+                        Document document = (Document) element;
+                        out.writeByte(DOCUMENT);
+                        writeString(out, document.location());
+                        writeString(out, document.baseUri());
+                        writeString(out, document.charset().name());
+                        out.writeByte(document.quirksMode().ordinal());
+                    } else {
+                        out.writeByte(ELEMENT);
+                        writeString(out, element.baseUri());
+                    }
+                } else {
+                    out.writeByte(ELEMENT);
+                }
+
+                // the lowest bit tells if an unknown tag is self closing, which is not implied by the tag name
+                Tag tag = element.tag();
+                int selfClosing = tag.isSelfClosing() && !tag.isKnownTag() ? 1 : 0;
+                writeVarInt(out, indexOf(element.tagName()) << 1 | selfClosing);
+                writeAttributes(element.attributes(), null);
+                writeVarInt(out, element.childNodeSize());
+            } else if (node instanceof CDataNode) {
+                out.writeByte(CDATA);
+                writeString(out, ((CDataNode) node).text());
+            } else if (node instanceof TextNode) {
+                out.writeByte(TEXT);
+                writeString(out, ((TextNode) node).getWholeText());
+            } else if (node instanceof DataNode) {
+                out.writeByte(DATA);
+                writeString(out, ((DataNode) node).getWholeData());
+            } else if (node instanceof Comment) {
+                out.writeByte(COMMENT);
+                writeString(out, ((Comment) node).getData());
+            } else if (node instanceof DocumentType) {
+                DocumentType type = (DocumentType) node;
+                out.writeByte(DOCUMENT_TYPE);
+                writeString(out, type.name());
+                writeString(out, type.publicId());
+                writeString(out, type.systemId());
+            } else if (node instanceof XmlDeclaration) {
+                XmlDeclaration declaration = (XmlDeclaration) node;
+                out.writeByte(XML_DECLARATION);
+                writeString(out, declaration.name());
+                out.writeBoolean(declaration.outerHtml().startsWith("<?"));
+                writeAttributes(declaration.attributes(), declaration.nodeName());
+            } else {
+                throw new IOException("Unsupported node type " + node.getClass().getName());
+            }
+        }
+
+        private void writeAttributes(Attributes attributes, String excludedKey) throws IOException {
+            int size = 0;
+            for (Attribute attribute : attributes) {
+                if (!attribute.getKey().equals(excludedKey)) {
+                    ++size;
+                }
+            }
+
+            writeVarInt(out, size);
+            for (Attribute attribute : attributes) {
+                if (!attribute.getKey().equals(excludedKey)) {
+                    writeVarInt(out, indexOf(attribute.getKey()));
+                    writeVarInt(out, indexOf(attribute.getValue()));
+                }
+            }
+        }
+
+        private int indexOf(String s) {
+            Integer index = strings.get(s);
+            if (index == null) {
+                index = strings.size();
+                strings.put(s, index);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Rebuild the tree, the parents and the number of their children to read are kept in stacks instead of
+     * recursion, so a deep tree does not overflow the thread stack.
+     * */
+    private static class TreeReader {
+        private final DataInputStream in;
+        private final String[] strings;
+        private final Tag[] tags;
+        private final List<Element> elements = new ArrayList<>();
+
+        private TreeReader(DataInputStream in, String[] strings) {
+            this.in = in;
+            this.strings = strings;
+            this.tags = new Tag[strings.length];
+        }
+
+        private Decoded read() throws IOException {
+            Element root;
+            int kind = in.readUnsignedByte();
+            if (kind == DOCUMENT) {
+                Document document = new Document(readString(in));
+                String baseUri = readString(in);
+                if (!baseUri.equals(document.baseUri())) {
+                    document.setBaseUri(baseUri);
+                }
+                // Document.charset(Charset) inserts a meta element, so set the output charset only
+                document.outputSettings().charset(Charset.forName(readString(in)));
+                document.quirksMode(Document.QuirksMode.values()[in.readUnsignedByte()]);
+                // the document is an element, its tag name and attributes are written as well
+                tagAt(readVarInt(in));
+                readAttributes(document.attributes());
+                root = document;
+            } else if (kind == ELEMENT) {
+                String baseUri = readString(in);
+                root = new Element(tagAt(readVarInt(in)), baseUri, readAttributes(new Attributes()));
+            } else {
+                throw new IOException("Malformed DOM encoding, the root is not an element");
+            }
+            elements.add(root);
+
+            Deque<Element> parents = new ArrayDeque<>();
+            int[] remaining = new int[64];
+            int top = 0;
+            parents.push(root);
+            remaining[0] = readVarInt(in);
+
+            while (top >= 0) {
+                if (remaining[top] == 0) {
+                    parents.pop();
+                    --top;
+                    continue;
+                }
+                --remaining[top];
+
+                Element parent = parents.peek();
+                kind = in.readUnsignedByte();
+                if (kind == ELEMENT) {
+                    Element element = new Element(tagAt(readVarInt(in)), null, readAttributes(new Attributes()));
+                    parent.appendChild(element);
+                    elements.add(element);
+
+                    parents.push(element);
+                    if (++top == remaining.length) {
+                        remaining = Arrays.copyOf(remaining, top * 2);
+                    }
+                    remaining[top] = readVarInt(in);
+                } else {
+                    parent.appendChild(readLeaf(kind));
+                }
+            }
+
+            return new Decoded(root, elements.toArray(new Element[0]));
+        }
+
+        private Node readLeaf(int kind) throws IOException {
+            switch (kind) {
+                case TEXT:
+                    return new TextNode(readString(in));
+                case DATA:
+                    return new DataNode(readString(in));
+                case CDATA:
+                    return new CDataNode(readString(in));
+                case COMMENT:
+                    return new Comment(readString(in));
+                case DOCUMENT_TYPE:
+                    return new DocumentType(readString(in), readString(in), readString(in));
+                case XML_DECLARATION:
+                    XmlDeclaration declaration = new XmlDeclaration(readString(in), in.readBoolean());
+                    readAttributes(declaration.attributes());
+                    return declaration;
+                default:
+                    throw new IOException("Malformed DOM encoding, unknown node type " + kind);
+            }
+        }
+
+        private Attributes readAttributes(Attributes attributes) throws IOException {
+            int size = readVarInt(in);
+            for (int i = 0; i < size; i++) {
+                attributes.put(stringAt(readVarInt(in)), stringAt(readVarInt(in)));
+            }
+            return attributes;
+        }
+
+        private Tag tagAt(int code) throws IOException {
+            int index = checkIndex(code >>> 1);
+            if ((code & 1) != 0) {
+                return selfClosingTag(strings[index]);
+            }
+
+            Tag tag = tags[index];
+            if (tag == null) {
+                tag = Tag.valueOf(strings[index], ParseSettings.preserveCase);
+                tags[index] = tag;
+            }
+            return tag;
+        }
+
+        private String stringAt(int index) throws IOException {
+            return strings[checkIndex(index)];
+        }
+
+        private int checkIndex(int index) throws IOException {
+            if (index < 0 || index >= strings.length) {
+                throw new IOException("Malformed DOM encoding, string index out of range " + index);
+            }
+            return index;
+        }
+    }
+}
@@ -2,34 +2,57 @@ package ai.platon.pulsar.ql.common.io;
 
 import ai.platon.pulsar.common.concurrent.ConcurrentLRUCache;
 import ai.platon.pulsar.common.io.Writable;
-import ai.platon.pulsar.dom.Documents;
 import ai.platon.pulsar.dom.FeaturedDocument;
 import ai.platon.pulsar.ql.common.types.ValueDom;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
 
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.SecureRandom;
 import java.time.Duration;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes a {@link ValueDom} in the following format:
+ * <pre>
+ * byte    the format version
+ * long    the id of the server, which is random for every process
+ * long    the sequence of the document in the server
+ * varint  the pre-order index of the element in the document
+ * boolean whether the document is followed
+ * int     the length of the document encoded by {@link BinaryDomCodec}, followed by the encoded document
+ * </pre>
+ *
+ * The server id and the document sequence form a token of the document. The writer does not know which reader the
+ * bytes go to, so by default every value carries its document. In a {@link Stream}, which is written to one reader
+ * in order, a document is sent only with the first of its elements, and the later elements refer to it by the token.
+ * The reader keeps the decoded documents by token, and fails if a token refers to a document it does not have.
+ * A new token is created if an element is added to a document after it's encoded, so the element can always be
+ * addressed.
+ * */
 public class ValueDomWritable implements Writable {
 
     public static int CACHE_SIZE = 200;
-    private static FeaturedDocument NIL_DOC = FeaturedDocument.Companion.getNIL();
-    private static String NIL_DOC_HTML = FeaturedDocument.Companion.getNIL_DOC_HTML();
-    private static int NIL_DOC_LENGTH = FeaturedDocument.Companion.getNIL_DOC_LENGTH();
-    private static Duration CACHE_EXPIRES = Duration.ofMinutes(10);
-    private static String CACHED_HINT = "(cached)";
+    private static final byte VERSION = 1;
+    private static final Duration CACHE_EXPIRES = Duration.ofMinutes(10);
+    private static final long SERVER_ID = new SecureRandom().nextLong();
+    private static final AtomicLong documentSequence = new AtomicLong();
+
+    // server side, the encoded documents and their tokens, keyed by document identity
+    private static final ConcurrentLRUCache<Element, ServerEntry> serverCache =
+            new ConcurrentLRUCache<>(CACHE_EXPIRES, CACHE_SIZE);
 
-    // server side
-    // TODO: check if this is client side or server side, ensure items in client side lives longer than that in server side
-    private static ConcurrentLRUCache<String, String> pageCache = new ConcurrentLRUCache<>(CACHE_EXPIRES, CACHE_SIZE);
+    // client side, the documents received, the items live longer than those in the server side
+    private static final ConcurrentLRUCache<Token, BinaryDomCodec.Decoded> clientCache =
+            new ConcurrentLRUCache<>(CACHE_EXPIRES.multipliedBy(3), CACHE_SIZE * 2);
 
-    // client side
-    private static Map<String, FeaturedDocument> documentCache = new ConcurrentHashMap<>();
+    private static final ThreadLocal<Stream> currentStream = new ThreadLocal<>();
 
     private ValueDom dom;
 
@@ -44,72 +67,160 @@ public class ValueDomWritable implements Writable {
         return dom;
     }
 
+    /**
+     * Open a stream on the current thread, the values written by the thread before the stream is closed are read
+     * by one reader in the same order, so every document is sent only once in the stream.
+     * */
+    public static Stream openStream() {
+        Stream stream = new Stream(currentStream.get());
+        currentStream.set(stream);
+        return stream;
+    }
+
+    /**
+     * Clear the documents encoded and the documents received.
+     * */
+    public static void clearCaches() {
+        serverCache.clear();
+        clientCache.clear();
+    }
+
     @Override
     public void write(DataOutput out) throws IOException {
         Element ele = dom.getElement();
-        Document doc = ele.ownerDocument();
-        String baseUri = doc.baseUri();
-
-        out.writeBytes(doc.baseUri());
-        out.write('\n'); // make a line
+        Node node = ele.root();
+        Element root = node instanceof Element ? (Element) node : ele;
+
+        ServerEntry entry;
+        try {
+            entry = serverCache.computeIfAbsent(root, ValueDomWritable::encode);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
 
-        out.writeBytes(ele.cssSelector());
-        out.write('\n'); // make a line
+        int index = entry.encoded.indexOf(ele);
+        if (index < 0) {
+            // the document is modified after it's encoded
+            entry = new ServerEntry(BinaryDomCodec.encode(root));
+            serverCache.put(root, entry);
+            index = entry.encoded.indexOf(ele);
+        }
 
-        String html = pageCache.get(baseUri);
-        if (html != null && !html.isEmpty()) {
-            // tell the client it's cached
-            html = CACHED_HINT;
+        out.writeByte(VERSION);
+        out.writeLong(SERVER_ID);
+        out.writeLong(entry.sequence);
+        BinaryDomCodec.writeVarInt(out, index);
+
+        Stream stream = currentStream.get();
+        if (stream == null || stream.sent.add(entry.sequence)) {
+            byte[] bytes = entry.encoded.getBytes();
+            out.writeBoolean(true);
+            out.writeInt(bytes.length);
+            out.write(bytes);
         } else {
-            // not cached, cache it
-            html = doc.outerHtml();
-            pageCache.put(baseUri, html);
+            out.writeBoolean(false);
         }
-
-        out.writeInt(html.length());
-        out.write(html.getBytes());
     }
 
-    /**
-     * TODO: The local cache might not sync with the server side which lead to no data in client side, we need a better solution
-     */
     @Override
     public void readFields(DataInput in) throws IOException {
-        String baseUri = in.readLine();
-        String selector = in.readLine();
-        int htmlLen = in.readInt();
-
-        String html;
-        FeaturedDocument doc;
-        if (htmlLen == CACHED_HINT.length()) {
-            // cached
-            doc = documentCache.get(baseUri);
-            in.skipBytes(htmlLen);
-        } else {
-            // not cached
-            byte[] bytes = new byte[htmlLen];
-            in.readFully(bytes);
-            html = new String(bytes);
-
-            doc = Documents.INSTANCE.parse(html, baseUri);
-            documentCache.put(baseUri, doc);
+        int version = in.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported ValueDom format version " + version);
         }
 
-        if (doc == null) {
-            doc = NIL_DOC;
-        }
+        Token token = new Token(in.readLong(), in.readLong());
+        int index = BinaryDomCodec.readVarInt(in);
 
-        Element ele;
-        if (selector.equals("#root")) {
-            ele = doc.unbox();
+        BinaryDomCodec.Decoded decoded;
+        if (in.readBoolean()) {
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+
+            decoded = BinaryDomCodec.decode(bytes);
+            if (decoded.getRoot() instanceof Document) {
+                // calculate the features just like the documents parsed by Documents.parse
+                new FeaturedDocument((Document) decoded.getRoot());
+            }
+            clientCache.put(token, decoded);
         } else {
-            ele = doc.selectFirst(selector);
+            decoded = clientCache.get(token);
+            if (decoded == null) {
+                throw new IOException("The document of the DOM value is not received or expired, the values must be"
+                        + " read in the order they are written in a stream");
+            }
         }
 
+        Element ele = decoded.get(index);
         if (ele == null) {
-            ele = NIL_DOC.getBody();
+            throw new IOException("No element #" + index + " in the document of the DOM value");
         }
 
         dom = ValueDom.get(ele);
     }
+
+    private static ServerEntry encode(Element root) {
+        try {
+            return new ServerEntry(BinaryDomCodec.encode(root));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * The documents sent to one reader.
+     * */
+    public static final class Stream implements AutoCloseable {
+        private final Stream outer;
+        private final Set<Long> sent = new HashSet<>();
+
+        private Stream(Stream outer) {
+            this.outer = outer;
+        }
+
+        @Override
+        public void close() {
+            if (outer == null) {
+                currentStream.remove();
+            } else {
+                currentStream.set(outer);
+            }
+        }
+    }
+
+    private static class ServerEntry {
+        private final long sequence = documentSequence.incrementAndGet();
+        private final BinaryDomCodec.Encoded encoded;
+
+        private ServerEntry(BinaryDomCodec.Encoded encoded) {
+            this.encoded = encoded;
+        }
+    }
+
+    private static class Token {
+        private final long serverId;
+        private final long sequence;
+
+        private Token(long serverId, long sequence) {
+            this.serverId = serverId;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Token)) {
+                return false;
+            }
+            Token token = (Token) o;
+            return serverId == token.serverId && sequence == token.sequence;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(serverId) * 31 + Long.hashCode(sequence);
+        }
+    }
 }
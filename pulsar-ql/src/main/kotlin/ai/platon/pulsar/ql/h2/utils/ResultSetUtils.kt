@@ -2,6 +2,7 @@ package ai.platon.pulsar.ql.h2.utils
 
 import ai.platon.pulsar.common.config.AppConstants
 import ai.platon.pulsar.common.getLogger
+import ai.platon.pulsar.ql.common.PulsarObjectSerializer
 import ai.platon.pulsar.ql.common.ResultSets
 import ai.platon.pulsar.ql.h2.addColumn
 import ai.platon.pulsar.ql.common.types.ValueDom
@@ -91,6 +92,20 @@ object ResultSetUtils {
         return newRs
     }
 
+    /**
+     * Serialize the DOM values of a column in the result set, a null value is serialized as [ValueDom.NIL].
+     *
+     * The values of the result set are written in one stream, so a document shared by several values is sent only
+     * once, and the values have to be read in order by [PulsarObjectSerializer.deserializeAll].
+     * */
+    fun serializeDomColumn(rs: ResultSet, columnIndex: Int): List<ByteArray> {
+        val values = mutableListOf<Any>()
+        while (rs.next()) {
+            values.add(rs.getObject(columnIndex) ?: ValueDom.NIL)
+        }
+        return PulsarObjectSerializer().serializeAll(values)
+    }
+
     /**
      * A very simple and limited result set creator
      * @see [org.springframework.jdbc.core.StatementCreatorUtils]
@@ -0,0 +1,207 @@
+package ai.platon.pulsar.ql
+
+import ai.platon.pulsar.dom.Documents
+import ai.platon.pulsar.ql.common.PulsarObjectSerializer
+import ai.platon.pulsar.ql.common.ResultSets
+import ai.platon.pulsar.ql.common.io.BinaryDomCodec
+import ai.platon.pulsar.ql.common.io.ValueDomWritable
+import ai.platon.pulsar.ql.common.types.ValueDom
+import ai.platon.pulsar.ql.h2.utils.ResultSetUtils
+import org.jsoup.Jsoup
+import org.jsoup.nodes.Document
+import org.jsoup.nodes.Element
+import org.junit.jupiter.api.Tag
+import java.io.IOException
+import kotlin.test.*
+
+class TestValueDomWritable {
+    private val serializer = PulsarObjectSerializer()
+    private val baseURI = "https://www.example.com/products"
+
+    @BeforeTest
+    fun setup() {
+        ValueDomWritable.clearCaches()
+    }
+
+    @Test
+    fun whenDecodeDocument_ThenTheTreeIsTheSame() {
+        val html = """<!DOCTYPE html>
+            <html><head><title>Products &amp; more</title>
+            <script>if (a < b && c > d) { console.log("</div>") }</script>
+            <style>p > a { color: red }</style></head>
+            <body class="main" baseUri="$baseURI"><!-- the comment -->
+            <p>Hello   <b>World</b>, 你好 &lt;世界&gt;</p>
+            <input type="checkbox" checked><textarea>  keep
+               spaces  </textarea><pre>
+            pre</pre><svg viewBox="0 0 10 10"><path d="M0 0"/></svg>
+            </body></html>
+        """.trimIndent()
+        val doc = Jsoup.parse(html, baseURI)
+
+        listOf(0, Int.MAX_VALUE).forEach { threshold ->
+            BinaryDomCodec.COMPRESSION_THRESHOLD = threshold
+            try {
+                val encoded = BinaryDomCodec.encode(doc)
+                val decoded = BinaryDomCodec.decode(encoded.bytes)
+                val root = decoded.root as Document
+
+                assertEquals(doc.outerHtml(), root.outerHtml())
+                assertEquals(doc.location(), root.location())
+                assertEquals(doc.baseUri(), root.baseUri())
+                assertEquals(doc.charset(), root.charset())
+                val elements = doc.allElements
+                val decodedElements = root.allElements
+                assertEquals(elements.size, decodedElements.size)
+                elements.forEachIndexed { i, element ->
+                    assertEquals(i, encoded.indexOf(element))
+                    assertSame(decodedElements[i], decoded.get(i))
+                    assertEquals(element.cssSelector(), decodedElements[i].cssSelector())
+                }
+                assertNull(decoded.get(elements.size))
+            } finally {
+                BinaryDomCodec.COMPRESSION_THRESHOLD = 1024
+            }
+        }
+    }
+
+    @Test
+    fun whenSerializeElementsOfTheSameDocumentInStream_ThenTheDocumentIsSentOnce() {
+        val doc = Jsoup.parse(productListHtml(100), baseURI)
+        val items = doc.select("li.item")
+
+        val (first, second) = ValueDomWritable.openStream().use {
+            listOf(items[0], items[1]).map { serializer.serialize(ValueDom.get(it)) }
+        }
+        assertTrue { second.size < 32 }
+        assertTrue { first.size < doc.outerHtml().toByteArray().size / 3 }
+
+        val dom1 = serializer.deserialize(first) as ValueDom
+        val dom2 = serializer.deserialize(second) as ValueDom
+        assertEquals(items[0].outerHtml(), dom1.element.outerHtml())
+        assertEquals(items[1].outerHtml(), dom2.element.outerHtml())
+        assertSame(dom1.document, dom2.document)
+        assertEquals(baseURI, dom2.element.baseUri())
+    }
+
+    @Test
+    fun whenSerializeResultSet_ThenTheDocumentIsSentOnce() {
+        val doc = Jsoup.parse(productListHtml(100), baseURI)
+        val items = doc.select("li.item")
+        val rs = ResultSets.newSimpleResultSet("DOM")
+        items.forEach { rs.addRow(ValueDom.get(it)) }
+        rs.addRow(null)
+
+        val values = ResultSetUtils.serializeDomColumn(rs, 1)
+        assertEquals(items.size + 1, values.size)
+        val docSize = doc.outerHtml().toByteArray().size
+        assertTrue { values.drop(1).sumOf { it.size } < docSize / 3 }
+
+        val doms = serializer.deserializeAll(values).map { it as ValueDom }
+        items.forEachIndexed { i, item -> assertEquals(item.outerHtml(), doms[i].element.outerHtml()) }
+        assertTrue { doms.dropLast(1).all { it.document === doms[0].document } }
+        assertEquals(ValueDom.NIL.document.location(), doms.last().document.location())
+    }
+
+    @Test
+    fun whenSerializeWithoutStream_ThenEveryValueCarriesTheDocument() {
+        val doc = Jsoup.parse(productListHtml(10), baseURI)
+        val items = doc.select("li.item")
+
+        serializer.serialize(ValueDom.get(items[0]))
+        val second = serializer.serialize(ValueDom.get(items[1]))
+
+        // another reader which never received the first value
+        ValueDomWritable.clearCaches()
+        val dom = serializer.deserialize(second) as ValueDom
+        assertEquals(items[1].outerHtml(), dom.element.outerHtml())
+    }
+
+    @Test
+    fun whenTheDocumentIsNotReceived_ThenReadFails() {
+        val doc = Jsoup.parse(productListHtml(10), baseURI)
+        val items = doc.select("li.item")
+
+        val second = ValueDomWritable.openStream().use {
+            serializer.serialize(ValueDom.get(items[0]))
+            serializer.serialize(ValueDom.get(items[1]))
+        }
+
+        assertFailsWith<IOException> { serializer.deserialize(second) }
+    }
+
+    @Test
+    fun whenElementIsAddedAfterTheDocumentIsSent_ThenTheDocumentIsSentAgain() {
+        val doc = Jsoup.parse(productListHtml(3), baseURI)
+        val dom1 = serializer.deserialize(serializer.serialize(ValueDom.get(doc.selectFirst("li")!!))) as ValueDom
+
+        val added = doc.selectFirst("ul")!!.appendElement("li").text("added")
+        val dom2 = serializer.deserialize(serializer.serialize(ValueDom.get(added))) as ValueDom
+        assertEquals("<li>added</li>", dom2.element.outerHtml())
+        assertNotSame(dom1.document, dom2.document)
+    }
+
+    @Test
+    fun whenSerializeDetachedElement_ThenTheElementTreeIsSent() {
+        val ele = Element("div").attr("id", "detached").appendElement("span").text("text")
+        val dom = serializer.deserialize(serializer.serialize(ValueDom.get(ele))) as ValueDom
+        assertEquals(ele.outerHtml(), dom.element.outerHtml())
+        assertEquals("div", dom.element.parent()?.tagName())
+    }
+
+    @Tag("SlowTest")
+    @Test
+    fun benchmark() {
+        val doc = Documents.parse(productListHtml(200), baseURI).unbox()
+        val items = doc.select("li.item, li.item a, li.item span.price")
+        val rounds = 5
+
+        var htmlBytes = 0L
+        val html = measure(rounds) {
+            // the format before: the base uri, the css path and the full html for the first element, then a hint
+            ValueDomWritable.clearCaches()
+            val html = doc.outerHtml()
+            val parsed = Documents.parse(html, baseURI)
+            htmlBytes = html.toByteArray().size.toLong()
+            items.forEach {
+                val selector = it.cssSelector()
+                htmlBytes += baseURI.length + selector.length + 6
+                assertNotNull(parsed.selectFirst(selector))
+            }
+        }
+
+        var binaryBytes = 0L
+        val binary = measure(rounds) {
+            ValueDomWritable.clearCaches()
+            binaryBytes = 0L
+            ValueDomWritable.openStream().use {
+                items.forEach {
+                    val bytes = serializer.serialize(ValueDom.get(it))
+                    binaryBytes += bytes.size
+                    assertTrue { (serializer.deserialize(bytes) as ValueDom).isNotNil }
+                }
+            }
+        }
+
+        println(String.format("%-12s%12s%16s", "format", "bytes", "result sets/s"))
+        println(String.format("%-12s%12d%16.1f", "html", htmlBytes, html))
+        println(String.format("%-12s%12d%16.1f", "binary", binaryBytes, binary))
+    }
+
+    /**
+     * Measure how many times per second the result set of all the elements is shipped and decoded.
+     * */
+    private fun measure(rounds: Int, ship: () -> Unit): Double {
+        ship() // warm up
+        val startTime = System.nanoTime()
+        repeat(rounds) { ship() }
+        return rounds * 1e9 / (System.nanoTime() - startTime).coerceAtLeast(1)
+    }
+
+    private fun productListHtml(numItems: Int): String {
+        val items = (1..numItems).joinToString("\n") {
+            """<li class="item" data-sku="$it"><a href="/item/$it" class="title">Product $it</a>
+                <span class="price">¥${it * 10}.00</span><img src="/img/$it.jpg" alt="Product $it"></li>"""
+        }
+        return "<html><head><title>Products</title></head><body><ul class=\"list\">$items</ul></body></html>"
+    }
+}
@@ -97,7 +97,7 @@ open class XSQLScrapeHyperlink(
     }
 
     protected open fun doExtract(page: WebPage, document: FeaturedDocument) {
-        if (!page.protocolStatus.isSuccess || page.contentLength == 0L || page.content == null) {
+        if (!page.protocolStatus.isSuccess || page.contentLength == 0L || !page.hasContent()) {
             logger.info("No content | {}", page.url)
             response.statusCode = ResourceStatus.SC_NO_CONTENT
         }
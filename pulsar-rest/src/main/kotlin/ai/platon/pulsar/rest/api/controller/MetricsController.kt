@@ -0,0 +1,23 @@
+package ai.platon.pulsar.rest.api.controller
+
+import ai.platon.pulsar.common.metrics.OpenMetricsFormat
+import ai.platon.pulsar.skeleton.common.metrics.MetricsSystem
+import org.springframework.http.HttpHeaders
+import org.springframework.http.ResponseEntity
+import org.springframework.web.bind.annotation.*
+
+/**
+ * The controller to expose the metrics in the OpenMetrics format, so they can be scraped by Prometheus
+ * */
+@RestController
+@CrossOrigin
+@RequestMapping("metrics")
+class MetricsController {
+
+    @GetMapping
+    fun metrics(): ResponseEntity<String> {
+        return ResponseEntity.ok()
+            .header(HttpHeaders.CONTENT_TYPE, OpenMetricsFormat.CONTENT_TYPE)
+            .body(MetricsSystem.formatOpenMetrics())
+    }
+}
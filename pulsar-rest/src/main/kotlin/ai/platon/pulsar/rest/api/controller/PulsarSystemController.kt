@@ -1,6 +1,7 @@
 package ai.platon.pulsar.rest.api.controller
 
 import ai.platon.pulsar.skeleton.crawl.fetch.privacy.AbstractPrivacyManager
+import ai.platon.pulsar.skeleton.crawl.fetch.trace.FlightRecorder
 import ai.platon.pulsar.protocol.browser.driver.WebDriverPoolManager
 import org.springframework.beans.factory.annotation.Autowired
 import org.springframework.web.bind.annotation.*
@@ -33,4 +34,12 @@ class PulsarSystemController {
         sb.appendLine(privacyManager.takeSnapshot())
         return sb.toString()
     }
+
+    /**
+     * The stage traces of the recently finished load tasks, in JSON
+     * */
+    @GetMapping("traces", produces = ["application/json"])
+    fun traces(): String {
+        return FlightRecorder.DEFAULT.toJson()
+    }
 }
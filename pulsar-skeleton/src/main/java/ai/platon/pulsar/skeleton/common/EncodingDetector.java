@@ -18,6 +18,7 @@ package ai.platon.pulsar.skeleton.common;
 
 import ai.platon.pulsar.common.HttpHeaders;
 import ai.platon.pulsar.common.config.ImmutableConfig;
+import ai.platon.pulsar.persist.PageContents;
 import ai.platon.pulsar.persist.WebPage;
 import com.ibm.icu.text.CharsetDetector;
 import com.ibm.icu.text.CharsetMatch;
@@ -25,7 +26,6 @@ import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.ByteArrayInputStream;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
@@ -307,8 +307,7 @@ public class EncodingDetector {
             // will sometimes throw exceptions
             try {
                 detector.enableInputFilter(filter);
-                detector.setText(new ByteArrayInputStream(dataBuffer.array(),
-                        dataBuffer.arrayOffset() + dataBuffer.position(), length));
+                detector.setText(PageContents.newInputStream(dataBuffer));
                 matches = detector.detectAll();
             } catch (Exception e) {
                 LOG.debug("Exception from ICU4J (ignoring): ", e);
@@ -75,7 +75,7 @@ class FatLinkExtractor(
         ++counters.loadedSeeds
         ++globalCounters.loadedSeeds
 
-        if (page.content == null) {
+        if (!page.hasContent()) {
             return null
         }
 
@@ -5,6 +5,7 @@ import ai.platon.pulsar.common.AppPaths
 import ai.platon.pulsar.common.AppPaths.WEB_CACHE_DIR
 import ai.platon.pulsar.dom.Documents
 import ai.platon.pulsar.persist.ProtocolStatus
+import ai.platon.pulsar.persist.PageContents
 import ai.platon.pulsar.persist.WebPage
 import ai.platon.pulsar.persist.metadata.Name
 import org.jsoup.nodes.Document
@@ -65,7 +66,7 @@ fun AppFiles.export(page: WebPage, prefix: String = "", suffix: String = ".htm")
     val filename = page.headers.decodedDispositionFilename ?: AppPaths.fromUri(page.location, prefix, suffix)
     val path = WEB_CACHE_DIR.resolve(filename)
     Files.deleteIfExists(path)
-    AppFiles.saveTo(page.content?.array() ?: "(empty)".toByteArray(), path)
+    AppFiles.saveTo(page.content?.let { PageContents.toBytes(it) } ?: "(empty)".toByteArray(), path)
     return path
 }
 
@@ -216,7 +216,7 @@ class PageLoadStatusFormatter(
             compactFormat(page.contentLength).trim() + " <- " + compactFormat(page.lastContentLength).trim()
         }
 
-        if (page.content == null) {
+        if (!page.hasContent()) {
             contentLength = "0 <- $contentLength"
         }
 
@@ -1,6 +1,7 @@
 package ai.platon.pulsar.skeleton.common.metrics
 
 import ai.platon.pulsar.common.DateTimes
+import ai.platon.pulsar.common.metrics.hdrTimer
 import ai.platon.pulsar.common.prependReadableClassName
 import com.codahale.metrics.*
 import kotlin.reflect.KClass
@@ -53,6 +54,16 @@ class AppMetricRegistry : MetricRegistry() {
 
     fun histogram(obj: Any, name: String) = histogram(obj, "", name)
 
+    /**
+     * Get or create a timer backed by HdrHistogram, so the tail latencies such as p99 and p999 are not sampled away.
+     * */
+    fun timer(obj: Any, ident: String, name: String): Timer {
+        val fullName = name(obj, "$ident.t", name, ".")
+        return (metrics[fullName] as? Timer) ?: hdrTimer(fullName)
+    }
+
+    fun timer(obj: Any, name: String) = timer(obj, "", name)
+
     fun <T : Metric> register(obj: Any, name: String, metric: T) = register(obj, "", name, metric)
 
     fun <T : Metric> register(obj: Any, ident: String, name: String, metric: T) {
@@ -5,12 +5,15 @@ import ai.platon.pulsar.common.chrono.scheduleAtFixedRate
 import ai.platon.pulsar.common.config.AppConstants
 import ai.platon.pulsar.common.config.CapabilityTypes
 import ai.platon.pulsar.common.config.ImmutableConfig
+import ai.platon.pulsar.common.metrics.OpenMetricsFormat
+import ai.platon.pulsar.common.metrics.OpenMetricsServer
 import ai.platon.pulsar.skeleton.common.AppSystemInfo
 import com.codahale.metrics.*
 import com.codahale.metrics.graphite.GraphiteReporter
 import com.codahale.metrics.graphite.PickledGraphite
 import com.google.common.util.concurrent.ThreadFactoryBuilder
 import org.slf4j.LoggerFactory
+import org.springframework.util.ClassUtils
 import java.net.InetSocketAddress
 import java.nio.file.Files
 import java.time.Duration
@@ -85,6 +88,11 @@ open class MetricsSystem(
          * */
         const val SHADOW_METRIC_SYMBOL = "._."
 
+        /**
+         * If the REST server is present, the OpenMetrics endpoint is served by this controller
+         * */
+        const val REST_METRICS_CONTROLLER = "ai.platon.pulsar.rest.api.controller.MetricsController"
+
         // Spring boot do not support the object initialization, so we disable it
 //        val defaultMetricRegistry = SharedMetricRegistries.getDefault() as AppMetricRegistry
 //        val reg = defaultMetricRegistry
@@ -105,6 +113,20 @@ open class MetricsSystem(
             ).let { reg.registerAll(this, it) }
         }
 
+        /**
+         * The registries to expose: the default registry, and the shared registries used by the modules which
+         * can not access the default registry, such as the browser driver and the storage.
+         * */
+        val exposedRegistries: List<MetricRegistry>
+            get() = listOf(defaultMetricRegistry) + SharedMetricRegistries.names().map { SharedMetricRegistries.getOrCreate(it) }
+
+        /**
+         * Format all the exposed metrics in the OpenMetrics text format.
+         * */
+        fun formatOpenMetrics(): String {
+            return OpenMetricsFormat.format(exposedRegistries, MetricFilters.notContains(SHADOW_METRIC_SYMBOL))
+        }
+
         private fun formatAvailableMemoryGauge(): String {
             return AppSystemInfo.availableMemory?.runCatching { Strings.compactFormat(this) }?.getOrNull() ?: "Not available"
         }
@@ -129,6 +151,8 @@ open class MetricsSystem(
     val graphiteServer = conf.get("graphite.server", "crawl2")
     val graphiteServerPort = conf.getInt("graphite.server.port", 2004)
     val batchSize = conf.getInt("graphite.pickled.batch.size", 100)
+    val openMetricsPort = conf.getInt(CapabilityTypes.METRICS_OPENMETRICS_PORT, 9464)
+    val openMetricsHost = conf.get(CapabilityTypes.METRICS_OPENMETRICS_HOST, OpenMetricsServer.DEFAULT_HOST)
 
     private val metricRegistry = defaultMetricRegistry
 
@@ -161,6 +185,7 @@ open class MetricsSystem(
             .filter(MetricFilters.notContains(SHADOW_METRIC_SYMBOL))
             .build(pickled)
     }
+    private var openMetricsServer: OpenMetricsServer? = null
     private val hourlyTimer = java.util.Timer("MetricHourly", true)
     private val dailyTimer = java.util.Timer("MetricDaily", true)
 
@@ -193,6 +218,8 @@ open class MetricsSystem(
                 logger.info("GraphiteReporter is started, report interval: {}", graphiteReportInterval)
             }
 
+            startOpenMetricsServerIfNecessary()
+
             val now = LocalDateTime.now()
             var delay = Duration.between(now, now.plusHours(1).truncatedTo(ChronoUnit.HOURS))
             hourlyTimer.scheduleAtFixedRate(delay, Duration.ofHours(1)) { reg.resetHourlyCounters() }
@@ -225,5 +252,26 @@ open class MetricsSystem(
         graphiteReporter = null
 
         counterReporter.close()
+
+        openMetricsServer?.close()
+        openMetricsServer = null
+    }
+
+    /**
+     * Start the standalone OpenMetrics endpoint, unless the REST server is present, which serves the metrics itself.
+     * */
+    private fun startOpenMetricsServerIfNecessary() {
+        if (openMetricsPort <= 0 || ClassUtils.isPresent(REST_METRICS_CONTROLLER, null)) {
+            return
+        }
+
+        val filter = MetricFilters.notContains(SHADOW_METRIC_SYMBOL)
+        val server = OpenMetricsServer(openMetricsPort, openMetricsHost, filter = filter) { exposedRegistries }
+        runCatching { server.start() }
+            .onSuccess { openMetricsServer = server }
+            .onFailure {
+                logger.warn("Failed to start OpenMetrics endpoint on {}:{} | {}",
+                    openMetricsHost, openMetricsPort, it.message)
+            }
     }
 }
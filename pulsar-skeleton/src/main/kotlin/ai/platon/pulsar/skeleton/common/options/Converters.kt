@@ -43,7 +43,10 @@ class BrowserTypeConverter : IStringConverter<BrowserType> {
 
 class FetchModeConverter : IStringConverter<FetchMode> {
     override fun convert(value: String): FetchMode {
-        return FetchMode.fromString(value)
+        return when (value.lowercase()) {
+            "http", "https" -> FetchMode.NATIVE
+            else -> FetchMode.fromString(value)
+        }
     }
 }
 
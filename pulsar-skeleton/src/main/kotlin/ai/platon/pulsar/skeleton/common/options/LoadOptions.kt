@@ -6,6 +6,7 @@ import ai.platon.pulsar.common.browser.BrowserType
 import ai.platon.pulsar.common.config.CapabilityTypes
 import ai.platon.pulsar.common.config.Params
 import ai.platon.pulsar.common.config.VolatileConfig
+import ai.platon.pulsar.common.concurrent.ConcurrentLRUCache
 import ai.platon.pulsar.dom.select.appendSelectorIfMissing
 import ai.platon.pulsar.persist.metadata.FetchMode
 import ai.platon.pulsar.skeleton.crawl.PageEventHandlers
@@ -14,6 +15,7 @@ import com.beust.jcommander.Parameter
 import java.time.Duration
 import java.time.Instant
 import java.time.temporal.ChronoUnit
+import kotlin.reflect.KMutableProperty1
 import kotlin.reflect.full.hasAnnotation
 import kotlin.reflect.jvm.kotlinProperty
 
@@ -293,13 +295,16 @@ open class LoadOptions(
     var requireAnchors = 0
     
     /**
-     * The fetch mode.
+     * The fetch mode, or the protocol to fetch the page.
      *
-     * Only BROWSER is supported currently.
+     * * browser: fetch the page using a real browser, which is the default
+     * * http, native: fetch the page using a pure HTTP client, no script is executed
+     * * auto: fetch the page using a pure HTTP client, and fall back to a real browser if the page
+     *   requires script rendering
      * */
     @Parameter(
-        names = ["-fm", "-fetchMode", "--fetch-mode"], converter = FetchModeConverter::class,
-        description = "The fetch mode"
+        names = ["-fm", "-fetchMode", "--fetch-mode", "-protocol", "--protocol"], converter = FetchModeConverter::class,
+        description = "The fetch mode, or the protocol to fetch the page: browser, http or auto"
     )
     var fetchMode = FetchMode.BROWSER
     
@@ -320,7 +325,7 @@ open class LoadOptions(
         names = ["-sc", "-scrollCount", "--scroll-count"],
         description = "The count to scroll down after a page being opened in a browser"
     )
-    var scrollCount = InteractSettings.DEFAULT.scrollCount
+    var scrollCount = defaultInteractSettings.scrollCount
     
     /**
      * The interval to scroll down.
@@ -329,7 +334,7 @@ open class LoadOptions(
         names = ["-si", "-scrollInterval", "--scroll-interval"], converter = DurationConverter::class,
         description = "The interval to scroll down after a page being opened in a browser"
     )
-    var scrollInterval = InteractSettings.DEFAULT.scrollInterval
+    var scrollInterval = defaultInteractSettings.scrollInterval
     
     /**
      * The maximum time to perform javascript injected into the browser.
@@ -338,7 +343,7 @@ open class LoadOptions(
         names = ["-stt", "-scriptTimeout", "--script-timeout"], converter = DurationConverter::class,
         description = "The maximum time to perform javascript injected into the browser"
     )
-    var scriptTimeout = InteractSettings.DEFAULT.scriptTimeout
+    var scriptTimeout = defaultInteractSettings.scriptTimeout
     
     /**
      * The maximum time to wait for a page to finish.
@@ -347,7 +352,7 @@ open class LoadOptions(
         names = ["-plt", "-pageLoadTimeout", "--page-load-timeout"], converter = DurationConverter::class,
         description = "The maximum time to wait for a page to finish"
     )
-    var pageLoadTimeout = InteractSettings.DEFAULT.pageLoadTimeout
+    var pageLoadTimeout = defaultInteractSettings.pageLoadTimeout
     
     /**
      * The browser used to visit the item pages.
@@ -676,11 +681,9 @@ open class LoadOptions(
     open val modifiedParams: Params
         get() {
             val rowFormat = "%40s: %s"
-            val fields = LoadOptions::class.java.declaredFields
-            return fields.filter { it.annotations.any { it is Parameter } && !isDefault(it.name) }
-                .onEach { it.isAccessible = true }
-                .filter { it.get(this) != null }
-                .associate { "-${it.name}" to it.get(this) }
+            return optionProperties.filter { !isDefault(it.name) }
+                .mapNotNull { p -> p.get(this)?.let { "-${p.name}" to it } }
+                .toMap()
                 .let { Params.of(it).withRowFormat(rowFormat) }
         }
     
@@ -689,11 +692,9 @@ open class LoadOptions(
      * */
     open val modifiedOptions: Map<String, Any>
         get() {
-            val fields = LoadOptions::class.java.declaredFields
-            return fields.filter { it.annotations.any { it is Parameter } && !isDefault(it.name) }
-                .onEach { it.isAccessible = true }
-                .filter { it.get(this) != null }
-                .associate { it.name to it.get(this) }
+            return optionProperties.filter { !isDefault(it.name) }
+                .mapNotNull { p -> p.get(this)?.let { p.name to it } }
+                .toMap()
         }
     
     /**
@@ -860,7 +861,7 @@ open class LoadOptions(
      * Check if the option value is the default.
      * */
     open fun isDefault(option: String): Boolean {
-        val value = optionFieldsMap[option]?.also { it.isAccessible = true }?.get(this) ?: return false
+        val value = optionPropertiesMap[option]?.get(this) ?: return false
         return value == defaultParams[option]
     }
     
@@ -869,9 +870,7 @@ open class LoadOptions(
      * */
     override fun getParams(): Params {
         val rowFormat = "%40s: %s"
-        return optionFields.filter { it.annotations.any { it is Parameter } }
-            .onEach { it.isAccessible = true }
-            .associate { "-${it.name}" to it.get(this) }
+        return optionProperties.associate { "-${it.name}" to it.get(this) }
             .filter { it.value != null }
             .let { Params.of(it).withRowFormat(rowFormat) }
     }
@@ -915,7 +914,18 @@ open class LoadOptions(
     /**
      * Create a new [LoadOptions] object with the same arguments string and event handlers.
      * */
-    open fun clone() = parse(toString(), this)
+    open fun clone(): LoadOptions {
+        return LoadOptions(argv.copyOf(), conf, rawEvent, rawItemEvent, referrer).also { it.copyOptions(this) }
+    }
+    
+    /**
+     * Copy all the option values from [other] through the property accessors, no reflection or JCommander involved.
+     * */
+    private fun copyOptions(other: LoadOptions) {
+        // the setter of refresh changes other options, so it's copied first and the changes are overwritten
+        refresh = other.refresh
+        copiedProperties.forEach { it.set(this, it.get(other)) }
+    }
     
     /**
      * Correct [outLinkSelector].
@@ -985,6 +995,49 @@ open class LoadOptions(
          * */
         val optionFieldsMap = optionFields.associateBy { it.name }
         
+        /**
+         * The properties of all options in declaration order, which are accessed without reflection.
+         * */
+        @Suppress("UNCHECKED_CAST")
+        private val optionProperties = listOf<KMutableProperty1<LoadOptions, *>>(
+            LoadOptions::entity, LoadOptions::label, LoadOptions::taskId, LoadOptions::taskTime,
+            LoadOptions::deadline, LoadOptions::authToken, LoadOptions::readonly, LoadOptions::isResource,
+            LoadOptions::expires, LoadOptions::expireAt, LoadOptions::outLinkSelector, LoadOptions::outLinkPattern,
+            LoadOptions::clickTarget, LoadOptions::nextPageSelector, LoadOptions::iframe, LoadOptions::topLinks,
+            LoadOptions::topNAnchorGroups, LoadOptions::waitNonBlank, LoadOptions::requireNotBlank,
+            LoadOptions::requireSize, LoadOptions::requireImages, LoadOptions::requireAnchors,
+            LoadOptions::fetchMode, LoadOptions::browser, LoadOptions::scrollCount, LoadOptions::scrollInterval,
+            LoadOptions::scriptTimeout, LoadOptions::pageLoadTimeout, LoadOptions::itemBrowser,
+            LoadOptions::itemExpires, LoadOptions::itemExpireAt, LoadOptions::itemScrollCount,
+            LoadOptions::itemScrollInterval, LoadOptions::itemScriptTimeout, LoadOptions::itemPageLoadTimeout,
+            LoadOptions::itemWaitNonBlank, LoadOptions::itemRequireNotBlank, LoadOptions::itemRequireSize,
+            LoadOptions::itemRequireImages, LoadOptions::itemRequireAnchors, LoadOptions::persist,
+            LoadOptions::storeContent, LoadOptions::dropContent, LoadOptions::refresh, LoadOptions::ignoreFailure,
+            LoadOptions::nMaxRetry, LoadOptions::nJitRetry, LoadOptions::lazyFlush, LoadOptions::incognito,
+            LoadOptions::noRedirect, LoadOptions::hardRedirect, LoadOptions::parse, LoadOptions::reparseLinks,
+            LoadOptions::ignoreUrlQuery, LoadOptions::noNorm, LoadOptions::noFilter, LoadOptions::netCondition,
+            LoadOptions::test, LoadOptions::version
+        ).map { it as KMutableProperty1<LoadOptions, Any?> }.also { properties ->
+            require(properties.map { it.name }.toSet() == optionFieldsMap.keys) {
+                "Every option field has to be listed in optionProperties"
+            }
+        }
+        
+        private val optionPropertiesMap = optionProperties.associateBy { it.name }
+        
+        private val copiedProperties = optionProperties.filter { it.name != "refresh" }
+        
+        /**
+         * The max number of the distinct arguments whose parse results are cached.
+         * */
+        const val PARSE_CACHE_CAPACITY = 10_000
+        
+        /**
+         * The parsed options keyed by the trimmed arguments. The cached options are templates which are never exposed
+         * or modified, the options returned by [parse] are copies of them.
+         * */
+        private val parseCache = ConcurrentLRUCache<String, ParsedArgs>(PARSE_CACHE_CAPACITY)
+        
         /**
          * A map of all default options.
          * */
@@ -1096,16 +1149,48 @@ open class LoadOptions(
         
         /**
          * Parse the [args] with other [conf].
+         *
+         * JCommander runs only the first time the [args] are seen, the parse result is cached and copied later.
          * */
-        fun parse(args: String, conf: VolatileConfig = VolatileConfig()) =
-            LoadOptions(args.trim(), conf).apply { parse() }
+        fun parse(args: String, conf: VolatileConfig = VolatileConfig()): LoadOptions {
+            val template = getOrParseTemplate(args)
+            return LoadOptions(template.argv.copyOf(), conf).also { it.copyOptions(template) }
+        }
         
         /**
          * Parse the [args] with other [options].
+         *
+         * JCommander runs only the first time the [args] are seen, the parse result is cached and copied later.
          * */
-        fun parse(args: String, options: LoadOptions) = LoadOptions(args.trim(), options).apply {
-            referrer = options.referrer
-            parse()
+        fun parse(args: String, options: LoadOptions): LoadOptions {
+            val template = getOrParseTemplate(args)
+            val argv = template.argv.copyOf()
+            return LoadOptions(argv, options.conf, options.rawEvent, options.rawItemEvent, options.referrer)
+                .also { it.copyOptions(template) }
+        }
+        
+        /**
+         * Clear the cached parse results.
+         * */
+        fun clearParseCache() = parseCache.clear()
+        
+        /**
+         * Get the cached parse result of [args], or parse it if it's not cached or it's parsed with out-dated
+         * [LoadOptionDefaults]. A failed parse is not cached, just like before, it's reported on every call.
+         * */
+        private fun getOrParseTemplate(args: String): LoadOptions {
+            val key = args.trim()
+            val defaultsVersion = LoadOptionDefaults.version
+            val cached = parseCache[key]
+            if (cached != null && cached.defaultsVersion == defaultsVersion) {
+                return cached.template
+            }
+            
+            val template = LoadOptions(key, VolatileConfig.UNSAFE)
+            if (template.parse()) {
+                parseCache.put(key, ParsedArgs(template, defaultsVersion))
+            }
+            return template
         }
         
         /**
@@ -1140,10 +1225,27 @@ open class LoadOptions(
     }
 }
 
+/**
+ * The default interaction settings, [InteractSettings.DEFAULT] creates a new object every time it's called.
+ * */
+private val defaultInteractSettings = InteractSettings.DEFAULT
+
+/**
+ * A cached parse result.
+ * */
+private class ParsedArgs(val template: LoadOptions, val defaultsVersion: Int)
+
 /**
  * The default load options, be careful if you have to change the default behaviour.
  * */
 object LoadOptionDefaults {
+    /**
+     * The version of the defaults, it's increased when any default is changed, the options parsed before are out-dated.
+     * */
+    @Volatile
+    var version = 0
+        private set
+    
     /**
      * The default expiry time, some time we may need expire all pages by default, for example, in test mode
      * */
@@ -1211,16 +1313,19 @@ object LoadOptionDefaults {
      * The default expiry time, some time we may need expire all pages by default, for example, in test mode
      * */
     var expires = EXPIRES
+        set(value) { field = value; ++version }
     
     /**
      * The default time to expire
      * */
     var expireAt = EXPIRE_AT
+        set(value) { field = value; ++version }
     
     /**
      * Lazy flush.
      * */
     var lazyFlush = LAZY_FLUSH
+        set(value) { field = value; ++version }
     
     /**
      * Trigger the parse phase or not.
@@ -1231,6 +1336,7 @@ object LoadOptionDefaults {
      * 3. use a [ai.platon.pulsar.crawl.common.url.ParsableHyperlink]
      * */
     var parse = PARSE
+        set(value) { field = value; ++version }
     
     /**
      * Store webpage content or not.
@@ -1239,6 +1345,7 @@ object LoadOptionDefaults {
      * If we are running a public cloud, this option might be changed to false.
      * */
     var storeContent = STORE_CONTENT
+        set(value) { field = value; ++version }
     /**
      * Load webpage content or not.
      *
@@ -1252,23 +1359,27 @@ object LoadOptionDefaults {
      * If true, still fetch the page even if it is gone.
      * */
     var ignoreFailure = IGNORE_FAILURE
+        set(value) { field = value; ++version }
     
     /**
      * There are several cases to enable jit retry.
      * For example, in a test environment.
      * */
     var nJitRetry = N_JIT_RETRY
+        set(value) { field = value; ++version }
     
     /**
      * The default browser is chrome with pulsar implemented web driver.
      * */
     var browser = BROWSER
+        set(value) { field = value; ++version }
     
     /**
      * Set to be > 0 if we are doing unit test or other test.
      * We will talk more, log more and trace more in test mode.
      * */
     var test = TEST
+        set(value) { field = value; ++version }
     
     /**
      * Reset all the options to default.
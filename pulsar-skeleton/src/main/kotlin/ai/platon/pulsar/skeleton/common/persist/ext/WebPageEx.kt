@@ -1,6 +1,7 @@
 package ai.platon.pulsar.skeleton.common.persist.ext
 
 import ai.platon.pulsar.common.PulsarParams.VAR_LOAD_OPTIONS
+import ai.platon.pulsar.common.PulsarParams.VAR_STAGE_TRACE
 import ai.platon.pulsar.persist.WebPage
 import ai.platon.pulsar.persist.WebPageExt
 import ai.platon.pulsar.skeleton.common.options.LoadOptions
@@ -8,6 +9,7 @@ import ai.platon.pulsar.skeleton.crawl.BrowseEventHandlers
 import ai.platon.pulsar.skeleton.crawl.CrawlEventHandlers
 import ai.platon.pulsar.skeleton.crawl.LoadEventHandlers
 import ai.platon.pulsar.skeleton.crawl.PageEventHandlers
+import ai.platon.pulsar.skeleton.crawl.fetch.trace.StageTrace
 import java.time.Instant
 
 val WebPage.event: PageEventHandlers?
@@ -46,6 +48,15 @@ val WebPage.options: LoadOptions
         } as LoadOptions
     }
 
+/**
+ * The stage trace of the task loading this page, or null if tracing is disabled
+ * */
+var WebPage.stageTrace: StageTrace?
+    get() = getVar(VAR_STAGE_TRACE) as? StageTrace
+    set(value) {
+        if (value == null) removeVar(VAR_STAGE_TRACE) else setVar(VAR_STAGE_TRACE, value)
+    }
+
 /**
  * Get the page label
  */
@@ -5,6 +5,7 @@ import ai.platon.pulsar.common.config.VolatileConfig
 import ai.platon.pulsar.common.urls.UrlAware
 import ai.platon.pulsar.common.urls.UrlUtils
 import ai.platon.pulsar.skeleton.common.options.LoadOptions
+import ai.platon.pulsar.skeleton.crawl.fetch.trace.StageTrace
 import java.net.MalformedURLException
 import java.net.URL
 
@@ -48,6 +49,11 @@ open class NormURL constructor(
     constructor(spec: String, options: LoadOptions, hrefSpec: String? = null, detail: UrlAware? = null):
             this(URL(spec), options, hrefSpec?.let { URL(hrefSpec) }, detail)
 
+    /**
+     * The stage trace of the task loading this url, or null if tracing is disabled.
+     * */
+    var trace: StageTrace? = null
+
     /**
      * The url specification in string format.
      */
@@ -16,6 +16,7 @@ import ai.platon.pulsar.skeleton.crawl.component.LoadComponent
 import ai.platon.pulsar.skeleton.crawl.component.ParseComponent
 import ai.platon.pulsar.skeleton.crawl.fetch.UrlStat
 import ai.platon.pulsar.skeleton.crawl.parse.html.JsoupParser
+import ai.platon.pulsar.persist.PageContents
 import ai.platon.pulsar.persist.WebDb
 import ai.platon.pulsar.persist.WebPage
 import ai.platon.pulsar.skeleton.common.AppSystemInfo
@@ -71,6 +72,15 @@ class CoreMetrics(
                 "dbPuts" to Gauge { WebDb.dbPutCount },
                 "dbPuts/s" to Gauge { 1.0 * WebDb.dbPutCount.get() / DateTimes.elapsedSeconds() },
                 "dbPutAveMillis" to Gauge { WebDb.dbPutAveMillis },
+                "dbBatchGets" to Gauge { WebDb.dbBatchGetCount },
+                "dbPrefetchHits" to Gauge { WebDb.dbPrefetchHits },
+                "dbFieldRoundTrips" to Gauge { WebDb.dbFieldRoundTrips.entries.joinToString { "${it.key}:${it.value}" } },
+
+                "contentDirectBytes" to Gauge { PageContents.directBytes },
+                "contentCompressedBytes" to Gauge { PageContents.compressedBytes },
+                "contentUncompressedBytes" to Gauge { PageContents.uncompressedBytes },
+                "contentArenaUsedBytes" to Gauge { PageContents.arena.usedBytes },
+                "contentArenaPooledBytes" to Gauge { PageContents.arena.pooledBytes },
             ).forEach { MetricsSystem.reg.register(this, it.key, it.value) }
         }
     }
@@ -2,19 +2,22 @@ package ai.platon.pulsar.skeleton.crawl.common
 
 import ai.platon.pulsar.common.collect.ConcurrentUrlPool
 import ai.platon.pulsar.common.collect.UrlPool
-import ai.platon.pulsar.common.concurrent.ConcurrentExpiringLRUCache
-import ai.platon.pulsar.common.concurrent.ConcurrentExpiringLRUCache.Companion.CACHE_CAPACITY
+import ai.platon.pulsar.common.concurrent.ConcurrentWeightedExpiringCache
 import ai.platon.pulsar.common.config.CapabilityTypes
+import ai.platon.pulsar.common.config.CapabilityTypes.GLOBAL_CACHE_MEMORY_BUDGET
 import ai.platon.pulsar.common.config.CapabilityTypes.GLOBAL_DOCUMENT_CACHE_SIZE
 import ai.platon.pulsar.common.config.CapabilityTypes.GLOBAL_PAGE_CACHE_SIZE
 import ai.platon.pulsar.common.config.ImmutableConfig
 import ai.platon.pulsar.dom.FeaturedDocument
+import ai.platon.pulsar.dom.nodes.node.ext.featureMatrix
 import ai.platon.pulsar.persist.WebPage
+import ai.platon.pulsar.skeleton.common.AppSystemInfo
+import org.jsoup.select.NodeVisitor
 import java.util.concurrent.ConcurrentSkipListSet
 
-typealias PageCatch = ConcurrentExpiringLRUCache<String, WebPage>
+typealias PageCatch = ConcurrentWeightedExpiringCache<String, WebPage>
 
-typealias DocumentCatch = ConcurrentExpiringLRUCache<String, FeaturedDocument>
+typealias DocumentCatch = ConcurrentWeightedExpiringCache<String, FeaturedDocument>
 
 class FetchingCache {
 
@@ -45,16 +48,69 @@ class FetchingCache {
 
 /**
  * The global cache.
+ *
+ * The page cache and the document cache are bounded by the estimated memory usage of the items, they share a global
+ * memory budget, see [GLOBAL_CACHE_MEMORY_BUDGET].
  * */
 open class GlobalCache(val conf: ImmutableConfig) {
+    companion object {
+        /**
+         * The estimated memory usage of a page except the content
+         * */
+        const val PAGE_BASE_WEIGHT = 16 * 1024L
+        /**
+         * The estimated memory usage of a document except the nodes
+         * */
+        const val DOCUMENT_BASE_WEIGHT = 4 * 1024L
+        /**
+         * The estimated memory usage of a DOM node, including the node extension and the features
+         * */
+        const val NODE_WEIGHT = 512L
+        /**
+         * The fraction of the memory budget for the page cache, the rest is for the document cache
+         * */
+        const val PAGE_CACHE_BUDGET_FRACTION = 0.4
+
+        /**
+         * The default memory budget is a quarter of the max heap size.
+         * */
+        val DEFAULT_MEMORY_BUDGET get() = Runtime.getRuntime().maxMemory() / 4
+
+        /**
+         * Estimate the memory usage of a page in bytes.
+         * */
+        fun estimateWeight(page: WebPage): Long {
+            return PAGE_BASE_WEIGHT + maxOf(page.contentLength, page.persistedContentLength, 0)
+        }
+
+        /**
+         * Estimate the memory usage of a document in bytes.
+         * */
+        fun estimateWeight(document: FeaturedDocument): Long {
+            val root = document.unbox()
+            val numNodes = root.featureMatrix?.numRows ?: countNodes(document)
+            return DOCUMENT_BASE_WEIGHT + numNodes * NODE_WEIGHT
+        }
+
+        private fun countNodes(document: FeaturedDocument): Int {
+            var numNodes = 0
+            document.unbox().traverse(NodeVisitor { _, _ -> ++numNodes })
+            return numNodes
+        }
+    }
+
+    /**
+     * The memory budget of the page cache and the document cache in bytes
+     * */
+    private val memoryBudget = conf.getLong(GLOBAL_CACHE_MEMORY_BUDGET, DEFAULT_MEMORY_BUDGET)
     /**
-     * The page cache capacity
+     * The page cache capacity, the max number of pages, not limited by default
      * */
-    private val pageCacheCapacity = conf.getUint(GLOBAL_PAGE_CACHE_SIZE, CACHE_CAPACITY)
+    private val pageCacheCapacity = conf.getUint(GLOBAL_PAGE_CACHE_SIZE, Int.MAX_VALUE)
     /**
-     * The document cache capacity
+     * The document cache capacity, the max number of documents, not limited by default
      * */
-    private val documentCacheCapacity = conf.getUint(GLOBAL_DOCUMENT_CACHE_SIZE, CACHE_CAPACITY)
+    private val documentCacheCapacity = conf.getUint(GLOBAL_DOCUMENT_CACHE_SIZE, Int.MAX_VALUE)
     /**
      * A url pool contains many url caches, the urls added to the pool will be processed in crawl loops.
      * */
@@ -70,11 +126,21 @@ open class GlobalCache(val conf: ImmutableConfig) {
     /**
      * The global page cache, a page will be removed automatically if it's expired or the cache is full.
      * */
-    open val pageCache = PageCatch(capacity = pageCacheCapacity)
+    open val pageCache = PageCatch(
+        maxWeightLimit = (memoryBudget * PAGE_CACHE_BUDGET_FRACTION).toLong(),
+        capacity = pageCacheCapacity,
+        weigher = { estimateWeight(it) },
+        memoryPressure = { AppSystemInfo.isCriticalMemory }
+    )
     /**
      * The global document cache, a document will be removed automatically if it's expired or the cache is full.
      * */
-    open val documentCache = DocumentCatch(capacity = documentCacheCapacity)
+    open val documentCache = DocumentCatch(
+        maxWeightLimit = (memoryBudget * (1 - PAGE_CACHE_BUDGET_FRACTION)).toLong(),
+        capacity = documentCacheCapacity,
+        weigher = { estimateWeight(it) },
+        memoryPressure = { AppSystemInfo.isCriticalMemory }
+    )
 
     /**
      * Reset all caches. After this operation, all caches will be empty.
@@ -7,7 +7,9 @@ import ai.platon.pulsar.common.Strings
 import ai.platon.pulsar.common.config.AppConstants
 import ai.platon.pulsar.common.config.CapabilityTypes.*
 import ai.platon.pulsar.common.config.ImmutableConfig
+import ai.platon.pulsar.common.urls.StatefulUrl
 import ai.platon.pulsar.common.measure.ByteUnitConverter
+import ai.platon.pulsar.common.metrics.record
 import ai.platon.pulsar.dom.nodes.node.ext.cleanText
 import ai.platon.pulsar.persist.ProtocolStatus
 import ai.platon.pulsar.persist.RetryScope
@@ -17,9 +19,11 @@ import ai.platon.pulsar.persist.gora.generated.GWebPage
 import ai.platon.pulsar.persist.model.ActiveDOMStat
 import ai.platon.pulsar.skeleton.common.AppStatusTracker
 import ai.platon.pulsar.skeleton.common.message.PageLoadStatusFormatter
+import ai.platon.pulsar.skeleton.common.metrics.MetricsSystem
 import ai.platon.pulsar.skeleton.common.options.LoadOptions
 import ai.platon.pulsar.skeleton.common.persist.ext.loadEvent
 import ai.platon.pulsar.skeleton.common.persist.ext.loadEventHandlers
+import ai.platon.pulsar.skeleton.common.persist.ext.stageTrace
 import ai.platon.pulsar.skeleton.common.urls.NormURL
 import ai.platon.pulsar.skeleton.crawl.GlobalEventHandlers
 import ai.platon.pulsar.skeleton.crawl.common.FetchEntry
@@ -27,6 +31,10 @@ import ai.platon.pulsar.skeleton.crawl.common.FetchState
 import ai.platon.pulsar.skeleton.crawl.common.GlobalCacheFactory
 import ai.platon.pulsar.skeleton.crawl.common.url.CompletableHyperlink
 import ai.platon.pulsar.skeleton.crawl.common.url.toCompletableListenableHyperlink
+import ai.platon.pulsar.skeleton.crawl.fetch.trace.FlightRecorder
+import ai.platon.pulsar.skeleton.crawl.fetch.trace.StageTrace
+import ai.platon.pulsar.skeleton.crawl.fetch.trace.TaskStage
+import ai.platon.pulsar.skeleton.crawl.fetch.trace.trace
 import ai.platon.pulsar.skeleton.crawl.parse.ParseResult
 import kotlinx.coroutines.*
 import org.slf4j.LoggerFactory
@@ -88,11 +96,19 @@ class LoadComponent(
      * */
     private val deactivateFetchComponent = deactivateFetchComponent1 || deactivateFetchComponent2
 
+    private val isTraceEnabled = immutableConfig.getBoolean(LOAD_TRACE_ENABLED, true)
+    /**
+     * Keeps the stage traces of the recently finished load tasks
+     * */
+    val flightRecorder = FlightRecorder.DEFAULT
+
     val globalCache get() = globalCacheFactory.globalCache
     val pageCache get() = globalCache.pageCache
     val documentCache get() = globalCache.documentCache
 
     private val coreMetrics get() = fetchComponent.coreMetrics
+    private val fetchTimer = MetricsSystem.reg.timer(this, "fetch")
+    private val persistTimer = MetricsSystem.reg.timer(this, "persist")
     private val closed = AtomicBoolean()
 
     private val isActive get() = !closed.get()
@@ -261,26 +277,48 @@ class LoadComponent(
             return listOf()
         }
 
-        val linkFutures = normUrls.asSequence().filter { !it.isNil }.distinctBy { it.spec }
-            .map { it.toCompletableListenableHyperlink() }
-            .toList()
+        val distinctUrls = normUrls.filter { !it.isNil }.distinctBy { it.spec }
+        prefetch(distinctUrls)
+
+        val linkFutures = distinctUrls.map { it.toCompletableListenableHyperlink() }
         globalCache.urlPool.addAll(linkFutures)
         return linkFutures
     }
 
+    /**
+     * Retrieve the pages not in the page cache from the storage in batches, so the page shells of a batch are
+     * created without a round trip per page. The prefetched fields are the same as [createPageShell] requires.
+     * */
+    private fun prefetch(normUrls: List<NormURL>) {
+        val urls = normUrls.filter { getCachedPageOrNull(it) == null }.map { it.spec }
+        if (urls.size < 2) {
+            return
+        }
+
+        val fields = if (loadStrategy == "PARTIAL_LAZY") PAGE_FIELDS.map { it.toString() }.toTypedArray() else null
+        runCatching { webDb.prefetch(urls, fields = fields) }
+            .onFailure { logger.warn("Failed to prefetch {} pages | {}", urls.size, it.message) }
+    }
+
     /**
      * Load a webpage from local storage, or if it doesn't exist in local storage,
      * fetch it from the Internet, unless the fetch component is disabled.
      * */
     @Throws(Exception::class)
     private fun load0(normURL: NormURL): WebPage {
+        val trace = startTrace(normURL)
         val page = createPageShell(normURL)
 
         if (deactivateFetchComponent && shouldFetch(page)) {
             return WebPage.NIL
         }
 
-        return load1(normURL, page)
+        page.stageTrace = trace
+        try {
+            return load1(normURL, page)
+        } finally {
+            finishTrace(page, trace)
+        }
     }
 
     @Throws(Exception::class)
@@ -296,13 +334,44 @@ class LoadComponent(
 
     @Throws(Exception::class)
     private suspend fun loadDeferred0(normURL: NormURL): WebPage {
+        val trace = startTrace(normURL)
         val page = createPageShell(normURL)
 
         if (deactivateFetchComponent && shouldFetch(page)) {
             return WebPage.NIL
         }
 
-        return loadDeferred1(normURL, page)
+        page.stageTrace = trace
+        try {
+            return loadDeferred1(normURL, page)
+        } finally {
+            finishTrace(page, trace)
+        }
+    }
+
+    /**
+     * Start a stage trace for the task, the time the url waited in the url pool is the first stage.
+     * */
+    private fun startTrace(normURL: NormURL): StageTrace? {
+        if (!isTraceEnabled) {
+            return null
+        }
+
+        val trace = StageTrace(normURL.spec)
+        val detail = normURL.detail
+        if (detail is StatefulUrl) {
+            val waitNanos = Duration.between(detail.createdAt, Instant.now()).toNanos().coerceAtLeast(0)
+            trace.add(TaskStage.URL_POOL, -waitNanos, waitNanos)
+        }
+        normURL.trace = trace
+        return trace
+    }
+
+    private fun finishTrace(page: WebPage, trace: StageTrace?) {
+        if (trace != null) {
+            page.stageTrace = null
+            flightRecorder.record(trace)
+        }
     }
 
     @Throws(Exception::class)
@@ -484,7 +553,9 @@ class LoadComponent(
 
     private fun parse(page: WebPage, options: LoadOptions): ParseResult? {
         val parser = parseComponent.takeIf { options.parse } ?: return null
-        val parseResult = parser.parse(page, options.reparseLinks, options.noFilter)
+        val parseResult = page.stageTrace.trace(TaskStage.PARSE) {
+            parser.parse(page, options.reparseLinks, options.noFilter)
+        }
         tracer?.trace("ParseResult: {} ParseReport: {}", parseResult, parser.getTraceInfo())
 
         return parseResult
@@ -499,7 +570,8 @@ class LoadComponent(
     private fun processPageContent(page: WebPage, normURL: NormURL) {
         val options = normURL.options
 
-        if (page.protocolStatus.isSuccess && page.content == null) {
+        // hasContent() loads the content by the lazy field loader if there is one
+        if (page.protocolStatus.isSuccess && !page.hasContent() && !page.hasLazyFieldLoader()) {
             shouldBe(false, page.isFetched) { "Page should not be fetched | ${page.configuredUrl}" }
             // load the content of the page
             val contentPage = webDb.getOrNull(page.url, GWebPage.Field.CONTENT)
@@ -571,7 +643,7 @@ class LoadComponent(
 //            require(normURL.options.eventHandler != null)
 //            require(page.conf.getBeanOrNull(PulsarEventHandler::class) != null)
 
-            fetchComponent.fetchContent(page)
+            fetchTimer.record { fetchComponent.fetchContent(page) }
         } finally {
             afterFetch(page, normURL.options)
         }
@@ -581,7 +653,7 @@ class LoadComponent(
     private suspend fun fetchContentDeferred(page: WebPage, normURL: NormURL) {
         try {
             beforeFetch(page, normURL.options)
-            fetchComponent.fetchContentDeferred(page)
+            fetchTimer.record { fetchComponent.fetchContentDeferred(page) }
         } finally {
             afterFetch(page, normURL.options)
         }
@@ -688,7 +760,9 @@ class LoadComponent(
             assert(!page.unbox().isContentDirty)
         }
 
-        webDb.put(page)
+        page.stageTrace.trace(TaskStage.PERSIST) {
+            persistTimer.record { webDb.put(page) }
+        }
         ++numWrite
 
         collectPersistMetrics(page)
@@ -704,7 +778,7 @@ class LoadComponent(
         val metrics = coreMetrics
         if (metrics != null) {
             metrics.persists.mark()
-            val bytes = page.content?.array()?.size ?: 0
+            val bytes = page.persistedContentLength.toInt()
             if (bytes > 0) {
                 metrics.contentPersists.mark()
                 metrics.persistContentMBytes.inc(ByteUnitConverter.convert(bytes, "M").toLong())
@@ -729,12 +803,21 @@ class LoadComponent(
         }
     }
 
+    /**
+     * Load the lazy fields of a page on demand.
+     *
+     * The first miss of any field in [fields] retrieves all of them in one round trip, so concurrent
+     * and subsequent misses are served by the same fetched page.
+     * */
     class LazyFieldLoader(
         val url: String,
-        val db: WebDb
+        val db: WebDb,
+        val fields: Set<String> = LAZY_PAGE_FIELDS.mapTo(HashSet()) { it.toString() },
     ): java.util.function.Function<String, GWebPage?> {
+        private val lazyPage by lazy { db.get0(url, false, fields.toTypedArray()) }
+
         override fun apply(field: String): GWebPage? {
-            return db.get0(url, false, arrayOf(field))
+            return if (field in fields) lazyPage else db.get0(url, false, arrayOf(field))
         }
     }
 }
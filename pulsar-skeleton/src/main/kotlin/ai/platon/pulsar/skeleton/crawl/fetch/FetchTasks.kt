@@ -10,6 +10,7 @@ import ai.platon.pulsar.common.urls.UrlUtils
 import ai.platon.pulsar.persist.RetryScope
 import ai.platon.pulsar.persist.WebPage
 import ai.platon.pulsar.skeleton.common.options.LoadOptions
+import ai.platon.pulsar.skeleton.common.persist.ext.stageTrace
 import ai.platon.pulsar.skeleton.crawl.common.FetchEntry
 import ai.platon.pulsar.skeleton.crawl.common.URLUtil
 import ai.platon.pulsar.skeleton.crawl.protocol.ForwardingResponse
@@ -85,6 +86,10 @@ class FetchTask constructor(
     val domain get() = URLUtil.getDomainName(url)
     val isCanceled get() = state.get() == State.CANCELED
     val isWorking get() = state.get() == State.WORKING
+    /**
+     * The stage trace of the load task, or null if tracing is disabled
+     * */
+    val trace get() = page.stageTrace
     
     // A task is ready when it about to enter a privacy context
     fun markReady() = state.set(State.READY)
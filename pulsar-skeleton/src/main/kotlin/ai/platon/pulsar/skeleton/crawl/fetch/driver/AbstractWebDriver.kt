@@ -8,6 +8,7 @@ import ai.platon.pulsar.dom.nodes.GeoAnchor
 import com.fasterxml.jackson.module.kotlin.jacksonObjectMapper
 import com.fasterxml.jackson.module.kotlin.readValue
 import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.delay
 import kotlinx.coroutines.runBlocking
 import kotlinx.coroutines.withContext
 import org.jsoup.Connection
@@ -423,6 +424,32 @@ abstract class AbstractWebDriver(
         return NetworkResourceHelper.fromJsoup(loadJsoupResource(url))
     }
 
+    /**
+     * Load the url as a resource with the shared non-blocking [HttpResourceLoader] rather than browser rendering,
+     * with the last page's context, which means, the same proxy, headers and cookies.
+     *
+     * @param url The URL to load.
+     * @return The network resource response.
+     * */
+    @Throws(IOException::class)
+    open suspend fun loadHttpResource(url: String): NetworkResourceResponse {
+        return HttpResourceLoader.DEFAULT.load(url, this)
+    }
+
+    /**
+     * Suspend until a signal shows that the document might be settled, for example, the load event is fired,
+     * the network becomes idle or the DOM stops mutating, or until the timeout elapses.
+     *
+     * A driver without signal sources just waits for the timeout.
+     *
+     * @param timeout The maximum time to wait.
+     * @return true if a signal arrived before the timeout.
+     * */
+    open suspend fun waitForSettleSignal(timeout: Duration): Boolean {
+        delay(timeout.toMillis())
+        return false
+    }
+
     override fun equals(other: Any?): Boolean = this === other || (other is AbstractWebDriver && other.id == this.id)
 
     override fun hashCode(): Int = id
@@ -0,0 +1,248 @@
+package ai.platon.pulsar.skeleton.crawl.fetch.driver
+
+import ai.platon.pulsar.browser.driver.chrome.NetworkResourceResponse
+import ai.platon.pulsar.common.http.HttpClientFactory
+import ai.platon.pulsar.common.proxy.ProxyEntry
+import ai.platon.pulsar.common.urls.UrlUtils
+import kotlinx.coroutines.future.await
+import java.io.ByteArrayInputStream
+import java.io.InputStream
+import java.net.*
+import java.net.http.HttpClient
+import java.net.http.HttpRequest
+import java.net.http.HttpResponse
+import java.nio.ByteBuffer
+import java.nio.charset.Charset
+import java.nio.charset.StandardCharsets
+import java.time.Duration
+import java.util.concurrent.ArrayBlockingQueue
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CompletionStage
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Flow
+
+/**
+ * Load resources without browser rendering, with non-blocking HTTP/1.1 and HTTP/2 clients.
+ *
+ * The clients, and therefore the connection pools, are shared by all drivers of the same proxy and privacy context,
+ * every client keeps its own cookie store which is seeded with the cookies of the driver. The response bodies are
+ * streamed into pooled buffers and decompressed transparently.
+ * */
+class HttpResourceLoader(
+    val httpTimeout: Duration = Duration.ofSeconds(20),
+    /**
+     * The max number of the clients, the oldest clients are dropped if exceeded
+     * */
+    val maxClients: Int = 200,
+) {
+    companion object {
+        val DEFAULT = HttpResourceLoader()
+
+        /**
+         * The headers the HTTP client does not allow to set
+         * */
+        private val RESTRICTED_HEADERS = setOf(
+            "connection", "content-length", "expect", "host", "upgrade", "keep-alive", "te", "trailer",
+            "transfer-encoding", "http2-settings", "accept-encoding", "cookie"
+        )
+
+        private const val CHUNK_SIZE = 64 * 1024
+        private val bufferPool = ArrayBlockingQueue<ByteArray>(256)
+    }
+
+    private data class ClientKey(val proxy: String?, val contextDir: String)
+
+    private class PooledClient(val client: HttpClient, val cookieManager: CookieManager)
+
+    private val clients = ConcurrentHashMap<ClientKey, PooledClient>()
+
+    val numClients get() = clients.size
+
+    /**
+     * Load the url with the context of the driver: the same proxy, headers and cookies.
+     * */
+    suspend fun load(url: String, driver: AbstractWebDriver): NetworkResourceResponse {
+        val headers = driver.mainRequestHeaders.entries.associate { it.key to it.value.toString() }
+        val browserId = driver.browser.id
+        val proxy = browserId.fingerprint.proxyEntry
+        return load(url, browserId.contextDir.toString(), proxy, headers, driver.mainRequestCookies, driver.browser.userAgent)
+    }
+
+    /**
+     * Load the url with the given context.
+     *
+     * @param url The url to load
+     * @param contextDir The privacy context the request belongs to
+     * @param proxy The proxy to use, or the system proxy is used if it's null
+     * @param headers The request headers
+     * @param cookies The cookies, the same format as [WebDriver.getCookies]
+     * @param userAgent The user agent
+     * */
+    suspend fun load(
+        url: String,
+        contextDir: String,
+        proxy: ProxyEntry? = null,
+        headers: Map<String, String> = mapOf(),
+        cookies: List<Map<String, String>> = listOf(),
+        userAgent: String? = null,
+    ): NetworkResourceResponse {
+        val uri = URI.create(url)
+        val pooledClient = computeClient(contextDir, proxy)
+        syncCookies(pooledClient.cookieManager, uri, cookies)
+
+        val builder = HttpRequest.newBuilder(uri).timeout(httpTimeout).GET()
+        if (uri.scheme == "http") {
+            // browsers never upgrade cleartext connections to HTTP/2, and the upgrade attempts defeat connection reuse
+            builder.version(HttpClient.Version.HTTP_1_1)
+        }
+        headers.forEach { (name, value) ->
+            if (name.lowercase() !in RESTRICTED_HEADERS && !name.startsWith(":")) {
+                builder.setHeader(name, value)
+            }
+        }
+        if (userAgent != null) {
+            builder.setHeader("User-Agent", userAgent)
+        }
+        builder.setHeader("Accept-Encoding", HttpClientFactory.ACCEPT_ENCODING)
+
+        val response = pooledClient.client.sendAsync(builder.build()) { PooledBodySubscriber() }.await()
+        val body = response.body()
+        val responseHeaders = response.headers().map().mapValues { it.value.joinToString(", ") }.toMutableMap<String, Any>()
+        // All pulsar added headers have a prefix Q-
+        responseHeaders["Q-client"] = "HttpClient"
+        responseHeaders["Q-http-version"] = response.version().name
+
+        val stream = body.use { decode(it, response.headers()) }
+        val statusCode = response.statusCode()
+        return NetworkResourceResponse(statusCode == 200, 0, "", statusCode, stream, responseHeaders)
+    }
+
+    /**
+     * Drop the client of the privacy context, the connections are closed when the client is garbage collected.
+     * */
+    fun evict(contextDir: String) {
+        clients.keys.removeIf { it.contextDir == contextDir }
+    }
+
+    fun clear() {
+        clients.clear()
+    }
+
+    private fun computeClient(contextDir: String, proxy: ProxyEntry?): PooledClient {
+        // Since the browser uses the system proxy (by default),
+        // so the http connection should also use the system proxy
+        val proxyHostPort = proxy?.hostPort ?: System.getenv("http_proxy")
+            ?.takeIf { UrlUtils.isStandard(it) }?.let { UrlUtils.getURLOrNull(it) }?.let { "${it.host}:${it.port}" }
+        val key = ClientKey(proxyHostPort, contextDir)
+        clients[key]?.let { return it }
+
+        if (clients.size >= maxClients) {
+            clients.keys.firstOrNull()?.let { clients.remove(it) }
+        }
+        return clients.computeIfAbsent(key) { createClient(proxyHostPort, proxy) }
+    }
+
+    private fun createClient(proxyHostPort: String?, proxy: ProxyEntry?): PooledClient {
+        val cookieManager = CookieManager(null, CookiePolicy.ACCEPT_ALL)
+        val client = HttpClientFactory.newBuilder(httpTimeout, proxyHostPort, proxy)
+            .cookieHandler(cookieManager)
+            .build()
+        return PooledClient(client, cookieManager)
+    }
+
+    private fun syncCookies(cookieManager: CookieManager, uri: URI, cookies: List<Map<String, String>>) {
+        val store = cookieManager.cookieStore
+        cookies.forEach { cookie ->
+            val name = cookie["name"] ?: return@forEach
+            val httpCookie = HttpCookie(name, cookie["value"] ?: "")
+            httpCookie.domain = cookie["domain"] ?: uri.host
+            httpCookie.path = cookie["path"] ?: "/"
+            httpCookie.secure = cookie["secure"].toBoolean()
+            httpCookie.isHttpOnly = cookie["httpOnly"].toBoolean()
+            httpCookie.version = 0
+            store.add(uri, httpCookie)
+        }
+    }
+
+    private fun decode(body: PooledBody, headers: java.net.http.HttpHeaders): String {
+        val encoding = headers.firstValue("Content-Encoding").orElse("")
+        val charset = headers.firstValue("Content-Type").map { charsetOf(it) }.orElse(StandardCharsets.UTF_8)
+        if (!HttpClientFactory.isCompressed(encoding)) {
+            return body.toString(charset)
+        }
+
+        return HttpClientFactory.decompress(body.inputStream(), encoding).use { String(it.readAllBytes(), charset) }
+    }
+
+    private fun charsetOf(contentType: String): Charset {
+        val name = contentType.substringAfter("charset=", "").substringBefore(";").trim().trim('"')
+        return if (name.isEmpty()) StandardCharsets.UTF_8 else kotlin.runCatching { Charset.forName(name) }
+            .getOrDefault(StandardCharsets.UTF_8)
+    }
+
+    /**
+     * A response body held in chunks borrowed from the buffer pool, the chunks are returned after it's closed.
+     * */
+    private class PooledBody : AutoCloseable {
+        val chunks = ArrayList<ByteArray>(4)
+        var size = 0
+            private set
+
+        fun write(buffer: ByteBuffer) {
+            while (buffer.hasRemaining()) {
+                val offset = size % CHUNK_SIZE
+                if (offset == 0 && size / CHUNK_SIZE == chunks.size) {
+                    chunks.add(bufferPool.poll() ?: ByteArray(CHUNK_SIZE))
+                }
+                val n = minOf(buffer.remaining(), CHUNK_SIZE - offset)
+                buffer.get(chunks[size / CHUNK_SIZE], offset, n)
+                size += n
+            }
+        }
+
+        fun toByteArray(): ByteArray {
+            val bytes = ByteArray(size)
+            chunks.forEachIndexed { i, chunk ->
+                val from = i * CHUNK_SIZE
+                System.arraycopy(chunk, 0, bytes, from, minOf(CHUNK_SIZE, size - from))
+            }
+            return bytes
+        }
+
+        fun toString(charset: Charset): String {
+            return if (chunks.size == 1) String(chunks[0], 0, size, charset) else String(toByteArray(), charset)
+        }
+
+        fun inputStream(): InputStream {
+            return if (chunks.size == 1) ByteArrayInputStream(chunks[0], 0, size) else ByteArrayInputStream(toByteArray())
+        }
+
+        override fun close() {
+            chunks.forEach { bufferPool.offer(it) }
+            chunks.clear()
+        }
+    }
+
+    /**
+     * Copy the body into pooled chunks as the data arrives, so no thread is blocked waiting for the body.
+     * */
+    private class PooledBodySubscriber : HttpResponse.BodySubscriber<PooledBody> {
+        private val body = PooledBody()
+        private val result = CompletableFuture<PooledBody>()
+
+        override fun getBody(): CompletionStage<PooledBody> = result
+
+        override fun onSubscribe(subscription: Flow.Subscription) = subscription.request(Long.MAX_VALUE)
+
+        override fun onNext(item: List<ByteBuffer>) = item.forEach { body.write(it) }
+
+        override fun onError(throwable: Throwable) {
+            body.close()
+            result.completeExceptionally(throwable)
+        }
+
+        override fun onComplete() {
+            result.complete(body)
+        }
+    }
+}
@@ -86,9 +86,10 @@ abstract class AbstractPrivacyContext(
     override val elapsedTime get() = Duration.between(startTime, Instant.now())
 
     private val fetchTaskTimeout
-        get() = conf.getDuration(CapabilityTypes.FETCH_TASK_TIMEOUT, AppConstants.FETCH_TASK_TIMEOUT_DEFAULT)
+        get() = conf.snapshot().getDuration(CapabilityTypes.FETCH_TASK_TIMEOUT, AppConstants.FETCH_TASK_TIMEOUT_DEFAULT)
     private val privacyContextIdleTimeout
-        get() = conf.getDuration(CapabilityTypes.PRIVACY_CONTEXT_IDLE_TIMEOUT, PRIVACY_CONTEXT_IDLE_TIMEOUT_DEFAULT)
+        get() = conf.snapshot()
+            .getDuration(CapabilityTypes.PRIVACY_CONTEXT_IDLE_TIMEOUT, PRIVACY_CONTEXT_IDLE_TIMEOUT_DEFAULT)
     private val idleTimeout: Duration get() = privacyContextIdleTimeout.coerceAtLeast(fetchTaskTimeout)
     /**
      * The privacy context is retired, and should be closed soon.
@@ -53,7 +53,7 @@ abstract class AbstractPrivacyManager(
 
     val contextLifeCycleMonitor = Any()
 
-    private val closeStrategy get() = conf.get(PRIVACY_CONTEXT_CLOSE_LAZY, CloseStrategy.ASAP.name)
+    private val closeStrategy get() = conf.snapshot()[PRIVACY_CONTEXT_CLOSE_LAZY, CloseStrategy.ASAP.name]
 
     private val cleaningService = Executors.newSingleThreadScheduledExecutor()
 
@@ -0,0 +1,126 @@
+package ai.platon.pulsar.skeleton.crawl.fetch.trace
+
+import ai.platon.pulsar.common.serialize.json.pulsarObjectMapper
+import jdk.jfr.*
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicReferenceArray
+
+/**
+ * A flight recorder keeping the most recent finished [StageTrace]s in a lock-free ring buffer.
+ *
+ * A writer claims a slot by incrementing a cursor and overwrites the oldest trace, so writers never block each other.
+ * The traces can be exported as JSON, and every trace is also committed as a JFR event if a JFR recording is running.
+ * */
+class FlightRecorder(capacity: Int = DEFAULT_CAPACITY) {
+    companion object {
+        const val DEFAULT_CAPACITY = 4096
+
+        val DEFAULT = FlightRecorder()
+    }
+
+    private val size = Integer.highestOneBit((capacity.coerceIn(2, 1 shl 20) - 1) shl 1)
+    private val slots = AtomicReferenceArray<StageTrace?>(size)
+    private val cursor = AtomicLong()
+
+    /**
+     * The total number of traces ever recorded
+     * */
+    val recorded get() = cursor.get()
+
+    /**
+     * Finish the trace and record it.
+     * */
+    fun record(trace: StageTrace) {
+        trace.finish()
+        val index = (cursor.getAndIncrement() and (size - 1).toLong()).toInt()
+        slots.lazySet(index, trace)
+        StageTraceEvent.commit(trace)
+    }
+
+    /**
+     * The traces in the buffer, ordered by start time.
+     * */
+    fun snapshot(): List<StageTrace> {
+        return (0 until size).mapNotNull { slots.get(it) }.sortedBy { it.startNanos }
+    }
+
+    fun clear() {
+        for (i in 0 until size) {
+            slots.set(i, null)
+        }
+    }
+
+    fun toJson(traces: List<StageTrace> = snapshot()): String {
+        val records = traces.map { trace ->
+            val stages = StageTrace.STAGES.filter { trace.count(it) > 0 }.associate {
+                it.name to mapOf(
+                    "offsetNanos" to trace.offsetNanos(it),
+                    "durationNanos" to trace.durationNanos(it),
+                    "count" to trace.count(it)
+                )
+            }
+            mapOf("url" to trace.url, "startTime" to trace.startTime, "elapsedNanos" to trace.elapsedNanos, "stages" to stages)
+        }
+
+        return pulsarObjectMapper().writeValueAsString(records)
+    }
+
+    fun exportJson(path: Path): Path {
+        Files.createDirectories(path.toAbsolutePath().parent)
+        return Files.writeString(path, toJson())
+    }
+}
+
+/**
+ * A JFR event for a finished [StageTrace], one event per trace with a field for every stage.
+ * */
+@Name("ai.platon.pulsar.StageTrace")
+@Label("Stage Trace")
+@Category("Pulsar")
+@Description("The stage timeline of a load task")
+@StackTrace(false)
+class StageTraceEvent : Event() {
+    @JvmField @Label("URL")
+    var url: String? = null
+    @JvmField @Label("Total") @Timespan
+    var total = 0L
+    @JvmField @Label("URL Pool") @Timespan
+    var urlPool = 0L
+    @JvmField @Label("Privacy Context") @Timespan
+    var privacyContext = 0L
+    @JvmField @Label("Driver Poll") @Timespan
+    var driverPoll = 0L
+    @JvmField @Label("Navigate") @Timespan
+    var navigate = 0L
+    @JvmField @Label("Ready Check") @Timespan
+    var readyCheck = 0L
+    @JvmField @Label("Ready Check Rounds")
+    var readyCheckRounds = 0
+    @JvmField @Label("Parse") @Timespan
+    var parse = 0L
+    @JvmField @Label("Persist") @Timespan
+    var persist = 0L
+
+    companion object {
+        fun commit(trace: StageTrace) {
+            val event = StageTraceEvent()
+            if (!event.isEnabled) {
+                return
+            }
+
+            event.url = trace.url
+            event.total = trace.elapsedNanos
+            event.urlPool = trace.durationNanos(TaskStage.URL_POOL)
+            event.privacyContext = trace.durationNanos(TaskStage.PRIVACY_CONTEXT)
+            event.driverPoll = trace.durationNanos(TaskStage.DRIVER_POLL)
+            event.navigate = trace.durationNanos(TaskStage.NAVIGATE)
+            event.readyCheck = trace.durationNanos(TaskStage.READY_CHECK)
+            event.readyCheckRounds = trace.count(TaskStage.READY_CHECK)
+            event.parse = trace.durationNanos(TaskStage.PARSE)
+            event.persist = trace.durationNanos(TaskStage.PERSIST)
+            event.commit()
+        }
+    }
+}
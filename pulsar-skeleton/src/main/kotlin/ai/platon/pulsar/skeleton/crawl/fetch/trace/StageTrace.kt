@@ -0,0 +1,155 @@
+package ai.platon.pulsar.skeleton.crawl.fetch.trace
+
+/**
+ * The stages of a load task.
+ * */
+enum class TaskStage {
+    /**
+     * Waiting in the url pool before the task is loaded
+     * */
+    URL_POOL,
+    /**
+     * Computing a ready privacy context
+     * */
+    PRIVACY_CONTEXT,
+    /**
+     * Polling a web driver from the driver pool
+     * */
+    DRIVER_POLL,
+    /**
+     * Navigating to the page
+     * */
+    NAVIGATE,
+    /**
+     * A round of checking if the document is actually ready
+     * */
+    READY_CHECK,
+    /**
+     * Parsing the page
+     * */
+    PARSE,
+    /**
+     * Writing the page to the storage
+     * */
+    PERSIST,
+}
+
+/**
+ * The timeline of a load task.
+ *
+ * The stages are timestamped with the monotonic clock into arrays preallocated by stage, so tracing allocates
+ * nothing once the trace is created. A stage can be entered several times, the durations add up and the
+ * offset is the first time it's entered.
+ *
+ * The stages of a task run one after another, so the trace is not synchronized.
+ * */
+class StageTrace(
+    /**
+     * The url of the task
+     * */
+    val url: String
+) {
+    companion object {
+        val STAGES = TaskStage.values()
+    }
+
+    /**
+     * The wall clock time when the trace starts, in epoch milliseconds
+     * */
+    val startTime = System.currentTimeMillis()
+    /**
+     * The monotonic clock time when the trace starts
+     * */
+    val startNanos = System.nanoTime()
+    /**
+     * The monotonic clock time when the trace is finished, or 0 if it's not finished
+     * */
+    @Volatile
+    var endNanos = 0L
+        private set
+
+    private val offsets = LongArray(STAGES.size) { Long.MIN_VALUE }
+    private val durations = LongArray(STAGES.size)
+    private val counts = IntArray(STAGES.size)
+
+    val isFinished get() = endNanos != 0L
+
+    val elapsedNanos get() = (if (isFinished) endNanos else System.nanoTime()) - startNanos
+
+    /**
+     * Enter a stage, returns the monotonic clock time to pass to [end].
+     * */
+    fun begin(stage: TaskStage): Long {
+        val now = System.nanoTime()
+        val i = stage.ordinal
+        if (offsets[i] == Long.MIN_VALUE) {
+            offsets[i] = now - startNanos
+        }
+        return now
+    }
+
+    /**
+     * Exit a stage entered at [beginNanos].
+     * */
+    fun end(stage: TaskStage, beginNanos: Long) {
+        val i = stage.ordinal
+        durations[i] += System.nanoTime() - beginNanos
+        ++counts[i]
+    }
+
+    /**
+     * Add a stage measured elsewhere, the offset is relative to the start of the trace and can be negative
+     * if the stage happens before the trace starts.
+     * */
+    fun add(stage: TaskStage, offsetNanos: Long, durationNanos: Long) {
+        val i = stage.ordinal
+        if (offsets[i] == Long.MIN_VALUE) {
+            offsets[i] = offsetNanos
+        }
+        durations[i] += durationNanos
+        ++counts[i]
+    }
+
+    fun finish() {
+        if (endNanos == 0L) {
+            endNanos = System.nanoTime()
+        }
+    }
+
+    /**
+     * The nanoseconds from the start of the trace to the first time the stage is entered
+     * */
+    fun offsetNanos(stage: TaskStage) = offsets[stage.ordinal].takeIf { it != Long.MIN_VALUE } ?: 0L
+
+    /**
+     * The total nanoseconds spent in the stage
+     * */
+    fun durationNanos(stage: TaskStage) = durations[stage.ordinal]
+
+    /**
+     * The number of times the stage is entered
+     * */
+    fun count(stage: TaskStage) = counts[stage.ordinal]
+
+    override fun toString(): String {
+        val stages = STAGES.filter { count(it) > 0 }
+            .joinToString { "$it: ${durationNanos(it) / 1_000_000}ms x${count(it)}" }
+        return "${elapsedNanos / 1_000_000}ms [$stages] | $url"
+    }
+}
+
+/**
+ * Trace the block as a stage, the block runs untraced if there is no trace.
+ * */
+inline fun <T> StageTrace?.trace(stage: TaskStage, block: () -> T): T {
+    if (this == null) {
+        return block()
+    }
+
+    val beginNanos = begin(stage)
+    try {
+        return block()
+    } finally {
+        end(stage, beginNanos)
+    }
+}
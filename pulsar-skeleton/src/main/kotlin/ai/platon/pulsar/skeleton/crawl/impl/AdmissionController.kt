@@ -0,0 +1,97 @@
+package ai.platon.pulsar.skeleton.crawl.impl
+
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.first
+import kotlinx.coroutines.flow.update
+import kotlinx.coroutines.withTimeoutOrNull
+import java.time.Duration
+
+/**
+ * A permit based admission controller for the crawl loop.
+ *
+ * A task acquires a permit before it is launched and releases it when it finishes. A waiting loop is resumed
+ * the moment a permit is released, there is no sleep-polling.
+ *
+ * The limit is re-evaluated every [recheckInterval] while waiting, so a concurrency change in the config
+ * takes effect without restarting the crawler.
+ *
+ * One controller can be shared by several crawlers, every crawler acquires with its own limit against
+ * the permits taken by all of them.
+ * */
+class AdmissionController(
+    /**
+     * The default max number of permits, evaluated on each acquisition.
+     * */
+    private val limit: () -> Int = { Int.MAX_VALUE },
+    /**
+     * The interval to re-evaluate the limit while waiting.
+     * */
+    private val recheckInterval: Duration = Duration.ofSeconds(1),
+) {
+    private val running = MutableStateFlow(0)
+
+    /**
+     * The number of permits acquired but not yet released.
+     * */
+    val numRunning get() = running.value
+
+    /**
+     * Try to acquire a permit without suspending.
+     *
+     * @return true if a permit is acquired
+     * */
+    fun tryAcquire(): Boolean = tryAcquire(limit())
+
+    /**
+     * Try to acquire a permit without suspending if less than [limit] permits are taken.
+     *
+     * @return true if a permit is acquired
+     * */
+    fun tryAcquire(limit: Int): Boolean {
+        while (true) {
+            val n = running.value
+            if (n >= limit) {
+                return false
+            }
+            if (running.compareAndSet(n, n + 1)) {
+                return true
+            }
+        }
+    }
+
+    /**
+     * Acquire a permit, suspend until a permit is released if all permits are taken.
+     *
+     * @param isActive the acquisition is given up if isActive returns false
+     * @param limit the max number of permits, the default limit of the controller is used if not specified
+     * @param onRecheck called every time the limit is re-evaluated during the waiting
+     * @return true if a permit is acquired, false if the waiting is given up
+     * */
+    suspend fun acquire(
+        isActive: () -> Boolean = { true },
+        limit: () -> Int = this.limit,
+        onRecheck: (Int) -> Unit = {},
+    ): Boolean {
+        var round = 0
+        while (isActive()) {
+            if (tryAcquire(limit())) {
+                return true
+            }
+
+            // resumed immediately when a running task releases its permit
+            withTimeoutOrNull(recheckInterval.toMillis()) {
+                running.first { it < limit() }
+            }
+            onRecheck(++round)
+        }
+
+        return false
+    }
+
+    /**
+     * Release a permit.
+     * */
+    fun release() {
+        running.update { (it - 1).coerceAtLeast(0) }
+    }
+}
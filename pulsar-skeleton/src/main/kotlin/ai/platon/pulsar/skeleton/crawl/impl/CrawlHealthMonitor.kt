@@ -0,0 +1,138 @@
+package ai.platon.pulsar.skeleton.crawl.impl
+
+import ai.platon.pulsar.common.FileCommand
+import ai.platon.pulsar.common.Runtimes
+import ai.platon.pulsar.common.concurrent.GracefulScheduledExecutor
+import ai.platon.pulsar.common.getLogger
+import ai.platon.pulsar.common.measure.ByteUnit
+import ai.platon.pulsar.common.warnInterruptible
+import ai.platon.pulsar.skeleton.common.AppSystemInfo
+import ai.platon.pulsar.skeleton.crawl.fetch.privacy.AbstractPrivacyContext
+import com.google.common.util.concurrent.ThreadFactoryBuilder
+import java.time.Duration
+import java.time.Instant
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+/**
+ * An immutable snapshot of the health state of the crawl system.
+ * */
+data class CrawlHealthSnapshot(
+    /**
+     * The time the snapshot is taken.
+     * */
+    val timestamp: Instant = Instant.now(),
+    /**
+     * The unallocated spaces of all the large disks, in GB.
+     * */
+    val freeDiskSpacesGB: List<Double> = listOf(),
+    /**
+     * Check whether CPU usage reaches critical status.
+     * */
+    val isCriticalCPULoad: Boolean = false,
+    /**
+     * Check whether memory usage reaches critical status.
+     * */
+    val isCriticalMemory: Boolean = false,
+    /**
+     * The fifteen-minute rate of privacy context leaks, in leaks/second.
+     * */
+    val contextLeaksRate: Double = 0.0,
+    /**
+     * Check whether the proxy vendor is out of service.
+     * */
+    val isProxyOutOfService: Boolean = false,
+    /**
+     * Check whether the Web DB is lost.
+     * */
+    val isWebDbLost: Boolean = false,
+    /**
+     * Check whether a finish-job command is received.
+     * */
+    val isFinishJobRequested: Boolean = false,
+) {
+    /**
+     * The largest disk must have at least 10 GiB remaining space.
+     * */
+    val isOutOfDisk get() = (freeDiskSpacesGB.maxOrNull() ?: 0.0) < 10.0
+}
+
+/**
+ * Samples the health state of the crawl system in the background, and publishes an immutable [CrawlHealthSnapshot].
+ *
+ * The probes involve system calls and file I/O, so they should never be performed on the hot path of
+ * the crawl loop. The crawl loop reads the latest snapshot by a single volatile read.
+ * */
+class CrawlHealthMonitor(
+    /**
+     * The sample period.
+     * */
+    val period: Duration = Duration.ofSeconds(1),
+    /**
+     * Check whether the proxy vendor is out of service.
+     * */
+    private val proxyProbe: () -> Boolean = { false },
+    /**
+     * Check whether the Web DB is lost.
+     * */
+    private val webDbProbe: () -> Boolean = { false },
+) : GracefulScheduledExecutor(period, period, createDaemonExecutor()) {
+    private val logger = getLogger(this)
+
+    /**
+     * A finish-job command is consumed once it's checked, so keep it once it's received.
+     * */
+    @Volatile
+    private var finishJobRequested = false
+
+    /**
+     * The latest health snapshot.
+     * */
+    @Volatile
+    var snapshot = CrawlHealthSnapshot()
+        private set
+
+    /**
+     * Take a sample immediately and start sampling periodically.
+     * */
+    fun startSampling() {
+        sample()
+        start(period.toMillis(), period.toMillis(), TimeUnit.MILLISECONDS)
+    }
+
+    override fun run() {
+        kotlin.runCatching { sample() }.onFailure { warnInterruptible(this, it) }
+    }
+
+    /**
+     * Probe the system and publish a new snapshot.
+     * */
+    @Synchronized
+    fun sample(): CrawlHealthSnapshot {
+        if (!finishJobRequested && FileCommand.check("finish-job")) {
+            finishJobRequested = true
+        }
+
+        val snapshot = CrawlHealthSnapshot(
+            timestamp = Instant.now(),
+            freeDiskSpacesGB = Runtimes.unallocatedDiskSpaces().map { ByteUnit.BYTE.toGB(it) },
+            isCriticalCPULoad = AppSystemInfo.isCriticalCPULoad,
+            isCriticalMemory = AppSystemInfo.isCriticalMemory,
+            contextLeaksRate = AbstractPrivacyContext.globalMetrics.contextLeaks.meter.fifteenMinuteRate,
+            isProxyOutOfService = proxyProbe(),
+            isWebDbLost = webDbProbe(),
+            isFinishJobRequested = finishJobRequested,
+        )
+        this.snapshot = snapshot
+
+        logger.takeIf { it.isTraceEnabled }?.trace("Health snapshot | {}", snapshot)
+
+        return snapshot
+    }
+
+    companion object {
+        private fun createDaemonExecutor() = Executors.newSingleThreadScheduledExecutor(
+            ThreadFactoryBuilder().setNameFormat("hm-%d").setDaemon(true).build()
+        )
+    }
+}
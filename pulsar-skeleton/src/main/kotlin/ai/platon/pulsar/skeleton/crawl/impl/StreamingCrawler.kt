@@ -7,7 +7,6 @@ import ai.platon.pulsar.common.config.AppConstants.DEFAULT_BROWSER_MAX_ACTIVE_TA
 import ai.platon.pulsar.common.config.AppConstants.FETCH_TASK_TIMEOUT_DEFAULT
 import ai.platon.pulsar.common.config.CapabilityTypes.*
 import ai.platon.pulsar.common.emoji.PopularEmoji
-import ai.platon.pulsar.common.measure.ByteUnit
 import ai.platon.pulsar.common.proxy.*
 import ai.platon.pulsar.common.urls.*
 import ai.platon.pulsar.persist.WebDBException
@@ -58,6 +57,11 @@ private class StreamingCrawlerMetrics {
     
     val drops = registry.meter(this, "drops")
     val timeouts = registry.meter(this, "timeouts")
+    
+    /**
+     * The time in milliseconds a task waits for a permit before it is launched.
+     * */
+    val admissionWaitTime = registry.histogram(this, "admissionWaitTime")
 }
 
 private enum class CriticalWarning(val message: String) {
@@ -92,6 +96,12 @@ private class GlobalCrawlState {
     val lastCancelReason = Frequency<String>()
     val illegalApplicationState = AtomicBoolean()
     
+    /**
+     * A task has to acquire a permit before it's launched, and the permit is released once the task finishes,
+     * every crawler acquires with its own main loop concurrency against the tasks of all the crawlers.
+     * */
+    val admission = AdmissionController()
+    
     var wrongProfile = MetricsSystem.reg.multiMetric(this, "WRONG_PROFILE_COUNT")
     
     val readableCriticalWarning: String
@@ -126,6 +136,7 @@ open class StreamingCrawler(
                 
                 "globalState.globalRunningInstances" to Gauge { globalState.globalRunningInstances.get() },
                 "globalState.globalRunningTasks" to Gauge { globalState.globalRunningTasks.get() },
+                "globalState.admittedTasks" to Gauge { globalState.admission.numRunning },
                 "globalState.globalKilledTasks" to Gauge { globalState.globalKilledTasks.get() },
                 "globalState.globalWebDBFailures" to Gauge { globalState.globalWebDBFailures.get() },
                 
@@ -176,7 +187,7 @@ open class StreamingCrawler(
      *
      * 0 means follow the fetch concurrency.
      * */
-    private val concurrencyOverride get() = sessionConfig.getInt(MAIN_LOOP_CONCURRENCY_OVERRIDE, 0)
+    private val concurrencyOverride get() = sessionConfig.snapshot().getInt(MAIN_LOOP_CONCURRENCY_OVERRIDE, 0)
     
     private val flowState = AtomicReference(FlowState.CONTINUE)
     
@@ -185,6 +196,19 @@ open class StreamingCrawler(
     private val lock = ReentrantLock()
     private val notBusy = lock.newCondition()
     
+    /**
+     * Samples disk, CPU, memory, proxy and web db state in the background, so that dispatching a url
+     * does no system calls. A new monitor is created every time the crawl loop starts, and it's closed
+     * when the loop stops or the crawler is closed.
+     * */
+    @Volatile
+    private var healthMonitor: CrawlHealthMonitor? = null
+    
+    /**
+     * The latest health snapshot, read by a single volatile read.
+     * */
+    private val health get() = checkNotNull(healthMonitor) { "The crawl loop is not started" }.snapshot
+    
     private val gauges = mapOf(
         "idleTime" to Gauge { idleTime.readable() },
         "numPrivacyContexts" to Gauge { numPrivacyContexts },
@@ -271,7 +295,19 @@ open class StreamingCrawler(
         val cacheGauges = mapOf(
             "paused" to Gauge { isPaused },
             "pageCacheSize" to Gauge { globalCacheOrNull?.pageCache?.size ?: 0 },
-            "documentCacheSize" to Gauge { globalCacheOrNull?.documentCache?.size ?: 0 }
+            "pageCacheWeight" to Gauge { globalCacheOrNull?.pageCache?.weight ?: 0 },
+            "pageCacheMaxWeight" to Gauge { globalCacheOrNull?.pageCache?.maxWeight ?: 0 },
+            "pageCacheHits" to Gauge { globalCacheOrNull?.pageCache?.hits?.get() ?: 0 },
+            "pageCacheMisses" to Gauge { globalCacheOrNull?.pageCache?.misses?.get() ?: 0 },
+            "pageCacheEvictions" to Gauge { globalCacheOrNull?.pageCache?.evictions?.get() ?: 0 },
+            "pageCacheRejections" to Gauge { globalCacheOrNull?.pageCache?.rejections?.get() ?: 0 },
+            "documentCacheSize" to Gauge { globalCacheOrNull?.documentCache?.size ?: 0 },
+            "documentCacheWeight" to Gauge { globalCacheOrNull?.documentCache?.weight ?: 0 },
+            "documentCacheMaxWeight" to Gauge { globalCacheOrNull?.documentCache?.maxWeight ?: 0 },
+            "documentCacheHits" to Gauge { globalCacheOrNull?.documentCache?.hits?.get() ?: 0 },
+            "documentCacheMisses" to Gauge { globalCacheOrNull?.documentCache?.misses?.get() ?: 0 },
+            "documentCacheEvictions" to Gauge { globalCacheOrNull?.documentCache?.evictions?.get() ?: 0 },
+            "documentCacheRejections" to Gauge { globalCacheOrNull?.documentCache?.rejections?.get() ?: 0 },
         )
         MetricsSystem.reg.registerAll(this, "$id.g", cacheGauges)
         
@@ -326,6 +362,7 @@ open class StreamingCrawler(
      * */
     override fun close() {
         quit()
+        healthMonitor?.close()
         super.close()
     }
     
@@ -335,8 +372,14 @@ open class StreamingCrawler(
         val startTime = Instant.now()
         
         globalState.globalRunningInstances.incrementAndGet()
-        runCrawlLoopWhileActive(scope)
-        globalState.globalRunningInstances.decrementAndGet()
+        val monitor = createHealthMonitor().also { healthMonitor = it }
+        monitor.startSampling()
+        try {
+            runCrawlLoopWhileActive(scope)
+        } finally {
+            monitor.close()
+            globalState.globalRunningInstances.decrementAndGet()
+        }
         
         logger.info(
             "All done. Total {} tasks are processed in session {} in {}",
@@ -368,11 +411,9 @@ open class StreamingCrawler(
                 )
                 
                 // The largest disk must have at least 10 GiB remaining space
-                val freeSpace =
-                    Runtimes.unallocatedDiskSpaces().maxOfOrNull { ByteUnit.BYTE.toGB(it) } ?: 0.0
-                if (freeSpace < 10.0) {
-                    val diskSpaces = Runtimes.unallocatedDiskSpaces().joinToString { ByteUnit.BYTE.toGB(it).toString() }
-                    logger.error("Disk space is full! | {}", diskSpaces)
+                val health = health
+                if (health.isOutOfDisk) {
+                    logger.error("Disk space is full! | {}", health.freeDiskSpacesGB.joinToString())
                     globalState.criticalWarning = CriticalWarning.OUT_OF_DISK_STORAGE
                     return@runCrawlLoopWhileActive
                 }
@@ -389,7 +430,7 @@ open class StreamingCrawler(
                 }
                 
                 globalState.globalLoadingUrls.add(urlSpec)
-                val state = runWithStatusCheck(1 + j, url, scope)
+                val state = runWithStatusCheck(1 + j, url, urlSpec, scope)
                 
                 if (state != FlowState.CONTINUE) {
                     return@runCrawlLoopWhileActive
@@ -424,7 +465,7 @@ open class StreamingCrawler(
         }
     }
     
-    private suspend fun runWithStatusCheck(j: Int, url: UrlAware, scope: CoroutineScope): FlowState {
+    private suspend fun runWithStatusCheck(j: Int, url: UrlAware, urlSpec: String, scope: CoroutineScope): FlowState {
         lastActiveTime = Instant.now()
         var k = 0
         
@@ -436,9 +477,7 @@ open class StreamingCrawler(
         }
         k = 0 // reset k explicitly
         
-        delayIfEstimatedNoLoadResource(j)
-        
-        while (isActive && AppSystemInfo.isCriticalCPULoad) {
+        while (isActive && health.isCriticalCPULoad) {
             globalState.criticalWarning = CriticalWarning.HIGH_CPU_LOAD
             // CPU load changes very fast, it drops immediately when a web driver becomes free,
             // so we delay for short and random time.
@@ -449,7 +488,7 @@ open class StreamingCrawler(
          * If all memory is used up, we can do nothing but wait.
          * */
         k = 0
-        while (isActive && AppSystemInfo.isCriticalMemory) {
+        while (isActive && health.isCriticalMemory) {
             if (k++ % 20 == 0) {
                 // k is the number of consecutive warnings, the sequence of k is: 1, 21, 41, 61, ...
                 handleMemoryShortage(k)
@@ -463,8 +502,8 @@ open class StreamingCrawler(
          * If the privacy context leaks too fast, there is a good chance that there is a bug,
          * or the quality of this batch of proxy IPs is poor.
          * */
-        val contextLeaksRate = AbstractPrivacyContext.globalMetrics.contextLeaks.meter.fifteenMinuteRate
-        if (isActive && contextLeaksRate >= 5 / 60f) {
+        val health = health
+        if (isActive && health.contextLeaksRate >= 5 / 60f) {
             globalState.criticalWarning = CriticalWarning.FAST_CONTEXT_LEAK
             handleContextLeaks()
         }
@@ -473,17 +512,17 @@ open class StreamingCrawler(
             handleWrongProfile()
         }
         
-        if (isActive && proxyOutOfService > 0) {
+        if (isActive && health.isProxyOutOfService && proxyOutOfService > 0) {
             globalState.criticalWarning = CriticalWarning.NO_PROXY
             handleProxyOutOfService()
         }
         
-        if (isActive && globalState.globalWebDBFailures.get() > 0) {
+        if (isActive && health.isWebDbLost && globalState.globalWebDBFailures.get() > 0) {
             globalState.criticalWarning = CriticalWarning.WEB_DB_LOST
             handleWebDBLost()
         }
         
-        if (isActive && FileCommand.check("finish-job")) {
+        if (isActive && health.isFinishJobRequested) {
             logger.info("Find finish-job command, quit streaming crawler ...")
             flowState.set(FlowState.BREAK)
             return flowState.get()
@@ -494,48 +533,72 @@ open class StreamingCrawler(
             return flowState.get()
         }
         
-        delayIfEstimatedNoLoadResource(j)
+        // the state might be reset while the task is running, the permit goes back to where it's taken from
+        val state = globalState
+        if (!acquireAdmission(j, state.admission)) {
+            flowState.set(FlowState.BREAK)
+            return flowState.get()
+        }
         
-        globalState.criticalWarning = null
+        state.criticalWarning = null
         
         val context = Dispatchers.Default + CoroutineName("w")
-        val urlSpec = UrlUtils.splitUrlArgs(url.url).first
         // We must increase the number before the task is actually launched in a coroutine,
         // otherwise, it's easy to grow larger than fetchConcurrency.
-        globalState.globalRunningTasks.incrementAndGet()
+        state.globalRunningTasks.incrementAndGet()
         scope.launch(context) {
-            try {
-                globalState.globalMetrics.tasks.mark()
-                runTaskWithEventHandlers(url)
-            } finally {
-                lastActiveTime = Instant.now()
-                
-                globalState.globalLoadingUrls.remove(urlSpec)
-                globalState.globalRunningTasks.decrementAndGet()
-                
-                globalState.globalMetrics.finishes.mark()
-            }
+            state.globalMetrics.tasks.mark()
+            runTaskWithEventHandlers(url)
+        }.invokeOnCompletion {
+            // invoked even if the coroutine is canceled before it starts, so the permit never leaks
+            lastActiveTime = Instant.now()
+            
+            state.globalLoadingUrls.remove(urlSpec)
+            state.globalRunningTasks.decrementAndGet()
+            // hand the slot to the next task immediately
+            state.admission.release()
+            
+            state.globalMetrics.finishes.mark()
         }
         
         return flowState.get()
     }
     
+    private fun createHealthMonitor() = CrawlHealthMonitor(
+        sessionConfig.getDuration(MAIN_LOOP_HEALTH_CHECK_INTERVAL, Duration.ofSeconds(1)),
+        proxyProbe = { proxyOutOfService > 0 },
+        webDbProbe = { globalState.globalWebDBFailures.get() > 0 }
+    )
+    
     /**
-     * Delay if there is no resource to load a new task.
+     * Wait until there is resource to load a new task.
      * Running task has to be no more than the available web drivers.
+     *
+     * The waiting is resumed as soon as a running task finishes.
+     *
+     * @return true if a permit is acquired, false if the crawler is no longer active
      * */
-    private suspend fun delayIfEstimatedNoLoadResource(j: Int, maxTry: Int = 1000) {
-        var k = 0
-        while (isActive && ++k < maxTry && globalState.globalRunningTasks.get() >= concurrency) {
-            if (j % 120 == 0) {
+    private suspend fun acquireAdmission(j: Int, admission: AdmissionController): Boolean {
+        val startTime = System.currentTimeMillis()
+        val admitted = admission.acquire({ isActive }, { concurrency }) { round ->
+            if (j % 120 == 0 && round % 60 == 0) {
                 logger.info(
-                    "$j. Long time to run $globalState.globalRunningTasks tasks | $lastActiveTime -> {}",
+                    "$j. Long time to run ${admission.numRunning} tasks | $lastActiveTime -> {}",
                     idleTime.readable()
                 )
             }
-            val timeMillis = 500L + Random.nextInt(500)
-            delay(timeMillis)
         }
+        
+        if (admitted && !isActive) {
+            admission.release()
+            return false
+        }
+        
+        if (admitted) {
+            globalState.globalMetrics.admissionWaitTime.update(System.currentTimeMillis() - startTime)
+        }
+        
+        return admitted
     }
     
     private suspend fun runTaskWithEventHandlers(url: UrlAware) {
@@ -5,6 +5,7 @@ import ai.platon.pulsar.common.FlowState
 import ai.platon.pulsar.common.config.AppConstants
 import ai.platon.pulsar.common.config.ImmutableConfig
 import ai.platon.pulsar.common.config.Parameterized
+import ai.platon.pulsar.common.metrics.record
 import ai.platon.pulsar.skeleton.common.message.MiscMessageWriter
 import ai.platon.pulsar.skeleton.common.metrics.MetricsSystem
 import ai.platon.pulsar.common.readable
@@ -46,6 +47,7 @@ class PageParser(
     init { MetricsSystem.reg.register(Counter::class.java) }
 
     private val parseCount = AtomicInteger()
+    private val parseTimer = MetricsSystem.reg.timer(this, "parse")
 
     val unparsableTypes = ConcurrentSkipListSet<CharSequence>()
 
@@ -80,7 +82,7 @@ class PageParser(
         parseCount.incrementAndGet()
 
         try {
-            val parseResult = doParse(page)
+            val parseResult = parseTimer.record { doParse(page) }
 
             if (parseResult.isParsed) {
                 page.parseStatus = parseResult
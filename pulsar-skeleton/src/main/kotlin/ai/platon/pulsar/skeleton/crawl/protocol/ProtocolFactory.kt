@@ -21,6 +21,10 @@ class ProtocolFactory(private val immutableConfig: ImmutableConfig) : AutoClosea
     private val logger = LoggerFactory.getLogger(ProtocolFactory::class.java)
     
     private val protocols: MutableMap<String, Protocol> = ConcurrentHashMap()
+    /**
+     * Protocols sharing the same class share the same instance, e.g., http and https
+     * */
+    private val instances = mutableMapOf<String, Protocol?>()
     private val closed = AtomicBoolean()
     
     init {
@@ -33,8 +37,8 @@ class ProtocolFactory(private val immutableConfig: ImmutableConfig) : AutoClosea
             .map { it[0] to getInstance(it) }
             .filter { it.second != null }
             .associate { it.first to it.second!! }
-            .onEach { it.value.configure(immutableConfig) }
             .toMap(protocols)
+        protocols.values.distinct().forEach { it.configure(immutableConfig) }
         protocols.keys.joinToString(", ", "Supported protocols: ", "")
             .also { logger.info(it) }
     }
@@ -51,6 +55,7 @@ class ProtocolFactory(private val immutableConfig: ImmutableConfig) : AutoClosea
         
         return when (fetchMode) {
             FetchMode.BROWSER -> getProtocol("browser:" + page.url)
+            FetchMode.AUTO -> getProtocol("auto:" + page.url)
             else -> getProtocol(page.url)
         } ?: throw ProtocolNotFound(page.url)
     }
@@ -73,9 +78,13 @@ class ProtocolFactory(private val immutableConfig: ImmutableConfig) : AutoClosea
     }
     
     private fun getInstance(config: List<String>): Protocol? {
+        // config[0] is the protocol name, config[1] is the class name, and the rest are properties
+        val className = config[1]
+        return instances.getOrPut(className) { createInstance(className) }
+    }
+
+    private fun createInstance(className: String): Protocol? {
         try {
-            // config[0] is the protocol name, config[1] is the class name, and the rest are properties
-            val className = config[1]
             return Class.forName(className).constructors.first().newInstance() as Protocol
         } catch (e: ClassNotFoundException) {
             logger.error(e.stringify())
@@ -89,7 +98,7 @@ class ProtocolFactory(private val immutableConfig: ImmutableConfig) : AutoClosea
     
     override fun close() {
         if (closed.compareAndSet(false, true)) {
-            protocols.values.forEach { protocol: Protocol ->
+            protocols.values.distinct().forEach { protocol: Protocol ->
                 try {
                     protocol.close()
                 } catch (e: Throwable) {
@@ -23,6 +23,14 @@ import ai.platon.pulsar.skeleton.crawl.PageEvent
 import ai.platon.pulsar.skeleton.crawl.PageEventHandlers
 import ai.platon.pulsar.skeleton.crawl.common.FetchEntry
 import ai.platon.pulsar.skeleton.crawl.common.url.ListenableHyperlink
+import kotlinx.coroutines.CoroutineName
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.cancel
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.toList
+import kotlinx.coroutines.future.future
 import org.jsoup.nodes.Element
 import org.slf4j.LoggerFactory
 import org.xml.sax.InputSource
@@ -89,6 +97,12 @@ abstract class AbstractPulsarSession(
     private val documentCacheOrNull get() = globalCacheFactoryOrNull?.globalCache?.documentCache
     
     private val closableObjects = mutableSetOf<AutoCloseable>()
+
+    /**
+     * The scope of the futures for java callers, a failed future does not cancel the others,
+     * and the scope is canceled when the session is closed.
+     * */
+    private val interopScope = CoroutineScope(SupervisorJob() + Dispatchers.Default + CoroutineName("session"))
     
     fun registerClosable(closable: AutoCloseable) = ensureActive { closableObjects.add(closable) }
     
@@ -418,6 +432,28 @@ abstract class AbstractPulsarSession(
             .toList()
     }
     
+    override fun scrapeAll(urls: Iterable<String>, args: String, fieldSelectors: Iterable<String>) =
+        scrapeAll(urls, options(args), fieldSelectors)
+
+    override fun scrapeAll(urls: Iterable<String>, options: LoadOptions, fieldSelectors: Iterable<String>) =
+        scrapeAll(urls, options, fieldSelectors.associateWith { it })
+
+    override fun scrapeAll(urls: Iterable<String>, args: String, fieldSelectors: Map<String, String>) =
+        scrapeAll(urls, options(args), fieldSelectors)
+
+    override fun scrapeAll(
+        urls: Iterable<String>, options: LoadOptions, fieldSelectors: Map<String, String>
+    ): Flow<Map<String, String?>> {
+        val pipeline = ScrapePipeline({ loadDeferred(it) }, { parse(it) })
+        return pipeline.scrape(normalize(urls, options), fieldSelectors)
+    }
+
+    override fun scrapeAllAsync(urls: Iterable<String>, args: String, fieldSelectors: Iterable<String>) =
+        interopScope.future { scrapeAll(urls, args, fieldSelectors).toList() }
+
+    override fun scrapeAllAsync(urls: Iterable<String>, options: LoadOptions, fieldSelectors: Map<String, String>) =
+        interopScope.future { scrapeAll(urls, options, fieldSelectors).toList() }
+
     override fun harvest(url: String, args: String, engine: String): TextDocument = harvest(load(url, args), engine)
     
     override fun harvest(page: WebPage, engine: String): TextDocument = harvest0(page, engine)
@@ -474,6 +510,7 @@ abstract class AbstractPulsarSession(
     
     override fun close() {
         if (closed.compareAndSet(false, true)) {
+            interopScope.cancel()
             closableObjects.forEach {
                 runCatching { it.close() }.onFailure { warnForClose(this, it) }
             }
@@ -17,6 +17,7 @@ import ai.platon.pulsar.dom.FeaturedDocument
 import ai.platon.pulsar.external.ModelResponse
 import ai.platon.pulsar.persist.WebPage
 import com.google.common.annotations.Beta
+import kotlinx.coroutines.flow.Flow
 import org.jsoup.nodes.Element
 import java.nio.ByteBuffer
 import java.nio.file.Path
@@ -2011,6 +2012,114 @@ interface PulsarSession : AutoCloseable {
         portalUrl: String, options: LoadOptions, restrictSelector: String, fieldSelectors: Map<String, String>
     ): List<Map<String, String?>>
 
+    /**
+     * Load or fetch a batch of webpages, and then extract fields specified by field selectors from each page.
+     *
+     * Fetching, parsing and extracting run as separate pipeline stages, so pages are parsed while the next pages
+     * are being fetched. The field selectors are compiled only once for the batch.
+     *
+     * ```kotlin
+     * session.scrapeAll(urls, "-expire 1d", listOf(".title", ".content")).collect { println(it) }
+     * ```
+     *
+     * @param urls The urls to scrape
+     * @param args The load arguments
+     * @param fieldSelectors The selectors to extract fields
+     * @return A flow of the extracted fields of each page, in the order of the urls.
+     *          Fields of each page are saved with their selectors in a map.
+     * */
+    fun scrapeAll(urls: Iterable<String>, args: String, fieldSelectors: Iterable<String>): Flow<Map<String, String?>>
+
+    /**
+     * Load or fetch a batch of webpages, and then extract fields specified by field selectors from each page.
+     *
+     * Fetching, parsing and extracting run as separate pipeline stages, so pages are parsed while the next pages
+     * are being fetched. The field selectors are compiled only once for the batch.
+     *
+     * ```kotlin
+     * session.scrapeAll(urls, session.options("-expire 1d"), listOf(".title", ".content")).collect { println(it) }
+     * ```
+     *
+     * @param urls The urls to scrape
+     * @param options The load options
+     * @param fieldSelectors The selectors to extract fields
+     * @return A flow of the extracted fields of each page, in the order of the urls.
+     *          Fields of each page are saved with their selectors in a map.
+     * */
+    fun scrapeAll(urls: Iterable<String>, options: LoadOptions, fieldSelectors: Iterable<String>): Flow<Map<String, String?>>
+
+    /**
+     * Load or fetch a batch of webpages, and then extract fields specified by field selectors from each page.
+     *
+     * Fetching, parsing and extracting run as separate pipeline stages, so pages are parsed while the next pages
+     * are being fetched. The field selectors are compiled only once for the batch.
+     *
+     * ```kotlin
+     * session.scrapeAll(urls, "-expire 1d", mapOf("title" to ".title", "content" to ".content"))
+     *      .collect { println(it) }
+     * ```
+     *
+     * @param urls The urls to scrape
+     * @param args The load arguments
+     * @param fieldSelectors The selectors to extract fields
+     * @return A flow of the extracted fields of each page, in the order of the urls.
+     *          Fields of each page are saved with their names in a map.
+     * */
+    fun scrapeAll(urls: Iterable<String>, args: String, fieldSelectors: Map<String, String>): Flow<Map<String, String?>>
+
+    /**
+     * Load or fetch a batch of webpages, and then extract fields specified by field selectors from each page.
+     *
+     * Fetching, parsing and extracting run as separate pipeline stages, so pages are parsed while the next pages
+     * are being fetched. The field selectors are compiled only once for the batch.
+     *
+     * ```kotlin
+     * session.scrapeAll(urls, session.options("-expire 1d"), mapOf("title" to ".title", "content" to ".content"))
+     *      .collect { println(it) }
+     * ```
+     *
+     * @param urls The urls to scrape
+     * @param options The load options
+     * @param fieldSelectors The selectors to extract fields
+     * @return A flow of the extracted fields of each page, in the order of the urls.
+     *          Fields of each page are saved with their names in a map.
+     * */
+    fun scrapeAll(urls: Iterable<String>, options: LoadOptions, fieldSelectors: Map<String, String>): Flow<Map<String, String?>>
+
+    /**
+     * Load or fetch a batch of webpages, and then extract fields specified by field selectors from each page.
+     * It's the Java friendly version of [scrapeAll].
+     *
+     * ```java
+     * session.scrapeAllAsync(urls, "-expire 1d", List.of(".title", ".content")).join().forEach(System.out::println);
+     * ```
+     *
+     * @param urls The urls to scrape
+     * @param args The load arguments
+     * @param fieldSelectors The selectors to extract fields
+     * @return A future of the extracted fields of all pages, in the order of the urls.
+     * */
+    fun scrapeAllAsync(
+        urls: Iterable<String>, args: String, fieldSelectors: Iterable<String>
+    ): CompletableFuture<List<Map<String, String?>>>
+
+    /**
+     * Load or fetch a batch of webpages, and then extract fields specified by field selectors from each page.
+     * It's the Java friendly version of [scrapeAll].
+     *
+     * ```java
+     * session.scrapeAllAsync(urls, session.options("-expire 1d"), Map.of("title", ".title")).join();
+     * ```
+     *
+     * @param urls The urls to scrape
+     * @param options The load options
+     * @param fieldSelectors The selectors to extract fields
+     * @return A future of the extracted fields of all pages, in the order of the urls.
+     * */
+    fun scrapeAllAsync(
+        urls: Iterable<String>, options: LoadOptions, fieldSelectors: Map<String, String>
+    ): CompletableFuture<List<Map<String, String?>>>
+
     /**
      * Harvest the content of a webpage using a web content extractor engine.
      *
@@ -0,0 +1,243 @@
+package ai.platon.pulsar.skeleton.session
+
+import ai.platon.pulsar.common.warnInterruptible
+import ai.platon.pulsar.dom.FeaturedDocument
+import ai.platon.pulsar.dom.select.PowerSelector
+import ai.platon.pulsar.persist.WebPage
+import ai.platon.pulsar.skeleton.common.metrics.MetricsSystem
+import ai.platon.pulsar.skeleton.common.urls.NormURL
+import com.codahale.metrics.Gauge
+import com.codahale.metrics.Histogram
+import com.codahale.metrics.Meter
+import kotlinx.coroutines.*
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.buffer
+import kotlinx.coroutines.flow.channelFlow
+import org.jsoup.select.Evaluator
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * A stage of the scrape pipeline.
+ * */
+class ScrapeStage(
+    val name: String,
+    /**
+     * The processing time of the items in milliseconds
+     * */
+    val latency: Histogram,
+    /**
+     * The processed items
+     * */
+    val processed: Meter,
+) {
+    /**
+     * The number of items waiting to be processed by this stage
+     * */
+    val queueDepth = AtomicInteger()
+
+    /**
+     * The number of items being processed by this stage
+     * */
+    val running = AtomicInteger()
+
+    /**
+     * Enqueue items of a batch, [pending] is the number of the batch's items waiting for this stage.
+     * */
+    internal fun enqueue(pending: AtomicInteger, n: Int = 1) {
+        pending.addAndGet(n)
+        queueDepth.addAndGet(n)
+    }
+
+    /**
+     * Remove the items of a batch which are never processed, e.g. the batch is cancelled.
+     * */
+    internal fun discard(pending: AtomicInteger) {
+        queueDepth.addAndGet(-pending.getAndSet(0))
+    }
+
+    internal inline fun <T> measure(pending: AtomicInteger, action: () -> T): T {
+        pending.decrementAndGet()
+        queueDepth.decrementAndGet()
+        running.incrementAndGet()
+        val startTime = System.currentTimeMillis()
+        try {
+            return action()
+        } finally {
+            latency.update(System.currentTimeMillis() - startTime)
+            processed.mark()
+            running.decrementAndGet()
+        }
+    }
+
+    override fun toString() = String.format("%s queue: %d running: %d latency: %.1fms",
+        name, queueDepth.get(), running.get(), latency.snapshot.mean)
+}
+
+/**
+ * The metrics of all the scrape pipelines. The queue depth and the latency of each stage tell
+ * whether the browser or the parser is the bottleneck.
+ * */
+class ScrapePipelineMetrics {
+    private val registry = MetricsSystem.defaultMetricRegistry
+
+    val fetch = stage("fetch")
+    val parse = stage("parse")
+    val extract = stage("extract")
+
+    val stages get() = listOf(fetch, parse, extract)
+
+    private fun stage(name: String): ScrapeStage {
+        val stage = ScrapeStage(name, registry.histogram(this, name, "latency"), registry.meter(this, name, "processed"))
+        registry.register(this, name, "queueDepth", Gauge { stage.queueDepth.get() })
+        registry.register(this, name, "running", Gauge { stage.running.get() })
+        return stage
+    }
+
+    override fun toString() = stages.joinToString(" | ")
+}
+
+/**
+ * A streaming pipeline to scrape a batch of urls, in which fetch, parse and extract run as separate bounded stages,
+ * so the parser works on fetched pages while the browser is fetching the next ones.
+ *
+ * The field selectors are compiled once per batch, and the results are emitted in the order of the urls.
+ * */
+class ScrapePipeline(
+    /**
+     * Load a page, it's the fetch stage
+     * */
+    private val loader: suspend (NormURL) -> WebPage,
+    /**
+     * Parse a page into a document, it's the parse stage
+     * */
+    private val parser: (WebPage) -> FeaturedDocument,
+    /**
+     * The number of pages being fetched at the same time
+     * */
+    val fetchConcurrency: Int = DEFAULT_FETCH_CONCURRENCY,
+    /**
+     * The number of pages being parsed at the same time
+     * */
+    val parseConcurrency: Int = DEFAULT_PARSE_CONCURRENCY,
+    /**
+     * The capacity of the queue between two stages
+     * */
+    val stageCapacity: Int = DEFAULT_STAGE_CAPACITY,
+) {
+    companion object {
+        val DEFAULT_FETCH_CONCURRENCY = 8
+        val DEFAULT_PARSE_CONCURRENCY = Runtime.getRuntime().availableProcessors().coerceAtLeast(2)
+        const val DEFAULT_STAGE_CAPACITY = 16
+
+        val metrics by lazy { ScrapePipelineMetrics() }
+    }
+
+    private class Item<T>(val index: Int, val url: NormURL, val value: T)
+
+    /**
+     * Scrape the urls, the emitted maps are in the order of the urls, a failed page results in null fields.
+     *
+     * @param urls The urls to scrape
+     * @param fieldSelectors The selectors to extract fields, the keys are the field names
+     * @return A flow of the extracted fields of each url
+     * */
+    fun scrape(urls: List<NormURL>, fieldSelectors: Map<String, String>): Flow<Map<String, String?>> = channelFlow {
+        val evaluators = compile(fieldSelectors)
+        val fetchStage = metrics.fetch
+        val parseStage = metrics.parse
+        val extractStage = metrics.extract
+
+        val input = Channel<Item<NormURL>>(stageCapacity)
+        val pages = Channel<Item<WebPage>>(stageCapacity)
+        val documents = Channel<Item<FeaturedDocument>>(stageCapacity)
+        val pendingFetches = AtomicInteger()
+        val pendingParses = AtomicInteger()
+        val pendingExtracts = AtomicInteger()
+
+        try {
+            fetchStage.enqueue(pendingFetches, urls.size)
+            launch {
+                urls.forEachIndexed { i, url -> input.send(Item(i, url, url)) }
+                input.close()
+            }
+
+            val fetchers = List(fetchConcurrency.coerceAtLeast(1)) {
+                launch {
+                    for (item in input) {
+                        val page = fetchStage.measure(pendingFetches) { load(item.url) }
+                        parseStage.enqueue(pendingParses)
+                        pages.send(Item(item.index, item.url, page))
+                    }
+                }
+            }
+            launch { fetchers.joinAll(); pages.close() }
+
+            val parsers = List(parseConcurrency.coerceAtLeast(1)) {
+                launch(Dispatchers.Default) {
+                    for (item in pages) {
+                        val document = parseStage.measure(pendingParses) { parse(item.url, item.value) }
+                        extractStage.enqueue(pendingExtracts)
+                        documents.send(Item(item.index, item.url, document))
+                    }
+                }
+            }
+            launch { parsers.joinAll(); documents.close() }
+
+            // the extraction is cheap, so it runs in the collector, which also restores the order of the urls
+            val completed = HashMap<Int, Map<String, String?>>()
+            var next = 0
+            for (item in documents) {
+                completed[item.index] = extractStage.measure(pendingExtracts) { extract(item.value, evaluators) }
+                while (true) {
+                    val fields = completed.remove(next) ?: break
+                    send(fields)
+                    ++next
+                }
+            }
+        } finally {
+            fetchStage.discard(pendingFetches)
+            parseStage.discard(pendingParses)
+            extractStage.discard(pendingExtracts)
+        }
+    }.buffer(stageCapacity)
+
+    private fun compile(fieldSelectors: Map<String, String>): Map<String, Evaluator?> {
+        return fieldSelectors.mapValues { PowerSelector.compileOrNull(it.value) }
+    }
+
+    private suspend fun load(url: NormURL): WebPage {
+        return try {
+            loader(url)
+        } catch (e: CancellationException) {
+            throw e
+        } catch (e: Exception) {
+            warnInterruptible(this, e, "Failed to load page | {}", url.spec)
+            WebPage.NIL
+        }
+    }
+
+    private fun parse(url: NormURL, page: WebPage): FeaturedDocument {
+        if (page.isNil) {
+            return FeaturedDocument.NIL
+        }
+
+        return try {
+            parser(page)
+        } catch (e: Exception) {
+            warnInterruptible(this, e, "Failed to parse page | {}", url.spec)
+            FeaturedDocument.NIL
+        }
+    }
+
+    private fun extract(document: FeaturedDocument, evaluators: Map<String, Evaluator?>): Map<String, String?> {
+        if (document.isNil()) {
+            return evaluators.mapValues { null }
+        }
+
+        val root = document.document
+        return evaluators.mapValues { (_, evaluator) ->
+            evaluator?.let { PowerSelector.selectFirst(it, root) }?.text()
+        }
+    }
+}
@@ -1,13 +1,17 @@
 package ai.platon.pulsar.skeleton.crawl.common
 
 import ai.platon.pulsar.common.NetUtil
+import ai.platon.pulsar.common.config.AppConstants
 import ai.platon.pulsar.common.config.CapabilityTypes
+import ai.platon.pulsar.common.metrics.hdrTimer
 import ai.platon.pulsar.common.config.MutableConfig
 import ai.platon.pulsar.skeleton.common.metrics.MetricsSystem
 import ai.platon.pulsar.common.sleepSeconds
 import kotlin.test.*
+import com.codahale.metrics.SharedMetricRegistries
 import org.slf4j.LoggerFactory
 import java.time.Duration
+import java.util.concurrent.TimeUnit
 import kotlin.test.assertEquals
 import kotlin.test.assertTrue
 
@@ -63,4 +67,18 @@ class TestMetrics {
             sleepSeconds(1)
         }
     }
+
+    @Test
+    fun testOpenMetrics() {
+        MetricsSystem.reg.timer(this, "load").update(15, TimeUnit.MILLISECONDS)
+        SharedMetricRegistries.getOrCreate(AppConstants.DEFAULT_METRICS_NAME).hdrTimer("test.shared.rpc")
+            .update(2, TimeUnit.MILLISECONDS)
+        MetricsSystem.reg.counter("test._.shadow").inc()
+
+        val text = MetricsSystem.formatOpenMetrics()
+        assertContains(text, "# TYPE c_c_TestMetrics_t_load_seconds summary\n")
+        assertContains(text, "c_c_TestMetrics_t_load_seconds{quantile=\"0.99\"} 0.015")
+        assertContains(text, "test_shared_rpc_seconds_count 1\n")
+        assertFalse { "shadow" in text }
+    }
 }
@@ -0,0 +1,206 @@
+package ai.platon.pulsar.skeleton.crawl.common.collect
+
+import ai.platon.pulsar.common.Priority13
+import ai.platon.pulsar.common.collect.RingBufferUrlCache
+import ai.platon.pulsar.common.collect.RingBufferUrlPool
+import ai.platon.pulsar.common.collect.collector.UrlCacheCollector
+import ai.platon.pulsar.common.collect.queue.ConcurrentNEntrantRingBufferQueue
+import ai.platon.pulsar.common.collect.queue.ConcurrentNonReentrantRingBufferQueue
+import ai.platon.pulsar.common.collect.queue.ConcurrentRingBufferQueue
+import ai.platon.pulsar.common.collect.queue.RotatingBloomFilter
+import ai.platon.pulsar.common.config.ImmutableConfig
+import ai.platon.pulsar.common.urls.Hyperlink
+import ai.platon.pulsar.common.urls.UrlAware
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import kotlin.test.*
+
+class TestRingBufferQueues {
+    private val urls = IntRange(1, 100)
+        .map { "https://www.amazon.com/s?k=insomnia&i=aps&page=$it" }
+        .map { Hyperlink(it) }
+    private val urlFingerprint: (UrlAware) -> Long = { RotatingBloomFilter.fingerprint(it.url) }
+
+    @Test
+    fun testRingBufferIsFIFOAndBounded() {
+        val queue = ConcurrentRingBufferQueue<Int>(5)
+        assertEquals(8, queue.capacity)
+
+        repeat(8) { assertTrue { queue.offer(it) } }
+        assertFalse { queue.offer(8) }
+        assertEquals(8, queue.size)
+        assertEquals(0, queue.peek())
+
+        repeat(8) { assertEquals(it, queue.poll()) }
+        assertNull(queue.poll())
+        assertTrue { queue.isEmpty() }
+
+        // wrap around
+        repeat(20) {
+            assertTrue { queue.offer(it) }
+            assertEquals(it, queue.poll())
+        }
+    }
+
+    @Test
+    fun testRingBufferRemoveIf() {
+        val queue = ConcurrentRingBufferQueue<Int>(16)
+        IntRange(1, 10).forEach { queue.add(it) }
+        assertTrue { queue.removeIf { it % 2 == 0 } }
+        assertEquals(listOf(1, 3, 5, 7, 9), queue.toList())
+    }
+
+    @Test
+    fun testConcurrentProducersAndConsumers() {
+        val queue = ConcurrentRingBufferQueue<Int>(1024)
+        val producers = 4
+        val perProducer = 50_000
+        val consumed = ConcurrentHashMap.newKeySet<Int>()
+        val numConsumed = AtomicInteger()
+        val executor = Executors.newFixedThreadPool(2 * producers)
+
+        repeat(producers) { p ->
+            executor.submit {
+                IntRange(0, perProducer - 1).forEach { i ->
+                    while (!queue.offer(p * perProducer + i)) Thread.onSpinWait()
+                }
+            }
+            executor.submit {
+                while (numConsumed.get() < producers * perProducer) {
+                    val e = queue.poll()
+                    if (e != null) {
+                        assertTrue { consumed.add(e) }
+                        numConsumed.incrementAndGet()
+                    }
+                }
+            }
+        }
+
+        executor.shutdown()
+        assertTrue { executor.awaitTermination(60, TimeUnit.SECONDS) }
+        assertEquals(producers * perProducer, consumed.size)
+        assertTrue { queue.isEmpty() }
+    }
+
+    @Test
+    fun testNonReentrantRingBufferQueue() {
+        val queue = ConcurrentNonReentrantRingBufferQueue<UrlAware>(1024) { RotatingBloomFilter.fingerprint(it.url) }
+        queue.addAll(urls)
+        queue.addAll(urls)
+
+        assertEquals(urls.size, queue.size)
+        assertEquals(1, queue.count(urls[0]))
+        while (queue.isNotEmpty()) {
+            assertTrue { queue.poll() is Hyperlink }
+        }
+
+        // a url is never accepted again even if it's consumed
+        assertFalse { queue.offer(urls[0]) }
+    }
+
+    @Test
+    fun testNEntrantRingBufferQueue() {
+        val queue = ConcurrentNEntrantRingBufferQueue<UrlAware>(3, 1024) { RotatingBloomFilter.fingerprint(it.url) }
+        repeat(5) { queue.addAll(urls) }
+
+        assertEquals(3 * urls.size, queue.size)
+        assertEquals(3, queue.count(urls[0]))
+    }
+
+    @Test
+    fun testDedupQueuesRemoveIfKeepsRetainedItems() {
+        val nonReentrant = ConcurrentNonReentrantRingBufferQueue<UrlAware>(1024, fingerprint = urlFingerprint)
+        val nEntrant = ConcurrentNEntrantRingBufferQueue<UrlAware>(3, 1024, fingerprint = urlFingerprint)
+        listOf(nonReentrant, nEntrant).forEach { queue ->
+            queue.addAll(urls)
+            repeat(5) { assertFalse { queue.removeIf { false } } }
+            assertEquals(urls, queue.toList())
+
+            assertTrue { queue.removeIf { it.url.endsWith("page=1") } }
+            assertEquals(urls.size - 1, queue.size)
+        }
+
+        // the occurrences are not spent by removeIf
+        assertEquals(1, nEntrant.count(urls[1]))
+        assertTrue { nEntrant.offer(urls[1]) }
+        assertFalse { nonReentrant.offer(urls[1]) }
+    }
+
+    @Test
+    fun testRemoveIfOverflowsWhenProducersTakeTheFreeSlots() {
+        val queue = object : ConcurrentRingBufferQueue<Int>(8) {
+            var producing = true
+            override fun poll(): Int? {
+                val e = super.poll()
+                // a producer takes the slot as soon as it's free
+                if (producing && e != null) assertTrue { super.offer(100 + e) }
+                return e
+            }
+        }
+        repeat(8) { queue.offer(it) }
+        queue.removeIf { it % 2 == 0 }
+        queue.producing = false
+
+        val expected = listOf(1, 3, 5, 7) + IntRange(100, 107)
+        assertEquals(12, queue.size)
+        assertEquals(expected, queue.toList())
+        assertEquals(expected, generateSequence { queue.poll() }.toList())
+    }
+
+    @Test
+    fun testDedupQueuesAcceptItemsRejectedWhenFull() {
+        val nonReentrant = ConcurrentNonReentrantRingBufferQueue<UrlAware>(2, fingerprint = urlFingerprint)
+        val nEntrant = ConcurrentNEntrantRingBufferQueue<UrlAware>(1, 2, fingerprint = urlFingerprint)
+        listOf(nonReentrant, nEntrant).forEach { queue ->
+            assertTrue { queue.offer(urls[0]) }
+            assertTrue { queue.offer(urls[1]) }
+            assertFalse { queue.offer(urls[2]) }
+
+            queue.poll()
+            assertTrue { queue.offer(urls[2]) }
+            assertFalse { queue.offer(urls[2]) }
+        }
+    }
+
+    @Test
+    fun testRotatingBloomFilterIsBounded() {
+        val filter = RotatingBloomFilter(1000)
+        IntRange(1, 10_000).forEach { filter.put(RotatingBloomFilter.fingerprint("https://example.com/$it")) }
+
+        assertTrue { filter.rotations >= 9 }
+        // only two generations are kept
+        assertTrue { filter.bitSize <= 2 * 1300 }
+        // the latest urls are remembered
+        assertTrue { filter.mightContain(RotatingBloomFilter.fingerprint("https://example.com/10000")) }
+        assertFalse { filter.put(RotatingBloomFilter.fingerprint("https://example.com/9999")) }
+    }
+
+    @Test
+    fun testRemoveDeceased() {
+        val cache = RingBufferUrlCache("test", Priority13.NORMAL.value, 1024)
+        cache.reentrantQueue.add(Hyperlink("https://example.com/alive"))
+        cache.reentrantQueue.add(Hyperlink("https://example.com/dead", args = "-deadline 2022-04-15"))
+        cache.nonReentrantQueue.addAll(urls)
+        cache.nReentrantQueue.addAll(urls)
+        repeat(4) { cache.removeDeceased() }
+        assertEquals(1 + 2 * urls.size, cache.size)
+    }
+
+    @Test
+    fun testRingBufferUrlPoolWithCollector() {
+        val pool = RingBufferUrlPool(ImmutableConfig())
+        pool.initialize()
+        urls.forEach { pool.normalCache.nonReentrantQueue.add(it) }
+        urls.forEach { pool.normalCache.nonReentrantQueue.add(it) }
+        assertEquals(urls.size, pool.totalCount)
+
+        val collector = UrlCacheCollector(pool.normalCache)
+        val sink = mutableListOf<UrlAware>()
+        while (collector.hasMore()) {
+            collector.collectTo(sink)
+        }
+        assertEquals(urls.map { it.url }, sink.map { it.url })
+    }
+}
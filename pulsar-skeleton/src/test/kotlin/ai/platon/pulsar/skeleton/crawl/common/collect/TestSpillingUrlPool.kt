@@ -0,0 +1,148 @@
+package ai.platon.pulsar.skeleton.crawl.common.collect
+
+import ai.platon.pulsar.common.collect.SegmentFileUrlLoader
+import ai.platon.pulsar.common.collect.SpillingUrlPool
+import ai.platon.pulsar.common.collect.UrlTopic
+import ai.platon.pulsar.common.collect.collector.UrlCacheCollector
+import ai.platon.pulsar.common.config.ImmutableConfig
+import ai.platon.pulsar.common.urls.Hyperlink
+import ai.platon.pulsar.common.urls.UrlAware
+import java.nio.file.Files
+import java.nio.file.Path
+import kotlin.io.path.fileSize
+import kotlin.io.path.isDirectory
+import kotlin.io.path.listDirectoryEntries
+import kotlin.test.*
+
+class TestSpillingUrlPool {
+    private val conf = ImmutableConfig()
+    private val topic = UrlTopic("test", 1, 0, 100)
+    private val urls = IntRange(1, 1000).map { Hyperlink("https://www.example.com/item/$it", text = "item $it") }
+    private lateinit var baseDir: Path
+
+    @BeforeTest
+    fun setup() {
+        baseDir = Files.createTempDirectory("frontier")
+    }
+
+    @AfterTest
+    fun tearDown() {
+        baseDir.toFile().deleteRecursively()
+    }
+
+    @Test
+    fun testSaveAndLoadInBatches() {
+        SegmentFileUrlLoader(baseDir).use { loader ->
+            loader.saveAll(urls, topic)
+            assertEquals(urls.size, loader.countRemaining(topic))
+
+            val sink = mutableListOf<UrlAware>()
+            while (loader.hasMore(topic)) {
+                loader.loadToNow(sink, 300, topic)
+            }
+            assertEquals(urls.map { it.url }, sink.map { it.url })
+            assertEquals("item 1", (sink[0] as Hyperlink).text)
+            assertEquals(0, loader.countRemaining())
+        }
+    }
+
+    @Test
+    fun testSurviveRestart() {
+        SegmentFileUrlLoader(baseDir).use { loader ->
+            loader.saveAll(urls, topic)
+            assertEquals(400, loader.loadToNow(mutableListOf(), 400, topic).size)
+        }
+
+        SegmentFileUrlLoader(baseDir).use { loader ->
+            assertEquals(600, loader.countRemaining(topic))
+            val sink = mutableListOf<UrlAware>()
+            loader.loadToNow(sink, 1000, topic)
+            assertEquals(urls.drop(400).map { it.url }, sink.map { it.url })
+        }
+    }
+
+    @Test
+    fun testSegmentsAreRolledAndDeleted() {
+        SegmentFileUrlLoader(baseDir, segmentSize = 4096).use { loader ->
+            loader.saveAll(urls, topic)
+            val dir = baseDir.listDirectoryEntries().single { it.isDirectory() }
+            val numSegments = dir.listDirectoryEntries("*.seg").size
+            assertTrue { numSegments > 10 }
+
+            val sink = mutableListOf<UrlAware>()
+            loader.loadToNow(sink, 900, topic)
+            assertTrue { dir.listDirectoryEntries("*.seg").size < numSegments }
+
+            loader.loadToNow(sink, 900, topic)
+            assertEquals(urls.map { it.url }, sink.map { it.url })
+        }
+
+        // the read position of rolled segments also survives restarts
+        SegmentFileUrlLoader(baseDir, segmentSize = 4096).use { loader ->
+            assertEquals(0, loader.countRemaining())
+        }
+    }
+
+    @Test
+    fun testRestartCountsFromHeadersWithoutExtendingSegments() {
+        SegmentFileUrlLoader(baseDir, segmentSize = 4096).use { loader ->
+            loader.saveAll(urls, topic)
+            loader.loadToNow(mutableListOf(), 10, topic)
+        }
+
+        val dir = baseDir.listDirectoryEntries().single { it.isDirectory() }
+        val sizes = dir.listDirectoryEntries("*.seg").associateWith { it.fileSize() }
+        SegmentFileUrlLoader(baseDir, segmentSize = 1024 * 1024).use { loader ->
+            assertEquals(urls.size - 10, loader.countRemaining(topic))
+            // only the write segment is mapped
+            sizes.keys.sorted().dropLast(1).forEach { assertEquals(sizes[it], it.fileSize()) }
+        }
+    }
+
+    @Test
+    fun testDirectoryIsLocked() {
+        SegmentFileUrlLoader(baseDir).use {
+            assertFailsWith<IllegalStateException> { SegmentFileUrlLoader(baseDir) }
+        }
+
+        // the lock is released on close
+        SegmentFileUrlLoader(baseDir).close()
+    }
+
+    @Test
+    fun testDeleteAll() {
+        SegmentFileUrlLoader(baseDir).use { loader ->
+            loader.saveAll(urls, topic)
+            assertEquals(urls.size.toLong(), loader.deleteAll(topic))
+            assertFalse { loader.hasMore(topic) }
+
+            loader.save(urls[0], topic)
+            assertEquals(1, loader.countRemaining(topic))
+        }
+    }
+
+    @Test
+    fun testPoolSpillsToDiskAndSurvivesRestart() {
+        val pool = SpillingUrlPool(conf, SegmentFileUrlLoader(baseDir), capacity = 100)
+        pool.initialize()
+        urls.forEach { pool.normalCache.reentrantQueue.add(it) }
+        assertEquals(100, pool.normalCache.size)
+        assertEquals(900, pool.normalCache.externalSize)
+
+        // consume some urls, and then restart
+        val sink = mutableListOf<UrlAware>()
+        repeat(10) { sink.add(pool.normalCache.reentrantQueue.poll()!!) }
+        pool.close()
+
+        val pool2 = SpillingUrlPool(conf, SegmentFileUrlLoader(baseDir), capacity = 100)
+        pool2.initialize()
+        val collector = UrlCacheCollector(pool2.normalCache)
+        while (collector.hasMore()) {
+            collector.collectTo(sink)
+        }
+        pool2.close()
+
+        assertEquals(urls.map { it.url }.toSet(), sink.map { it.url }.toSet())
+        assertEquals(urls.size, sink.size)
+    }
+}
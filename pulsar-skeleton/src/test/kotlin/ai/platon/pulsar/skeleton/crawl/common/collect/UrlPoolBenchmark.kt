@@ -0,0 +1,105 @@
+package ai.platon.pulsar.skeleton.crawl.common.collect
+
+import ai.platon.pulsar.common.collect.*
+import ai.platon.pulsar.common.collect.collector.UrlCacheCollector
+import ai.platon.pulsar.common.config.ImmutableConfig
+import ai.platon.pulsar.common.urls.Hyperlink
+import ai.platon.pulsar.common.urls.UrlAware
+import org.junit.jupiter.api.Tag
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+import kotlin.test.*
+
+/**
+ * Compares [RingBufferUrlPool] with [LoadingUrlPool] and [ConcurrentUrlPool]:
+ * producers add urls to the non-reentrant queue of the normal cache, a quarter of them are duplicates,
+ * and a consumer collects urls using [UrlCacheCollector] just like the crawl loop does.
+ * */
+class UrlPoolBenchmark {
+    private val conf = ImmutableConfig()
+    private val producers = 4
+    private val urlsPerProducer = 10_000
+
+    data class Result(val pool: String, val opsPerSecond: Long, val collected: Int, val heapDeltaMB: Long)
+
+    @Tag("SlowTest")
+    @Test
+    fun benchmarkUrlPools() {
+        val factories = listOf<Pair<String, () -> UrlPool>>(
+            "RingBuffer" to { RingBufferUrlPool(conf, capacity = 1 shl 16) },
+            "Loading" to { LoadingUrlPool(TemporaryLocalFileUrlLoader(), capacity = 1_000_000, conf) },
+            "Concurrent" to { ConcurrentUrlPool(conf) },
+        )
+
+        // warm up
+        factories.forEach { (name, factory) -> measure(name, factory(), 1_000) }
+
+        val results = factories.map { (name, factory) -> measure(name, factory(), urlsPerProducer) }
+
+        println(String.format("%-12s%14s%12s%14s", "pool", "ops/s", "collected", "heap(MB)"))
+        results.forEach {
+            println(String.format("%-12s%14d%12d%14d", it.pool, it.opsPerSecond, it.collected, it.heapDeltaMB))
+        }
+
+        // every distinct url is collected at most once, the bloom filters may reject a tiny fraction of new urls
+        val expected = producers * urlsPerProducer * 3 / 4
+        results.forEach { assertTrue(it.collected in (expected * 999 / 1000)..expected, it.toString()) }
+    }
+
+    private fun measure(name: String, pool: UrlPool, urlsPerProducer: Int): Result {
+        pool.initialize()
+        val queue = pool.normalCache.nonReentrantQueue
+        val collector = UrlCacheCollector(pool.normalCache)
+        val executor = Executors.newFixedThreadPool(producers + 1)
+        val latch = CountDownLatch(producers)
+        val finished = AtomicBoolean()
+        val collected = AtomicInteger()
+
+        // urls are created ahead, so the allocation of the urls is not counted
+        val urls = IntRange(0, producers - 1).map { p ->
+            IntRange(0, urlsPerProducer - 1).map {
+                // every 4th url duplicates a url from another producer
+                val id = if (it % 4 == 3) ((p + 1) % producers) * urlsPerProducer + it - 1 else p * urlsPerProducer + it
+                Hyperlink("https://www.example.com/item/$id?q=pulsar")
+            }
+        }
+
+        System.gc()
+        val runtime = Runtime.getRuntime()
+        val heapBefore = runtime.totalMemory() - runtime.freeMemory()
+        val startTime = System.nanoTime()
+
+        urls.forEach { links ->
+            executor.submit {
+                links.forEach { queue.add(it) }
+                latch.countDown()
+            }
+        }
+        executor.submit {
+            val sink = mutableListOf<UrlAware>()
+            while (!finished.get() || collector.hasMore()) {
+                sink.clear()
+                collected.addAndGet(collector.collectTo(sink))
+            }
+        }
+
+        latch.await()
+        finished.set(true)
+        executor.shutdown()
+        assertTrue(executor.awaitTermination(60, TimeUnit.SECONDS), name)
+
+        val elapsed = System.nanoTime() - startTime
+        val heapAfter = runtime.totalMemory() - runtime.freeMemory()
+        val ops = producers * urlsPerProducer + collected.get()
+
+        return Result(
+            name,
+            ops * TimeUnit.SECONDS.toNanos(1) / elapsed,
+            collected.get(),
+            (heapAfter - heapBefore) / 1024 / 1024
+        )
+    }
+}
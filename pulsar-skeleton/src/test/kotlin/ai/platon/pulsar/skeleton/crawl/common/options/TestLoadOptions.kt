@@ -2,6 +2,7 @@ package ai.platon.pulsar.skeleton.crawl.common.options
 
 import ai.platon.pulsar.common.AppPaths
 import ai.platon.pulsar.common.config.VolatileConfig
+import ai.platon.pulsar.persist.metadata.FetchMode
 import ai.platon.pulsar.skeleton.common.options.Condition
 import ai.platon.pulsar.skeleton.common.options.LoadOptionDefaults
 import ai.platon.pulsar.skeleton.common.options.LoadOptions
@@ -83,6 +84,15 @@ class TestLoadOptions {
         assertEquals(options.toString(), options.clone().toString())
     }
 
+    @Test
+    fun testProtocolOptions() {
+        assertEquals(FetchMode.BROWSER, LoadOptions.parse("", VolatileConfig.UNSAFE).fetchMode)
+        assertEquals(FetchMode.NATIVE, LoadOptions.parse("-protocol http", VolatileConfig.UNSAFE).fetchMode)
+        assertEquals(FetchMode.NATIVE, LoadOptions.parse("-fetchMode native", VolatileConfig.UNSAFE).fetchMode)
+        assertEquals(FetchMode.AUTO, LoadOptions.parse("--protocol auto", VolatileConfig.UNSAFE).fetchMode)
+        assertEquals(FetchMode.AUTO, LoadOptions.parse("-protocol auto", VolatileConfig.UNSAFE).clone().fetchMode)
+    }
+
     @Test
     fun testParameterOverwriting() {
         val args1 = "-parse -incognito -expires 1s -retry -storeContent false -cacheContent false"
@@ -0,0 +1,133 @@
+package ai.platon.pulsar.skeleton.crawl.common.options
+
+import ai.platon.pulsar.common.browser.BrowserType
+import ai.platon.pulsar.common.config.VolatileConfig
+import ai.platon.pulsar.skeleton.common.options.LoadOptionDefaults
+import ai.platon.pulsar.skeleton.common.options.LoadOptions
+import ai.platon.pulsar.skeleton.common.options.PulsarOptions
+import ai.platon.pulsar.skeleton.crawl.event.impl.DefaultPageEventHandlers
+import org.junit.jupiter.api.Tag
+import java.time.Duration
+import kotlin.test.*
+
+class TestLoadOptionsParseCache {
+    private val conf = VolatileConfig.UNSAFE
+    private val args = "-expires 1d -itemExpires 7d -ignoreFailure -parse -storeContent false" +
+            " -outLink \".products a\" -topLinks 30 -netCond worst -browser PLAYWRIGHT_CHROME -itemBrowser MOCK_CHROME" +
+            " -requireSize 1000 -itemRequireSize 500 -scrollCount 5 -label jd -taskId 1 -refresh"
+
+    @BeforeTest
+    fun setup() {
+        LoadOptions.clearParseCache()
+    }
+
+    @Test
+    fun whenParseCachedArgs_ThenOptionsAreTheSameAsParsedByJCommander() {
+        val expected = parseWithJCommander(args)
+        repeat(2) {
+            val options = LoadOptions.parse(args, conf)
+            assertOptionFieldsEquals(expected, options)
+            assertEquals(expected.toString(), options.toString())
+        }
+    }
+
+    @Test
+    fun whenModifyParsedOptions_ThenTheCachedOptionsAreNotChanged() {
+        val options = LoadOptions.parse(args, conf)
+        options.expires = Duration.ofSeconds(1)
+        options.label = "modified"
+        options.browser = BrowserType.NATIVE
+
+        val options2 = LoadOptions.parse(args, conf)
+        assertNotSame(options, options2)
+        assertEquals(Duration.ofDays(1), options2.expires)
+        assertEquals("jd", options2.label)
+        assertEquals(BrowserType.PLAYWRIGHT_CHROME, options2.browser)
+    }
+
+    @Test
+    fun whenParseWithOtherOptions_ThenEventHandlersAndReferrerAreInherited() {
+        val other = LoadOptions.parse("-label other", VolatileConfig())
+        other.rawEvent = DefaultPageEventHandlers()
+        other.referrer = "https://www.example.com/"
+
+        val options = LoadOptions.parse(args, other)
+        assertSame(other.conf, options.conf)
+        assertSame(other.rawEvent, options.rawEvent)
+        assertEquals(other.referrer, options.referrer)
+        assertEquals("jd", options.label)
+    }
+
+    @Test
+    fun whenCloneOptions_ThenAllOptionsAreCopied() {
+        val options = LoadOptions.parse(args, conf)
+        options.nMaxRetry = 10
+        options.rawEvent = DefaultPageEventHandlers()
+
+        val clone = options.clone()
+        assertOptionFieldsEquals(options, clone)
+        assertEquals(options.toString(), clone.toString())
+        assertSame(options.rawEvent, clone.rawEvent)
+
+        clone.nMaxRetry = 1
+        assertEquals(10, options.nMaxRetry)
+
+        val itemOptions = options.createItemOptions()
+        assertEquals(Duration.ofDays(7), itemOptions.expires)
+        assertEquals(500, itemOptions.requireSize)
+    }
+
+    @Test
+    fun whenDefaultsChanged_ThenCachedOptionsAreOutdated() {
+        assertFalse { LoadOptions.parse("-label a", conf).parse }
+        try {
+            LoadOptionDefaults.parse = true
+            assertTrue { LoadOptions.parse("-label a", conf).parse }
+        } finally {
+            LoadOptionDefaults.reset()
+        }
+        assertFalse { LoadOptions.parse("-label a", conf).parse }
+    }
+
+    @Tag("SlowTest")
+    @Test
+    fun benchmark() {
+        val argsList = listOf(
+            "-expires 1d -itemExpires 7d -parse -outLink a[href~=item] -topLinks 30",
+            "-expires 1d -ignoreFailure -label portal",
+            "-refresh -parse -netCond worst",
+            args,
+        )
+        val rounds = 2_000
+
+        fun measure(name: String, load: (String) -> LoadOptions) {
+            repeat(rounds / 2) { argsList.forEach { load(it) } } // warm up
+            val startTime = System.nanoTime()
+            repeat(rounds) { argsList.forEach { load(it) } }
+            val nanos = (System.nanoTime() - startTime).coerceAtLeast(1)
+            println(String.format("%-24s%12d", name, rounds * argsList.size * 1_000_000_000L / nanos))
+        }
+
+        println(String.format("%-24s%12s", "operation", "loads/s"))
+        measure("jcommander.parse") { parseWithJCommander(it) }
+        measure("parse") { LoadOptions.parse(it, conf) }
+        measure("jcommander.itemOptions") {
+            val options = parseWithJCommander(it)
+            parseWithJCommander(options.toString()).apply { itemOptions2MajorOptions() }
+        }
+        measure("itemOptions") { LoadOptions.parse(it, conf).createItemOptions() }
+    }
+
+    /**
+     * Parse the arguments with JCommander, just like [LoadOptions.parse] before the parse results are cached.
+     * */
+    private fun parseWithJCommander(args: String): LoadOptions {
+        return LoadOptions(PulsarOptions.split(args.trim()), conf).apply { parse() }
+    }
+
+    private fun assertOptionFieldsEquals(expected: LoadOptions, actual: LoadOptions) {
+        LoadOptions.optionFields.forEach {
+            assertEquals(it.get(expected), it.get(actual), it.name)
+        }
+    }
+}
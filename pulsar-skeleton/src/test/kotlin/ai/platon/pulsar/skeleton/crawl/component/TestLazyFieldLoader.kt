@@ -0,0 +1,61 @@
+package ai.platon.pulsar.skeleton.crawl.component
+
+import ai.platon.pulsar.common.config.AppConstants.MEM_STORE_CLASS
+import ai.platon.pulsar.common.config.CapabilityTypes
+import ai.platon.pulsar.common.config.VolatileConfig
+import ai.platon.pulsar.persist.WebDb
+import ai.platon.pulsar.persist.WebPage
+import ai.platon.pulsar.persist.gora.generated.GWebPage
+import java.nio.ByteBuffer
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import kotlin.test.*
+
+class TestLazyFieldLoader {
+    private val url = "https://www.example.com/dp/lazy-field-loader"
+    private val conf = VolatileConfig().apply {
+        set(CapabilityTypes.STORAGE_DATA_STORE_CLASS, MEM_STORE_CLASS)
+    }
+    private val webDb = WebDb(conf)
+
+    @BeforeTest
+    fun setup() {
+        val page = WebPage.newWebPage(url, conf, null)
+        page.content = ByteBuffer.wrap("<html><body>lazy</body></html>".toByteArray())
+        page.ensurePageModel().emplace(1, "g", mapOf("a" to "b"))
+        webDb.put(page)
+    }
+
+    @AfterTest
+    fun tearDown() {
+        webDb.delete(url)
+        webDb.close()
+    }
+
+    @Test
+    fun whenLazyFieldsMiss_ThenLoadedInOneRoundTrip() {
+        val page = webDb.getOrNull(url, LoadComponent.PAGE_FIELDS)
+        assertNotNull(page)
+        page.setLazyFieldLoader(LoadComponent.LazyFieldLoader(url, webDb))
+
+        val gets = WebDb.dbGetCount.get()
+        assertEquals("<html><body>lazy</body></html>", page.contentAsString)
+        assertEquals("b", page.pageModel?.findValue(1, "a"))
+        assertEquals(1, WebDb.dbGetCount.get() - gets)
+    }
+
+    @Test
+    fun whenConcurrentMisses_ThenCoalesced() {
+        val loader = LoadComponent.LazyFieldLoader(url, webDb)
+        val fields = LoadComponent.LAZY_PAGE_FIELDS.map { it.toString() }
+
+        val gets = WebDb.dbGetCount.get()
+        val executor = Executors.newFixedThreadPool(8)
+        val futures = IntRange(1, 32).map { i -> executor.submit<GWebPage?> { loader.apply(fields[i % fields.size]) } }
+        executor.shutdown()
+        assertTrue { executor.awaitTermination(10, TimeUnit.SECONDS) }
+
+        futures.forEach { assertNotNull(it.get()?.content) }
+        assertEquals(1, WebDb.dbGetCount.get() - gets)
+    }
+}
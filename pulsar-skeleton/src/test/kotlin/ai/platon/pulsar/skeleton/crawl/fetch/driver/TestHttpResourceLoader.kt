@@ -0,0 +1,139 @@
+package ai.platon.pulsar.skeleton.crawl.fetch.driver
+
+import com.sun.net.httpserver.HttpExchange
+import com.sun.net.httpserver.HttpServer
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.sync.Semaphore
+import kotlinx.coroutines.sync.withPermit
+import kotlinx.coroutines.withContext
+import org.jsoup.Jsoup
+import org.junit.jupiter.api.Tag
+import java.io.ByteArrayOutputStream
+import java.net.InetSocketAddress
+import java.util.concurrent.Executors
+import java.util.zip.GZIPOutputStream
+import kotlin.test.*
+
+/**
+ * Tests and benchmarks [HttpResourceLoader] against a local HTTP server.
+ * */
+class TestHttpResourceLoader {
+    private val json = (1..200).joinToString(",", "[", "]") { """{"id":$it,"name":"item $it","price":${it * 1.5}}""" }
+    private val gzippedJson = gzip(json.toByteArray())
+    private lateinit var server: HttpServer
+    private lateinit var baseUrl: String
+
+    @BeforeTest
+    fun setup() {
+        server = HttpServer.create(InetSocketAddress("127.0.0.1", 0), 512)
+        server.executor = Executors.newFixedThreadPool(8)
+        server.createContext("/api/items") { exchange -> respond(exchange, json, "application/json; charset=utf-8") }
+        server.createContext("/api/echo") { exchange ->
+            val cookie = exchange.requestHeaders.getFirst("Cookie") ?: ""
+            val agent = exchange.requestHeaders.getFirst("User-Agent") ?: ""
+            exchange.responseHeaders.add("Set-Cookie", "session=s1; Path=/")
+            respond(exchange, "cookie=$cookie\nagent=$agent", "text/plain")
+        }
+        server.start()
+        baseUrl = "http://127.0.0.1:${server.address.port}"
+    }
+
+    @AfterTest
+    fun tearDown() {
+        server.stop(0)
+        (server.executor as java.util.concurrent.ExecutorService).shutdownNow()
+    }
+
+    @Test
+    fun whenBodyIsCompressed_ThenItIsDecompressedTransparently() = runBlocking {
+        val loader = HttpResourceLoader()
+        val response = loader.load("$baseUrl/api/items", "cx.test")
+
+        assertTrue(response.success)
+        assertEquals(200, response.httpStatusCode)
+        assertEquals(json, response.stream)
+        assertEquals("gzip", response.headers?.get("content-encoding"))
+        assertEquals("HttpClient", response.headers?.get("Q-client"))
+    }
+
+    @Test
+    fun whenCookiesAreGiven_ThenTheyAreSentAndResponseCookiesAreKept() = runBlocking {
+        val loader = HttpResourceLoader()
+        val cookies = listOf(mapOf("name" to "token", "value" to "t1", "domain" to "127.0.0.1", "path" to "/"))
+        val response = loader.load("$baseUrl/api/echo", "cx.a", cookies = cookies, userAgent = "pulsar-test")
+        assertContains(response.stream!!, "token=t1")
+        assertContains(response.stream!!, "agent=pulsar-test")
+
+        // the cookie set by the server is kept in the privacy context
+        val response2 = loader.load("$baseUrl/api/echo", "cx.a")
+        assertContains(response2.stream!!, "session=s1")
+
+        // another privacy context has its own cookies and connections
+        val response3 = loader.load("$baseUrl/api/echo", "cx.b")
+        assertFalse { response3.stream!!.contains("session=s1") }
+        assertEquals(2, loader.numClients)
+
+        loader.evict("cx.a")
+        assertEquals(1, loader.numClients)
+    }
+
+    @Tag("SlowTest")
+    @Test
+    fun benchmarkAgainstJsoup() = runBlocking {
+        val requests = 2000
+        val concurrency = 32
+        val url = "$baseUrl/api/items"
+        val session = Jsoup.newSession().ignoreContentType(true).ignoreHttpErrors(true)
+        val loader = HttpResourceLoader()
+
+        // warm up
+        repeat(50) {
+            withContext(Dispatchers.IO) { session.newRequest().url(url).execute().body() }
+            loader.load(url, "cx.bench")
+        }
+
+        println(String.format("%-12s%12s%12s", "loader", "requests", "req/s"))
+        repeat(3) {
+            val jsoupMillis = measure(requests, concurrency) {
+                val body = withContext(Dispatchers.IO) { session.newRequest().url(url).execute().body() }
+                assertEquals(json.length, body.length)
+            }
+            val http2Millis = measure(requests, concurrency) {
+                assertEquals(json.length, loader.load(url, "cx.bench").stream?.length)
+            }
+
+            println(String.format("%-12s%12d%12d", "jsoup", requests, requests * 1000L / jsoupMillis))
+            println(String.format("%-12s%12d%12d", "http2", requests, requests * 1000L / http2Millis))
+        }
+    }
+
+    private suspend fun measure(requests: Int, concurrency: Int, block: suspend () -> Unit): Long {
+        val semaphore = Semaphore(concurrency)
+        val startTime = System.currentTimeMillis()
+        withContext(Dispatchers.Default) {
+            (1..requests).map { async { semaphore.withPermit { block() } } }.awaitAll()
+        }
+        return (System.currentTimeMillis() - startTime).coerceAtLeast(1)
+    }
+
+    private fun respond(exchange: HttpExchange, body: String, contentType: String) {
+        var bytes = body.toByteArray()
+        val acceptEncoding = exchange.requestHeaders.getFirst("Accept-Encoding") ?: ""
+        if (acceptEncoding.contains("gzip")) {
+            bytes = if (body === json) gzippedJson else gzip(bytes)
+            exchange.responseHeaders.add("Content-Encoding", "gzip")
+        }
+        exchange.responseHeaders.add("Content-Type", contentType)
+        exchange.sendResponseHeaders(200, bytes.size.toLong())
+        exchange.responseBody.use { it.write(bytes) }
+    }
+
+    private fun gzip(bytes: ByteArray): ByteArray {
+        val out = ByteArrayOutputStream()
+        GZIPOutputStream(out).use { it.write(bytes) }
+        return out.toByteArray()
+    }
+}
@@ -0,0 +1,45 @@
+package ai.platon.pulsar.skeleton.crawl.fetch.trace
+
+import org.junit.jupiter.api.Tag
+import kotlin.test.*
+
+/**
+ * Measures the cost of tracing a load task: creating the trace, tracing every stage, five rounds of ready check,
+ * and recording the finished trace in the flight recorder.
+ * */
+class StageTraceBenchmark {
+    private val pagesPerSecond = 100
+    private val numTraces = 1_000_000
+
+    @Tag("SlowTest")
+    @Test
+    fun benchmarkTracingOverhead() {
+        val recorder = FlightRecorder()
+        // warm up
+        repeat(numTraces / 10) { traceOneTask(recorder, it) }
+
+        val startTime = System.nanoTime()
+        var sink = 0L
+        repeat(numTraces) { sink += traceOneTask(recorder, it) }
+        val nanosPerTask = (System.nanoTime() - startTime) / numTraces
+
+        // the fraction of one cpu spent on tracing
+        val overhead = 1.0 * nanosPerTask * pagesPerSecond / 1_000_000_000
+        println(String.format("Tracing costs %dns per task, overhead at %d pages/s: %.6f%% | %d",
+            nanosPerTask, pagesPerSecond, overhead * 100, sink and 1))
+    }
+
+    private fun traceOneTask(recorder: FlightRecorder, i: Int): Long {
+        val trace = StageTrace("https://www.example.com/$i")
+        var n = 0L
+        trace.add(TaskStage.URL_POOL, -1000, 1000)
+        n += trace.trace(TaskStage.PRIVACY_CONTEXT) { i }
+        n += trace.trace(TaskStage.DRIVER_POLL) { i }
+        n += trace.trace(TaskStage.NAVIGATE) { i }
+        repeat(5) { n += trace.trace(TaskStage.READY_CHECK) { i } }
+        n += trace.trace(TaskStage.PARSE) { i }
+        n += trace.trace(TaskStage.PERSIST) { i }
+        recorder.record(trace)
+        return n
+    }
+}
@@ -0,0 +1,88 @@
+package ai.platon.pulsar.skeleton.crawl.fetch.trace
+
+import ai.platon.pulsar.common.serialize.json.pulsarObjectMapper
+import ai.platon.pulsar.common.sleepMillis
+import jdk.jfr.Recording
+import jdk.jfr.consumer.RecordingFile
+import java.nio.file.Files
+import kotlin.test.*
+
+class TestStageTrace {
+
+    @Test
+    fun testStages() {
+        val trace = StageTrace("https://www.example.com/")
+        trace.add(TaskStage.URL_POOL, -5_000_000, 5_000_000)
+        trace.trace(TaskStage.NAVIGATE) { sleepMillis(10) }
+        repeat(3) { trace.trace(TaskStage.READY_CHECK) { sleepMillis(2) } }
+        trace.finish()
+
+        assertEquals(-5_000_000, trace.offsetNanos(TaskStage.URL_POOL))
+        assertTrue { trace.durationNanos(TaskStage.NAVIGATE) >= 10_000_000 }
+        assertEquals(1, trace.count(TaskStage.NAVIGATE))
+        assertEquals(3, trace.count(TaskStage.READY_CHECK))
+        assertTrue { trace.offsetNanos(TaskStage.READY_CHECK) >= trace.durationNanos(TaskStage.NAVIGATE) }
+        assertEquals(0, trace.count(TaskStage.PARSE))
+        assertTrue { trace.elapsedNanos >= 16_000_000 }
+    }
+
+    @Test
+    fun testStageIsTracedOnException() {
+        val trace = StageTrace("https://www.example.com/")
+        assertFailsWith<IllegalStateException> {
+            trace.trace(TaskStage.PERSIST) { throw IllegalStateException() }
+        }
+        assertEquals(1, trace.count(TaskStage.PERSIST))
+
+        val noTrace: StageTrace? = null
+        assertEquals(1, noTrace.trace(TaskStage.PERSIST) { 1 })
+    }
+
+    @Test
+    fun testRecorderKeepsTheMostRecentTraces() {
+        val recorder = FlightRecorder(8)
+        IntRange(1, 20).forEach { recorder.record(StageTrace("https://www.example.com/$it")) }
+
+        assertEquals(20, recorder.recorded)
+        val traces = recorder.snapshot()
+        assertEquals(8, traces.size)
+        assertEquals(IntRange(13, 20).map { "https://www.example.com/$it" }, traces.map { it.url })
+        assertTrue { traces.all { it.isFinished } }
+    }
+
+    @Test
+    fun testExportJson() {
+        val recorder = FlightRecorder(8)
+        val trace = StageTrace("https://www.example.com/")
+        trace.trace(TaskStage.PARSE) { }
+        recorder.record(trace)
+
+        val records = pulsarObjectMapper().readTree(recorder.toJson())
+        assertEquals(1, records.size())
+        assertEquals("https://www.example.com/", records[0]["url"].asText())
+        assertEquals(1, records[0]["stages"]["PARSE"]["count"].asInt())
+        assertNull(records[0]["stages"]["NAVIGATE"])
+
+        val path = Files.createTempDirectory("trace").resolve("traces.json")
+        assertEquals(recorder.toJson(), Files.readString(recorder.exportJson(path)))
+    }
+
+    @Test
+    fun testJfrEvent() {
+        val path = Files.createTempFile("trace", ".jfr")
+        Recording().use { recording ->
+            recording.enable(StageTraceEvent::class.java)
+            recording.start()
+            val trace = StageTrace("https://www.example.com/")
+            repeat(2) { trace.trace(TaskStage.READY_CHECK) { } }
+            FlightRecorder(8).record(trace)
+            recording.stop()
+            recording.dump(path)
+        }
+
+        val events = RecordingFile.readAllEvents(path).filter { it.eventType.name == "ai.platon.pulsar.StageTrace" }
+        assertEquals(1, events.size)
+        assertEquals("https://www.example.com/", events[0].getString("url"))
+        assertEquals(2, events[0].getInt("readyCheckRounds"))
+    }
+}
@@ -0,0 +1,86 @@
+package ai.platon.pulsar.skeleton.crawl.impl
+
+import kotlinx.coroutines.*
+import java.time.Duration
+import kotlin.test.*
+
+class AdmissionControllerTests {
+
+    @Test
+    fun testTryAcquireRespectsLimit() {
+        val admission = AdmissionController({ 2 })
+        assertTrue { admission.tryAcquire() }
+        assertTrue { admission.tryAcquire() }
+        assertFalse { admission.tryAcquire() }
+        assertEquals(2, admission.numRunning)
+
+        admission.release()
+        assertEquals(1, admission.numRunning)
+        assertTrue { admission.tryAcquire() }
+    }
+
+    @Test
+    fun testAcquireIsResumedOnRelease() = runBlocking {
+        // a long recheck interval, so the waiter can only be resumed by the release
+        val admission = AdmissionController({ 1 }, Duration.ofMinutes(1))
+        assertTrue { admission.tryAcquire() }
+
+        val startTime = System.currentTimeMillis()
+        val waiter = async { admission.acquire() }
+        delay(100)
+        assertFalse { waiter.isCompleted }
+
+        admission.release()
+        assertTrue { waiter.await() }
+        assertTrue { System.currentTimeMillis() - startTime < 10_000 }
+        assertEquals(1, admission.numRunning)
+    }
+
+    @Test
+    fun testAcquireGivesUpWhenInactive() = runBlocking {
+        val admission = AdmissionController({ 0 }, Duration.ofMillis(50))
+        var active = true
+        val waiter = async { admission.acquire({ active }) }
+        delay(100)
+        active = false
+        assertFalse { waiter.await() }
+        assertEquals(0, admission.numRunning)
+    }
+
+    @Test
+    fun testAcquireWithSharedController() = runBlocking {
+        val admission = AdmissionController()
+        assertTrue { admission.acquire(limit = { 2 }) }
+        assertTrue { admission.acquire(limit = { 2 }) }
+        // another crawler with a higher limit shares the permits taken
+        assertFalse { admission.tryAcquire(2) }
+        assertTrue { admission.tryAcquire(3) }
+        assertEquals(3, admission.numRunning)
+    }
+
+    @Test
+    fun testPermitIsReleasedIfTaskIsCanceledBeforeStart() = runBlocking {
+        val admission = AdmissionController({ 1 })
+        val scope = CoroutineScope(Dispatchers.Default + Job())
+        scope.cancel()
+
+        assertTrue { admission.acquire() }
+        var started = false
+        val job = scope.launch { started = true }
+        job.invokeOnCompletion { admission.release() }
+        job.join()
+
+        assertFalse { started }
+        assertEquals(0, admission.numRunning)
+    }
+
+    @Test
+    fun testLimitChangeIsPickedUp() = runBlocking {
+        var limit = 0
+        val admission = AdmissionController({ limit }, Duration.ofMillis(50))
+        val waiter = async { admission.acquire() }
+        delay(100)
+        limit = 1
+        assertTrue { waiter.await() }
+    }
+}
@@ -0,0 +1,34 @@
+package ai.platon.pulsar.skeleton.crawl.impl
+
+import java.time.Duration
+import kotlin.test.*
+
+class CrawlHealthMonitorTests {
+
+    @Test
+    fun testSamplePublishesSnapshot() {
+        var webDbLost = false
+        CrawlHealthMonitor(Duration.ofMinutes(1), proxyProbe = { true }, webDbProbe = { webDbLost }).use { monitor ->
+            val initial = monitor.snapshot
+            assertFalse { initial.isProxyOutOfService }
+
+            val snapshot = monitor.sample()
+            assertSame(snapshot, monitor.snapshot)
+            assertTrue { snapshot.isProxyOutOfService }
+            assertFalse { snapshot.isWebDbLost }
+            assertTrue { snapshot.timestamp >= initial.timestamp }
+
+            webDbLost = true
+            // the published snapshot is immutable, probes take effect in the next sample
+            assertFalse { snapshot.isWebDbLost }
+            assertTrue { monitor.sample().isWebDbLost }
+        }
+    }
+
+    @Test
+    fun testOutOfDisk() {
+        assertTrue { CrawlHealthSnapshot().isOutOfDisk }
+        assertTrue { CrawlHealthSnapshot(freeDiskSpacesGB = listOf(1.0, 9.9)).isOutOfDisk }
+        assertFalse { CrawlHealthSnapshot(freeDiskSpacesGB = listOf(1.0, 100.0)).isOutOfDisk }
+    }
+}
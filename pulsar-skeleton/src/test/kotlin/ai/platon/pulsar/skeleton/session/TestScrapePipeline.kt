@@ -0,0 +1,84 @@
+package ai.platon.pulsar.skeleton.session
+
+import ai.platon.pulsar.common.config.VolatileConfig
+import ai.platon.pulsar.dom.FeaturedDocument
+import ai.platon.pulsar.persist.WebPage
+import ai.platon.pulsar.skeleton.common.options.LoadOptions
+import ai.platon.pulsar.skeleton.common.urls.NormURL
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.flow.take
+import kotlinx.coroutines.flow.toList
+import kotlinx.coroutines.runBlocking
+import org.jsoup.Jsoup
+import java.util.concurrent.atomic.AtomicInteger
+import kotlin.test.*
+
+class TestScrapePipeline {
+    private val conf = VolatileConfig.UNSAFE
+    private val options = LoadOptions.create(conf)
+    private val urls = IntRange(1, 40).map { NormURL("https://www.example.com/item/$it", options) }
+    private val fieldSelectors = mapOf("title" to "h1", "price" to ".price", "missing" to ".no-such-class")
+    private val parses = AtomicInteger()
+
+    private val parser: (WebPage) -> FeaturedDocument = { page ->
+        parses.incrementAndGet()
+        FeaturedDocument(Jsoup.parse(page.contentAsString, page.url))
+    }
+
+    private suspend fun load(url: NormURL): WebPage {
+        val n = url.spec.substringAfterLast("/").toInt()
+        // the later pages are fetched faster, so the pages arrive out of order
+        delay((40L - n) % 7)
+        if (n % 10 == 0) {
+            throw IllegalStateException("Failed to fetch $n")
+        }
+
+        val page = WebPage.newWebPage(url.spec, conf, null)
+        page.setContent("<html><body><h1>Item $n</h1><span class='price'>$n.99</span></body></html>")
+        return page
+    }
+
+    @Test
+    fun whenScrape_ThenResultsAreInOrder() {
+        val pipeline = ScrapePipeline({ load(it) }, parser, fetchConcurrency = 4, parseConcurrency = 2, stageCapacity = 4)
+        val results = runBlocking { pipeline.scrape(urls, fieldSelectors).toList() }
+
+        assertEquals(urls.size, results.size)
+        results.forEachIndexed { i, fields ->
+            val n = i + 1
+            assertEquals(fieldSelectors.keys, fields.keys)
+            if (n % 10 == 0) {
+                assertTrue(fields.values.all { it == null }, "Failed page should have null fields | $fields")
+            } else {
+                assertEquals("Item $n", fields["title"])
+                assertEquals("$n.99", fields["price"])
+                assertNull(fields["missing"])
+            }
+        }
+        // failed pages are never parsed
+        assertEquals(urls.size - urls.size / 10, parses.get())
+
+        ScrapePipeline.metrics.stages.forEach { assertEquals(0, it.queueDepth.get(), it.toString()) }
+    }
+
+    @Test
+    fun whenCollectionStopsEarly_ThenQueuesAreDrained() {
+        val pipeline = ScrapePipeline({ load(it) }, parser, fetchConcurrency = 4, parseConcurrency = 2, stageCapacity = 2)
+        val results = runBlocking { pipeline.scrape(urls, fieldSelectors).take(3).toList() }
+
+        assertEquals(listOf("Item 1", "Item 2", "Item 3"), results.map { it["title"] })
+        ScrapePipeline.metrics.stages.forEach {
+            assertEquals(0, it.queueDepth.get(), it.toString())
+            assertEquals(0, it.running.get(), it.toString())
+        }
+    }
+
+    @Test
+    fun whenSelectorIsIllegal_ThenFieldIsNull() {
+        val pipeline = ScrapePipeline({ load(it) }, parser)
+        val results = runBlocking { pipeline.scrape(urls.take(2), mapOf("title" to "h1", "bad" to "div[")).toList() }
+
+        assertEquals(listOf("Item 1", "Item 2"), results.map { it["title"] })
+        assertTrue(results.all { it.containsKey("bad") && it["bad"] == null })
+    }
+}
@@ -479,12 +479,12 @@ open class BrowserSettings(
      * If PulsarPRA works in SPA mode:
      * 1. execution of loads and fetches has no timeout limit, so we can interact with the page as long as we want.
      * */
-    val isSPA get() = conf.getBoolean(BROWSER_SPA_MODE, false)
+    val isSPA get() = conf.snapshot().getBoolean(BROWSER_SPA_MODE, false)
     /**
      * Check if startup scripts are allowed. If true, PulsarPRA injects scripts into the browser
      * before loading a page, and custom scripts are also allowed.
      * */
-    val isStartupScriptEnabled get() = conf.getBoolean(BROWSER_JS_INVADING_ENABLED, true)
+    val isStartupScriptEnabled get() = conf.snapshot().getBoolean(BROWSER_JS_INVADING_ENABLED, true)
     /**
      * The probability to block resource requests.
      * The probability must be in [0, 1].
@@ -495,7 +495,7 @@ open class BrowserSettings(
      * because inappropriate user agent overriding can be detected by the website,
      * furthermore, there is no obvious benefits to rotate the user agent.
      * */
-    val isUserAgentOverridingEnabled get() = conf.getBoolean(BROWSER_ENABLE_UA_OVERRIDING, false)
+    val isUserAgentOverridingEnabled get() = conf.snapshot().getBoolean(BROWSER_ENABLE_UA_OVERRIDING, false)
     
     /**
      * The interaction settings. Interaction settings define how the system
@@ -5,13 +5,13 @@ import ai.platon.pulsar.browser.driver.chrome.common.LauncherOptions
 import ai.platon.pulsar.browser.driver.chrome.impl.ChromeImpl
 import ai.platon.pulsar.browser.driver.chrome.util.ChromeProcessException
 import ai.platon.pulsar.browser.driver.chrome.util.ChromeProcessTimeoutException
+import ai.platon.pulsar.browser.driver.chrome.util.ProfileCloner
 import ai.platon.pulsar.common.*
 import ai.platon.pulsar.common.browser.BrowserFiles
 import ai.platon.pulsar.common.browser.BrowserFiles.PID_FILE_NAME
 import ai.platon.pulsar.common.browser.Browsers
 import ai.platon.pulsar.common.concurrent.RuntimeShutdownHookRegistry
 import ai.platon.pulsar.common.concurrent.ShutdownHookRegistry
-import org.apache.commons.io.FileUtils
 import org.slf4j.LoggerFactory
 import java.io.*
 import java.nio.channels.FileChannel
@@ -305,21 +305,17 @@ Kill all Chrome processes and run the program again.
                 }
 
                 if (!Files.exists(userDataDir.resolve("Default"))) {
-                    logger.info("User data dir does not exist, copy from prototype | {} <- {}", userDataDir, prototypeUserDataDir)
+                    logger.info("User data dir does not exist, clone from prototype | {} <- {}", userDataDir, prototypeUserDataDir)
                     // remove dead symbolic links
                     Files.list(prototypeUserDataDir)
                         .filter { Files.isSymbolicLink(it) && !Files.exists(it) }
                         .forEach { Files.delete(it) }
 
                     // ISSUE#29: https://github.com/platonai/PulsarRPA/issues/29
-                    // Failed to copy chrome data dir when there is a SingletonSocket symbol link
-                    val fileFilter = FileFilter { !Files.isSymbolicLink(it.toPath()) }
-
-//                    val fileFilter = { f: File -> !Files.isSymbolicLink(f.toPath())
-//                        // Copy only the default profile directory
-//                        && f.name == "Default"
-//                    }
-                    FileUtils.copyDirectory(prototypeUserDataDir.toFile(), userDataDir.toFile(), fileFilter)
+                    // Failed to copy chrome data dir when there is a SingletonSocket symbol link,
+                    // the cloner never clones symbolic links
+                    val result = ProfileCloner.clone(prototypeUserDataDir, userDataDir)
+                    logger.debug("User data dir is cloned | {} | {}", result, userDataDir)
                 } else {
                     handleExistUserDataDir(prototypeUserDataDir)
                 }
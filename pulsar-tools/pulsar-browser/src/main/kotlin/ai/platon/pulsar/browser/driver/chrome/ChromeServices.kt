@@ -70,6 +70,18 @@ interface RemoteDevTools: ChromeDevTools, AutoCloseable {
             method: MethodInvocation
     ): T?
     
+    /**
+     * Invokes a remote method and returns the result, suspends until the response arrives without
+     * blocking the calling thread.
+     * */
+    @Throws(ChromeIOException::class, ChromeRPCException::class)
+    suspend fun <T> invokeDeferred(
+            returnProperty: String?,
+            clazz: Class<T>,
+            returnTypeClasses: Array<Class<out Any>>?,
+            method: MethodInvocation
+    ): T?
+    
     @Throws(InterruptedException::class)
     fun awaitTermination()
 
@@ -78,6 +90,26 @@ interface RemoteDevTools: ChromeDevTools, AutoCloseable {
     fun removeEventListener(eventListener: EventListener)
 }
 
+/**
+ * Invokes a remote method by name and returns the result, suspends until the response arrives without
+ * blocking the calling thread.
+ *
+ * For example:
+ * ```kotlin
+ * val html = devTools.invokeDeferred<String>("DOM.getOuterHTML", returnProperty = "outerHTML")
+ * ```
+ *
+ * @param method The method name, for example, Page.navigate.
+ * @param params The method parameters.
+ * @param returnProperty The property to return from the response.
+ * */
+@Throws(ChromeIOException::class, ChromeRPCException::class)
+suspend inline fun <reified T> RemoteDevTools.invokeDeferred(
+    method: String, params: Map<String, Any>? = null, returnProperty: String? = null
+): T? {
+    return invokeDeferred(returnProperty, T::class.java, null, MethodInvocation(MethodInvocation.nextId(), method, params))
+}
+
 interface CoRemoteDevTools: ChromeDevTools, AutoCloseable {
     
     val isOpen: Boolean
@@ -4,6 +4,7 @@ import com.fasterxml.jackson.annotation.JsonProperty
 import com.github.kklisura.cdt.protocol.v2023.types.network.LoadNetworkResourcePageResult
 import java.time.Duration
 import java.time.Instant
+import java.util.concurrent.atomic.AtomicLong
 
 class ChromeVersion {
     @JsonProperty("Browser")
@@ -47,6 +48,15 @@ class MethodInvocation(
         var method: String,
         var params: Map<String, Any>? = null
 ) {
+    companion object {
+        private val ID_SUPPLIER = AtomicLong(1L)
+
+        /**
+         * Generate the next invocation id, which is unique in the process.
+         * */
+        fun nextId() = ID_SUPPLIER.getAndIncrement()
+    }
+
     override fun toString(): String {
         val parameters = params?.entries?.joinToString(", ") { it.key + ": " + "..." }
         return if (parameters != null) "$method($parameters)" else "$method()"
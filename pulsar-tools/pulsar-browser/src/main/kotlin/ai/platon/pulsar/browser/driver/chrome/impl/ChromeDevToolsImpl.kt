@@ -3,6 +3,8 @@ package ai.platon.pulsar.browser.driver.chrome.impl
 import ai.platon.pulsar.browser.driver.chrome.*
 import ai.platon.pulsar.browser.driver.chrome.util.*
 import ai.platon.pulsar.common.config.AppConstants
+import ai.platon.pulsar.common.metrics.hdrTimer
+import ai.platon.pulsar.common.metrics.record
 import ai.platon.pulsar.common.readable
 import ai.platon.pulsar.common.sleepSeconds
 import ai.platon.pulsar.common.warnForClose
@@ -35,7 +37,12 @@ abstract class ChromeDevToolsImpl(
         private val metrics = SharedMetricRegistries.getOrCreate(AppConstants.DEFAULT_METRICS_NAME)
         private val metricsPrefix = "c.i.BasicDevTools.global"
         private val numInvokes = metrics.counter("$metricsPrefix.invokes")
+        private val numDeferredInvokes = metrics.counter("$metricsPrefix.deferredInvokes")
         val numAccepts = metrics.counter("$metricsPrefix.accepts")
+        /**
+         * The latency distribution of the RPC round trips, from sending the request to receiving the response
+         * */
+        private val rpcTimer = metrics.hdrTimer("$metricsPrefix.rpc")
         private val gauges = mapOf(
             "idleTime" to Gauge { idleTime.readable() }
         )
@@ -119,6 +126,51 @@ abstract class ChromeDevToolsImpl(
         }
     }
     
+    /**
+     * Invokes a remote method and returns the result.
+     * The method suspends until the response arrives, but it never blocks the current thread.
+     *
+     * @param returnProperty The property to return from the response.
+     * @param clazz The class of the return type.
+     * @param returnTypeClasses The classes of the return type.
+     * @param method The method to invoke.
+     * @param <T> The return type.
+     * @return The result of the invocation.
+     * */
+    @Throws(ChromeIOException::class, ChromeRPCException::class)
+    override suspend fun <T> invokeDeferred(
+        returnProperty: String?,
+        clazz: Class<T>,
+        returnTypeClasses: Array<Class<out Any>>?,
+        method: MethodInvocation
+    ): T? {
+        numInvokes.inc()
+        numDeferredInvokes.inc()
+        lastActiveTime = Instant.now()
+        
+        val future = dispatcher.subscribe(method.id, returnProperty, method.method)
+        val responded = try {
+            rpcTimer.record {
+                send(method)
+                future.awaitDeferred(config.readTimeout)
+            }
+        } finally {
+            dispatcher.unsubscribe(method.id)
+        }
+        
+        if (!responded) {
+            val methodName = method.method
+            val readTimeout = config.readTimeout
+            throw ChromeRPCTimeoutException("Response timeout $methodName | #${numInvokes.count}, ($readTimeout)")
+        }
+        
+        return try {
+            deserialize(clazz, returnTypeClasses, future)
+        } catch (e: IOException) {
+            throw ChromeRPCException("Failed reading response message", e)
+        }
+    }
+    
     @Throws(ChromeIOException::class, InterruptedException::class, ChromeRPCException::class)
     private fun <T> invoke0(
         returnProperty: String?,
@@ -131,7 +183,7 @@ abstract class ChromeDevToolsImpl(
 
         // blocks the current thread which is optimized by Kotlin since this method is running within
         // withContext(Dispatchers.IO), so it's OK for the client code to run efficiently.
-        val (future, responded) = invoke1(returnProperty, method)
+        val (future, responded) = rpcTimer.record { invoke1(returnProperty, method) }
         
         if (!responded) {
             val methodName = method.method
@@ -139,6 +191,11 @@ abstract class ChromeDevToolsImpl(
             throw ChromeRPCTimeoutException("Response timeout $methodName | #${numInvokes.count}, ($readTimeout)")
         }
         
+        return deserialize(clazz, returnTypeClasses, future)
+    }
+    
+    @Throws(ChromeRPCException::class, IOException::class)
+    private fun <T> deserialize(clazz: Class<T>, returnTypeClasses: Array<Class<out Any>>?, future: InvocationFuture): T? {
         return when {
             !future.isSuccess -> handleFailedFurther(future).let { throw ChromeRPCException(it.first.code, it.second) }
             Void.TYPE == clazz -> null
@@ -152,16 +209,8 @@ abstract class ChromeDevToolsImpl(
         returnProperty: String?,
         method: MethodInvocation
     ): Pair<InvocationFuture, Boolean> {
-        val future = dispatcher.subscribe(method.id, returnProperty)
-        val message = dispatcher.serialize(method)
-        
-        // See https://github.com/hardkoded/puppeteer-sharp/issues/796 to understand why we need handle Target methods
-        // differently.
-        if (method.method.startsWith("Target.")) {
-            browserTransport.sendAsync(message)
-        } else {
-            pageTransport.sendAsync(message)
-        }
+        val future = dispatcher.subscribe(method.id, returnProperty, method.method)
+        send(method)
 
         // await() blocks the current thread
         // 1. the current thread is optimized by Kotlin since this method is running within withContext(Dispatchers.IO)
@@ -172,11 +221,25 @@ abstract class ChromeDevToolsImpl(
         // 6. kotlin channel can help which do not block the current thread
 
         // see: https://ktor.io/docs/websocket-client.html
+        // 7. [invokeDeferred] is the non-blocking version
         val responded = future.await(config.readTimeout)
         dispatcher.unsubscribe(method.id)
         
         return future to responded
     }
+    
+    @Throws(ChromeIOException::class)
+    private fun send(method: MethodInvocation) {
+        val message = dispatcher.serialize(method)
+        
+        // See https://github.com/hardkoded/puppeteer-sharp/issues/796 to understand why we need handle Target methods
+        // differently.
+        if (method.method.startsWith("Target.")) {
+            browserTransport.sendAsync(message)
+        } else {
+            pageTransport.sendAsync(message)
+        }
+    }
 
     @Throws(ChromeRPCException::class, IOException::class)
     private fun handleFailedFurther(future: InvocationFuture): Pair<ErrorObject, String> {
@@ -1,10 +1,17 @@
 package ai.platon.pulsar.browser.driver.chrome.impl
 
 import ai.platon.pulsar.browser.driver.chrome.util.ChromeRPCException
+import ai.platon.pulsar.common.config.AppConstants
 import ai.platon.pulsar.common.getLogger
 import ai.platon.pulsar.common.getTracerOrNull
+import com.codahale.metrics.Counter
+import com.codahale.metrics.MetricRegistry
+import com.codahale.metrics.SharedMetricRegistries
+import com.codahale.metrics.Timer
 import com.fasterxml.jackson.annotation.JsonInclude
+import com.fasterxml.jackson.core.JsonParser
 import com.fasterxml.jackson.core.JsonProcessingException
+import com.fasterxml.jackson.core.JsonToken
 import com.fasterxml.jackson.databind.DeserializationFeature
 import com.fasterxml.jackson.databind.JavaType
 import com.fasterxml.jackson.databind.JsonNode
@@ -22,15 +29,39 @@ import java.util.concurrent.TimeUnit
 import java.util.concurrent.atomic.AtomicBoolean
 import java.util.function.Consumer
 
-class InvocationFuture(val returnProperty: String? = null) {
+class InvocationFuture(
+    val returnProperty: String? = null,
+    /**
+     * The invoked method, for example, DOM.getOuterHTML.
+     * */
+    val method: String? = null
+) {
     var result: JsonNode? = null
     var isSuccess = false
     private val countDownLatch = CountDownLatch(1)
+    private val deferred = CompletableDeferred<Unit>()
     
     fun signal(isSuccess: Boolean, result: JsonNode?) {
         this.isSuccess = isSuccess
         this.result = result
         countDownLatch.countDown()
+        deferred.complete(Unit)
+    }
+    
+    /**
+     * Suspends until the future is signaled, or the specified waiting time elapses.
+     *
+     * Unlike [await], this method does not block the current thread.
+     *
+     * @return true if the future is signaled, false if the waiting time elapsed
+     * */
+    suspend fun awaitDeferred(timeout: Duration): Boolean {
+        if (timeout.isZero) {
+            deferred.await()
+            return true
+        }
+        
+        return withTimeoutOrNull(timeout.toMillis()) { deferred.await() } != null
     }
     
     /**
@@ -57,6 +88,20 @@ class InvocationFuture(val returnProperty: String? = null) {
     }
 }
 
+/**
+ * Per-method statistics of the received messages, so we can see which CDP domains cost the most CPU.
+ * */
+internal class MessageMetrics(registry: MetricRegistry, prefix: String, method: String) {
+    /**
+     * The total size of the received messages, in chars.
+     * */
+    val bytes: Counter = registry.counter("$prefix.$method.bytes")
+    /**
+     * The time to parse and dispatch the received messages.
+     * */
+    val parseTime: Timer = registry.timer("$prefix.$method.parseTime")
+}
+
 /** Error object returned from dev tools. */
 internal class ErrorObject {
     var code: Long = 0
@@ -72,9 +117,22 @@ class EventDispatcher : Consumer<String>, AutoCloseable {
         const val METHOD_PROPERTY = "method"
         const val PARAMS_PROPERTY = "params"
         
+        const val UNKNOWN_METHOD = "unknown"
+        
         val OBJECT_MAPPER = ObjectMapper()
             .setSerializationInclusion(JsonInclude.Include.NON_NULL)
             .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+        
+        private val metrics = SharedMetricRegistries.getOrCreate(AppConstants.DEFAULT_METRICS_NAME)
+        private const val METRICS_PREFIX = "c.i.EventDispatcher.global"
+        /**
+         * The number of events dropped before parsing since there is no listener.
+         * */
+        val numSkippedEvents: Counter = metrics.counter("$METRICS_PREFIX.skippedEvents")
+        private val messageMetrics = ConcurrentHashMap<String, MessageMetrics>()
+        
+        internal fun messageMetrics(method: String) =
+            messageMetrics.computeIfAbsent(method) { MessageMetrics(metrics, METRICS_PREFIX, it) }
     }
     
     private val logger = getLogger(this)
@@ -143,8 +201,8 @@ class EventDispatcher : Consumer<String>, AutoCloseable {
     
     fun hasFutures() = invocationFutures.isNotEmpty()
     
-    fun subscribe(id: Long, returnProperty: String?): InvocationFuture {
-        return invocationFutures.computeIfAbsent(id) { InvocationFuture(returnProperty) }
+    fun subscribe(id: Long, returnProperty: String?, method: String? = null): InvocationFuture {
+        return invocationFutures.computeIfAbsent(id) { InvocationFuture(returnProperty, method) }
     }
     
     fun unsubscribe(id: Long) {
@@ -169,50 +227,144 @@ class EventDispatcher : Consumer<String>, AutoCloseable {
         eventListeners.clear()
     }
     
+    /**
+     * Accepts a message from the web socket and dispatches it.
+     *
+     * The message is read by a streaming parser, only `id` and `method` are always read, a payload is parsed
+     * into a tree only when it's required:
+     * 1. the `params` of an event without any listener are skipped
+     * 2. only the `returnProperty` of the `result` of a response is parsed
+     * */
     @Throws(ChromeRPCException::class, IOException::class)
     override fun accept(message: String) {
         tracer?.trace("Accept {}", StringUtils.abbreviateMiddle(message, "...", 500))
         
         ChromeDevToolsImpl.numAccepts.inc()
+        val startTime = System.nanoTime()
         try {
-            val jsonNode = OBJECT_MAPPER.readTree(message)
-            val idNode = jsonNode.get(ID_PROPERTY)
-            if (idNode != null) {
-                val id = idNode.asLong()
-                val future = invocationFutures[id]
-                if (future != null) {
-                    var resultNode = jsonNode.get(RESULT_PROPERTY)
-                    val errorNode = jsonNode.get(ERROR_PROPERTY)
-                    if (errorNode != null) {
-                        future.signal(false, errorNode)
-                    } else {
-                        if (future.returnProperty != null) {
-                            if (resultNode != null) {
-                                resultNode = resultNode.get(future.returnProperty)
-                            }
-                        }
-                        
-                        if (resultNode != null) {
-                            future.signal(true, resultNode)
-                        } else {
-                            future.signal(true, null)
+            val method = dispatch(message)
+            
+            val m = messageMetrics(method)
+            m.bytes.inc(message.length.toLong())
+            m.parseTime.update(System.nanoTime() - startTime, TimeUnit.NANOSECONDS)
+        } catch (e: IOException) {
+            logger.error("Failed reading web socket message", e)
+        }
+    }
+    
+    /**
+     * Dispatches the message.
+     *
+     * @return the method of the message, or [UNKNOWN_METHOD] if the method can not be determined
+     * */
+    @Throws(IOException::class)
+    private fun dispatch(message: String): String {
+        OBJECT_MAPPER.createParser(message).use { parser ->
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return UNKNOWN_METHOD
+            }
+            
+            var id: Long? = null
+            var future: InvocationFuture? = null
+            var method: String? = null
+            var hasListeners = false
+            var resultNode: JsonNode? = null
+            // whether the return property is already extracted from the result node
+            var isResultResolved = false
+            var errorNode: JsonNode? = null
+            var paramsNode: JsonNode? = null
+            
+            // Chrome always sends id before result/error, and method before params, if the order is not
+            // the case, we fall back to build the whole payload tree.
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                val name = parser.currentName()
+                parser.nextToken()
+                when (name) {
+                    ID_PROPERTY -> {
+                        id = parser.longValue
+                        future = invocationFutures[id]
+                    }
+                    METHOD_PROPERTY -> {
+                        method = parser.text
+                        hasListeners = eventListeners[method]?.isNotEmpty() == true
+                    }
+                    RESULT_PROPERTY -> when {
+                        id == null -> resultNode = OBJECT_MAPPER.readTree<JsonNode>(parser)
+                        future == null -> parser.skipChildren()
+                        else -> {
+                            resultNode = readResult(parser, future.returnProperty)
+                            isResultResolved = true
                         }
                     }
+                    ERROR_PROPERTY -> {
+                        if (id != null && future == null) parser.skipChildren() else errorNode = OBJECT_MAPPER.readTree<JsonNode>(parser)
+                    }
+                    PARAMS_PROPERTY -> {
+                        if (method != null && !hasListeners) parser.skipChildren() else paramsNode = OBJECT_MAPPER.readTree<JsonNode>(parser)
+                    }
+                    else -> parser.skipChildren()
+                }
+            }
+            
+            if (id != null) {
+                if (future == null) {
+                    logger.warn("Received response with unknown invocation #{} - {}", id,
+                        StringUtils.abbreviateMiddle(message, "...", 500))
+                    return UNKNOWN_METHOD
+                }
+                
+                if (errorNode != null) {
+                    future.signal(false, errorNode)
                 } else {
-                    logger.warn("Received response with unknown invocation #{} - {}", id, jsonNode.asText())
+                    val returnProperty = future.returnProperty
+                    if (!isResultResolved && returnProperty != null) {
+                        resultNode = resultNode?.get(returnProperty)
+                    }
+                    future.signal(true, resultNode)
                 }
-            } else {
-                val methodNode = jsonNode.get(METHOD_PROPERTY)
-                val paramsNode = jsonNode.get(PARAMS_PROPERTY)
-                if (methodNode != null) {
-                    handleEvent(methodNode.asText(), paramsNode)
+                
+                return future.method ?: UNKNOWN_METHOD
+            }
+            
+            if (method != null) {
+                if (!hasListeners) {
+                    numSkippedEvents.inc()
+                } else {
+                    // events such as Page.frameResized have no params, but the listeners still have to be called
+                    handleEvent(method, paramsNode ?: OBJECT_MAPPER.createObjectNode())
                 }
+                
+                return method
             }
-        } catch (e: IOException) {
-            logger.error("Failed reading web socket message", e)
+            
+            return UNKNOWN_METHOD
         }
     }
     
+    /**
+     * Reads the result object, if the return property is specified, only the property is parsed into a tree,
+     * all the other properties are skipped.
+     * */
+    @Throws(IOException::class)
+    private fun readResult(parser: JsonParser, returnProperty: String?): JsonNode? {
+        if (returnProperty == null || parser.currentToken() != JsonToken.START_OBJECT) {
+            return OBJECT_MAPPER.readTree<JsonNode>(parser)
+        }
+        
+        var node: JsonNode? = null
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            val name = parser.currentName()
+            parser.nextToken()
+            if (name == returnProperty) {
+                node = OBJECT_MAPPER.readTree<JsonNode>(parser)
+            } else {
+                parser.skipChildren()
+            }
+        }
+        
+        return node
+    }
+    
     /**
      * Closes the dispatcher. All event listeners will be removed and all waiting futures are signaled with failed.
      * */
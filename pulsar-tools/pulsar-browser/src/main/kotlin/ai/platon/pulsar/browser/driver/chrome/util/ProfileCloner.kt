@@ -0,0 +1,148 @@
+package ai.platon.pulsar.browser.driver.chrome.util
+
+import ai.platon.pulsar.common.getLogger
+import org.apache.commons.lang3.SystemUtils
+import java.io.IOException
+import java.nio.file.*
+import java.nio.file.attribute.BasicFileAttributes
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+
+/**
+ * Clone a browser profile, i.e. a user data dir, as cheaply as the file system allows.
+ *
+ * 1. reflink: the whole tree is cloned copy-on-write by `cp --reflink=always`, it's supported by btrfs, xfs, zfs
+ *    and some other file systems, the files share the blocks until either side modifies them
+ * 2. hard link: the files which chrome never modifies in place, for example, extensions and dictionaries,
+ *    are hard linked, other files are copied, since chrome writes its databases in place and a hard link
+ *    would leak the writes into the prototype
+ * 3. copy: if a hard link fails, for example, the source and the target are on different file systems
+ *
+ * Symbolic links are never cloned, see ISSUE#29: Failed to copy chrome data dir when there is a
+ * SingletonSocket symbol link.
+ * */
+object ProfileCloner {
+    private val logger = getLogger(this)
+
+    enum class Mode { REFLINK, HARDLINK, COPY }
+
+    data class Result(val mode: Mode, val linkedFiles: Int, val copiedFiles: Int)
+
+    /**
+     * The directories whose files are written once and never modified in place
+     * */
+    val IMMUTABLE_DIRS = setOf(
+        "Extensions", "Dictionaries", "WidevineCdm", "hyphen-data", "ZxcvbnData", "MEIPreload", "pnacl",
+        "FileTypePolicies", "OriginTrials", "SSLErrorAssistant", "CertificateRevocation", "Subresource Filter",
+        "OnDeviceHeadSuggestModel", "optimization_guide_model_store", "FirstPartySetsPreloaded", "AutofillStates",
+    )
+
+    /**
+     * The file stores on which reflink is known to be unsupported
+     * */
+    private val reflinkUnsupportedStores = ConcurrentHashMap.newKeySet<String>()
+
+    var reflinkEnabled = SystemUtils.IS_OS_LINUX
+
+    /**
+     * Clone [source] to [target], the target directory should not exist or be empty.
+     * */
+    @Throws(IOException::class)
+    fun clone(source: Path, target: Path): Result {
+        if (reflinkEnabled && tryReflink(source, target)) {
+            return Result(Mode.REFLINK, 0, 0)
+        }
+
+        return linkOrCopy(source, target)
+    }
+
+    @Throws(IOException::class)
+    private fun linkOrCopy(source: Path, target: Path): Result {
+        var linked = 0
+        var copied = 0
+        var canLink = true
+        Files.createDirectories(target)
+        Files.walkFileTree(source, object : SimpleFileVisitor<Path>() {
+            override fun preVisitDirectory(dir: Path, attrs: BasicFileAttributes): FileVisitResult {
+                Files.createDirectories(target.resolve(source.relativize(dir).toString()))
+                return FileVisitResult.CONTINUE
+            }
+
+            override fun visitFile(file: Path, attrs: BasicFileAttributes): FileVisitResult {
+                if (!attrs.isRegularFile) {
+                    // symbolic links and special files
+                    return FileVisitResult.CONTINUE
+                }
+
+                val relative = source.relativize(file)
+                val dest = target.resolve(relative.toString())
+                if (canLink && isImmutable(relative)) {
+                    try {
+                        Files.deleteIfExists(dest)
+                        Files.createLink(dest, file)
+                        ++linked
+                        return FileVisitResult.CONTINUE
+                    } catch (e: IOException) {
+                        canLink = false
+                        logger.info("Hard link is not supported, fallback to copy | {}", e.message)
+                    } catch (e: UnsupportedOperationException) {
+                        canLink = false
+                    }
+                }
+
+                Files.copy(file, dest, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES)
+                ++copied
+                return FileVisitResult.CONTINUE
+            }
+
+            override fun visitFileFailed(file: Path, exc: IOException): FileVisitResult {
+                // the file is removed by the running prototype browser
+                logger.debug("Failed to visit file | {} | {}", file, exc.message)
+                return FileVisitResult.CONTINUE
+            }
+        })
+
+        return Result(if (linked > 0) Mode.HARDLINK else Mode.COPY, linked, copied)
+    }
+
+    private fun isImmutable(relative: Path) = relative.any { it.toString() in IMMUTABLE_DIRS }
+
+    private fun tryReflink(source: Path, target: Path): Boolean {
+        val store = kotlin.runCatching { Files.getFileStore(source).name() }.getOrNull() ?: return false
+        if (store in reflinkUnsupportedStores) {
+            return false
+        }
+
+        try {
+            Files.createDirectories(target)
+            // -R copies symbolic links as links, they are removed after cloning
+            val process = ProcessBuilder("cp", "-R", "--reflink=always", "$source/.", "$target")
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .start()
+            if (process.waitFor(60, TimeUnit.SECONDS) && process.exitValue() == 0) {
+                removeSymbolicLinks(target)
+                return true
+            }
+
+            process.destroyForcibly()
+        } catch (e: IOException) {
+            logger.debug("Failed to reflink | {}", e.message)
+        } catch (e: InterruptedException) {
+            Thread.currentThread().interrupt()
+            return false
+        }
+
+        logger.info("Reflink is not supported, fallback to hard link | {}", store)
+        reflinkUnsupportedStores.add(store)
+        // clean up the partial clone
+        kotlin.runCatching { target.toFile().deleteRecursively(); Files.createDirectories(target) }
+        return false
+    }
+
+    private fun removeSymbolicLinks(dir: Path) {
+        Files.walk(dir).use { paths ->
+            paths.filter { Files.isSymbolicLink(it) }.toList().forEach { Files.deleteIfExists(it) }
+        }
+    }
+}
@@ -29,6 +29,7 @@ __pulsar_utils__.checkStatus = function(scroll = 3) {
         // initialization
         this.createDataIfAbsent();
         this.updateStat(true);
+        this.observeMutations();
     }
 
     let status = document.__pulsar__Data.trace.status;
@@ -52,6 +53,38 @@ __pulsar_utils__.checkStatus = function(scroll = 3) {
     return JSON.stringify(document.__pulsar__Data)
 };
 
+/**
+ * Observe the DOM mutations, and notify the crawler through the binding once the DOM stops mutating for a while,
+ * so the crawler checks the document again as soon as it's likely to be stable.
+ * Nothing is notified if the binding is not installed.
+ *
+ * @param quietMillis The time in milliseconds without any mutation to be considered quiet
+ * */
+__pulsar_utils__.observeMutations = function(quietMillis = 300) {
+    if (__pulsar_utils__.mutationObserver || typeof MutationObserver === "undefined" || !document.documentElement) {
+        return
+    }
+
+    let timer = null;
+    const notify = () => {
+        timer = null;
+        if (typeof window.__pulsar_notifySettled === "function") {
+            window.__pulsar_notifySettled(String(Math.round(performance.now())))
+        }
+    };
+
+    __pulsar_utils__.mutationObserver = new MutationObserver(() => {
+        if (timer) {
+            clearTimeout(timer)
+        }
+        timer = setTimeout(notify, quietMillis)
+    });
+    __pulsar_utils__.mutationObserver.observe(document.documentElement, {
+        childList: true, subtree: true, characterData: true
+    });
+    timer = setTimeout(notify, quietMillis)
+};
+
 __pulsar_utils__.isBrowserError = function () {
     return document.documentURI.startsWith("chrome-error");
 };
@@ -67,7 +100,7 @@ __pulsar_utils__.createDataIfAbsent = function() {
 
         document.__pulsar__Data = {
             trace: {
-                status: { n: 0, scroll: 0, idl: 0, st: "", r: "", ec: "" },
+                status: { n: 0, scroll: 0, idl: 0, st: "", r: "", ec: "", t0: performance.now(), lt: performance.now(), idt: 0 },
                 initStat: null,
                 lastStat: {w: 0, h: 0, na: 0, ni: 0, nst: 0, nnm: 0},
                 lastD:    {w: 0, h: 0, na: 0, ni: 0, nst: 0, nnm: 0},
@@ -134,22 +167,26 @@ __pulsar_utils__.isActuallyReady = function() {
         ready = true
     }
 
-    // The DOM is very good for analysis, no wait for more information
+    // The DOM is very good for analysis, no wait for more information.
+    // The checks are not in a fixed rate, so the conditions are measured in time rather than in rounds.
+    let now = performance.now();
     let stat = trace.lastStat;
-    if (status.n > 20 && stat.h >= this.fineHeight
+    if (now - status.t0 > 20000 && stat.h >= this.fineHeight
         && stat.na >= this.fineNumAnchor
         && stat.ni >= this.fineNumImage
     ) {
         if (d.h < 10 && d.na === 0 && d.ni === 0 && d.nst === 0 && d.nnm === 0) {
             // DOM changed since last check, store the latest stat and return false to wait for the next check
             ++status.idl;
-            if (status.idl > 10) {
+            status.idt += now - status.lt;
+            if (status.idt > 10000) {
                 // idle for 10 seconds
                 status.r = "ct";
                 ready = true;
             }
         }
     }
+    status.lt = now;
 
     return ready;
 };
@@ -250,7 +287,10 @@ __pulsar_utils__.updateStat = function(init = false) {
     let lastStatus = trace.status;
     let state = document.readyState.substr(0, 1);
     let newMultiStatus = {
-        status: {n: lastStatus.n, scroll: lastStatus.scroll, idl: lastStatus.idl, st: state, r: lastStatus.r},
+        status: {
+            n: lastStatus.n, scroll: lastStatus.scroll, idl: lastStatus.idl, st: state, r: lastStatus.r,
+            ec: lastStatus.ec, t0: lastStatus.t0, lt: lastStatus.lt, idt: lastStatus.idt
+        },
         lastStat: {w: width, h: height, na: na, ni: ni, nst: nst, nnm: nnm},
         // changes from last round
         lastD: {
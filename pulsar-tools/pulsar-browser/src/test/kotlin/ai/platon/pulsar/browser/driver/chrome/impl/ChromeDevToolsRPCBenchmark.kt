@@ -0,0 +1,172 @@
+package ai.platon.pulsar.browser.driver.chrome.impl
+
+import ai.platon.pulsar.browser.driver.chrome.DevToolsConfig
+import ai.platon.pulsar.browser.driver.chrome.MethodInvocation
+import ai.platon.pulsar.browser.driver.chrome.Transport
+import ai.platon.pulsar.browser.driver.chrome.util.ProxyClasses
+import kotlinx.coroutines.*
+import org.junit.jupiter.api.Tag
+import java.net.URI
+import java.time.Duration
+import java.util.concurrent.*
+import java.util.function.Consumer
+import kotlin.test.*
+
+/**
+ * A mocked transport which responds every request after a fixed latency, just like a remote browser does.
+ * */
+private class DelayedEchoTransport(private val latency: Duration) : Transport {
+    private val consumers = CopyOnWriteArrayList<Consumer<String>>()
+    private val responder = Executors.newScheduledThreadPool(2)
+    private val idRegex = "\"id\":(\\d+)".toRegex()
+
+    override val isOpen = true
+
+    override fun connect(uri: URI) {}
+
+    override fun send(message: String) {
+        sendAsync(message)
+    }
+
+    override fun sendAsync(message: String): Future<Void> {
+        val id = idRegex.find(message)?.groupValues?.get(1)
+        val response = """{"id":$id,"result":{"outerHTML":"<html><body>#$id</body></html>"}}"""
+        responder.schedule({ consumers.forEach { it.accept(response) } }, latency.toMillis(), TimeUnit.MILLISECONDS)
+        return CompletableFuture.completedFuture(null)
+    }
+
+    override fun addMessageHandler(consumer: Consumer<String>) {
+        consumers.add(consumer)
+    }
+
+    override fun close() {
+        responder.shutdownNow()
+    }
+}
+
+/**
+ * Samples the threads parked in an RPC call of [ChromeDevToolsImpl], i.e. the threads waiting for a response
+ * with [ChromeDevToolsImpl] on the stack, and keeps the peak number.
+ * */
+private class BlockedThreadSampler : AutoCloseable {
+    @Volatile
+    private var running = true
+    @Volatile
+    var peak = 0
+        private set
+
+    private val sampler = Thread {
+        while (running) {
+            val blocked = Thread.getAllStackTraces().count { (thread, stack) ->
+                thread.state in WAITING_STATES && stack.any { it.className == ChromeDevToolsImpl::class.java.name }
+            }
+            peak = maxOf(peak, blocked)
+            Thread.sleep(2)
+        }
+    }.also { it.isDaemon = true; it.start() }
+
+    override fun close() {
+        running = false
+        sampler.join()
+    }
+
+    companion object {
+        private val WAITING_STATES = setOf(Thread.State.WAITING, Thread.State.TIMED_WAITING)
+    }
+}
+
+/**
+ * Compares the blocking RPC path and the suspendable RPC path of [ChromeDevToolsImpl],
+ * reports the peak number of threads blocked by the calls and the latencies at different number of concurrent tabs.
+ *
+ * The benchmark is tagged as a slow test and is excluded from the default test suite, the numbers depend on
+ * the machine, so nothing is asserted about them.
+ * */
+class ChromeDevToolsRPCBenchmark {
+    private val latency = Duration.ofMillis(20)
+    private val callsPerTab = 10
+
+    private lateinit var transport: DelayedEchoTransport
+    private lateinit var devTools: ChromeDevToolsImpl
+
+    data class Result(val mode: String, val tabs: Int, val blockedThreads: Int, val p50: Long, val p99: Long)
+
+    @BeforeTest
+    fun setup() {
+        transport = DelayedEchoTransport(latency)
+        devTools = ProxyClasses.createProxyFromAbstract(
+            ChromeDevToolsImpl::class.java,
+            arrayOf(Transport::class.java, Transport::class.java, DevToolsConfig::class.java),
+            arrayOf(transport, transport, DevToolsConfig())
+        ) { _, method, _ -> throw UnsupportedOperationException(method.name) }
+    }
+
+    @AfterTest
+    fun tearDown() {
+        transport.close()
+    }
+
+    @Test
+    fun testInvokeDeferred() = runBlocking {
+        val html = devTools.invokeDeferred("outerHTML", String::class.java, null, newInvocation())
+        assertNotNull(html)
+        assertTrue { html.startsWith("<html>") }
+    }
+
+    @Tag("SlowTest")
+    @Test
+    fun benchmarkBlockingVsDeferred() {
+        val deferredCall: suspend () -> String? = {
+            devTools.invokeDeferred("outerHTML", String::class.java, null, newInvocation())
+        }
+        val blockingCall: suspend () -> String? = {
+            withContext(Dispatchers.IO) {
+                devTools.invoke("outerHTML", String::class.java, null, newInvocation())
+            }
+        }
+
+        // warm up
+        measure("deferred", 50, deferredCall)
+        measure("blocking", 50, blockingCall)
+
+        val results = mutableListOf<Result>()
+        listOf(50, 200, 500).forEach { tabs ->
+            results.add(measure("deferred", tabs, deferredCall))
+            results.add(measure("blocking", tabs, blockingCall))
+        }
+
+        println(String.format("%-10s%8s%10s%10s%10s", "mode", "tabs", "blocked", "p50(ms)", "p99(ms)"))
+        results.forEach {
+            println(String.format("%-10s%8d%10d%10d%10d", it.mode, it.tabs, it.blockedThreads, it.p50, it.p99))
+        }
+    }
+
+    private fun newInvocation() = MethodInvocation(MethodInvocation.nextId(), "DOM.getOuterHTML")
+
+    /**
+     * Measure the latencies and the peak number of threads blocked by the calls.
+     * */
+    private fun measure(mode: String, tabs: Int, call: suspend () -> String?): Result {
+        val latencies = ConcurrentLinkedQueue<Long>()
+
+        val sampler = BlockedThreadSampler()
+        sampler.use {
+            runBlocking(Dispatchers.Default) {
+                repeat(tabs) {
+                    launch {
+                        repeat(callsPerTab) {
+                            val startTime = System.nanoTime()
+                            assertNotNull(call())
+                            latencies.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime))
+                        }
+                    }
+                }
+            }
+        }
+
+        val sorted = latencies.sorted()
+        val p50 = sorted[sorted.size / 2]
+        val p99 = sorted[(sorted.size * 99 / 100).coerceAtMost(sorted.size - 1)]
+        return Result(mode, tabs, sampler.peak, p50, p99)
+    }
+}
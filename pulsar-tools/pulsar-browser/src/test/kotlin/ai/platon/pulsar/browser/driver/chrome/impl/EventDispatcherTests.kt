@@ -0,0 +1,90 @@
+package ai.platon.pulsar.browser.driver.chrome.impl
+
+import ai.platon.pulsar.browser.driver.chrome.RemoteDevTools
+import com.github.kklisura.cdt.protocol.v2023.events.page.DomContentEventFired
+import com.github.kklisura.cdt.protocol.v2023.events.page.FrameResized
+import com.github.kklisura.cdt.protocol.v2023.support.types.EventHandler
+import java.lang.reflect.Proxy
+import java.time.Duration
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.TimeUnit
+import kotlin.test.*
+
+class EventDispatcherTests {
+    private val dispatcher = EventDispatcher()
+    private val devTools = Proxy.newProxyInstance(
+        javaClass.classLoader, arrayOf(RemoteDevTools::class.java)
+    ) { _, _, _ -> null } as RemoteDevTools
+
+    @AfterTest
+    fun tearDown() {
+        dispatcher.close()
+    }
+
+    @Test
+    fun testResponseWithReturnProperty() {
+        val future = dispatcher.subscribe(1, "outerHTML", "DOM.getOuterHTML")
+        dispatcher.accept("""{"id":1,"result":{"nodeId":5,"outerHTML":"<html></html>","extra":{"a":[1,2]}}}""")
+
+        assertTrue { future.await(Duration.ofSeconds(1)) }
+        assertTrue { future.isSuccess }
+        assertEquals("<html></html>", future.result?.asText())
+    }
+
+    @Test
+    fun testResponseWithoutReturnProperty() {
+        val future = dispatcher.subscribe(2, null, "Page.getFrameTree")
+        dispatcher.accept("""{"id":2,"result":{"frameTree":{"frame":{"url":"https://example.com/"}}}}""")
+
+        assertTrue { future.await(Duration.ofSeconds(1)) }
+        assertEquals("https://example.com/", future.result?.get("frameTree")?.get("frame")?.get("url")?.asText())
+    }
+
+    @Test
+    fun testErrorResponse() {
+        val future = dispatcher.subscribe(3, "outerHTML", "DOM.getOuterHTML")
+        dispatcher.accept("""{"id":3,"error":{"code":-32000,"message":"Could not find node"}}""")
+
+        assertTrue { future.await(Duration.ofSeconds(1)) }
+        assertFalse { future.isSuccess }
+        assertEquals(-32000, future.result?.get("code")?.asInt())
+    }
+
+    @Test
+    fun testFieldsOutOfOrder() {
+        val future = dispatcher.subscribe(4, "outerHTML", "DOM.getOuterHTML")
+        dispatcher.accept("""{"result":{"outerHTML":"<div></div>"},"id":4}""")
+
+        assertTrue { future.await(Duration.ofSeconds(1)) }
+        assertEquals("<div></div>", future.result?.asText())
+    }
+
+    @Test
+    fun testEventWithoutListenerIsSkipped() {
+        val skipped = EventDispatcher.numSkippedEvents.count
+        dispatcher.accept("""{"method":"Network.dataReceived","params":{"requestId":"1","dataLength":1024}}""")
+        assertEquals(skipped + 1, EventDispatcher.numSkippedEvents.count)
+    }
+
+    @Test
+    fun testEventWithListener() {
+        val received = CompletableFuture<Double>()
+        val handler = EventHandler<Any> { received.complete((it as DomContentEventFired).timestamp) }
+        val key = "Page.domContentEventFired"
+        dispatcher.registerListener(key, DevToolsEventListener(key, handler, DomContentEventFired::class.java, devTools))
+
+        dispatcher.accept("""{"method":"Page.domContentEventFired","params":{"timestamp":123.5}}""")
+        assertEquals(123.5, received.get(5, TimeUnit.SECONDS))
+    }
+
+    @Test
+    fun testEventWithoutParams() {
+        val received = CompletableFuture<Any>()
+        val handler = EventHandler<Any> { received.complete(it) }
+        val key = "Page.frameResized"
+        dispatcher.registerListener(key, DevToolsEventListener(key, handler, FrameResized::class.java, devTools))
+
+        dispatcher.accept("""{"method":"Page.frameResized"}""")
+        assertIs<FrameResized>(received.get(5, TimeUnit.SECONDS))
+    }
+}
@@ -0,0 +1,62 @@
+package ai.platon.pulsar.browser.driver.chrome.util
+
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.attribute.BasicFileAttributes
+import kotlin.test.*
+
+class TestProfileCloner {
+    private lateinit var baseDir: Path
+    private lateinit var prototype: Path
+
+    @BeforeTest
+    fun setup() {
+        baseDir = Files.createTempDirectory("profile-cloner")
+        prototype = baseDir.resolve("prototype")
+        Files.createDirectories(prototype.resolve("Default/Extensions/abc/1.0"))
+        Files.writeString(prototype.resolve("Local State"), "{}")
+        Files.writeString(prototype.resolve("Default/Preferences"), "{\"a\":1}")
+        Files.writeString(prototype.resolve("Default/Extensions/abc/1.0/manifest.json"), "{\"name\":\"abc\"}")
+        Files.createSymbolicLink(prototype.resolve("SingletonSocket"), baseDir.resolve("no-such-socket"))
+    }
+
+    @AfterTest
+    fun tearDown() {
+        ProfileCloner.reflinkEnabled = true
+        baseDir.toFile().deleteRecursively()
+    }
+
+    @Test
+    fun whenHardLinkIsSupported_ThenImmutableFilesAreLinkedAndOthersCopied() {
+        ProfileCloner.reflinkEnabled = false
+        val target = baseDir.resolve("cx.1/pulsar_chrome")
+        val result = ProfileCloner.clone(prototype, target)
+
+        assertEquals(ProfileCloner.Mode.HARDLINK, result.mode)
+        assertEquals(1, result.linkedFiles)
+        assertEquals(2, result.copiedFiles)
+
+        val manifest = "Default/Extensions/abc/1.0/manifest.json"
+        assertEquals(fileKey(prototype.resolve(manifest)), fileKey(target.resolve(manifest)))
+        assertNotEquals(fileKey(prototype.resolve("Default/Preferences")), fileKey(target.resolve("Default/Preferences")))
+        assertFalse { Files.exists(target.resolve("SingletonSocket"), java.nio.file.LinkOption.NOFOLLOW_LINKS) }
+
+        // chrome writes the copied files in place, the prototype is not affected
+        Files.writeString(target.resolve("Default/Preferences"), "{\"a\":2}")
+        assertEquals("{\"a\":1}", Files.readString(prototype.resolve("Default/Preferences")))
+    }
+
+    @Test
+    fun whenCloned_ThenTheProfileIsComplete() {
+        // reflink falls back to hard link or copy if the file system does not support it
+        val target = baseDir.resolve("cx.2/pulsar_chrome")
+        ProfileCloner.clone(prototype, target)
+
+        assertEquals("{}", Files.readString(target.resolve("Local State")))
+        assertEquals("{\"a\":1}", Files.readString(target.resolve("Default/Preferences")))
+        assertEquals("{\"name\":\"abc\"}", Files.readString(target.resolve("Default/Extensions/abc/1.0/manifest.json")))
+        assertFalse { Files.exists(target.resolve("SingletonSocket"), java.nio.file.LinkOption.NOFOLLOW_LINKS) }
+    }
+
+    private fun fileKey(path: Path) = Files.readAttributes(path, BasicFileAttributes::class.java).fileKey()
+}